@@ -0,0 +1,88 @@
+package net.spals.oembed4j.client;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.stream.IntStream;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for {@link AimdConcurrencyLimit}
+ *
+ * @author tkral
+ */
+public class AimdConcurrencyLimitTest {
+
+    private static final long FAST_NANOS = Duration.ofMillis(10L).toNanos();
+    private static final long SLOW_NANOS = Duration.ofSeconds(3L).toNanos();
+
+    private final OEmbedAdaptiveConcurrencyConfig config = new OEmbedAdaptiveConcurrencyConfig.Builder()
+        .setInitialLimit(4)
+        .setMinLimit(2)
+        .setMaxLimit(6)
+        .setBackoffRatio(0.5)
+        .build();
+
+    @DataProvider
+    Object[][] illegalConfigProvider() {
+        return new Object[][]{
+            {new OEmbedAdaptiveConcurrencyConfig.Builder().setMinLimit(0)},
+            {new OEmbedAdaptiveConcurrencyConfig.Builder().setInitialLimit(100).setMaxLimit(10)},
+            {new OEmbedAdaptiveConcurrencyConfig.Builder().setBackoffRatio(1.0)},
+            {new OEmbedAdaptiveConcurrencyConfig.Builder().setSlowLatencyThreshold(Duration.ZERO)},
+            {new OEmbedAdaptiveConcurrencyConfig.Builder().setMaxQueueWait(Duration.ofSeconds(-1L))},
+        };
+    }
+
+    @Test(dataProvider = "illegalConfigProvider")
+    public void testIllegalConfig(final OEmbedAdaptiveConcurrencyConfig.Builder configBuilder) {
+        catchException(configBuilder::build);
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void testIncrease() {
+        final AimdConcurrencyLimit limit = new AimdConcurrencyLimit(config);
+
+        // About a limit's worth of successes grows the limit by one
+        IntStream.range(0, 5).forEach(i -> limit.onSample(FAST_NANOS, 4, false));
+        assertThat(limit.getLimit(), is(5));
+        // Verify that the limit doesn't grow beyond the max
+        IntStream.range(0, 100).forEach(i -> limit.onSample(FAST_NANOS, 6, false));
+        assertThat(limit.getLimit(), is(6));
+    }
+
+    @Test
+    public void testIncreaseOnlyInUse() {
+        final AimdConcurrencyLimit limit = new AimdConcurrencyLimit(config);
+
+        IntStream.range(0, 100).forEach(i -> limit.onSample(FAST_NANOS, 1, false));
+        assertThat(limit.getLimit(), is(4));
+    }
+
+    @DataProvider
+    Object[][] decreaseProvider() {
+        return new Object[][]{
+            // Case: Dropped
+            {FAST_NANOS, true},
+            // Case: Slow
+            {SLOW_NANOS, false},
+        };
+    }
+
+    @Test(dataProvider = "decreaseProvider")
+    public void testDecrease(final long latencyNanos, final boolean dropped) {
+        final AimdConcurrencyLimit limit = new AimdConcurrencyLimit(config);
+
+        limit.onSample(latencyNanos, 4, dropped);
+        assertThat(limit.getLimit(), is(2));
+        // Verify that the limit doesn't shrink beyond the min
+        limit.onSample(latencyNanos, 4, dropped);
+        assertThat(limit.getLimit(), is(2));
+    }
+}
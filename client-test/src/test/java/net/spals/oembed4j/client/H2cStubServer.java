@@ -0,0 +1,126 @@
+package net.spals.oembed4j.client;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.io.ConnectionStatistics;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stub oEmbed provider, which speaks both HTTP/1.1 and
+ * cleartext HTTP/2 (h2c) on the same port.
+ *
+ * Every request is answered with a link response after a fixed
+ * latency, without tying up a server thread while it waits.
+ *
+ * @author tkral
+ */
+final class H2cStubServer implements AutoCloseable {
+
+    private static final byte[] LINK_RESPONSE = "{\"type\": \"link\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final Server server;
+    private final ScheduledExecutorService responder;
+    private final Map<String, AtomicInteger> requestsByProtocol;
+    private final ConnectionStatistics connectionStatistics;
+
+    private H2cStubServer(
+        final Server server,
+        final ScheduledExecutorService responder,
+        final Map<String, AtomicInteger> requestsByProtocol,
+        final ConnectionStatistics connectionStatistics
+    ) {
+        this.server = server;
+        this.responder = responder;
+        this.requestsByProtocol = requestsByProtocol;
+        this.connectionStatistics = connectionStatistics;
+    }
+
+    static H2cStubServer start(final long latencyMillis) throws Exception {
+        final ScheduledExecutorService responder = Executors.newScheduledThreadPool(2);
+        final Map<String, AtomicInteger> requestsByProtocol = new ConcurrentHashMap<>();
+
+        final QueuedThreadPool threadPool = new QueuedThreadPool(16);
+        threadPool.setDaemon(true);
+        final Server server = new Server(threadPool);
+        final HttpConfiguration httpConfig = new HttpConfiguration();
+        final ServerConnector connector = new ServerConnector(server,
+            new HttpConnectionFactory(httpConfig), new HTTP2CServerConnectionFactory(httpConfig));
+        connector.setHost("localhost");
+        final ConnectionStatistics connectionStatistics = new ConnectionStatistics();
+        connector.addBean(connectionStatistics);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(
+                final String target,
+                final Request baseRequest,
+                final HttpServletRequest request,
+                final HttpServletResponse response
+            ) {
+                baseRequest.setHandled(true);
+                requestsByProtocol.computeIfAbsent(request.getProtocol(), protocol -> new AtomicInteger())
+                    .incrementAndGet();
+
+                final AsyncContext asyncContext = request.startAsync();
+                asyncContext.setTimeout(0L);
+                responder.schedule(() -> {
+                    try {
+                        response.setContentType("application/json");
+                        response.setContentLength(LINK_RESPONSE.length);
+                        response.getOutputStream().write(LINK_RESPONSE);
+                    } catch (final IOException e) {
+                        // the client has gone away
+                    } finally {
+                        asyncContext.complete();
+                    }
+                }, latencyMillis, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+
+        return new H2cStubServer(server, responder, requestsByProtocol, connectionStatistics);
+    }
+
+    URI getURI(final String path) {
+        final int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    /**
+     * The number of requests served, keyed by protocol, such as {@code HTTP/2.0}.
+     */
+    Map<String, AtomicInteger> getRequestsByProtocol() {
+        return requestsByProtocol;
+    }
+
+    /**
+     * The number of connections opened since the server started.
+     */
+    long getConnectionsOpened() {
+        return connectionStatistics.getConnectionsTotal();
+    }
+
+    @Override
+    public void close() throws Exception {
+        server.stop();
+        responder.shutdownNow();
+    }
+}
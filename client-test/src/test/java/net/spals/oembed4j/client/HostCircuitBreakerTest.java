@@ -0,0 +1,220 @@
+package net.spals.oembed4j.client;
+
+import com.google.common.base.Ticker;
+import net.spals.oembed4j.model.OEmbedResponse;
+import net.spals.oembed4j.model.OEmbedType;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for {@link HostCircuitBreaker}
+ *
+ * @author tkral
+ */
+public class HostCircuitBreakerTest {
+
+    private static final OEmbedResult SUCCESS =
+        OEmbedResult.success(new OEmbedResponse.Builder().setType(OEmbedType.link).build());
+    private static final OEmbedResult SERVER_ERROR = OEmbedResult.unsuccessfulResponse(503, "unavailable");
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+    private List<String> transitions;
+    private HostCircuitBreaker circuitBreaker;
+
+    @BeforeMethod
+    void setup() {
+        transitions = new CopyOnWriteArrayList<>();
+        final OEmbedCircuitBreakerConfig config = new OEmbedCircuitBreakerConfig.Builder()
+            .setSlidingWindowSize(4)
+            .setMinimumCalls(4)
+            .setHalfOpenCalls(2)
+            .setOpenDuration(Duration.ofSeconds(30L))
+            .setSlowCallDurationThreshold(Duration.ofSeconds(1L))
+            .addListeners((host, fromState, toState) -> transitions.add(host + ": " + fromState + " -> " + toState))
+            .build();
+        circuitBreaker = new HostCircuitBreaker(config, ticker);
+    }
+
+    @DataProvider
+    Object[][] illegalConfigProvider() {
+        return new Object[][]{
+            {new OEmbedCircuitBreakerConfig.Builder().setSlidingWindowSize(0)},
+            {new OEmbedCircuitBreakerConfig.Builder().setSlidingWindowSize(5).setMinimumCalls(6)},
+            {new OEmbedCircuitBreakerConfig.Builder().setFailureRateThreshold(0.0)},
+            {new OEmbedCircuitBreakerConfig.Builder().setSlowCallDurationThreshold(Duration.ZERO)},
+            {new OEmbedCircuitBreakerConfig.Builder().setOpenDuration(Duration.ofSeconds(-1L))},
+            {new OEmbedCircuitBreakerConfig.Builder().setSlidingWindowSize(5).setMinimumCalls(5).setHalfOpenCalls(6)},
+            {new OEmbedCircuitBreakerConfig.Builder().setMaxStaleResponseAge(Duration.ofSeconds(-1L))},
+        };
+    }
+
+    @Test(dataProvider = "illegalConfigProvider")
+    public void testIllegalConfig(final OEmbedCircuitBreakerConfig.Builder configBuilder) {
+        catchException(configBuilder::build);
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @DataProvider
+    Object[][] openProvider() {
+        return new Object[][]{
+            // Case: Server errors
+            {SERVER_ERROR, 0L},
+            // Case: Rate limiting
+            {OEmbedResult.unsuccessfulResponse(429, "too many requests"), 0L},
+            // Case: Timeouts
+            {OEmbedResult.failure(OEmbedFailureReason.TIMED_OUT, "timed out"), 0L},
+            // Case: Slow calls
+            {SUCCESS, Duration.ofSeconds(2L).toNanos()},
+        };
+    }
+
+    @Test(dataProvider = "openProvider")
+    public void testOpen(final OEmbedResult result, final long durationNanos) {
+        IntStream.range(0, 4).forEach(i -> executeBlocking("host", result, durationNanos));
+
+        assertThat(circuitBreaker.isOpen("host"), is(true));
+        assertThat(transitions, contains("host: CLOSED -> OPEN"));
+        // Verify that requests fail fast, without being run
+        final OEmbedResult rejectedResult = circuitBreaker.executeBlocking("host", () -> {
+            throw new AssertionError("request should not run");
+        });
+        assertThat(rejectedResult.getFailureReason(), is(Optional.of(OEmbedFailureReason.CIRCUIT_OPEN)));
+        assertThat(circuitBreaker.getStats().get("host").getRejectedCalls(), is(1L));
+        // Verify that other hosts are unaffected
+        assertThat(circuitBreaker.isOpen("other host"), is(false));
+    }
+
+    @DataProvider
+    Object[][] stayClosedProvider() {
+        return new Object[][]{
+            // Case: Client errors say nothing about the host's health
+            {OEmbedResult.unsuccessfulResponse(404, "not found")},
+            {OEmbedResult.failure(OEmbedFailureReason.UNREADABLE_RESPONSE, "unparseable")},
+            {SUCCESS},
+        };
+    }
+
+    @Test(dataProvider = "stayClosedProvider")
+    public void testStayClosed(final OEmbedResult result) {
+        IntStream.range(0, 4).forEach(i -> executeBlocking("host", result, 0L));
+
+        assertThat(circuitBreaker.isOpen("host"), is(false));
+        final OEmbedCircuitBreakerStats stats = circuitBreaker.getStats().get("host");
+        assertThat(stats.getState(), is(OEmbedCircuitState.CLOSED));
+        assertThat(stats.getBufferedCalls(), is(4));
+        assertThat(stats.getFailedCalls(), is(0));
+    }
+
+    @Test
+    public void testStayClosedBelowFailureRate() {
+        executeBlocking("host", SERVER_ERROR, 0L);
+        IntStream.range(0, 10).forEach(i -> executeBlocking("host", SUCCESS, 0L));
+        executeBlocking("host", SERVER_ERROR, 0L);
+
+        // Only the last four outcomes count, one of which failed
+        assertThat(circuitBreaker.isOpen("host"), is(false));
+        assertThat(circuitBreaker.getStats().get("host").getFailedCalls(), is(1));
+    }
+
+    @Test
+    public void testOpenOnException() {
+        IntStream.range(0, 4).forEach(i -> {
+            catchException(() -> circuitBreaker.executeBlocking("host", () -> {
+                throw new UncheckedIOException(new java.io.IOException("connection refused"));
+            }));
+            assertThat(caughtException(), instanceOf(UncheckedIOException.class));
+        });
+
+        assertThat(circuitBreaker.isOpen("host"), is(true));
+    }
+
+    @Test
+    public void testHalfOpenAndClose() {
+        IntStream.range(0, 4).forEach(i -> executeBlocking("host", SERVER_ERROR, 0L));
+        nanos.addAndGet(Duration.ofSeconds(30L).toNanos());
+
+        // Verify that the trial requests are let through, but no more
+        final CompletableFuture<OEmbedResult> trial1 = new CompletableFuture<>();
+        final CompletableFuture<OEmbedResult> trial2 = new CompletableFuture<>();
+        assertThat(circuitBreaker.execute("host", () -> trial1), sameInstance(trial1));
+        assertThat(circuitBreaker.execute("host", () -> trial2), sameInstance(trial2));
+        assertThat(circuitBreaker.execute("host", CompletableFuture::new).join().getFailureReason(),
+            is(Optional.of(OEmbedFailureReason.CIRCUIT_OPEN)));
+
+        trial1.complete(SUCCESS);
+        trial2.complete(SUCCESS);
+        assertThat(circuitBreaker.getStats().get("host").getState(), is(OEmbedCircuitState.CLOSED));
+        assertThat(transitions, contains("host: CLOSED -> OPEN", "host: OPEN -> HALF_OPEN", "host: HALF_OPEN -> CLOSED"));
+    }
+
+    @Test
+    public void testHalfOpenAndReopen() {
+        IntStream.range(0, 4).forEach(i -> executeBlocking("host", SERVER_ERROR, 0L));
+        nanos.addAndGet(Duration.ofSeconds(30L).toNanos());
+
+        executeBlocking("host", SUCCESS, 0L);
+        executeBlocking("host", SERVER_ERROR, 0L);
+
+        assertThat(circuitBreaker.isOpen("host"), is(true));
+        assertThat(transitions, contains("host: CLOSED -> OPEN", "host: OPEN -> HALF_OPEN", "host: HALF_OPEN -> OPEN"));
+    }
+
+    @Test
+    public void testHalfOpenCancel() {
+        IntStream.range(0, 4).forEach(i -> executeBlocking("host", SERVER_ERROR, 0L));
+        nanos.addAndGet(Duration.ofSeconds(30L).toNanos());
+
+        final CompletableFuture<OEmbedResult> trial1 = new CompletableFuture<>();
+        circuitBreaker.execute("host", () -> trial1);
+        circuitBreaker.execute("host", CompletableFuture::new);
+        // Verify that a cancelled trial request frees its place
+        trial1.cancel(true);
+        final CompletableFuture<OEmbedResult> trial3 = new CompletableFuture<>();
+        assertThat(circuitBreaker.execute("host", () -> trial3), sameInstance(trial3));
+        assertThat(circuitBreaker.getStats().get("host").getBufferedCalls(), is(0));
+    }
+
+    @Test
+    public void testListenerFailure() {
+        final OEmbedCircuitBreakerConfig config = new OEmbedCircuitBreakerConfig.Builder()
+            .setSlidingWindowSize(1)
+            .setMinimumCalls(1)
+            .setHalfOpenCalls(1)
+            .addListeners((host, fromState, toState) -> {
+                throw new IllegalStateException();
+            })
+            .build();
+        final HostCircuitBreaker failingListenerCircuitBreaker = new HostCircuitBreaker(config, ticker);
+
+        failingListenerCircuitBreaker.executeBlocking("host", () -> SERVER_ERROR);
+        assertThat(failingListenerCircuitBreaker.isOpen("host"), is(true));
+    }
+
+    private void executeBlocking(final String host, final OEmbedResult result, final long durationNanos) {
+        circuitBreaker.executeBlocking(host, () -> {
+            nanos.addAndGet(durationNanos);
+            return result;
+        });
+    }
+}
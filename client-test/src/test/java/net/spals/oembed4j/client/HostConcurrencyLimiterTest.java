@@ -0,0 +1,284 @@
+package net.spals.oembed4j.client;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for {@link HostConcurrencyLimiter}
+ *
+ * @author tkral
+ */
+public class HostConcurrencyLimiterTest {
+
+    @DataProvider
+    Object[][] limitsProvider() {
+        return new Object[][]{
+            // Case: Limited by host
+            {4, 2, new String[]{"a", "a", "a", "a"}, 2},
+            // Case: Limited overall
+            {2, 2, new String[]{"a", "b", "c", "d"}, 2},
+            // Case: A full host doesn't hold up other hosts
+            {4, 1, new String[]{"a", "a", "b", "c"}, 3},
+            // Case: Within both limits
+            {4, 4, new String[]{"a", "a", "b", "b"}, 4},
+        };
+    }
+
+    @Test(dataProvider = "limitsProvider")
+    public void testLimits(
+        final int maxConcurrentTasks,
+        final int maxConcurrentTasksPerHost,
+        final String[] hosts,
+        final int expectedRunningTasks
+    ) {
+        final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(maxConcurrentTasks, maxConcurrentTasksPerHost);
+        final List<CompletableFuture<String>> tasks = new ArrayList<>();
+        final List<CompletableFuture<String>> results = new ArrayList<>();
+        for (final String host : hosts) {
+            final CompletableFuture<String> task = new CompletableFuture<>();
+            tasks.add(task);
+            results.add(limiter.submit(host, () -> task));
+        }
+
+        assertThat(limiter.getRunningTasks(), is(expectedRunningTasks));
+        assertThat(limiter.getQueuedTasks(), is(hosts.length - expectedRunningTasks));
+
+        // Completing tasks, as they start, lets the queued ones run
+        for (int i = 0; i < hosts.length; i++) {
+            tasks.get(i).complete(hosts[i] + i);
+            assertThat(results.get(i).join(), is(hosts[i] + i));
+        }
+        assertThat(limiter.getRunningTasks(), is(0));
+        assertThat(limiter.getQueuedTasks(), is(0));
+    }
+
+    @Test
+    public void testQueuedTaskStartsOnCompletion() {
+        final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(1, 1);
+        final AtomicInteger startedTasks = new AtomicInteger();
+        final CompletableFuture<String> firstTask = new CompletableFuture<>();
+
+        limiter.submit("a", () -> {
+            startedTasks.incrementAndGet();
+            return firstTask;
+        });
+        final CompletableFuture<String> secondResult = limiter.submit("a", () -> {
+            startedTasks.incrementAndGet();
+            return CompletableFuture.completedFuture("second");
+        });
+        assertThat(startedTasks.get(), is(1));
+
+        firstTask.complete("first");
+        assertThat(startedTasks.get(), is(2));
+        assertThat(secondResult.join(), is("second"));
+    }
+
+    @Test
+    public void testCancelQueuedTask() {
+        final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(1, 1);
+        final CompletableFuture<String> firstTask = new CompletableFuture<>();
+        final AtomicInteger startedTasks = new AtomicInteger();
+
+        limiter.submit("a", () -> firstTask);
+        final CompletableFuture<String> secondResult = limiter.submit("a", () -> {
+            startedTasks.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+
+        assertThat(secondResult.cancel(true), is(true));
+        assertThat(limiter.getQueuedTasks(), is(0));
+
+        firstTask.complete("first");
+        assertThat(startedTasks.get(), is(0));
+        assertThat(limiter.getRunningTasks(), is(0));
+    }
+
+    @Test
+    public void testCancelRunningTask() {
+        final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(1, 1);
+        final CompletableFuture<String> task = new CompletableFuture<>();
+
+        final CompletableFuture<String> result = limiter.submit("a", () -> task);
+        assertThat(result.cancel(true), is(true));
+
+        // Verify that the task itself was cancelled and its slot released
+        assertThat(task.isCancelled(), is(true));
+        assertThat(limiter.getRunningTasks(), is(0));
+    }
+
+    @Test
+    public void testFailedTask() {
+        final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(1, 1);
+        final IllegalStateException failure = new IllegalStateException("failed");
+
+        final CompletableFuture<String> result = limiter.submit("a", () -> {
+            throw failure;
+        });
+
+        catchException(result::join);
+        assertThat(caughtException().getCause(), is(failure));
+        assertThat(limiter.getRunningTasks(), is(0));
+    }
+
+    @Test
+    public void testAdaptiveLimit() {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final OEmbedAdaptiveConcurrencyConfig config = new OEmbedAdaptiveConcurrencyConfig.Builder()
+                .setInitialLimit(2)
+                .setBackoffRatio(0.5)
+                .build();
+            final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(10, config, scheduler);
+            final CompletableFuture<String> droppedTask = new CompletableFuture<>();
+            final CompletableFuture<String> otherTask = new CompletableFuture<>();
+
+            limiter.submit("a", () -> droppedTask, "dropped"::equals);
+            limiter.submit("a", () -> otherTask, "dropped"::equals);
+            limiter.submit("a", CompletableFuture::new, "dropped"::equals);
+            assertThat(limiter.getStats().get("a"),
+                is(new OEmbedConcurrencyStats.Builder().setLimit(2).setInFlight(2).setQueued(1).build()));
+
+            // Verify that a dropped task halves the limit, so the queued task can't start yet
+            droppedTask.complete("dropped");
+            assertThat(limiter.getStats().get("a"),
+                is(new OEmbedConcurrencyStats.Builder().setLimit(1).setInFlight(1).setQueued(1).build()));
+            otherTask.complete("ok");
+            assertThat(limiter.getStats().get("a").getInFlight(), is(1));
+            assertThat(limiter.getQueuedTasks(), is(0));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @DataProvider
+    Object[][] adaptiveLimitRejectProvider() {
+        return new Object[][]{
+            // Case: Rejected immediately
+            {Duration.ZERO},
+            // Case: Rejected after waiting in the queue
+            {Duration.ofMillis(50L)},
+        };
+    }
+
+    @Test(dataProvider = "adaptiveLimitRejectProvider", timeOut = 10000L)
+    public void testAdaptiveLimitReject(final Duration maxQueueWait) {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final OEmbedAdaptiveConcurrencyConfig config = new OEmbedAdaptiveConcurrencyConfig.Builder()
+                .setInitialLimit(1)
+                .setMaxQueueWait(maxQueueWait)
+                .build();
+            final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(10, config, scheduler);
+            final AtomicInteger startedTasks = new AtomicInteger();
+
+            limiter.submit("a", CompletableFuture::new);
+            final CompletableFuture<String> rejectedResult = limiter.submit("a", () -> {
+                startedTasks.incrementAndGet();
+                return new CompletableFuture<>();
+            });
+
+            catchException(rejectedResult::join);
+            assertThat(caughtException().getCause(), instanceOf(RejectedExecutionException.class));
+            assertThat(startedTasks.get(), is(0));
+            assertThat(limiter.getQueuedTasks(), is(0));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExecuteBlocking() {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final OEmbedAdaptiveConcurrencyConfig config = new OEmbedAdaptiveConcurrencyConfig.Builder()
+                .setInitialLimit(2)
+                .setBackoffRatio(0.5)
+                .build();
+            final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(10, config, scheduler);
+
+            assertThat(limiter.executeBlocking("a", () -> "dropped", "dropped"::equals), is("dropped"));
+            // Verify that the task's result fed the adaptive limit, and that its room was released
+            assertThat(limiter.getStats().get("a"),
+                is(new OEmbedConcurrencyStats.Builder().setLimit(1).setInFlight(0).setQueued(0).build()));
+
+            catchException(() -> limiter.executeBlocking("a", () -> {
+                throw new IllegalStateException();
+            }, result -> false));
+            assertThat(caughtException(), instanceOf(IllegalStateException.class));
+            assertThat(limiter.getRunningTasks(), is(0));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecuteBlockingWaitsForRoom() throws Exception {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        final ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            final OEmbedAdaptiveConcurrencyConfig config = new OEmbedAdaptiveConcurrencyConfig.Builder()
+                .setInitialLimit(1)
+                .build();
+            final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(10, config, scheduler);
+            final CompletableFuture<String> runningTask = new CompletableFuture<>();
+            final AtomicInteger startedTasks = new AtomicInteger();
+
+            limiter.submit("a", () -> runningTask);
+            final Future<String> blockingResult = caller.submit(() -> limiter.executeBlocking("a", () -> {
+                startedTasks.incrementAndGet();
+                return "ok";
+            }, result -> false));
+            while (limiter.getQueuedTasks() == 0) {
+                TimeUnit.MILLISECONDS.sleep(1L);
+            }
+            assertThat(startedTasks.get(), is(0));
+
+            // Verify that the blocking task runs once the host has room
+            runningTask.complete("ok");
+            assertThat(blockingResult.get(), is("ok"));
+            assertThat(startedTasks.get(), is(1));
+            assertThat(limiter.getRunningTasks(), is(0));
+        } finally {
+            caller.shutdownNow();
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test(dataProvider = "adaptiveLimitRejectProvider", timeOut = 10000L)
+    public void testExecuteBlockingReject(final Duration maxQueueWait) {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final OEmbedAdaptiveConcurrencyConfig config = new OEmbedAdaptiveConcurrencyConfig.Builder()
+                .setInitialLimit(1)
+                .setMaxQueueWait(maxQueueWait)
+                .build();
+            final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(10, config, scheduler);
+            final AtomicInteger startedTasks = new AtomicInteger();
+
+            limiter.submit("a", CompletableFuture::new);
+            catchException(() -> limiter.executeBlocking("a", startedTasks::incrementAndGet, result -> false));
+            assertThat(caughtException(), instanceOf(RejectedExecutionException.class));
+            assertThat(startedTasks.get(), is(0));
+            assertThat(limiter.getQueuedTasks(), is(0));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package net.spals.oembed4j.client;
+
+import com.google.common.base.Ticker;
+import net.spals.oembed4j.model.OEmbedResponse;
+import net.spals.oembed4j.model.OEmbedType;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for {@link HostRateLimiter}
+ *
+ * @author tkral
+ */
+public class HostRateLimiterTest {
+
+    private static final OEmbedResult SUCCESS =
+        OEmbedResult.success(new OEmbedResponse.Builder().setType(OEmbedType.link).build());
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+    private ScheduledExecutorService scheduler;
+
+    @BeforeMethod
+    void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterMethod
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @DataProvider
+    Object[][] illegalConfigProvider() {
+        return new Object[][]{
+            {new OEmbedRateLimit.Builder().setRequestsPerSecond(0.0)},
+            {new OEmbedRateLimit.Builder().setBurst(0)},
+            {new OEmbedRateLimit.Builder().setMaxWait(Duration.ofSeconds(-1L))},
+        };
+    }
+
+    @Test(dataProvider = "illegalConfigProvider")
+    public void testIllegalConfig(final OEmbedRateLimit.Builder configBuilder) {
+        catchException(configBuilder::build);
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void testIllegalClientConfig() {
+        catchException(() -> new OEmbedClientConfig.Builder().setMaxRetryAfter(Duration.ofSeconds(-1L)).build());
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void testBurst() {
+        final HostRateLimiter rateLimiter = newRateLimiter(new OEmbedClientConfig.Builder()
+            .setRateLimit(new OEmbedRateLimit.Builder().setRequestsPerSecond(1.0).setBurst(3).setMaxWait(Duration.ZERO).build())
+            .build());
+
+        // Verify that a burst is let through, but no more
+        IntStream.range(0, 3).forEach(i -> assertThat(executeBlocking(rateLimiter, "host", SUCCESS), is(SUCCESS)));
+        assertThat(executeBlocking(rateLimiter, "host", SUCCESS).getFailureReason(),
+            is(Optional.of(OEmbedFailureReason.RATE_LIMITED)));
+        // Verify that the bucket refills at the steady rate
+        nanos.addAndGet(Duration.ofSeconds(1L).toNanos());
+        assertThat(executeBlocking(rateLimiter, "host", SUCCESS), is(SUCCESS));
+        assertThat(executeBlocking(rateLimiter, "host", SUCCESS).getFailureReason(),
+            is(Optional.of(OEmbedFailureReason.RATE_LIMITED)));
+        // Verify that other hosts are unaffected
+        assertThat(executeBlocking(rateLimiter, "other host", SUCCESS), is(SUCCESS));
+    }
+
+    @Test
+    public void testRateLimitsByHost() {
+        final HostRateLimiter rateLimiter = newRateLimiter(new OEmbedClientConfig.Builder()
+            .putRateLimitsByHost("Host", new OEmbedRateLimit.Builder().setBurst(1).setMaxWait(Duration.ZERO).build())
+            .build());
+
+        assertThat(executeBlocking(rateLimiter, "host", SUCCESS), is(SUCCESS));
+        assertThat(executeBlocking(rateLimiter, "host", SUCCESS).getFailureReason(),
+            is(Optional.of(OEmbedFailureReason.RATE_LIMITED)));
+        // Verify that hosts without a rate limit are unlimited
+        IntStream.range(0, 100).forEach(i ->
+            assertThat(executeBlocking(rateLimiter, "other host", SUCCESS), is(SUCCESS)));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testWait() {
+        final HostRateLimiter rateLimiter = new HostRateLimiter(new OEmbedClientConfig.Builder()
+            .setRateLimit(new OEmbedRateLimit.Builder().setRequestsPerSecond(5.0).setBurst(1).build())
+            .build(), scheduler);
+        final AtomicInteger sentRequests = new AtomicInteger();
+
+        final CompletableFuture<OEmbedResult> first = rateLimiter.execute("host", () -> send(sentRequests));
+        final CompletableFuture<OEmbedResult> second = rateLimiter.execute("host", () -> send(sentRequests));
+        final CompletableFuture<OEmbedResult> cancelled = rateLimiter.execute("host", () -> send(sentRequests));
+        // Verify that requests over the burst wait for their turn
+        assertThat(first.isDone(), is(true));
+        assertThat(second.isDone(), is(false));
+        cancelled.cancel(true);
+
+        assertThat(second.join(), is(SUCCESS));
+        assertThat(executeBlocking(rateLimiter, "host", SUCCESS), is(SUCCESS));
+        // Verify that the cancelled request was never sent
+        assertThat(sentRequests.get(), is(2));
+    }
+
+    @DataProvider
+    Object[][] suspendProvider() {
+        return new Object[][]{
+            // Case: Rate limiting
+            {429, Duration.ofSeconds(30L), Duration.ofSeconds(30L)},
+            // Case: Unavailable
+            {503, Duration.ofSeconds(30L), Duration.ofSeconds(30L)},
+            // Case: Capped at the max retry after
+            {429, Duration.ofHours(1L), Duration.ofMinutes(5L)},
+        };
+    }
+
+    @Test(dataProvider = "suspendProvider")
+    public void testSuspend(final int statusCode, final Duration retryAfter, final Duration expectedSuspension) {
+        final HostRateLimiter rateLimiter = newRateLimiter(new OEmbedClientConfig.Builder().build());
+
+        executeBlocking(rateLimiter, "host",
+            OEmbedResult.unsuccessfulResponse(statusCode, "throttled", Optional.of(retryAfter)));
+        assertThat(rateLimiter.isSuspended("host"), is(true));
+        // Verify that requests fail fast, without being sent
+        final OEmbedResult rejectedResult = rateLimiter.executeBlocking("host", () -> {
+            throw new AssertionError("request should not be sent");
+        });
+        assertThat(rejectedResult.getFailureReason(), is(Optional.of(OEmbedFailureReason.RATE_LIMITED)));
+        assertThat(rateLimiter.isSuspended("other host"), is(false));
+
+        nanos.addAndGet(expectedSuspension.toNanos());
+        assertThat(rateLimiter.isSuspended("host"), is(false));
+        assertThat(executeBlocking(rateLimiter, "host", SUCCESS), is(SUCCESS));
+    }
+
+    @DataProvider
+    Object[][] noSuspendProvider() {
+        return new Object[][]{
+            // Case: Not asked to
+            {new OEmbedClientConfig.Builder().build(), OEmbedResult.unsuccessfulResponse(503, "unavailable")},
+            // Case: Retry-After of another status
+            {new OEmbedClientConfig.Builder().build(),
+                OEmbedResult.unsuccessfulResponse(500, "error", Optional.of(Duration.ofSeconds(30L)))},
+            // Case: Retry-After ignored
+            {new OEmbedClientConfig.Builder().setMaxRetryAfter(Duration.ZERO).build(),
+                OEmbedResult.unsuccessfulResponse(429, "throttled", Optional.of(Duration.ofSeconds(30L)))},
+        };
+    }
+
+    @Test(dataProvider = "noSuspendProvider")
+    public void testNoSuspend(final OEmbedClientConfig config, final OEmbedResult result) {
+        final HostRateLimiter rateLimiter = newRateLimiter(config);
+
+        executeBlocking(rateLimiter, "host", result);
+        assertThat(rateLimiter.isSuspended("host"), is(false));
+    }
+
+    @Test
+    public void testSuspendAsync() {
+        final HostRateLimiter rateLimiter = newRateLimiter(new OEmbedClientConfig.Builder().build());
+        final CompletableFuture<OEmbedResult> resultFuture = new CompletableFuture<>();
+
+        rateLimiter.execute("host", () -> resultFuture);
+        resultFuture.complete(OEmbedResult.unsuccessfulResponse(429, "throttled", Optional.of(Duration.ofSeconds(1L))));
+        assertThat(rateLimiter.isSuspended("host"), is(true));
+        assertThat(rateLimiter.execute("host", CompletableFuture::new).join().getFailureReason(),
+            is(Optional.of(OEmbedFailureReason.RATE_LIMITED)));
+    }
+
+    @DataProvider
+    Object[][] parseRetryAfterProvider() {
+        final Instant now = Instant.parse("2015-10-21T07:28:00Z");
+        return new Object[][]{
+            {Optional.empty(), now, Optional.empty()},
+            {Optional.of(" "), now, Optional.empty()},
+            {Optional.of("120"), now, Optional.of(Duration.ofSeconds(120L))},
+            {Optional.of("Wed, 21 Oct 2015 07:30:00 GMT"), now, Optional.of(Duration.ofMinutes(2L))},
+            // Case: A date in the past
+            {Optional.of("Wed, 21 Oct 2015 07:00:00 GMT"), now, Optional.of(Duration.ZERO)},
+            {Optional.of("soon"), now, Optional.empty()},
+            {Optional.of("99999999999999999999"), now, Optional.empty()},
+        };
+    }
+
+    @Test(dataProvider = "parseRetryAfterProvider")
+    public void testParseRetryAfter(
+        final Optional<String> retryAfter,
+        final Instant now,
+        final Optional<Duration> expectedRetryAfter
+    ) {
+        assertThat(HostRateLimiter.parseRetryAfter(retryAfter, now), is(expectedRetryAfter));
+    }
+
+    private HostRateLimiter newRateLimiter(final OEmbedClientConfig config) {
+        return new HostRateLimiter(config, scheduler, ticker);
+    }
+
+    private static OEmbedResult executeBlocking(
+        final HostRateLimiter rateLimiter,
+        final String host,
+        final OEmbedResult result
+    ) {
+        return rateLimiter.executeBlocking(host, () -> result);
+    }
+
+    private static CompletableFuture<OEmbedResult> send(final AtomicInteger sentRequests) {
+        sentRequests.incrementAndGet();
+        return CompletableFuture.completedFuture(SUCCESS);
+    }
+}
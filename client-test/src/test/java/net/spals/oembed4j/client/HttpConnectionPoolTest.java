@@ -0,0 +1,76 @@
+package net.spals.oembed4j.client;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.net.ssl.SSLContext;
+import java.net.URI;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for {@link HttpConnectionPool}
+ *
+ * @author tkral
+ */
+public class HttpConnectionPoolTest {
+
+    @DataProvider
+    Object[][] maxConnectionsByRouteProvider() {
+        return new Object[][]{
+            // Case: Default http port
+            {"http://www.example.com", URI.create("http://www.example.com:80")},
+            // Case: Default https port
+            {"https://www.example.com", URI.create("https://www.example.com:443")},
+            // Case: Explicit port
+            {"http://www.example.com:8080", URI.create("http://www.example.com:8080")},
+        };
+    }
+
+    @Test(dataProvider = "maxConnectionsByRouteProvider")
+    public void testMaxConnectionsByRoute(final String origin, final URI expectedRoute)
+        throws NoSuchAlgorithmException {
+        final HttpConnectionPool connectionPool = HttpConnectionPool.create(new OEmbedConnectionPoolConfig.Builder()
+            .putMaxConnectionsByRoute(origin, 3)
+            .build(), SSLContext.getDefault());
+
+        final Map<URI, OEmbedConnectionPoolStats> statsByRoute = connectionPool.getStatsByRoute();
+        assertThat(statsByRoute.keySet(), contains(expectedRoute));
+        assertThat(statsByRoute.get(expectedRoute).getMax(), is(3));
+    }
+
+    @Test
+    public void testTotalStats() throws NoSuchAlgorithmException {
+        final HttpConnectionPool connectionPool = HttpConnectionPool.create(new OEmbedConnectionPoolConfig.Builder()
+            .setMaxTotalConnections(5)
+            .build(), SSLContext.getDefault());
+
+        final OEmbedConnectionPoolStats totalStats = connectionPool.getTotalStats();
+        assertThat(totalStats.getMax(), is(5));
+        assertThat(totalStats.getLeased(), is(0));
+        assertThat(totalStats.getAvailable(), is(0));
+    }
+
+    @DataProvider
+    Object[][] invalidMaxConnectionsByRouteProvider() {
+        return new Object[][]{
+            // Case: No scheme
+            {"www.example.com", 1},
+            // Case: Non-positive max connections
+            {"http://www.example.com", 0},
+        };
+    }
+
+    @Test(dataProvider = "invalidMaxConnectionsByRouteProvider")
+    public void testInvalidMaxConnectionsByRoute(final String origin, final int maxConnections) {
+        final OEmbedConnectionPoolConfig.Builder configBuilder = new OEmbedConnectionPoolConfig.Builder();
+
+        catchException(() -> configBuilder.putMaxConnectionsByRoute(origin, maxConnections));
+        assertThat(caughtException(), instanceOf(IllegalArgumentException.class));
+    }
+}
@@ -0,0 +1,280 @@
+package net.spals.oembed4j.client;
+
+import com.sun.net.httpserver.HttpServer;
+import net.spals.oembed4j.client.cache.OEmbedResponseValidators;
+import net.spals.oembed4j.client.registry.OEmbedRegistry;
+import net.spals.oembed4j.model.OEmbedEndpoint;
+import net.spals.oembed4j.model.OEmbedRequest;
+import net.spals.oembed4j.model.OEmbedResponse;
+import net.spals.oembed4j.model.OEmbedType;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link JdkHttpOEmbedClient}
+ *
+ * @author tkral
+ */
+public class JdkHttpOEmbedClientTest {
+
+    private static final byte[] LINK_RESPONSE = "{\"type\": \"link\"}".getBytes(StandardCharsets.UTF_8);
+    private static final String LAST_MODIFIED = "Thu, 01 Jan 1970 00:00:00 GMT";
+
+    private HttpServer http1Server;
+    private H2cStubServer h2cServer;
+
+    @BeforeClass
+    void classSetup() throws Exception {
+        http1Server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        http1Server.createContext("/oembed", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, LINK_RESPONSE.length);
+            try (final OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(LINK_RESPONSE);
+            }
+        });
+        http1Server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(200L);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, LINK_RESPONSE.length);
+            try (final OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(LINK_RESPONSE);
+            }
+        });
+        http1Server.createContext("/throttled", exchange -> {
+            exchange.getResponseHeaders().add("Retry-After", "60");
+            exchange.sendResponseHeaders(429, -1L);
+            exchange.close();
+        });
+        http1Server.createContext("/cacheable", exchange -> {
+            if (exchange.getRequestHeaders().containsKey("If-Modified-Since")) {
+                exchange.sendResponseHeaders(304, -1L);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+            exchange.getResponseHeaders().add("Expires", DateTimeFormatter.RFC_1123_DATE_TIME
+                .format(ZonedDateTime.now(ZoneOffset.UTC).plusHours(1L)));
+            exchange.sendResponseHeaders(200, LINK_RESPONSE.length);
+            try (final OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(LINK_RESPONSE);
+            }
+        });
+        http1Server.createContext("/redirect", exchange -> {
+            exchange.getResponseHeaders().add("Location", http1Endpoint("/oembed").getURITemplate());
+            exchange.sendResponseHeaders(302, -1L);
+            exchange.close();
+        });
+        http1Server.start();
+
+        h2cServer = H2cStubServer.start(0L);
+    }
+
+    @AfterClass
+    void classTearDown() throws Exception {
+        http1Server.stop(0);
+        h2cServer.close();
+    }
+
+    private OEmbedEndpoint http1Endpoint(final String path) {
+        return new OEmbedEndpoint.Builder()
+            .addSchemeTemplates("http://www.example.com/*")
+            .setURITemplate("http://localhost:" + http1Server.getAddress().getPort() + path)
+            .build();
+    }
+
+    private OEmbedEndpoint h2cEndpoint() {
+        return new OEmbedEndpoint.Builder()
+            .addSchemeTemplates("http://www.example.com/*")
+            .setURITemplate(h2cServer.getURI("/oembed").toString())
+            .build();
+    }
+
+    @Test
+    public void testUnsupported() {
+        if (JdkHttpOEmbedClient.isSupported()) {
+            throw new SkipException("The JDK HTTP client is supported on Java " + System.getProperty("java.version"));
+        }
+
+        catchException(() -> JdkHttpOEmbedClient.create(mock(OEmbedRegistry.class)));
+        assertThat(caughtException(), instanceOf(UnsupportedOperationException.class));
+    }
+
+    @DataProvider
+    Object[][] executeSkipCacheProvider() {
+        return new Object[][]{
+            {"/oembed", Optional.of(OEmbedType.link)},
+            // Case: Redirects are followed
+            {"/redirect", Optional.of(OEmbedType.link)},
+            // Case: Unsuccessful response
+            {"/missing", Optional.empty()},
+        };
+    }
+
+    @Test(dataProvider = "executeSkipCacheProvider")
+    public void testExecuteSkipCache(final String path, final Optional<OEmbedType> expectedType) {
+        assumeSupported();
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+
+        try (final JdkHttpOEmbedClient client = JdkHttpOEmbedClient.create(mock(OEmbedRegistry.class))) {
+            assertThat(client.executeSkipCache(request, http1Endpoint(path)).map(OEmbedResponse::getType),
+                is(expectedType));
+            assertThat(client.executeSkipCacheAsync(request, http1Endpoint(path)).join().map(OEmbedResponse::getType),
+                is(expectedType));
+        }
+    }
+
+    @Test
+    public void testExecuteAllOverHttp2() {
+        assumeSupported();
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(h2cEndpoint())).when(registry).getEndpoint(any(URI.class));
+        final Map<String, Integer> requestsBefore = h2cServer.getRequestsByProtocol().entrySet().stream()
+            .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().get()));
+
+        try (final JdkHttpOEmbedClient client = JdkHttpOEmbedClient.create(registry)) {
+            // Upgrade the connection to HTTP/2 before multiplexing requests over it
+            assertThat(client.executeSkipCache(newRequest(-1)).isPresent(), is(true));
+
+            final Map<OEmbedRequest, OEmbedResult> results = client.executeAll(IntStream.range(0, 20)
+                .mapToObj(JdkHttpOEmbedClientTest::newRequest).collect(Collectors.toList()));
+            assertThat(results.values().stream().allMatch(OEmbedResult::isSuccessful), is(true));
+        }
+
+        // Verify that the batch was served over HTTP/2
+        final int http2Requests = h2cServer.getRequestsByProtocol().get("HTTP/2.0").get()
+            - requestsBefore.getOrDefault("HTTP/2.0", 0);
+        assertThat(http2Requests, greaterThanOrEqualTo(20));
+    }
+
+    @Test
+    public void testExecuteWithCaching() {
+        assumeSupported();
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        final JdkHttpOEmbedClient client = spy(JdkHttpOEmbedClient.create(registry));
+        final Optional<OEmbedResponse> response = Optional.of(new OEmbedResponse.Builder()
+            .setType(OEmbedType.link)
+            .setCacheAge(2)
+            .build());
+        doReturn(OEmbedResult.success(response.get())).when(client).runRequest(any(OEmbedRequest.class), any(), any());
+
+        final OEmbedRequest request = newRequest(0);
+        assertThat(client.execute(request), is(response));
+        assertThat(client.getResponseCache().get(request), is(response));
+        client.close();
+    }
+
+    @Test
+    public void testExecuteAllWithHostTimeouts() {
+        assumeSupported();
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(http1Endpoint("/slow"))).when(registry).getEndpoint(any(URI.class));
+        final OEmbedTimeouts timeouts = new OEmbedTimeouts.Builder()
+            .setConnectTimeout(Duration.ofMillis(25L))
+            .setReadTimeout(Duration.ofMillis(25L))
+            .build();
+        final OEmbedClientConfig config = new OEmbedClientConfig.Builder()
+            .putTimeoutsByHost("localhost", timeouts)
+            .build();
+
+        try (final JdkHttpOEmbedClient client = JdkHttpOEmbedClient.create(registry, config)) {
+            final OEmbedRequest request = newRequest(0);
+            final OEmbedResult result = client.executeAll(Collections.singletonList(request)).get(request);
+            assertThat(result.getFailureReason(), is(Optional.of(OEmbedFailureReason.TIMED_OUT)));
+        }
+    }
+
+    @Test
+    public void testExecuteAllWithRetryAfter() {
+        assumeSupported();
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(http1Endpoint("/throttled"))).when(registry).getEndpoint(any(URI.class));
+
+        try (final JdkHttpOEmbedClient client = JdkHttpOEmbedClient.create(registry)) {
+            final OEmbedResult result = client.executeAll(Collections.singletonList(newRequest(0))).get(newRequest(0));
+            assertThat(result.getRetryAfter(), is(Optional.of(Duration.ofSeconds(60L))));
+            assertThat(client.executeAll(Collections.singletonList(newRequest(1))).get(newRequest(1)).getFailureReason(),
+                is(Optional.of(OEmbedFailureReason.RATE_LIMITED)));
+        }
+    }
+
+    @Test
+    public void testExecuteWithExpires() {
+        assumeSupported();
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(http1Endpoint("/cacheable"))).when(registry).getEndpoint(any(URI.class));
+
+        try (final JdkHttpOEmbedClient client = JdkHttpOEmbedClient.create(registry)) {
+            // Verify that the response without a cache age is cached until it expires, without being given one
+            assertThat(client.execute(newRequest(0)).flatMap(OEmbedResponse::getCacheAge), is(Optional.empty()));
+            assertThat(client.getResponseCache().get(newRequest(0)).isPresent(), is(true));
+        }
+    }
+
+    @Test
+    public void testExecuteWithRevalidation() throws Exception {
+        assumeSupported();
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(http1Endpoint("/cacheable"))).when(registry).getEndpoint(any(URI.class));
+        final OEmbedResponse response = new OEmbedResponse.Builder().setType(OEmbedType.link).setCacheAge(60).build();
+
+        try (final JdkHttpOEmbedClient client = JdkHttpOEmbedClient.create(registry)) {
+            // Verify that the validators of a downloaded response are cached along with it
+            assertThat(client.execute(newRequest(0)).isPresent(), is(true));
+            assertThat(client.getResponseCache().getValidators(newRequest(0)), is(Optional.of(
+                new OEmbedResponseValidators.Builder()
+                    .setLastModified(LAST_MODIFIED)
+                    .setEntityLength(LINK_RESPONSE.length)
+                    .build())));
+
+            // Verify that an expired response which wasn't modified is cached again without being downloaded
+            client.getResponseCache().put(newRequest(1), response, Duration.ofMillis(50L),
+                client.getResponseCache().getValidators(newRequest(0)).get());
+            Thread.sleep(100L);
+            assertThat(client.executeAsync(newRequest(1)).join(), is(Optional.of(response)));
+            assertThat(client.getResponseCache().get(newRequest(1)), is(Optional.of(response)));
+            assertThat(client.getCacheStats().get("localhost").getParsesSaved(), is(1L));
+            assertThat(client.getCacheStats().get("localhost").getBytesSaved(), is((long) LINK_RESPONSE.length));
+        }
+    }
+
+    private static OEmbedRequest newRequest(final int id) {
+        return new OEmbedRequest.Builder().setResourceURI("http://www.example.com/" + id).build();
+    }
+
+    private static void assumeSupported() {
+        if (!JdkHttpOEmbedClient.isSupported()) {
+            throw new SkipException("The JDK HTTP client is not supported on Java " + System.getProperty("java.version"));
+        }
+    }
+}
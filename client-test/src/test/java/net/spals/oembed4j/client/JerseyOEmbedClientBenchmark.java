@@ -0,0 +1,195 @@
+package net.spals.oembed4j.client;
+
+import com.sun.net.httpserver.HttpServer;
+import net.spals.oembed4j.client.registry.OEmbedRegistry;
+import net.spals.oembed4j.model.OEmbedEndpoint;
+import net.spals.oembed4j.model.OEmbedRequest;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Throughput benchmark of {@link JerseyOEmbedClient} at high concurrency,
+ * comparing platform threads with virtual threads.
+ *
+ * Requests go to a local stub provider which answers every request after
+ * a fixed latency, without tying up a server thread while it waits. The
+ * benchmark is not part of the regular test run. Run it with:
+ *
+ * <pre>
+ * mvn test -pl client-test -Dtest=JerseyOEmbedClientBenchmark -Djvm=&lt;java 21+ home&gt;/bin/java \
+ *     -DargLine="-Dnet.bytebuddy.experimental=true --add-opens java.base/java.lang=ALL-UNNAMED"
+ * </pre>
+ *
+ * Virtual thread scenarios are skipped on Java runtimes without them.
+ *
+ * @author tkral
+ */
+public class JerseyOEmbedClientBenchmark {
+
+    private static final byte[] LINK_RESPONSE = "{\"type\": \"link\"}".getBytes(StandardCharsets.UTF_8);
+
+    private static final long LATENCY_MILLIS = 200L;
+    private static final int REQUESTS = 5000;
+    private static final int CALLERS = 1000;
+    private static final int PLATFORM_CALLERS = 200;
+
+    private HttpServer server;
+    private ScheduledExecutorService responder;
+    private OEmbedRegistry registry;
+
+    @BeforeClass
+    void classSetup() throws IOException {
+        responder = Executors.newScheduledThreadPool(2);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 4 * CALLERS);
+        server.createContext("/oembed", exchange -> responder.schedule(() -> {
+            try {
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, LINK_RESPONSE.length);
+                try (final OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(LINK_RESPONSE);
+                }
+            } catch (final IOException e) {
+                exchange.close();
+            }
+        }, LATENCY_MILLIS, TimeUnit.MILLISECONDS));
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+
+        final OEmbedEndpoint endpoint = new OEmbedEndpoint.Builder()
+            .addSchemeTemplates("http://www.example.com/*")
+            .setURITemplate("http://localhost:" + server.getAddress().getPort() + "/oembed")
+            .build();
+        registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(endpoint)).when(registry).getEndpoint(any(URI.class));
+    }
+
+    @AfterClass
+    void classTearDown() {
+        server.stop(0);
+        responder.shutdownNow();
+    }
+
+    @Test
+    public void benchmarkBlockingOnPlatformThreads() throws InterruptedException {
+        runBlocking("blocking, " + PLATFORM_CALLERS + " platform threads",
+            Executors.newFixedThreadPool(PLATFORM_CALLERS), PLATFORM_CALLERS);
+    }
+
+    @Test
+    public void benchmarkBlockingOnVirtualThreads() throws InterruptedException {
+        assumeVirtualThreads();
+        runBlocking("blocking, " + CALLERS + " virtual threads",
+            VirtualThreads.newVirtualThreadPerTaskExecutor(), CALLERS);
+    }
+
+    @Test
+    public void benchmarkBatchOnPlatformThreads() {
+        runBatch("batch, platform threads", OEmbedExecutionMode.PLATFORM_THREADS);
+    }
+
+    @Test
+    public void benchmarkBatchOnVirtualThreads() {
+        assumeVirtualThreads();
+        runBatch("batch, virtual threads", OEmbedExecutionMode.VIRTUAL_THREADS);
+    }
+
+    private void runBlocking(
+        final String scenario,
+        final ExecutorService callerExecutor,
+        final int callers
+    ) throws InterruptedException {
+        final AtomicInteger nextRequest = new AtomicInteger();
+        final AtomicInteger responses = new AtomicInteger();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry)) {
+            final Measurement measurement = Measurement.start();
+            IntStream.range(0, callers).forEach(caller -> callerExecutor.execute(() -> {
+                for (int id = nextRequest.getAndIncrement(); id < REQUESTS; id = nextRequest.getAndIncrement()) {
+                    client.executeSkipCache(newRequest(id)).ifPresent(response -> responses.incrementAndGet());
+                }
+            }));
+            callerExecutor.shutdown();
+            callerExecutor.awaitTermination(5L, TimeUnit.MINUTES);
+            measurement.stop(scenario);
+        }
+
+        assertThat(responses.get(), is(REQUESTS));
+    }
+
+    private void runBatch(final String scenario, final OEmbedExecutionMode executionMode) {
+        final OEmbedClientConfig config = new OEmbedClientConfig.Builder()
+            .setMaxConcurrentRequests(CALLERS)
+            .setMaxConcurrentRequestsPerHost(CALLERS)
+            .setExecutionMode(executionMode)
+            .build();
+        final List<OEmbedRequest> requests = IntStream.range(0, REQUESTS)
+            .mapToObj(JerseyOEmbedClientBenchmark::newRequest)
+            .collect(Collectors.toList());
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, config)) {
+            final Measurement measurement = Measurement.start();
+            final Map<OEmbedRequest, OEmbedResult> results = client.executeAll(requests);
+            measurement.stop(scenario);
+
+            assertThat(results.values().stream().filter(OEmbedResult::isSuccessful).count(), is((long) REQUESTS));
+        }
+    }
+
+    private static OEmbedRequest newRequest(final int id) {
+        return new OEmbedRequest.Builder().setResourceURI("http://www.example.com/" + id).build();
+    }
+
+    private static void assumeVirtualThreads() {
+        if (!VirtualThreads.isSupported()) {
+            throw new SkipException("Virtual threads are not supported on Java " + System.getProperty("java.version"));
+        }
+    }
+
+    private static final class Measurement {
+
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        private final long startNanos;
+
+        private Measurement(final long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        static Measurement start() {
+            THREADS.resetPeakThreadCount();
+            return new Measurement(System.nanoTime());
+        }
+
+        void stop(final String scenario) {
+            final double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+            System.out.printf("%-40s %6d requests in %6.2fs: %8.1f requests/s, %5d peak platform threads%n",
+                scenario, REQUESTS, elapsedSeconds, REQUESTS / elapsedSeconds, THREADS.getPeakThreadCount());
+        }
+    }
+}
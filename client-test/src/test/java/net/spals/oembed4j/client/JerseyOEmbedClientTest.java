@@ -1,14 +1,46 @@
 package net.spals.oembed4j.client;
 
+import com.sun.net.httpserver.HttpServer;
+import net.spals.oembed4j.client.cache.OEmbedResponseValidators;
 import net.spals.oembed4j.client.registry.OEmbedRegistry;
+import net.spals.oembed4j.model.OEmbedEndpoint;
 import net.spals.oembed4j.model.OEmbedRequest;
 import net.spals.oembed4j.model.OEmbedResponse;
 import net.spals.oembed4j.model.OEmbedType;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.Mockito.any;
@@ -21,6 +53,60 @@ import static org.mockito.Mockito.*;
  */
 public class JerseyOEmbedClientTest {
 
+    private static final byte[] LINK_RESPONSE = "{\"type\": \"link\"}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+
+    @BeforeClass
+    void classSetup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/oembed", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, LINK_RESPONSE.length);
+            try (final OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(LINK_RESPONSE);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(200L);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, LINK_RESPONSE.length);
+            try (final OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(LINK_RESPONSE);
+            }
+        });
+        server.createContext("/unavailable", exchange -> {
+            exchange.sendResponseHeaders(503, -1L);
+            exchange.close();
+        });
+        server.createContext("/redirect", exchange -> {
+            exchange.getResponseHeaders().add("Location", serverURI("/oembed").toString());
+            exchange.sendResponseHeaders(302, -1L);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterClass
+    void classTearDown() {
+        server.stop(0);
+    }
+
+    private URI serverURI(final String path) {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+    }
+
+    private OEmbedEndpoint serverEndpoint(final String path) {
+        return new OEmbedEndpoint.Builder()
+            .addSchemeTemplates("http://www.example.com/*")
+            .setURITemplate(serverURI(path).toString())
+            .build();
+    }
+
     @DataProvider
     Object[][] executeWithoutCachingProvider() {
         return new Object[][]{
@@ -35,14 +121,16 @@ public class JerseyOEmbedClientTest {
     public void testExecuteWithoutCaching(final Optional<OEmbedResponse> response) {
         final OEmbedRegistry registry = mock(OEmbedRegistry.class);
         final JerseyOEmbedClient client = spy(JerseyOEmbedClient.create(registry));
-        doReturn(response).when(client).executeSkipCache(any(OEmbedRequest.class));
+        final OEmbedResult result = response.map(OEmbedResult::success)
+            .orElseGet(() -> OEmbedResult.failure(OEmbedFailureReason.NO_MATCHING_ENDPOINT, "no endpoint"));
+        doReturn(result).when(client).runRequest(any(OEmbedRequest.class), any(), any());
 
         final OEmbedRequest request = new OEmbedRequest.Builder()
             .setResourceURI("http://www.example.com/myresource").build();
 
         assertThat(client.execute(request), is(response));
         // Verify that we don't cache the result
-        assertThat(client.getResponseCache(), is(anEmptyMap()));
+        assertThat(client.getResponseCache().estimatedSize(), is(0L));
     }
 
     @Test
@@ -54,13 +142,942 @@ public class JerseyOEmbedClientTest {
 
         final OEmbedRegistry registry = mock(OEmbedRegistry.class);
         final JerseyOEmbedClient client = spy(JerseyOEmbedClient.create(registry));
-        doReturn(response).when(client).executeSkipCache(any(OEmbedRequest.class));
+        doReturn(OEmbedResult.success(response.get())).when(client).runRequest(any(OEmbedRequest.class), any(), any());
 
         final OEmbedRequest request = new OEmbedRequest.Builder()
             .setResourceURI("http://www.example.com/myresource").build();
 
         assertThat(client.execute(request), is(response));
         // Verify that we don't cache the result
-        assertThat(client.getResponseCache(), hasKey(request));
+        assertThat(client.getResponseCache().get(request), is(response));
+    }
+
+    @Test
+    public void testExecuteLooksUpEndpointOnce() {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/oembed"))).when(registry).getEndpoint(any(URI.class));
+        final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry);
+
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+
+        assertThat(client.execute(request).isPresent(), is(true));
+        assertThat(client.executeAsync(request).join().isPresent(), is(true));
+        // Verify that each cache miss looks up the endpoint of the request only once
+        verify(registry, times(2)).getEndpoint(any(URI.class));
+    }
+
+    @Test
+    public void testExecuteAsyncWithCaching() {
+        final Optional<OEmbedResponse> response = Optional.of(new OEmbedResponse.Builder()
+            .setType(OEmbedType.link)
+            .setCacheAge(2)
+            .build());
+
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        final JerseyOEmbedClient client = spy(JerseyOEmbedClient.create(registry));
+        doReturn(CompletableFuture.completedFuture(OEmbedResult.success(response.get())))
+            .when(client).runRequestAsync(any(OEmbedRequest.class), any(), any());
+
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+
+        assertThat(client.executeAsync(request).join(), is(response));
+        assertThat(client.getResponseCache().get(request), is(response));
+
+        // Verify that a cache hit completes immediately
+        final CompletableFuture<Optional<OEmbedResponse>> cachedResponse = client.executeAsync(request);
+        assertThat(cachedResponse.isDone(), is(true));
+        assertThat(cachedResponse.join(), is(response));
+        verify(client, times(1)).runRequestAsync(any(OEmbedRequest.class), any(), any());
+    }
+
+    @Test
+    public void testExecuteAsyncCoalescing() {
+        final Optional<OEmbedResponse> response = Optional.of(new OEmbedResponse.Builder()
+            .setType(OEmbedType.link)
+            .setCacheAge(2)
+            .build());
+
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        final JerseyOEmbedClient client = spy(JerseyOEmbedClient.create(registry));
+        final CompletableFuture<OEmbedResult> inFlightResult = new CompletableFuture<>();
+        doReturn(inFlightResult).when(client).runRequestAsync(any(OEmbedRequest.class), any(), any());
+
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+
+        final CompletableFuture<Optional<OEmbedResponse>> firstResponse = client.executeAsync(request);
+        final CompletableFuture<Optional<OEmbedResponse>> secondResponse = client.executeAsync(request);
+        // Verify that the identical requests share one execution
+        verify(client, times(1)).runRequestAsync(any(OEmbedRequest.class), any(), any());
+
+        inFlightResult.complete(OEmbedResult.success(response.get()));
+        assertThat(firstResponse.join(), is(response));
+        assertThat(secondResponse.join(), is(response));
+        assertThat(client.getResponseCache().get(request), is(response));
+    }
+
+    @Test
+    public void testExecuteSkipCacheAsyncNoEndpoint() {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.empty()).when(registry).getEndpoint(any(URI.class));
+        final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry);
+
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+
+        assertThat(client.executeSkipCacheAsync(request).join(), is(Optional.empty()));
+    }
+
+    @DataProvider
+    Object[][] executeSkipCacheAsyncProvider() {
+        return new Object[][]{
+            {"/oembed"},
+            // Case: A single redirect is followed
+            {"/redirect"},
+        };
+    }
+
+    @Test(dataProvider = "executeSkipCacheAsyncProvider")
+    public void testExecuteSkipCacheAsync(final String path) {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry)) {
+            final Optional<OEmbedResponse> response = client.executeSkipCacheAsync(request, serverEndpoint(path)).join();
+            assertThat(response.map(OEmbedResponse::getType), is(Optional.of(OEmbedType.link)));
+        }
+    }
+
+    @Test
+    public void testExecuteAll() {
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+        final OEmbedRequest cachedRequest = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/cached").build();
+        final OEmbedRequest missingRequest = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/missing").build();
+        final OEmbedRequest noEndpointRequest = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.org/myresource").build();
+
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.empty()).when(registry).getEndpoint(any(URI.class));
+        doReturn(Optional.of(serverEndpoint("/oembed"))).when(registry).getEndpoint(request.getResourceURI());
+        doReturn(Optional.of(serverEndpoint("/missing"))).when(registry).getEndpoint(missingRequest.getResourceURI());
+
+        final OEmbedResponse cachedResponse = new OEmbedResponse.Builder().setType(OEmbedType.photo)
+            .setUrl("http://www.example.com/photo.jpg").setHeight(1).setWidth(1).build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry)) {
+            client.getResponseCache().put(cachedRequest, cachedResponse, Duration.ofMinutes(1L));
+
+            final Map<OEmbedRequest, OEmbedResult> results = client.executeAll(
+                Arrays.asList(request, cachedRequest, missingRequest, request, noEndpointRequest));
+
+            // Verify that identical requests were de-duplicated and that order was kept
+            assertThat(results.keySet(), contains(request, cachedRequest, missingRequest, noEndpointRequest));
+            assertThat(results.get(request).getResponse().map(OEmbedResponse::getType), is(Optional.of(OEmbedType.link)));
+            assertThat(results.get(cachedRequest).getResponse(), is(Optional.of(cachedResponse)));
+            assertThat(results.get(missingRequest).getFailureReason(),
+                is(Optional.of(OEmbedFailureReason.UNSUCCESSFUL_RESPONSE)));
+            assertThat(results.get(noEndpointRequest).getFailureReason(),
+                is(Optional.of(OEmbedFailureReason.NO_MATCHING_ENDPOINT)));
+            // Verify that the cached request never reached the registry
+            verify(registry, never()).getEndpoint(cachedRequest.getResourceURI());
+            verify(registry, times(1)).getEndpoint(request.getResourceURI());
+        }
+    }
+
+    @Test
+    public void testExecuteAllCoalescing() {
+        final Optional<OEmbedResponse> response = Optional.of(new OEmbedResponse.Builder()
+            .setType(OEmbedType.link)
+            .setCacheAge(2)
+            .build());
+
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/oembed"))).when(registry).getEndpoint(any(URI.class));
+        final JerseyOEmbedClient client = spy(JerseyOEmbedClient.create(registry));
+        final CompletableFuture<OEmbedResult> inFlightResult = new CompletableFuture<>();
+        doReturn(inFlightResult).when(client).runTargetAsync(any(URI.class), any());
+
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+
+        final CompletableFuture<Map<OEmbedRequest, OEmbedResult>> firstBatch =
+            client.executeAllAsync(Collections.singletonList(request));
+        final CompletableFuture<Optional<OEmbedResponse>> singleResponse = client.executeAsync(request);
+        final CompletableFuture<Map<OEmbedRequest, OEmbedResult>> secondBatch =
+            client.executeAllAsync(Collections.singletonList(request));
+        // Verify that the batched and single requests share one execution
+        verify(client, times(1)).runTargetAsync(any(URI.class), any());
+
+        inFlightResult.complete(OEmbedResult.success(response.get()));
+        assertThat(firstBatch.join().get(request).getResponse(), is(response));
+        assertThat(singleResponse.join(), is(response));
+        assertThat(secondBatch.join().get(request).getResponse(), is(response));
+        assertThat(client.getResponseCache().get(request), is(response));
+    }
+
+    @Test
+    public void testExecuteAllRequestFailed() throws IOException {
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+
+        // Find a port with nothing listening on it
+        final int closedPort;
+        try (final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = serverSocket.getLocalPort();
+        }
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(new OEmbedEndpoint.Builder()
+            .addSchemeTemplates("http://www.example.com/*")
+            .setURITemplate("http://localhost:" + closedPort + "/oembed")
+            .build())).when(registry).getEndpoint(any(URI.class));
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry)) {
+            final OEmbedResult result = client.executeAll(Collections.singletonList(request)).get(request);
+            assertThat(result.isSuccessful(), is(false));
+            assertThat(result.getFailureReason(), is(Optional.of(OEmbedFailureReason.REQUEST_FAILED)));
+            assertThat(result.getFailureMessage().isPresent(), is(true));
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsUnsupported() {
+        if (VirtualThreads.isSupported()) {
+            throw new SkipException("Virtual threads are supported on Java " + System.getProperty("java.version"));
+        }
+
+        final OEmbedClientConfig.Builder configBuilder = new OEmbedClientConfig.Builder()
+            .setExecutionMode(OEmbedExecutionMode.VIRTUAL_THREADS);
+        catchException(configBuilder::build);
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void testExecuteSkipCacheAsyncOnVirtualThreads() throws Exception {
+        if (!VirtualThreads.isSupported()) {
+            throw new SkipException("Virtual threads are not supported on Java " + System.getProperty("java.version"));
+        }
+
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+        final OEmbedClientConfig config = new OEmbedClientConfig.Builder()
+            .setExecutionMode(OEmbedExecutionMode.VIRTUAL_THREADS).build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, config)) {
+            // The slow response completes the future on the thread which ran the request
+            final Thread requestThread = client.executeSkipCacheAsync(request, serverEndpoint("/slow"))
+                .thenApply(response -> Thread.currentThread()).join();
+            assertThat(Thread.class.getMethod("isVirtual").invoke(requestThread), is(true));
+        }
+    }
+
+    @Test
+    public void testExecuteSkipCacheWithConnectionPool() {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+        final URI origin = URI.create("http://localhost:" + server.getAddress().getPort());
+        final OEmbedConnectionPoolConfig connectionPoolConfig = new OEmbedConnectionPoolConfig.Builder()
+            .setMaxTotalConnections(10)
+            .putMaxConnectionsByRoute(origin, 2)
+            .build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry,
+            new OEmbedClientConfig.Builder().build(), connectionPoolConfig)) {
+            for (final String path : Arrays.asList("/oembed", "/redirect", "/missing", "/oembed")) {
+                client.executeSkipCache(request, serverEndpoint(path));
+            }
+            assertThat(client.executeSkipCacheAsync(request, serverEndpoint("/oembed")).join().isPresent(), is(true));
+
+            // Verify that every connection was released and kept alive for reuse
+            final OEmbedConnectionPoolStats totalStats = client.getConnectionPoolStats().get();
+            assertThat(totalStats.getLeased(), is(0));
+            assertThat(totalStats.getAvailable(), is(1));
+            assertThat(totalStats.getMax(), is(10));
+
+            final Map<URI, OEmbedConnectionPoolStats> statsByRoute = client.getConnectionPoolStatsByRoute();
+            assertThat(statsByRoute.keySet(), contains(origin));
+            assertThat(statsByRoute.get(origin).getMax(), is(2));
+        }
+    }
+
+    @Test
+    public void testConnectionPoolStatsWithoutConnectionPool() {
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(mock(OEmbedRegistry.class))) {
+            assertThat(client.getConnectionPoolStats(), is(Optional.empty()));
+            assertThat(client.getConnectionPoolStatsByRoute(), is(anEmptyMap()));
+        }
+    }
+
+    @DataProvider
+    Object[][] connectionPoolProvider() {
+        return new Object[][]{
+            {Optional.empty()},
+            {Optional.of(new OEmbedConnectionPoolConfig.Builder().build())},
+        };
+    }
+
+    @Test(dataProvider = "connectionPoolProvider")
+    public void testExecuteSkipCacheAsyncCancel(
+        final Optional<OEmbedConnectionPoolConfig> connectionPoolConfig
+    ) throws Exception {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+
+        // A server which accepts a request but never responds
+        final CountDownLatch requestReceived = new CountDownLatch(1);
+        final CountDownLatch connectionClosed = new CountDownLatch(1);
+        try (final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            final Thread serverThread = new Thread(() -> {
+                try (final Socket socket = serverSocket.accept()) {
+                    final InputStream inputStream = socket.getInputStream();
+                    inputStream.read(new byte[8192]);
+                    requestReceived.countDown();
+                    // Blocks until the client closes the connection
+                    while (inputStream.read() >= 0) {
+                    }
+                    connectionClosed.countDown();
+                } catch (final IOException e) {
+                    connectionClosed.countDown();
+                }
+            });
+            serverThread.setDaemon(true);
+            serverThread.start();
+
+            final OEmbedEndpoint endpoint = new OEmbedEndpoint.Builder()
+                .addSchemeTemplates("http://www.example.com/*")
+                .setURITemplate("http://localhost:" + serverSocket.getLocalPort() + "/oembed")
+                .build();
+            final OEmbedClientConfig config = new OEmbedClientConfig.Builder().build();
+            try (final JerseyOEmbedClient client = connectionPoolConfig
+                .map(poolConfig -> JerseyOEmbedClient.create(registry, config, poolConfig))
+                .orElseGet(() -> JerseyOEmbedClient.create(registry, config))) {
+                final CompletableFuture<Optional<OEmbedResponse>> response =
+                    client.executeSkipCacheAsync(request, endpoint);
+                assertThat(requestReceived.await(5L, TimeUnit.SECONDS), is(true));
+
+                assertThat(response.cancel(true), is(true));
+                // Verify that the HTTP exchange itself was aborted
+                assertThat(connectionClosed.await(5L, TimeUnit.SECONDS), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void testExecuteWithDeadline() {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/slow"))).when(registry).getEndpoint(any(URI.class));
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry)) {
+            final OEmbedRequest request = new OEmbedRequest.Builder()
+                .setResourceURI("http://www.example.com/myresource").build();
+            assertThat(client.execute(request, Instant.now().plusSeconds(5L)).isPresent(), is(true));
+        }
+    }
+
+    @DataProvider
+    Object[][] executeWithPassedDeadlineProvider() {
+        return new Object[][]{
+            // Case: Deadline passes during the request
+            {Instant.now().plusMillis(50L)},
+            // Case: Deadline passed before the request
+            {Instant.EPOCH},
+        };
+    }
+
+    @Test(dataProvider = "executeWithPassedDeadlineProvider")
+    public void testExecuteWithPassedDeadline(final Instant deadline) {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/slow"))).when(registry).getEndpoint(any(URI.class));
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry)) {
+            final OEmbedRequest request = new OEmbedRequest.Builder()
+                .setResourceURI("http://www.example.com/myresource").build();
+            final long startNanos = System.nanoTime();
+            assertThat(client.execute(request, deadline), is(Optional.empty()));
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), lessThan(200L));
+            // Verify that an aborted request isn't cached
+            assertThat(client.getResponseCache().get(request), is(Optional.empty()));
+        }
+    }
+
+    @Test(dataProvider = "connectionPoolProvider")
+    public void testExecuteAllWithHostTimeouts(final Optional<OEmbedConnectionPoolConfig> connectionPoolConfig) {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/slow"))).when(registry).getEndpoint(any(URI.class));
+        final OEmbedClientConfig config = new OEmbedClientConfig.Builder()
+            .putTimeoutsByHost("LocalHost", new OEmbedTimeouts.Builder().setReadTimeout(Duration.ofMillis(50L)).build())
+            .build();
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+
+        try (final JerseyOEmbedClient client = connectionPoolConfig
+            .map(poolConfig -> JerseyOEmbedClient.create(registry, config, poolConfig))
+            .orElseGet(() -> JerseyOEmbedClient.create(registry, config))) {
+            final OEmbedResult result = client.executeAll(Collections.singletonList(request)).get(request);
+            assertThat(result.getFailureReason(), is(Optional.of(OEmbedFailureReason.TIMED_OUT)));
+        }
+    }
+
+    @Test
+    public void testExecuteSkipCacheWithHedging() {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI("http://www.example.com/myresource").build();
+        final OEmbedClientConfig config = new OEmbedClientConfig.Builder()
+            .setHedging(new OEmbedHedgingConfig.Builder()
+                .setLatencyWindowSize(5)
+                .setMinLatencySamples(5)
+                .setMaxHedgeRatio(1.0)
+                .build())
+            .build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, config)) {
+            for (int i = 0; i < 5; i++) {
+                assertThat(client.executeSkipCache(request, serverEndpoint("/oembed")).isPresent(), is(true));
+            }
+            // Verify that a request slower than the provider's recent latencies is hedged
+            assertThat(client.executeSkipCacheAsync(request, serverEndpoint("/slow")).join().isPresent(), is(true));
+            assertThat(client.getRequestHedger().get().getHedgedTasks(), is(1L));
+        }
+    }
+
+    @Test
+    public void testPutTimeoutsByEmptyHost() {
+        final OEmbedClientConfig.Builder configBuilder = new OEmbedClientConfig.Builder();
+        catchException(() -> configBuilder.putTimeoutsByHost("", new OEmbedTimeouts.Builder().build()));
+        assertThat(caughtException(), instanceOf(IllegalArgumentException.class));
+    }
+
+    @Test
+    public void testExecuteAllWithCircuitBreaker() {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/unavailable"))).when(registry).getEndpoint(any(URI.class));
+        final List<String> transitions = new CopyOnWriteArrayList<>();
+        final OEmbedClientConfig config = new OEmbedClientConfig.Builder()
+            .setCircuitBreaker(new OEmbedCircuitBreakerConfig.Builder()
+                .setSlidingWindowSize(2)
+                .setMinimumCalls(2)
+                .setHalfOpenCalls(1)
+                .addListeners((host, fromState, toState) -> transitions.add(host + ": " + toState))
+                .build())
+            .build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, config)) {
+            for (int i = 0; i < 2; i++) {
+                assertThat(client.executeSkipCache(newRequest(i)), is(Optional.empty()));
+            }
+
+            // Verify that requests to the unhealthy provider now fail fast
+            final OEmbedResult result = client.executeAll(Collections.singletonList(newRequest(2))).get(newRequest(2));
+            assertThat(result.getFailureReason(), is(Optional.of(OEmbedFailureReason.CIRCUIT_OPEN)));
+            assertThat(transitions, is(Collections.singletonList("localhost: OPEN")));
+            final OEmbedCircuitBreakerStats stats = client.getCircuitBreakerStats().get("localhost");
+            assertThat(stats.getState(), is(OEmbedCircuitState.OPEN));
+            assertThat(stats.getRejectedCalls(), is(1L));
+        }
+    }
+
+    @Test
+    public void testExecuteStaleWithOpenCircuit() throws Exception {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/unavailable"))).when(registry).getEndpoint(any(URI.class));
+        final OEmbedClientConfig config = new OEmbedClientConfig.Builder()
+            .setCircuitBreaker(new OEmbedCircuitBreakerConfig.Builder()
+                .setSlidingWindowSize(2)
+                .setMinimumCalls(2)
+                .setHalfOpenCalls(1)
+                .setMaxStaleResponseAge(Duration.ofMinutes(1L))
+                .build())
+            .build();
+        final OEmbedResponse response = new OEmbedResponse.Builder().setType(OEmbedType.link).setCacheAge(1).build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, config)) {
+            client.getResponseCache().put(newRequest(0), response, Duration.ofMillis(50L));
+            // Verify that an expired response isn't served while the provider's circuit is closed
+            Thread.sleep(100L);
+            assertThat(client.execute(newRequest(0)), is(Optional.empty()));
+            assertThat(client.execute(newRequest(1)), is(Optional.empty()));
+
+            // Verify that the expired response is served once the circuit is open
+            assertThat(client.getCircuitBreakerStats().get("localhost").getState(), is(OEmbedCircuitState.OPEN));
+            assertThat(client.execute(newRequest(0)), is(Optional.of(response)));
+            assertThat(client.executeAsync(newRequest(0)).join(), is(Optional.of(response)));
+            assertThat(client.executeAll(Collections.singletonList(newRequest(0))).get(newRequest(0)).getResponse(),
+                is(Optional.of(response)));
+            assertThat(client.execute(newRequest(1)), is(Optional.empty()));
+        }
+    }
+
+    @Test(timeOut = 30000L)
+    public void testExecuteAllWithAdaptiveConcurrency() throws IOException {
+        final HttpServer degradingServer = startDegradingServer();
+        final OEmbedRegistry registry = degradingServerRegistry(degradingServer);
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, adaptiveConcurrencyConfig())) {
+            final List<OEmbedRequest> requests = IntStream.range(0, 64)
+                .mapToObj(JerseyOEmbedClientTest::newRequest).collect(Collectors.toList());
+            client.executeAll(requests);
+
+            // Verify that the limit backed off towards what the provider can take
+            final OEmbedConcurrencyStats stats = client.getConcurrencyStats().get("localhost");
+            assertThat(stats.getLimit(), lessThan(16));
+            assertThat(stats.getInFlight(), is(0));
+            assertThat(stats.getQueued(), is(0));
+        } finally {
+            degradingServer.stop(0);
+            ((ExecutorService) degradingServer.getExecutor()).shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExecuteAsyncWithAdaptiveConcurrency() throws IOException {
+        final HttpServer degradingServer = startDegradingServer();
+        final OEmbedRegistry registry = degradingServerRegistry(degradingServer);
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, adaptiveConcurrencyConfig())) {
+            final List<CompletableFuture<Optional<OEmbedResponse>>> responses = IntStream.range(0, 64)
+                .mapToObj(i -> client.executeAsync(newRequest(i))).collect(Collectors.toList());
+            responses.forEach(CompletableFuture::join);
+
+            // Verify that single requests also hold room within the limit, which backed off
+            final OEmbedConcurrencyStats stats = client.getConcurrencyStats().get("localhost");
+            assertThat(stats.getLimit(), lessThan(16));
+            assertThat(stats.getInFlight(), is(0));
+            assertThat(stats.getQueued(), is(0));
+        } finally {
+            degradingServer.stop(0);
+            ((ExecutorService) degradingServer.getExecutor()).shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExecuteWithAdaptiveConcurrency() {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/oembed"))).when(registry).getEndpoint(any(URI.class));
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, adaptiveConcurrencyConfig())) {
+            assertThat(client.execute(newRequest(0)).isPresent(), is(true));
+
+            // Verify that the blocking request held and released room on its host
+            assertThat(client.getConcurrencyStats().get("localhost").getInFlight(), is(0));
+        }
+    }
+
+    @Test
+    public void testExecuteWithoutAdaptiveConcurrency() {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/oembed"))).when(registry).getEndpoint(any(URI.class));
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry)) {
+            assertThat(client.execute(newRequest(0)).isPresent(), is(true));
+            assertThat(client.executeAsync(newRequest(1)).join().isPresent(), is(true));
+
+            // Verify that static limits only apply to batches
+            assertThat(client.getConcurrencyStats(), is(Collections.emptyMap()));
+        }
+    }
+
+    @Test(timeOut = 30000L)
+    public void testExecuteWithRetriesAndAdaptiveConcurrency() {
+        // A provider which fails every other request, and asks to wait longer than a slow request takes
+        final AtomicInteger receivedRequests = new AtomicInteger();
+        server.createContext("/flaky", exchange -> {
+            if (receivedRequests.incrementAndGet() % 2 == 1) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(500, -1L);
+            } else {
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, LINK_RESPONSE.length);
+                try (final OutputStream out = exchange.getResponseBody()) {
+                    out.write(LINK_RESPONSE);
+                }
+            }
+            exchange.close();
+        });
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/flaky"))).when(registry).getEndpoint(any(URI.class));
+        final OEmbedClientConfig config = new OEmbedClientConfig.Builder()
+            .setAdaptiveConcurrency(new OEmbedAdaptiveConcurrencyConfig.Builder()
+                .setInitialLimit(2)
+                .setBackoffRatio(0.5)
+                .setSlowLatencyThreshold(Duration.ofMillis(500L))
+                .build())
+            .setRetries(new OEmbedRetryConfig.Builder().build())
+            .build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, config)) {
+            assertThat(client.executeSkipCache(newRequest(0)).isPresent(), is(true));
+            assertThat(client.executeSkipCacheAsync(newRequest(1)).join().isPresent(), is(true));
+            assertThat(client.executeAll(Collections.singletonList(newRequest(2))).get(newRequest(2)).isSuccessful(),
+                is(true));
+            assertThat(client.getRequestRetrier().get().getRetries(), is(3L));
+
+            // Verify that each failed attempt backed off the limit, which each successful retry grew back,
+            // and that the wait before each retry didn't count as a slow request
+            final OEmbedConcurrencyStats stats = client.getConcurrencyStats().get("localhost");
+            assertThat(stats.getLimit(), is(2));
+            assertThat(stats.getInFlight(), is(0));
+        } finally {
+            server.removeContext("/flaky");
+        }
+    }
+
+    @Test
+    public void testExecuteWithRetryAfter() {
+        final AtomicInteger receivedRequests = new AtomicInteger();
+        server.createContext("/throttled", exchange -> {
+            receivedRequests.incrementAndGet();
+            exchange.getResponseHeaders().add("Retry-After", "60");
+            exchange.sendResponseHeaders(429, -1L);
+            exchange.close();
+        });
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/throttled"))).when(registry).getEndpoint(any(URI.class));
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry)) {
+            final OEmbedResult result = client.executeAll(Collections.singletonList(newRequest(0))).get(newRequest(0));
+            assertThat(result.getStatusCode(), is(Optional.of(429)));
+            assertThat(result.getRetryAfter(), is(Optional.of(Duration.ofSeconds(60L))));
+
+            // Verify that requests to the provider are suspended, without being sent
+            assertThat(client.getRateLimiter().isSuspended("localhost"), is(true));
+            assertThat(client.executeAll(Collections.singletonList(newRequest(1))).get(newRequest(1)).getFailureReason(),
+                is(Optional.of(OEmbedFailureReason.RATE_LIMITED)));
+            assertThat(client.executeSkipCache(newRequest(2)), is(Optional.empty()));
+            assertThat(receivedRequests.get(), is(1));
+        } finally {
+            server.removeContext("/throttled");
+        }
+    }
+
+    @Test
+    public void testExecuteWithRetries() {
+        // A provider which is unavailable for every other request
+        final AtomicInteger receivedRequests = new AtomicInteger();
+        server.createContext("/flaky", exchange -> {
+            if (receivedRequests.incrementAndGet() % 2 == 1) {
+                exchange.sendResponseHeaders(503, -1L);
+            } else {
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, LINK_RESPONSE.length);
+                try (final OutputStream out = exchange.getResponseBody()) {
+                    out.write(LINK_RESPONSE);
+                }
+            }
+            exchange.close();
+        });
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/flaky"))).when(registry).getEndpoint(any(URI.class));
+        final OEmbedClientConfig config = new OEmbedClientConfig.Builder()
+            .setRetries(new OEmbedRetryConfig.Builder().setInitialBackoff(Duration.ofMillis(10L)).build())
+            .build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, config)) {
+            assertThat(client.executeSkipCache(newRequest(0)).map(OEmbedResponse::getType), is(Optional.of(OEmbedType.link)));
+            assertThat(client.executeSkipCacheAsync(newRequest(1)).join().map(OEmbedResponse::getType),
+                is(Optional.of(OEmbedType.link)));
+            assertThat(client.executeAll(Collections.singletonList(newRequest(2))).get(newRequest(2)).isSuccessful(),
+                is(true));
+            assertThat(receivedRequests.get(), is(6));
+            assertThat(client.getRequestRetrier().get().getRetries(), is(3L));
+        } finally {
+            server.removeContext("/flaky");
+        }
+    }
+
+    @Test
+    public void testExecuteWithCacheControl() {
+        final AtomicInteger receivedRequests = new AtomicInteger();
+        server.createContext("/cacheable", exchange -> {
+            receivedRequests.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Cache-Control", "public, max-age=60");
+            exchange.sendResponseHeaders(200, LINK_RESPONSE.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(LINK_RESPONSE);
+            }
+            exchange.close();
+        });
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/cacheable"))).when(registry).getEndpoint(any(URI.class));
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry)) {
+            // Verify that the response without a cache age is cached for its max age, without being given one
+            assertThat(client.execute(newRequest(0)).flatMap(OEmbedResponse::getCacheAge), is(Optional.empty()));
+            assertThat(client.getResponseCache().get(newRequest(0)).isPresent(), is(true));
+            assertThat(client.execute(newRequest(0)).isPresent(), is(true));
+            assertThat(client.executeAll(Collections.singletonList(newRequest(1))).get(newRequest(1)).isSuccessful(),
+                is(true));
+            assertThat(client.executeAll(Collections.singletonList(newRequest(1))).get(newRequest(1)).isSuccessful(),
+                is(true));
+            assertThat(receivedRequests.get(), is(2));
+
+            final OEmbedCacheStats stats = client.getCacheStats().get("localhost");
+            assertThat(stats.getHitCount(), is(2L));
+            assertThat(stats.getMissCount(), is(2L));
+            assertThat(stats.getHitRate(), is(0.5));
+        } finally {
+            server.removeContext("/cacheable");
+        }
+    }
+
+    @Test
+    public void testExecuteWithCachePolicyByHost() {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/oembed"))).when(registry).getEndpoint(any(URI.class));
+        final OEmbedClientConfig config = new OEmbedClientConfig.Builder()
+            .putCachePoliciesByHost("LOCALHOST", new OEmbedCachePolicy.Builder()
+                .setDefaultTimeToLive(Duration.ofMinutes(1L))
+                .build())
+            .build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, config)) {
+            assertThat(client.execute(newRequest(0)).isPresent(), is(true));
+            // Verify that the response without a cache age is cached for the host's default time to live
+            assertThat(client.getResponseCache().get(newRequest(0)).isPresent(), is(true));
+            assertThat(client.getCacheStats().get("localhost").getUncachedCount(), is(0L));
+        }
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry)) {
+            assertThat(client.execute(newRequest(0)).isPresent(), is(true));
+            // Verify that it isn't cached by default
+            assertThat(client.getResponseCache().get(newRequest(0)).isPresent(), is(false));
+            assertThat(client.getCacheStats().get("localhost").getUncachedCount(), is(1L));
+        }
+    }
+
+    @Test
+    public void testExecuteStaleWhileRevalidate() throws Exception {
+        final AtomicInteger receivedRequests = new AtomicInteger();
+        server.createContext("/revalidated", exchange -> {
+            receivedRequests.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            exchange.sendResponseHeaders(200, LINK_RESPONSE.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(LINK_RESPONSE);
+            }
+            exchange.close();
+        });
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/revalidated"))).when(registry).getEndpoint(any(URI.class));
+        final OEmbedClientConfig config = new OEmbedClientConfig.Builder()
+            .setCachePolicy(new OEmbedCachePolicy.Builder().setStaleWhileRevalidate(Duration.ofMinutes(1L)).build())
+            .build();
+        final OEmbedResponse staleResponse = new OEmbedResponse.Builder().setType(OEmbedType.link).setCacheAge(1).build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, config)) {
+            client.getResponseCache().put(newRequest(0), staleResponse, Duration.ofMillis(50L));
+            Thread.sleep(100L);
+            // Verify that the expired response is served straight away
+            assertThat(client.execute(newRequest(0)), is(Optional.of(staleResponse)));
+
+            // Verify that the response is refreshed in the background
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+            while (!client.getResponseCache().get(newRequest(0)).isPresent() && System.nanoTime() < deadline) {
+                Thread.sleep(10L);
+            }
+            assertThat(client.execute(newRequest(0)), not(Optional.of(staleResponse)));
+            assertThat(receivedRequests.get(), is(1));
+            assertThat(client.getCacheStats().get("localhost").getStaleCount(), is(1L));
+        } finally {
+            server.removeContext("/revalidated");
+        }
+    }
+
+    @Test
+    public void testExecuteStaleIfError() throws Exception {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/unavailable"))).when(registry).getEndpoint(any(URI.class));
+        final OEmbedClientConfig config = new OEmbedClientConfig.Builder()
+            .setCachePolicy(new OEmbedCachePolicy.Builder().setStaleIfError(Duration.ofMinutes(1L)).build())
+            .build();
+        final OEmbedResponse response = new OEmbedResponse.Builder().setType(OEmbedType.link).setCacheAge(1).build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, config)) {
+            client.getResponseCache().put(newRequest(0), response, Duration.ofMillis(50L));
+            Thread.sleep(100L);
+
+            // Verify that the expired response is served once the request to refresh it fails
+            assertThat(client.execute(newRequest(0)), is(Optional.of(response)));
+            assertThat(client.executeAsync(newRequest(0)).join(), is(Optional.of(response)));
+            assertThat(client.executeAll(Collections.singletonList(newRequest(0))).get(newRequest(0)).getResponse(),
+                is(Optional.of(response)));
+            // Verify that requests without an expired response still fail
+            assertThat(client.execute(newRequest(1)), is(Optional.empty()));
+            assertThat(client.executeAll(Collections.singletonList(newRequest(1))).get(newRequest(1)).isSuccessful(),
+                is(false));
+            assertThat(client.getCacheStats().get("localhost").getStaleCount(), is(3L));
+        }
+    }
+
+    @Test
+    public void testExecuteWithRevalidation() throws Exception {
+        final AtomicInteger notModifiedResponses = new AtomicInteger();
+        server.createContext("/validated", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedResponses.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1L);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            exchange.sendResponseHeaders(200, LINK_RESPONSE.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(LINK_RESPONSE);
+            }
+            exchange.close();
+        });
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/validated"))).when(registry).getEndpoint(any(URI.class));
+        final OEmbedResponse response = new OEmbedResponse.Builder().setType(OEmbedType.link).setCacheAge(60).build();
+        final OEmbedResponseValidators validators = new OEmbedResponseValidators.Builder()
+            .setEntityTag("\"v1\"")
+            .setEntityLength(1000L)
+            .build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry)) {
+            // Verify that the validators of a downloaded response are cached along with it
+            assertThat(client.execute(newRequest(0)).isPresent(), is(true));
+            assertThat(client.getResponseCache().getValidators(newRequest(0)).flatMap(
+                OEmbedResponseValidators::getEntityTag), is(Optional.of("\"v1\"")));
+            assertThat(notModifiedResponses.get(), is(0));
+
+            // Verify that expired responses which weren't modified are cached again without being downloaded
+            client.getResponseCache().put(newRequest(1), response, Duration.ofMillis(50L), validators);
+            client.getResponseCache().put(newRequest(2), response, Duration.ofMillis(50L), validators);
+            Thread.sleep(100L);
+            assertThat(client.execute(newRequest(1)), is(Optional.of(response)));
+            final OEmbedResult result = client.executeAll(Collections.singletonList(newRequest(2))).get(newRequest(2));
+            assertThat(result.isNotModified(), is(true));
+            assertThat(result.getResponse(), is(Optional.of(response)));
+            assertThat(notModifiedResponses.get(), is(2));
+            assertThat(client.getResponseCache().get(newRequest(1)), is(Optional.of(response)));
+            assertThat(client.getResponseCache().getValidators(newRequest(2)), is(Optional.of(validators)));
+
+            final OEmbedCacheStats stats = client.getCacheStats().get("localhost");
+            assertThat(stats.getParsesSaved(), is(2L));
+            assertThat(stats.getBytesSaved(), is(2000L));
+        } finally {
+            server.removeContext("/validated");
+        }
+    }
+
+    @Test
+    public void testParseEntity() {
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(mock(OEmbedRegistry.class))) {
+            final OEmbedResult result = client.parseEntity(LINK_RESPONSE, "application/json",
+                Optional.of(Duration.ofMinutes(1L)), Optional.of("\"v1\""), Optional.empty());
+
+            // Verify that what the headers say of caching is carried beside the unchanged response
+            assertThat(result.getResponse().flatMap(OEmbedResponse::getCacheAge), is(Optional.empty()));
+            assertThat(result.getFreshnessLifetime(), is(Optional.of(Duration.ofMinutes(1L))));
+            assertThat(result.getValidators(), is(Optional.of(new OEmbedResponseValidators.Builder()
+                .setEntityTag("\"v1\"")
+                .setEntityLength(LINK_RESPONSE.length)
+                .build())));
+        }
+    }
+
+    @Test
+    public void testExecuteWithRefreshAhead() throws Exception {
+        final AtomicInteger receivedRequests = new AtomicInteger();
+        server.createContext("/popular", exchange -> {
+            receivedRequests.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            exchange.sendResponseHeaders(200, LINK_RESPONSE.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(LINK_RESPONSE);
+            }
+            exchange.close();
+        });
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(serverEndpoint("/popular"))).when(registry).getEndpoint(any(URI.class));
+        final OEmbedClientConfig config = new OEmbedClientConfig.Builder()
+            .setCachePolicy(new OEmbedCachePolicy.Builder().setMaxTimeToLive(Duration.ofMillis(500L)).build())
+            .setRefreshAhead(new OEmbedRefreshAheadConfig.Builder().setMinFrequency(2).build())
+            .build();
+
+        try (final JerseyOEmbedClient client = JerseyOEmbedClient.create(registry, config)) {
+            // Verify that a response which isn't popular yet expires without being refreshed
+            assertThat(client.execute(newRequest(0)).isPresent(), is(true));
+            assertThat(client.execute(newRequest(0)).isPresent(), is(true));
+            Thread.sleep(600L);
+            assertThat(receivedRequests.get(), is(1));
+
+            // Verify that a popular response is refreshed before it expires
+            assertThat(client.execute(newRequest(0)).isPresent(), is(true));
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+            while (receivedRequests.get() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(10L);
+            }
+            assertThat(receivedRequests.get(), greaterThanOrEqualTo(3));
+            assertThat(client.getResponseCache().get(newRequest(0)).isPresent(), is(true));
+            assertThat(client.getCacheStats().get("localhost").getRefreshAheadCount(), greaterThanOrEqualTo(1L));
+        } finally {
+            server.removeContext("/popular");
+        }
+    }
+
+    // A provider which sheds load once more than 4 requests are in flight
+    private static HttpServer startDegradingServer() throws IOException {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final HttpServer degradingServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        degradingServer.setExecutor(Executors.newCachedThreadPool());
+        degradingServer.createContext("/oembed", exchange -> {
+            try {
+                if (inFlight.incrementAndGet() > 4) {
+                    exchange.sendResponseHeaders(503, -1L);
+                    return;
+                }
+                Thread.sleep(20L);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, LINK_RESPONSE.length);
+                try (final OutputStream out = exchange.getResponseBody()) {
+                    out.write(LINK_RESPONSE);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        });
+        degradingServer.start();
+        return degradingServer;
+    }
+
+    private static OEmbedRegistry degradingServerRegistry(final HttpServer degradingServer) {
+        final OEmbedRegistry registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(new OEmbedEndpoint.Builder()
+            .addSchemeTemplates("http://www.example.com/*")
+            .setURITemplate("http://localhost:" + degradingServer.getAddress().getPort() + "/oembed")
+            .build())).when(registry).getEndpoint(any(URI.class));
+        return registry;
+    }
+
+    private static OEmbedClientConfig adaptiveConcurrencyConfig() {
+        return new OEmbedClientConfig.Builder()
+            .setAdaptiveConcurrency(new OEmbedAdaptiveConcurrencyConfig.Builder()
+                .setInitialLimit(16)
+                .setMaxLimit(32)
+                .setBackoffRatio(0.5)
+                .build())
+            .build();
+    }
+
+    private static OEmbedRequest newRequest(final int id) {
+        return new OEmbedRequest.Builder().setResourceURI("http://www.example.com/" + id).build();
     }
 }
@@ -0,0 +1,38 @@
+package net.spals.oembed4j.client;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+
+/**
+ * Unit tests for {@link OEmbedTimeouts}
+ *
+ * @author tkral
+ */
+public class OEmbedTimeoutsTest {
+
+    @DataProvider
+    Object[][] illegalTimeoutsProvider() {
+        return new Object[][]{
+            {Duration.ZERO, Duration.ofSeconds(1L)},
+            {Duration.ofSeconds(1L), Duration.ofNanos(999_999L)},
+            {Duration.ofSeconds(-1L), Duration.ofSeconds(1L)},
+            {Duration.ofSeconds(1L), Duration.ofDays(30L)},
+        };
+    }
+
+    @Test(dataProvider = "illegalTimeoutsProvider")
+    public void testIllegalTimeouts(final Duration connectTimeout, final Duration readTimeout) {
+        final OEmbedTimeouts.Builder timeoutsBuilder = new OEmbedTimeouts.Builder()
+            .setConnectTimeout(connectTimeout)
+            .setReadTimeout(readTimeout);
+        catchException(timeoutsBuilder::build);
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+}
@@ -0,0 +1,125 @@
+package net.spals.oembed4j.client;
+
+import net.spals.oembed4j.client.registry.OEmbedRegistry;
+import net.spals.oembed4j.model.OEmbedEndpoint;
+import net.spals.oembed4j.model.OEmbedRequest;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Side-by-side throughput benchmark of the {@link OEmbedClient}
+ * transports, batching many requests against a single provider.
+ *
+ * Requests go to a local stub provider which speaks both HTTP/1.1
+ * and cleartext HTTP/2, and which answers every request after a fixed
+ * latency. Each scenario warms up before it is measured. The benchmark
+ * is not part of the regular test run. Run it with:
+ *
+ * <pre>
+ * mvn test -pl client-test -Dtest=OEmbedTransportBenchmark -Djvm=&lt;java 11+ home&gt;/bin/java \
+ *     -DargLine="-Dnet.bytebuddy.experimental=true"
+ * </pre>
+ *
+ * The JDK HTTP client scenario is skipped on Java runtimes without it.
+ *
+ * @author tkral
+ */
+public class OEmbedTransportBenchmark {
+
+    private static final long LATENCY_MILLIS = 100L;
+    private static final int REQUESTS = 5000;
+    private static final int WARM_UP_REQUESTS = 1000;
+    private static final int MAX_CONCURRENT_REQUESTS = 100;
+
+    private H2cStubServer server;
+    private OEmbedRegistry registry;
+    private OEmbedClientConfig config;
+    private List<OEmbedRequest> requests;
+
+    @BeforeClass
+    void classSetup() throws Exception {
+        server = H2cStubServer.start(LATENCY_MILLIS);
+
+        final OEmbedEndpoint endpoint = new OEmbedEndpoint.Builder()
+            .addSchemeTemplates("http://www.example.com/*")
+            .setURITemplate(server.getURI("/oembed").toString())
+            .build();
+        registry = mock(OEmbedRegistry.class);
+        doReturn(Optional.of(endpoint)).when(registry).getEndpoint(any(URI.class));
+
+        config = new OEmbedClientConfig.Builder()
+            .setMaxConcurrentRequests(MAX_CONCURRENT_REQUESTS)
+            .setMaxConcurrentRequestsPerHost(MAX_CONCURRENT_REQUESTS)
+            .build();
+        requests = IntStream.range(0, REQUESTS)
+            .mapToObj(id -> new OEmbedRequest.Builder().setResourceURI("http://www.example.com/" + id).build())
+            .collect(Collectors.toList());
+    }
+
+    @AfterClass
+    void classTearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void benchmarkJersey() {
+        try (final OEmbedClient client = JerseyOEmbedClient.create(registry, config)) {
+            run("jersey, http/1.1", client);
+        }
+    }
+
+    @Test
+    public void benchmarkJerseyWithConnectionPool() {
+        try (final OEmbedClient client = JerseyOEmbedClient.create(registry, config,
+            new OEmbedConnectionPoolConfig.Builder().setMaxConnectionsPerRoute(MAX_CONCURRENT_REQUESTS).build())) {
+            run("jersey, pooled http/1.1", client);
+        }
+    }
+
+    @Test
+    public void benchmarkJdkHttp() {
+        if (!JdkHttpOEmbedClient.isSupported()) {
+            throw new SkipException("The JDK HTTP client is not supported on Java " + System.getProperty("java.version"));
+        }
+
+        try (final OEmbedClient client = JdkHttpOEmbedClient.create(registry, config)) {
+            // Upgrade to HTTP/2 before multiplexing requests over the connection
+            client.executeSkipCache(requests.get(0));
+            run("jdk http client, h2c", client);
+        }
+    }
+
+    private void run(final String scenario, final OEmbedClient client) {
+        client.executeAll(requests.subList(0, WARM_UP_REQUESTS));
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        final long connectionsBefore = server.getConnectionsOpened();
+        final long startNanos = System.nanoTime();
+
+        final Map<OEmbedRequest, OEmbedResult> results = client.executeAll(requests);
+
+        final double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("%-30s %6d requests in %6.2fs: %8.1f requests/s, %4d new connections, %4d peak threads%n",
+            scenario, REQUESTS, elapsedSeconds, REQUESTS / elapsedSeconds,
+            server.getConnectionsOpened() - connectionsBefore, threads.getPeakThreadCount());
+        assertThat(results.values().stream().filter(OEmbedResult::isSuccessful).count(), is((long) REQUESTS));
+    }
+}
@@ -0,0 +1,159 @@
+package net.spals.oembed4j.client;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for {@link RefreshAheadScheduler}
+ *
+ * @author tkral
+ */
+public class RefreshAheadSchedulerTest {
+
+    private ScheduledExecutorService scheduler;
+    private List<String> refreshedKeys;
+    private List<CompletableFuture<?>> refreshes;
+
+    @BeforeMethod
+    void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        refreshedKeys = new CopyOnWriteArrayList<>();
+        refreshes = new CopyOnWriteArrayList<>();
+    }
+
+    @AfterMethod
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @DataProvider
+    Object[][] illegalConfigProvider() {
+        return new Object[][]{
+            {new OEmbedRefreshAheadConfig.Builder().setRefreshFactor(0.0)},
+            {new OEmbedRefreshAheadConfig.Builder().setRefreshFactor(1.0)},
+            {new OEmbedRefreshAheadConfig.Builder().setMinFrequency(0)},
+            {new OEmbedRefreshAheadConfig.Builder().setMinFrequency(16)},
+            {new OEmbedRefreshAheadConfig.Builder().setMaxConcurrentRefreshes(0)},
+            {new OEmbedRefreshAheadConfig.Builder().setTrackedRequests(0L)},
+        };
+    }
+
+    @Test(dataProvider = "illegalConfigProvider")
+    public void testIllegalConfig(final OEmbedRefreshAheadConfig.Builder configBuilder) {
+        catchException(configBuilder::build);
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testRefreshPopular() throws Exception {
+        final RefreshAheadScheduler<String> refreshAhead = newScheduler(2);
+        refreshAhead.onAccess("popular");
+        refreshAhead.onAccess("popular");
+
+        refreshAhead.onCached("popular", Duration.ofMillis(50L));
+        assertThat(refreshAhead.getScheduledRefreshes(), is(1));
+        awaitRefreshes(1);
+
+        assertThat(refreshedKeys, contains("popular"));
+        assertThat(refreshAhead.getScheduledRefreshes(), is(0));
+    }
+
+    @DataProvider
+    Object[][] unpopularProvider() {
+        return new Object[][]{
+            // Case: Not accessed often enough
+            {1, Duration.ofMillis(50L)},
+            // Case: Not cached at all
+            {2, Duration.ZERO},
+        };
+    }
+
+    @Test(dataProvider = "unpopularProvider", timeOut = 10000L)
+    public void testNoRefresh(final int accesses, final Duration timeToLive) throws Exception {
+        final RefreshAheadScheduler<String> refreshAhead = newScheduler(2);
+        for (int i = 0; i < accesses; i++) {
+            refreshAhead.onAccess("key");
+        }
+
+        refreshAhead.onCached("key", timeToLive);
+        Thread.sleep(100L);
+
+        assertThat(refreshAhead.getScheduledRefreshes(), is(0));
+        assertThat(refreshedKeys, empty());
+    }
+
+    @Test(timeOut = 10000L)
+    public void testRefreshRescheduled() throws Exception {
+        final RefreshAheadScheduler<String> refreshAhead = newScheduler(1);
+        refreshAhead.onAccess("popular");
+
+        refreshAhead.onCached("popular", Duration.ofMillis(50L));
+        refreshAhead.onCached("popular", Duration.ofMillis(100L));
+        assertThat(refreshAhead.getScheduledRefreshes(), is(1));
+        awaitRefreshes(1);
+        Thread.sleep(100L);
+
+        // Verify that caching the key again replaced its earlier refresh
+        assertThat(refreshedKeys, contains("popular"));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testMaxConcurrentRefreshes() throws Exception {
+        final OEmbedRefreshAheadConfig config = new OEmbedRefreshAheadConfig.Builder()
+            .setMinFrequency(1)
+            .setMaxConcurrentRefreshes(1)
+            .build();
+        final RefreshAheadScheduler<String> refreshAhead = new RefreshAheadScheduler<>(config, this::refresh, scheduler);
+        refreshAhead.onAccess("first");
+        refreshAhead.onAccess("second");
+
+        refreshAhead.onCached("first", Duration.ofMillis(50L));
+        awaitRefreshes(1);
+        refreshAhead.onCached("second", Duration.ofMillis(50L));
+        Thread.sleep(100L);
+
+        // Verify that a refresh is skipped while another is running
+        assertThat(refreshedKeys, contains("first"));
+
+        // Verify that a refresh may run again once the other completes
+        refreshes.get(0).complete(null);
+        refreshAhead.onCached("second", Duration.ofMillis(50L));
+        awaitRefreshes(2);
+        assertThat(refreshedKeys, contains("first", "second"));
+    }
+
+    private RefreshAheadScheduler<String> newScheduler(final int minFrequency) {
+        final OEmbedRefreshAheadConfig config = new OEmbedRefreshAheadConfig.Builder()
+            .setMinFrequency(minFrequency)
+            .build();
+        return new RefreshAheadScheduler<>(config, this::refresh, scheduler);
+    }
+
+    private CompletableFuture<?> refresh(final String key) {
+        final CompletableFuture<?> refresh = new CompletableFuture<>();
+        refreshedKeys.add(key);
+        refreshes.add(refresh);
+        return refresh;
+    }
+
+    private void awaitRefreshes(final int count) throws InterruptedException {
+        while (refreshedKeys.size() < count) {
+            TimeUnit.MILLISECONDS.sleep(1L);
+        }
+    }
+}
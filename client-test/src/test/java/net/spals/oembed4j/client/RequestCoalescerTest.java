@@ -0,0 +1,289 @@
+package net.spals.oembed4j.client;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for {@link RequestCoalescer}
+ *
+ * @author tkral
+ */
+public class RequestCoalescerTest {
+
+    private static final long MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(10L);
+
+    private ScheduledExecutorService scheduler;
+    private Map<String, String> listenedResults;
+
+    @BeforeMethod
+    void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        listenedResults = new ConcurrentHashMap<>();
+    }
+
+    @AfterMethod
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private RequestCoalescer<String, String> newCoalescer(final long maxWaitNanos) {
+        return new RequestCoalescer<>(listenedResults::put, maxWaitNanos, scheduler);
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecute() throws Exception {
+        final RequestCoalescer<String, String> coalescer = newCoalescer(MAX_WAIT_NANOS);
+        final AtomicInteger fetches = new AtomicInteger();
+        final CountDownLatch fetchStarted = new CountDownLatch(1);
+        final CountDownLatch fetchReleased = new CountDownLatch(1);
+
+        final List<Thread> callerThreads = new CopyOnWriteArrayList<>();
+        final ExecutorService callers = Executors.newFixedThreadPool(8, runnable -> {
+            final Thread thread = new Thread(runnable);
+            callerThreads.add(thread);
+            return thread;
+        });
+        try {
+            final List<Future<String>> results = new ArrayList<>();
+            results.add(callers.submit(() -> coalescer.execute("key", () -> {
+                fetches.incrementAndGet();
+                fetchStarted.countDown();
+                awaitUninterruptibly(fetchReleased);
+                return "value";
+            })));
+            fetchStarted.await();
+
+            for (int i = 1; i < 8; i++) {
+                results.add(callers.submit(() -> coalescer.execute("key", () -> {
+                    fetches.incrementAndGet();
+                    return "other value";
+                })));
+            }
+            // Wait for all of the callers to be either fetching or waiting
+            awaitBlocked(callerThreads, 8);
+            fetchReleased.countDown();
+
+            for (final Future<String> result : results) {
+                assertThat(result.get(), is("value"));
+            }
+            assertThat(fetches.get(), is(1));
+            assertThat(listenedResults, hasEntry("key", "value"));
+            assertThat(coalescer.getFlights(), is(0));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExecuteAfterFlight() {
+        final RequestCoalescer<String, String> coalescer = newCoalescer(MAX_WAIT_NANOS);
+
+        assertThat(coalescer.execute("key", () -> "first"), is("first"));
+        // Verify that a completed flight is not reused
+        assertThat(coalescer.execute("key", () -> "second"), is("second"));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecuteFailure() throws Exception {
+        final RequestCoalescer<String, String> coalescer = newCoalescer(MAX_WAIT_NANOS);
+        final IllegalStateException failure = new IllegalStateException("failed");
+        final CompletableFuture<String> source = new CompletableFuture<>();
+        coalescer.executeAsync("key", () -> source);
+
+        final List<Thread> callerThreads = new CopyOnWriteArrayList<>();
+        final ExecutorService caller = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable);
+            callerThreads.add(thread);
+            return thread;
+        });
+        try {
+            final Future<?> result = caller.submit(() -> coalescer.execute("key", () -> "value"));
+            awaitBlocked(callerThreads, 1);
+            source.completeExceptionally(failure);
+
+            catchException(result::get);
+            assertThat(caughtException().getCause(), is(failure));
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecuteBoundedWait() {
+        final RequestCoalescer<String, String> coalescer = newCoalescer(TimeUnit.MILLISECONDS.toNanos(50L));
+        coalescer.executeAsync("key", CompletableFuture::new);
+
+        // The leader never completes, so the caller stops waiting and fetches on its own
+        assertThat(coalescer.execute("key", () -> "value"), is("value"));
+        assertThat(listenedResults, hasEntry("key", "value"));
+    }
+
+    @Test
+    public void testExecuteAsync() {
+        final RequestCoalescer<String, String> coalescer = newCoalescer(MAX_WAIT_NANOS);
+        final AtomicInteger fetches = new AtomicInteger();
+        final CompletableFuture<String> source = new CompletableFuture<>();
+
+        final List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(coalescer.executeAsync("key", () -> {
+                fetches.incrementAndGet();
+                return source;
+            }));
+        }
+        assertThat(fetches.get(), is(1));
+        assertThat(coalescer.getFlights(), is(1));
+
+        source.complete("value");
+        results.forEach(result -> assertThat(result.join(), is("value")));
+        assertThat(listenedResults, hasEntry("key", "value"));
+        assertThat(coalescer.getFlights(), is(0));
+    }
+
+    @Test
+    public void testExecuteAsyncPartialCancel() {
+        final RequestCoalescer<String, String> coalescer = newCoalescer(MAX_WAIT_NANOS);
+        final CompletableFuture<String> source = new CompletableFuture<>();
+
+        final CompletableFuture<String> leader = coalescer.executeAsync("key", () -> source);
+        final CompletableFuture<String> follower = coalescer.executeAsync("key", () -> source);
+
+        // Verify that the fetch continues for the remaining caller
+        assertThat(leader.cancel(true), is(true));
+        assertThat(source.isCancelled(), is(false));
+
+        source.complete("value");
+        assertThat(follower.join(), is("value"));
+    }
+
+    @Test
+    public void testExecuteAsyncCancel() {
+        final RequestCoalescer<String, String> coalescer = newCoalescer(MAX_WAIT_NANOS);
+        final CompletableFuture<String> source = new CompletableFuture<>();
+
+        final CompletableFuture<String> leader = coalescer.executeAsync("key", () -> source);
+        final CompletableFuture<String> follower = coalescer.executeAsync("key", () -> source);
+        follower.cancel(true);
+        leader.cancel(true);
+
+        // Verify that the fetch was cancelled once every caller cancelled
+        assertThat(source.isCancelled(), is(true));
+        assertThat(coalescer.getFlights(), is(0));
+
+        // Verify that a new caller starts a new fetch
+        assertThat(coalescer.executeAsync("key", () -> CompletableFuture.completedFuture("value")).join(), is("value"));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecuteAsyncBoundedWait() {
+        final RequestCoalescer<String, String> coalescer = newCoalescer(TimeUnit.MILLISECONDS.toNanos(50L));
+        final CompletableFuture<String> source = new CompletableFuture<>();
+
+        final CompletableFuture<String> leader = coalescer.executeAsync("key", () -> source);
+        final CompletableFuture<String> follower = coalescer.executeAsync("key",
+            () -> CompletableFuture.completedFuture("value"));
+
+        // The leader never completes, so the follower stops waiting and fetches on its own
+        assertThat(follower.join(), is("value"));
+        assertThat(leader.isDone(), is(false));
+        assertThat(source.isCancelled(), is(false));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecuteAsyncFailingListener() {
+        final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>((key, value) -> {
+            throw new IllegalStateException();
+        }, MAX_WAIT_NANOS, scheduler);
+        final CompletableFuture<String> source = new CompletableFuture<>();
+
+        final CompletableFuture<String> leader = coalescer.executeAsync("key", () -> source);
+        final CompletableFuture<String> follower = coalescer.executeAsync("key", () -> source);
+        source.complete("value");
+
+        // Verify that the flight still completes and ends, despite its listener failing
+        assertThat(leader.join(), is("value"));
+        assertThat(follower.join(), is("value"));
+        assertThat(coalescer.getFlights(), is(0));
+
+        // Verify that a new caller doesn't wait on the failed flight
+        assertThat(coalescer.executeAsync("key", () -> CompletableFuture.completedFuture("other")).join(),
+            is("other"));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecuteFailingListener() throws Exception {
+        final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>((key, value) -> {
+            throw new IllegalStateException();
+        }, MAX_WAIT_NANOS, scheduler);
+        final CountDownLatch fetchStarted = new CountDownLatch(1);
+        final CountDownLatch fetchReleased = new CountDownLatch(1);
+
+        final ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> leader = caller.submit(() -> coalescer.execute("key", () -> {
+                fetchStarted.countDown();
+                awaitUninterruptibly(fetchReleased);
+                return "value";
+            }));
+            fetchStarted.await();
+            final CompletableFuture<String> follower = coalescer.executeAsync("key", CompletableFuture::new);
+            fetchReleased.countDown();
+
+            // Verify that the fetched result reaches every caller, despite its listener failing
+            assertThat(leader.get(), is("value"));
+            assertThat(follower.join(), is("value"));
+            assertThat(coalescer.getFlights(), is(0));
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecuteAsyncBoundedWaitFailingListener() {
+        final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>((key, value) -> {
+            throw new IllegalStateException();
+        }, TimeUnit.MILLISECONDS.toNanos(50L), scheduler);
+
+        coalescer.executeAsync("key", CompletableFuture::new);
+        final CompletableFuture<String> follower = coalescer.executeAsync("key",
+            () -> CompletableFuture.completedFuture("value"));
+
+        // Verify that a caller which fetched on its own completes, despite the listener failing
+        assertThat(follower.join(), is("value"));
+    }
+
+    private static void awaitBlocked(final List<Thread> threads, final int count) throws InterruptedException {
+        while (threads.size() < count || !threads.stream().allMatch(thread ->
+            thread.getState() == Thread.State.WAITING || thread.getState() == Thread.State.TIMED_WAITING)) {
+            Thread.sleep(10L);
+        }
+    }
+
+    private static void awaitUninterruptibly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
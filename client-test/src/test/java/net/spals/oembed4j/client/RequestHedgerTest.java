@@ -0,0 +1,172 @@
+package net.spals.oembed4j.client;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for {@link RequestHedger}
+ *
+ * @author tkral
+ */
+public class RequestHedgerTest {
+
+    private ScheduledExecutorService scheduler;
+
+    @BeforeMethod
+    void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterMethod
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @DataProvider
+    Object[][] illegalConfigProvider() {
+        return new Object[][]{
+            {new OEmbedHedgingConfig.Builder().setLatencyPercentile(1.0)},
+            {new OEmbedHedgingConfig.Builder().setLatencyWindowSize(0)},
+            {new OEmbedHedgingConfig.Builder().setMinLatencySamples(0)},
+            {new OEmbedHedgingConfig.Builder().setLatencyWindowSize(10).setMinLatencySamples(11)},
+            {new OEmbedHedgingConfig.Builder().setMaxHedgeRatio(-0.1)},
+        };
+    }
+
+    @Test(dataProvider = "illegalConfigProvider")
+    public void testIllegalConfig(final OEmbedHedgingConfig.Builder configBuilder) {
+        catchException(configBuilder::build);
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecuteWithoutLatencies() throws Exception {
+        final RequestHedger hedger = new RequestHedger(new OEmbedHedgingConfig.Builder().build(), scheduler);
+        final List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>();
+
+        final CompletableFuture<String> result = hedger.execute("host", () -> newAttempt(attempts));
+        Thread.sleep(100L);
+
+        // Verify that no hedge is sent before the host's latencies are known
+        assertThat(attempts, hasSize(1));
+        attempts.get(0).complete("primary");
+        assertThat(result.join(), is("primary"));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecuteHedged() throws Exception {
+        final RequestHedger hedger = newWarmHedger();
+        final List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>();
+
+        final CompletableFuture<String> result = hedger.execute("host", () -> newAttempt(attempts));
+        awaitAttempts(attempts, 2);
+        attempts.get(1).complete("hedge");
+
+        // Verify that the hedge won and the slow primary was cancelled
+        assertThat(result.join(), is("hedge"));
+        assertThat(attempts.get(0).isCancelled(), is(true));
+        assertThat(hedger.getHedgedTasks(), is(1L));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecuteHedgedPrimaryWins() throws Exception {
+        final RequestHedger hedger = newWarmHedger();
+        final List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>();
+
+        final CompletableFuture<String> result = hedger.execute("host", () -> newAttempt(attempts));
+        awaitAttempts(attempts, 2);
+        attempts.get(0).complete("primary");
+
+        assertThat(result.join(), is("primary"));
+        assertThat(attempts.get(1).isCancelled(), is(true));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecuteHedgedAfterFailure() throws Exception {
+        final RequestHedger hedger = newWarmHedger();
+        final List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>();
+
+        final CompletableFuture<String> result = hedger.execute("host", () -> newAttempt(attempts));
+        awaitAttempts(attempts, 2);
+        attempts.get(0).completeExceptionally(new IllegalStateException());
+
+        // Verify that a failed attempt doesn't win while another is still running
+        assertThat(result.isDone(), is(false));
+        attempts.get(1).complete("hedge");
+        assertThat(result.join(), is("hedge"));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecuteHedgedCancel() throws Exception {
+        final RequestHedger hedger = newWarmHedger();
+        final List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>();
+
+        final CompletableFuture<String> result = hedger.execute("host", () -> newAttempt(attempts));
+        awaitAttempts(attempts, 2);
+
+        assertThat(result.cancel(true), is(true));
+        assertThat(attempts.get(0).isCancelled(), is(true));
+        assertThat(attempts.get(1).isCancelled(), is(true));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testExecuteHedgeBudget() throws Exception {
+        // With the default 5% budget, the 20 tasks which provide the latencies pay for a single hedge
+        final RequestHedger hedger = new RequestHedger(new OEmbedHedgingConfig.Builder().build(), scheduler);
+        IntStream.range(0, 20).forEach(i -> hedger.execute("host", () -> CompletableFuture.completedFuture("fast")));
+
+        final List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>();
+        hedger.execute("host", () -> newAttempt(attempts));
+        awaitAttempts(attempts, 2);
+
+        final List<CompletableFuture<String>> unhedgedAttempts = new CopyOnWriteArrayList<>();
+        hedger.execute("host", () -> newAttempt(unhedgedAttempts));
+        // Another host has a budget of its own
+        final List<CompletableFuture<String>> otherHostAttempts = new CopyOnWriteArrayList<>();
+        hedger.execute("other host", () -> newAttempt(otherHostAttempts));
+        Thread.sleep(100L);
+
+        assertThat(unhedgedAttempts, hasSize(1));
+        assertThat(otherHostAttempts, hasSize(1));
+        assertThat(hedger.getHedgedTasks(), is(1L));
+    }
+
+    private RequestHedger newWarmHedger() {
+        final OEmbedHedgingConfig config = new OEmbedHedgingConfig.Builder()
+            .setLatencyWindowSize(10)
+            .setMinLatencySamples(5)
+            .setMaxHedgeRatio(1.0)
+            .build();
+        final RequestHedger hedger = new RequestHedger(config, scheduler);
+        IntStream.range(0, 5).forEach(i -> hedger.execute("host", () -> CompletableFuture.completedFuture("fast")));
+        return hedger;
+    }
+
+    private static CompletableFuture<String> newAttempt(final List<CompletableFuture<String>> attempts) {
+        final CompletableFuture<String> attempt = new CompletableFuture<>();
+        attempts.add(attempt);
+        return attempt;
+    }
+
+    private static void awaitAttempts(final List<CompletableFuture<String>> attempts, final int count)
+        throws InterruptedException {
+        while (attempts.size() < count) {
+            TimeUnit.MILLISECONDS.sleep(1L);
+        }
+    }
+}
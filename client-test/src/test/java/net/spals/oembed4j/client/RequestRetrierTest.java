@@ -0,0 +1,180 @@
+package net.spals.oembed4j.client;
+
+import net.spals.oembed4j.model.OEmbedResponse;
+import net.spals.oembed4j.model.OEmbedType;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for {@link RequestRetrier}
+ *
+ * @author tkral
+ */
+public class RequestRetrierTest {
+
+    private static final OEmbedResult SUCCESS =
+        OEmbedResult.success(new OEmbedResponse.Builder().setType(OEmbedType.link).build());
+    private static final OEmbedResult SERVER_ERROR = OEmbedResult.unsuccessfulResponse(503, "unavailable");
+
+    private final OEmbedRetryConfig config = new OEmbedRetryConfig.Builder()
+        .setMaxAttempts(3)
+        .setInitialBackoff(Duration.ofMillis(1L))
+        .setMaxBackoff(Duration.ofMillis(10L))
+        .build();
+    private ScheduledExecutorService scheduler;
+
+    @BeforeMethod
+    void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterMethod
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @DataProvider
+    Object[][] illegalConfigProvider() {
+        return new Object[][]{
+            {new OEmbedRetryConfig.Builder().setMaxAttempts(0)},
+            {new OEmbedRetryConfig.Builder().setInitialBackoff(Duration.ZERO)},
+            {new OEmbedRetryConfig.Builder().setInitialBackoff(Duration.ofSeconds(2L)).setMaxBackoff(Duration.ofSeconds(1L))},
+            {new OEmbedRetryConfig.Builder().setRetryBudgetRatio(1.5)},
+            {new OEmbedRetryConfig.Builder().setMaxRetryBudget(-1)},
+        };
+    }
+
+    @Test(dataProvider = "illegalConfigProvider")
+    public void testIllegalConfig(final OEmbedRetryConfig.Builder configBuilder) {
+        catchException(configBuilder::build);
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @DataProvider
+    Object[][] retryProvider() {
+        return new Object[][]{
+            // Case: Succeeds on retry
+            {new OEmbedResult[]{SERVER_ERROR, SERVER_ERROR, SUCCESS}, SUCCESS, 2L},
+            // Case: Out of attempts
+            {new OEmbedResult[]{SERVER_ERROR, SERVER_ERROR, SERVER_ERROR, SUCCESS}, SERVER_ERROR, 2L},
+            // Case: Rate limiting and timeouts are retried
+            {new OEmbedResult[]{OEmbedResult.unsuccessfulResponse(429, "throttled", Optional.of(Duration.ofMillis(5L))),
+                OEmbedResult.failure(OEmbedFailureReason.TIMED_OUT, "timed out"), SUCCESS}, SUCCESS, 2L},
+            // Case: Client errors are not retried
+            {new OEmbedResult[]{OEmbedResult.unsuccessfulResponse(404, "not found"), SUCCESS},
+                OEmbedResult.unsuccessfulResponse(404, "not found"), 0L},
+            // Case: Failing fast is not retried
+            {new OEmbedResult[]{OEmbedResult.failure(OEmbedFailureReason.CIRCUIT_OPEN, "open"), SUCCESS},
+                OEmbedResult.failure(OEmbedFailureReason.CIRCUIT_OPEN, "open"), 0L},
+            // Case: Asked to wait longer than the max backoff
+            {new OEmbedResult[]{OEmbedResult.unsuccessfulResponse(429, "throttled", Optional.of(Duration.ofMinutes(1L))),
+                SUCCESS}, OEmbedResult.unsuccessfulResponse(429, "throttled", Optional.of(Duration.ofMinutes(1L))), 0L},
+        };
+    }
+
+    @Test(dataProvider = "retryProvider", timeOut = 10000L)
+    public void testRetry(final OEmbedResult[] results, final OEmbedResult expectedResult, final long expectedRetries) {
+        final RequestRetrier retrier = new RequestRetrier(config, scheduler);
+        final Deque<OEmbedResult> remainingResults = new ArrayDeque<>(Arrays.asList(results));
+
+        assertThat(retrier.execute("host", () -> CompletableFuture.completedFuture(remainingResults.poll())).join(),
+            is(expectedResult));
+        assertThat(retrier.getRetries(), is(expectedRetries));
+    }
+
+    @Test(dataProvider = "retryProvider")
+    public void testRetryBlocking(final OEmbedResult[] results, final OEmbedResult expectedResult, final long expectedRetries) {
+        final RequestRetrier retrier = new RequestRetrier(config, scheduler);
+        final Deque<OEmbedResult> remainingResults = new ArrayDeque<>(Arrays.asList(results));
+
+        assertThat(retrier.executeBlocking("host", remainingResults::poll), is(expectedResult));
+        assertThat(retrier.getRetries(), is(expectedRetries));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testRetryException() {
+        final RequestRetrier retrier = new RequestRetrier(config, scheduler);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final OEmbedResult result = retrier.execute("host", () -> {
+            final CompletableFuture<OEmbedResult> attempt = new CompletableFuture<>();
+            if (attempts.incrementAndGet() == 1) {
+                attempt.completeExceptionally(new IOException("connection reset"));
+            } else {
+                attempt.complete(SUCCESS);
+            }
+            return attempt;
+        }).join();
+        assertThat(result, is(SUCCESS));
+        assertThat(attempts.get(), is(2));
+    }
+
+    @Test
+    public void testRetryExceptionBlocking() {
+        final RequestRetrier retrier = new RequestRetrier(config, scheduler);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        catchException(() -> retrier.executeBlocking("host", () -> {
+            attempts.incrementAndGet();
+            throw new UncheckedIOException(new IOException("connection reset"));
+        }));
+        // Verify that the last failure is thrown once out of attempts
+        assertThat(caughtException(), instanceOf(UncheckedIOException.class));
+        assertThat(attempts.get(), is(3));
+    }
+
+    @Test
+    public void testRetryBudget() {
+        final RequestRetrier retrier = new RequestRetrier(new OEmbedRetryConfig.Builder().setMaxAttempts(2)
+            .setInitialBackoff(Duration.ofMillis(1L))
+            .setMaxRetryBudget(2)
+            .setRetryBudgetRatio(0.5)
+            .build(), scheduler);
+
+        // Verify that retries stop once the budget is spent
+        for (int i = 0; i < 4; i++) {
+            retrier.executeBlocking("host", () -> SERVER_ERROR);
+        }
+        assertThat(retrier.getRetries(), is(3L));
+        // Verify that other hosts have their own budget
+        retrier.executeBlocking("other host", () -> SERVER_ERROR);
+        assertThat(retrier.getRetries(), is(4L));
+    }
+
+    @Test(timeOut = 10000L)
+    public void testCancel() throws InterruptedException {
+        final RequestRetrier retrier = new RequestRetrier(new OEmbedRetryConfig.Builder()
+            .setInitialBackoff(Duration.ofSeconds(1L))
+            .build(), scheduler);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final CompletableFuture<OEmbedResult> result = retrier.execute("host", () -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(SERVER_ERROR);
+        });
+        result.cancel(true);
+        TimeUnit.MILLISECONDS.sleep(200L);
+        // Verify that the pending retry was cancelled
+        assertThat(attempts.get(), is(1));
+    }
+}
@@ -0,0 +1,185 @@
+package net.spals.oembed4j.client;
+
+import net.spals.oembed4j.model.OEmbedRequest;
+import net.spals.oembed4j.model.OEmbedResponse;
+import net.spals.oembed4j.model.OEmbedType;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for {@link ResponseTtlPolicy}
+ *
+ * @author tkral
+ */
+public class ResponseTtlPolicyTest {
+
+    @DataProvider
+    Object[][] illegalConfigProvider() {
+        return new Object[][]{
+            {new OEmbedCachePolicy.Builder().setDefaultTimeToLive(Duration.ofSeconds(-1L))},
+            {new OEmbedCachePolicy.Builder().setMinTimeToLive(Duration.ofSeconds(-1L))},
+            {new OEmbedCachePolicy.Builder().setMinTimeToLive(Duration.ofHours(2L)).setMaxTimeToLive(Duration.ofHours(1L))},
+            {new OEmbedCachePolicy.Builder().setStaleWhileRevalidate(Duration.ofSeconds(-1L))},
+            {new OEmbedCachePolicy.Builder().setStaleIfError(Duration.ofSeconds(-1L))},
+            {new OEmbedCachePolicy.Builder().setRevalidationWindow(Duration.ofSeconds(-1L))},
+        };
+    }
+
+    @Test(dataProvider = "illegalConfigProvider")
+    public void testIllegalConfig(final OEmbedCachePolicy.Builder configBuilder) {
+        catchException(configBuilder::build);
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @DataProvider
+    Object[][] timeToLiveProvider() {
+        return new Object[][]{
+            // Case: Cache age
+            {Optional.of(60L), Optional.empty(), Duration.ofSeconds(60L)},
+            // Case: No cache age
+            {Optional.empty(), Optional.empty(), Duration.ofMinutes(5L)},
+            // Case: Cache age below the min
+            {Optional.of(0L), Optional.empty(), Duration.ofSeconds(10L)},
+            // Case: Cache age above the max
+            {Optional.of(Long.MAX_VALUE), Optional.empty(), Duration.ofHours(1L)},
+            // Case: Freshness lifetime without cache age
+            {Optional.empty(), Optional.of(Duration.ofMinutes(2L)), Duration.ofMinutes(2L)},
+            // Case: Cache age over freshness lifetime
+            {Optional.of(60L), Optional.of(Duration.ofMinutes(2L)), Duration.ofSeconds(60L)},
+            // Case: Freshness lifetime below the min
+            {Optional.empty(), Optional.of(Duration.ZERO), Duration.ofSeconds(10L)},
+            // Case: Freshness lifetime above the max
+            {Optional.empty(), Optional.of(Duration.ofDays(1L)), Duration.ofHours(1L)},
+        };
+    }
+
+    @Test(dataProvider = "timeToLiveProvider")
+    public void testGetTimeToLive(
+        final Optional<Long> cacheAge,
+        final Optional<Duration> freshnessLifetime,
+        final Duration expectedTimeToLive
+    ) {
+        final ResponseTtlPolicy ttlPolicy = new ResponseTtlPolicy(new OEmbedClientConfig.Builder()
+            .setCachePolicy(new OEmbedCachePolicy.Builder()
+                .setDefaultTimeToLive(Duration.ofMinutes(5L))
+                .setMinTimeToLive(Duration.ofSeconds(10L))
+                .setMaxTimeToLive(Duration.ofHours(1L))
+                .build())
+            .build());
+
+        assertThat(ttlPolicy.getTimeToLive("host", newResponse(cacheAge), freshnessLifetime), is(expectedTimeToLive));
+    }
+
+    @Test
+    public void testGetTimeToLiveByHost() {
+        final ResponseTtlPolicy ttlPolicy = new ResponseTtlPolicy(new OEmbedClientConfig.Builder()
+            .putCachePoliciesByHost("www.youtube.com", new OEmbedCachePolicy.Builder()
+                .setDefaultTimeToLive(Duration.ofHours(1L))
+                .build())
+            .build());
+
+        assertThat(ttlPolicy.getTimeToLive("www.youtube.com", newResponse(Optional.empty()), Optional.empty()),
+            is(Duration.ofHours(1L)));
+        assertThat(ttlPolicy.getTimeToLive("vimeo.com", newResponse(Optional.empty()), Optional.empty()),
+            is(Duration.ZERO));
+        // Verify that only the response which isn't cached is counted as such
+        assertThat(ttlPolicy.getStats().keySet(), contains("vimeo.com"));
+        assertThat(ttlPolicy.getStats().get("vimeo.com").getUncachedCount(), is(1L));
+    }
+
+    @Test
+    public void testGetStats() {
+        final ResponseTtlPolicy ttlPolicy = new ResponseTtlPolicy(new OEmbedClientConfig.Builder().build());
+        final OEmbedRequest youtubeRequest = newRequest("https://youtu.be/abc");
+        final OEmbedRequest vimeoRequest = newRequest("https://vimeo.com/123");
+
+        // Case: A hit before the provider host of the resource host is known isn't counted
+        ttlPolicy.onHit(youtubeRequest);
+        ttlPolicy.onMiss(youtubeRequest, "www.youtube.com");
+        ttlPolicy.onHit(youtubeRequest);
+        ttlPolicy.onHit(newRequest("https://YOUTU.BE/def"));
+        ttlPolicy.onHit(youtubeRequest);
+        ttlPolicy.onMiss(vimeoRequest, "vimeo.com");
+        ttlPolicy.onNotModified("vimeo.com", 100L);
+        ttlPolicy.onNotModified("vimeo.com", 50L);
+
+        assertThat(ttlPolicy.getProviderHost(youtubeRequest), is(Optional.of("www.youtube.com")));
+        assertThat(ttlPolicy.getStats().keySet(), contains("vimeo.com", "www.youtube.com"));
+        assertThat(ttlPolicy.getStats().get("www.youtube.com").getHitRate(), is(0.75));
+        assertThat(ttlPolicy.getStats().get("vimeo.com").getHitRate(), is(0.0));
+        assertThat(ttlPolicy.getStats().get("vimeo.com").getParsesSaved(), is(2L));
+        assertThat(ttlPolicy.getStats().get("vimeo.com").getBytesSaved(), is(150L));
+    }
+
+    @Test
+    public void testProviderHostsBounded() {
+        final ResponseTtlPolicy ttlPolicy = new ResponseTtlPolicy(new OEmbedClientConfig.Builder().build(), 2L);
+        final OEmbedRequest youtubeRequest = newRequest("https://youtu.be/abc");
+        final OEmbedRequest vimeoRequest = newRequest("https://vimeo.com/123");
+        final OEmbedRequest flickrRequest = newRequest("https://flic.kr/p/abc");
+
+        ttlPolicy.onMiss(youtubeRequest, "www.youtube.com");
+        ttlPolicy.onMiss(vimeoRequest, "vimeo.com");
+        ttlPolicy.onHit(youtubeRequest);
+        ttlPolicy.onMiss(flickrRequest, "www.flickr.com");
+
+        // Verify that a new resource host is still remembered once full,
+        // in place of the least recently used one
+        assertThat(ttlPolicy.getProviderHost(flickrRequest), is(Optional.of("www.flickr.com")));
+        assertThat(ttlPolicy.getProviderHost(youtubeRequest), is(Optional.of("www.youtube.com")));
+        assertThat(ttlPolicy.getProviderHost(vimeoRequest), is(Optional.empty()));
+    }
+
+    @DataProvider
+    Object[][] freshnessLifetimeProvider() {
+        return new Object[][]{
+            // Case: No headers
+            {Optional.empty(), Optional.empty(), Optional.empty()},
+            // Case: Max age
+            {Optional.of("public, max-age=300"), Optional.empty(), Optional.of(Duration.ofMinutes(5L))},
+            // Case: Shared max age over max age
+            {Optional.of("max-age=300, s-maxage=600"), Optional.empty(), Optional.of(Duration.ofMinutes(10L))},
+            // Case: Max age over expires
+            {Optional.of("max-age=300"), Optional.of("Thu, 01 Jan 1970 01:00:00 GMT"), Optional.of(Duration.ofMinutes(5L))},
+            // Case: No store
+            {Optional.of("no-store, max-age=300"), Optional.empty(), Optional.of(Duration.ZERO)},
+            // Case: No cache
+            {Optional.of("No-Cache"), Optional.empty(), Optional.of(Duration.ZERO)},
+            // Case: Unparseable max age
+            {Optional.of("max-age=soon"), Optional.empty(), Optional.empty()},
+            // Case: Expires
+            {Optional.empty(), Optional.of("Thu, 01 Jan 1970 01:00:00 GMT"), Optional.of(Duration.ofHours(1L))},
+            // Case: Expired
+            {Optional.of("public"), Optional.of("Thu, 01 Jan 1970 00:00:00 GMT"), Optional.of(Duration.ZERO)},
+            // Case: Unparseable expires
+            {Optional.empty(), Optional.of("0"), Optional.of(Duration.ZERO)},
+        };
+    }
+
+    @Test(dataProvider = "freshnessLifetimeProvider")
+    public void testParseFreshnessLifetime(
+        final Optional<String> cacheControl,
+        final Optional<String> expires,
+        final Optional<Duration> expectedFreshnessLifetime
+    ) {
+        assertThat(ResponseTtlPolicy.parseFreshnessLifetime(cacheControl, expires, Instant.EPOCH),
+            is(expectedFreshnessLifetime));
+    }
+
+    private static OEmbedRequest newRequest(final String resourceURI) {
+        return new OEmbedRequest.Builder().setResourceURI(resourceURI).build();
+    }
+
+    private static OEmbedResponse newResponse(final Optional<Long> cacheAge) {
+        return new OEmbedResponse.Builder().setType(OEmbedType.link).setCacheAge(cacheAge).build();
+    }
+}
@@ -0,0 +1,45 @@
+package net.spals.oembed4j.client.cache;
+
+import org.testng.annotations.Test;
+
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for {@link FrequencySketch}
+ *
+ * @author tkral
+ */
+public class FrequencySketchTest {
+
+    @Test
+    public void testIncrement() {
+        final FrequencySketch sketch = new FrequencySketch(512L);
+
+        assertThat(sketch.frequency("key"), is(0));
+        IntStream.range(0, 3).forEach(i -> sketch.increment("key"));
+        assertThat(sketch.frequency("key"), is(3));
+        assertThat(sketch.frequency("otherKey"), is(0));
+    }
+
+    @Test
+    public void testIncrementSaturates() {
+        final FrequencySketch sketch = new FrequencySketch(512L);
+
+        IntStream.range(0, 100).forEach(i -> sketch.increment("key"));
+        assertThat(sketch.frequency("key"), is(15));
+    }
+
+    @Test
+    public void testReset() {
+        final FrequencySketch sketch = new FrequencySketch(16L);
+
+        IntStream.range(0, 8).forEach(i -> sketch.increment("key"));
+        assertThat(sketch.frequency("key"), greaterThanOrEqualTo(8));
+        // Case: Counting a sample of ten times the capacity halves all counters
+        IntStream.range(0, 152).forEach(sketch::increment);
+        assertThat(sketch.frequency("key"), both(greaterThanOrEqualTo(4)).and(lessThanOrEqualTo(7)));
+    }
+}
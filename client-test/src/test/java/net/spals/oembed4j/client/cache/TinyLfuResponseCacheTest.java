@@ -0,0 +1,373 @@
+package net.spals.oembed4j.client.cache;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Ticker;
+import net.spals.oembed4j.model.OEmbedRequest;
+import net.spals.oembed4j.model.OEmbedResponse;
+import net.spals.oembed4j.model.OEmbedType;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for {@link TinyLfuResponseCache}
+ *
+ * @author tkral
+ */
+public class TinyLfuResponseCacheTest {
+
+    private static final OEmbedResponse RESPONSE = new OEmbedResponse.Builder().setType(OEmbedType.link).build();
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+
+    @DataProvider
+    Object[][] illegalConfigProvider() {
+        return new Object[][]{
+            {new OEmbedResponseCacheConfig.Builder().setMaximumSize(0L)},
+            {new OEmbedResponseCacheConfig.Builder().setMaximumWeight(0L)},
+            {new OEmbedResponseCacheConfig.Builder().setExpiredEntryRetention(Duration.ofSeconds(-1L))},
+        };
+    }
+
+    @Test(dataProvider = "illegalConfigProvider")
+    public void testIllegalConfig(final OEmbedResponseCacheConfig.Builder configBuilder) {
+        catchException(configBuilder::build);
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void testGet() {
+        final TinyLfuResponseCache cache = newCache(new OEmbedResponseCacheConfig.Builder().build());
+        final OEmbedRequest request = newRequest(0);
+
+        assertThat(cache.get(request), is(Optional.empty()));
+        cache.put(request, RESPONSE, Duration.ofMinutes(1L));
+        assertThat(cache.get(request), is(Optional.of(RESPONSE)));
+        assertThat(cache.estimatedSize(), is(1L));
+
+        final OEmbedResponseCacheStats stats = cache.getStats();
+        assertThat(stats.getHitCount(), is(1L));
+        assertThat(stats.getMissCount(), is(1L));
+        assertThat(stats.getHitRate(), is(0.5));
+    }
+
+    @Test
+    public void testPutReplaces() {
+        final TinyLfuResponseCache cache = newCache(new OEmbedResponseCacheConfig.Builder().build());
+        final OEmbedRequest request = newRequest(0);
+        final OEmbedResponse newResponse = new OEmbedResponse.Builder().setType(OEmbedType.link).setTitle("title").build();
+
+        cache.put(request, RESPONSE, Duration.ofMinutes(1L));
+        cache.put(request, newResponse, Duration.ofSeconds(1L));
+        cache.cleanUp();
+
+        assertThat(cache.get(request), is(Optional.of(newResponse)));
+        assertThat(cache.estimatedSize(), is(1L));
+        // The new response brings its own time to live
+        nanos.addAndGet(Duration.ofSeconds(2L).toNanos());
+        assertThat(cache.get(request), is(Optional.empty()));
+    }
+
+    @DataProvider
+    Object[][] nonPositiveTimeToLiveProvider() {
+        return new Object[][]{
+            {Duration.ZERO},
+            {Duration.ofSeconds(-1L)},
+        };
+    }
+
+    @Test(dataProvider = "nonPositiveTimeToLiveProvider")
+    public void testPutNonPositiveTimeToLive(final Duration timeToLive) {
+        final TinyLfuResponseCache cache = newCache(new OEmbedResponseCacheConfig.Builder().build());
+        final OEmbedRequest request = newRequest(0);
+
+        cache.put(request, RESPONSE, Duration.ofMinutes(1L));
+        // Case: A response which may no longer be cached replaces the cached one
+        cache.put(request, RESPONSE, timeToLive);
+        assertThat(cache.get(request), is(Optional.empty()));
+        assertThat(cache.estimatedSize(), is(0L));
+    }
+
+    @Test
+    public void testVariableExpiry() {
+        final TinyLfuResponseCache cache = newCache(new OEmbedResponseCacheConfig.Builder().build());
+
+        cache.put(newRequest(0), RESPONSE, Duration.ofSeconds(10L));
+        cache.put(newRequest(1), RESPONSE, Duration.ofSeconds(1L));
+        cache.put(newRequest(2), RESPONSE, Duration.ofSeconds(5L));
+
+        nanos.addAndGet(Duration.ofSeconds(2L).toNanos());
+        assertThat(cache.get(newRequest(0)), is(Optional.of(RESPONSE)));
+        assertThat(cache.get(newRequest(1)), is(Optional.empty()));
+        assertThat(cache.get(newRequest(2)), is(Optional.of(RESPONSE)));
+
+        // Expired responses are removed, in order, without being looked up
+        nanos.addAndGet(Duration.ofSeconds(4L).toNanos());
+        cache.cleanUp();
+        assertThat(cache.estimatedSize(), is(1L));
+        assertThat(cache.get(newRequest(0)), is(Optional.of(RESPONSE)));
+    }
+
+    @Test
+    public void testGetStale() {
+        final TinyLfuResponseCache cache = newCache(new OEmbedResponseCacheConfig.Builder()
+            .setExpiredEntryRetention(Duration.ofMinutes(1L))
+            .build());
+        final OEmbedRequest request = newRequest(0);
+
+        cache.put(request, RESPONSE, Duration.ofSeconds(1L));
+        // Case: An unexpired response is served, however stale it may be
+        assertThat(cache.getStale(request, Duration.ZERO), is(Optional.of(RESPONSE)));
+
+        nanos.addAndGet(Duration.ofSeconds(11L).toNanos());
+        cache.cleanUp();
+        assertThat(cache.get(request), is(Optional.empty()));
+        assertThat(cache.getStale(request, Duration.ofSeconds(5L)), is(Optional.empty()));
+        assertThat(cache.getStale(request, Duration.ofSeconds(30L)), is(Optional.of(RESPONSE)));
+
+        // Case: An expired response is removed once it has been retained long enough
+        nanos.addAndGet(Duration.ofMinutes(1L).toNanos());
+        cache.cleanUp();
+        assertThat(cache.getStale(request, Duration.ofMinutes(5L)), is(Optional.empty()));
+        assertThat(cache.estimatedSize(), is(0L));
+    }
+
+    @Test
+    public void testGetValidators() {
+        final TinyLfuResponseCache cache = newCache(new OEmbedResponseCacheConfig.Builder()
+            .setExpiredEntryRetention(Duration.ofMinutes(1L))
+            .build());
+        final OEmbedResponseValidators validators = new OEmbedResponseValidators.Builder()
+            .setEntityTag("\"v1\"")
+            .setEntityLength(100L)
+            .build();
+
+        cache.put(newRequest(0), RESPONSE, Duration.ofSeconds(1L), validators);
+        cache.put(newRequest(1), RESPONSE, Duration.ofSeconds(1L));
+        assertThat(cache.getValidators(newRequest(0)), is(Optional.of(validators)));
+        assertThat(cache.getValidators(newRequest(1)), is(Optional.empty()));
+
+        // Case: The validators of an expired response are kept for as long as it is retained
+        nanos.addAndGet(Duration.ofSeconds(30L).toNanos());
+        assertThat(cache.getValidators(newRequest(0)), is(Optional.of(validators)));
+        nanos.addAndGet(Duration.ofMinutes(1L).toNanos());
+        assertThat(cache.getValidators(newRequest(0)), is(Optional.empty()));
+
+        // Case: A response put without validators drops those of the response it replaces
+        cache.put(newRequest(0), RESPONSE, Duration.ofSeconds(1L), validators);
+        cache.put(newRequest(0), RESPONSE, Duration.ofSeconds(1L));
+        assertThat(cache.getValidators(newRequest(0)), is(Optional.empty()));
+    }
+
+    @Test
+    public void testIllegalValidators() {
+        catchException(new OEmbedResponseValidators.Builder()::build);
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void testMaximumSize() {
+        final TinyLfuResponseCache cache = newCache(new OEmbedResponseCacheConfig.Builder()
+            .setMaximumSize(100L)
+            .build());
+
+        IntStream.range(0, 1000).forEach(i -> cache.put(newRequest(i), RESPONSE, Duration.ofMinutes(1L)));
+        cache.cleanUp();
+
+        assertThat(cache.estimatedSize(), is(100L));
+        assertThat(cache.getStats().getEvictionCount(), is(900L));
+    }
+
+    @Test
+    public void testFrequencyAwareAdmission() {
+        final TinyLfuResponseCache cache = newCache(new OEmbedResponseCacheConfig.Builder()
+            .setMaximumSize(100L)
+            .build());
+
+        IntStream.range(0, 100).forEach(i -> cache.put(newRequest(i), RESPONSE, Duration.ofMinutes(1L)));
+        IntStream.range(0, 5).forEach(round ->
+            IntStream.range(0, 100).forEach(i -> cache.get(newRequest(i))));
+        cache.cleanUp();
+
+        // Case: A scan of responses requested only once doesn't flush out the popular ones
+        IntStream.range(100, 1100).forEach(i -> cache.put(newRequest(i), RESPONSE, Duration.ofMinutes(1L)));
+        cache.cleanUp();
+
+        final long popularResponses = IntStream.range(0, 100)
+            .filter(i -> cache.getStale(newRequest(i), Duration.ZERO).isPresent())
+            .count();
+        assertThat(popularResponses, greaterThanOrEqualTo(95L));
+        assertThat(cache.estimatedSize(), is(100L));
+    }
+
+    @Test
+    public void testMaximumWeight() {
+        final OEmbedResponse largeResponse = new OEmbedResponse.Builder()
+            .setType(OEmbedType.rich)
+            .setWidth(100)
+            .setHeight(100)
+            .setHtml(Strings.repeat("x", 10_000))
+            .build();
+        final long smallWeight = TinyLfuResponseCache.estimateWeight(newRequest(0), RESPONSE);
+        final long largeWeight = TinyLfuResponseCache.estimateWeight(newRequest(0), largeResponse);
+        assertThat(largeWeight, greaterThan(20_000L));
+
+        final TinyLfuResponseCache cache = newCache(new OEmbedResponseCacheConfig.Builder()
+            .setMaximumWeight(10L * largeWeight)
+            .build());
+
+        // Case: Large responses are bounded by their weight, not their number
+        IntStream.range(0, 100).forEach(i -> cache.put(newRequest(i), largeResponse, Duration.ofMinutes(1L)));
+        cache.cleanUp();
+        assertThat(cache.estimatedSize(), lessThanOrEqualTo(10L));
+
+        // Case: Many more small responses fit in the same weight
+        cache.invalidateAll();
+        cache.cleanUp();
+        IntStream.range(0, 100).forEach(i -> cache.put(newRequest(i), RESPONSE, Duration.ofMinutes(1L)));
+        cache.cleanUp();
+        assertThat(cache.estimatedSize(), is(Math.min(100L, 10L * largeWeight / smallWeight)));
+    }
+
+    @Test
+    public void testInvalidate() {
+        final TinyLfuResponseCache cache = newCache(new OEmbedResponseCacheConfig.Builder().build());
+        IntStream.range(0, 10).forEach(i -> cache.put(newRequest(i), RESPONSE, Duration.ofMinutes(1L)));
+
+        cache.invalidate(newRequest(0));
+        assertThat(cache.get(newRequest(0)), is(Optional.empty()));
+        assertThat(cache.estimatedSize(), is(9L));
+
+        cache.invalidateAll();
+        assertThat(cache.estimatedSize(), is(0L));
+        // Statistics survive invalidation
+        assertThat(cache.getStats().getMissCount(), is(1L));
+    }
+
+    @Test
+    public void testConcurrentAccess() {
+        final TinyLfuResponseCache cache = newCache(new OEmbedResponseCacheConfig.Builder()
+            .setMaximumSize(100L)
+            .build());
+        final ExecutorService executorService = Executors.newFixedThreadPool(8);
+
+        try {
+            final List<CompletableFuture<Void>> futures = IntStream.range(0, 8)
+                .mapToObj(thread -> CompletableFuture.runAsync(() -> IntStream.range(0, 10_000).forEach(i -> {
+                    final OEmbedRequest request = newRequest(ThreadLocalRandom.current().nextInt(500));
+                    if (!cache.get(request).isPresent()) {
+                        cache.put(request, RESPONSE, Duration.ofMinutes(1L));
+                    }
+                }), executorService))
+                .collect(Collectors.toList());
+            futures.forEach(CompletableFuture::join);
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        cache.cleanUp();
+        assertThat(cache.estimatedSize(), lessThanOrEqualTo(100L));
+        assertThat(cache.getStats().getHitCount() + cache.getStats().getMissCount(), is(80_000L));
+    }
+
+    @DataProvider
+    Object[][] concurrentWeightProvider() {
+        return new Object[][]{
+            // Case: Bounded by size, so every entry weighs 1
+            {new OEmbedResponseCacheConfig.Builder()
+                .setMaximumSize(100L)
+                .setExpiredEntryRetention(Duration.ofMillis(20L))
+                .build()},
+            // Case: Bounded by weight, with entries of varying weight
+            {new OEmbedResponseCacheConfig.Builder()
+                .setMaximumWeight(100_000L)
+                .setExpiredEntryRetention(Duration.ofMillis(20L))
+                .build()},
+        };
+    }
+
+    @Test(dataProvider = "concurrentWeightProvider", timeOut = 60000L)
+    public void testConcurrentWeight(final OEmbedResponseCacheConfig config) {
+        final TinyLfuResponseCache cache = newCache(config);
+        final List<OEmbedResponse> responses = IntStream.range(0, 8)
+            .mapToObj(i -> new OEmbedResponse.Builder().setType(OEmbedType.rich).setWidth(100).setHeight(100)
+                .setHtml(Strings.repeat("x", i * 500)).build())
+            .collect(Collectors.toList());
+        final ExecutorService executorService = Executors.newFixedThreadPool(8);
+
+        try {
+            final List<CompletableFuture<Void>> futures = IntStream.range(0, 8)
+                .mapToObj(thread -> CompletableFuture.runAsync(() -> IntStream.range(0, 20_000).forEach(i -> {
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+                    final OEmbedRequest request = newRequest(random.nextInt(500));
+                    final int operation = random.nextInt(100);
+                    // Time moves on while the cache is used, so that entries expire and are removed
+                    if (i % 100 == 0) {
+                        nanos.addAndGet(Duration.ofMillis(1L).toNanos());
+                    }
+                    if (operation < 40) {
+                        cache.get(request);
+                    } else if (operation < 50) {
+                        cache.getStale(request, Duration.ofMillis(10L));
+                    } else if (operation < 90) {
+                        cache.put(request, responses.get(random.nextInt(responses.size())),
+                            Duration.ofMillis(1L + random.nextInt(50)));
+                    } else if (operation < 99) {
+                        cache.invalidate(request);
+                    } else if (i % 1_000 == 1) {
+                        cache.invalidateAll();
+                    }
+                }), executorService))
+                .collect(Collectors.toList());
+            futures.forEach(CompletableFuture::join);
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        // Verify that the policy's weight is exactly that of the entries left
+        cache.cleanUp();
+        long liveEntries = 0L;
+        long liveWeight = 0L;
+        for (int i = 0; i < 500; i++) {
+            final OEmbedRequest request = newRequest(i);
+            final Optional<OEmbedResponse> response = cache.getStale(request, config.getExpiredEntryRetention());
+            if (response.isPresent()) {
+                liveEntries++;
+                liveWeight += config.getMaximumWeight().isPresent()
+                    ? TinyLfuResponseCache.estimateWeight(request, response.get()) : 1L;
+            }
+        }
+        assertThat(cache.estimatedSize(), is(liveEntries));
+        assertThat(cache.weightedSize(), is(liveWeight));
+        assertThat(cache.weightedSize(), lessThanOrEqualTo(config.getMaximumWeight().orElse(config.getMaximumSize())));
+    }
+
+    private TinyLfuResponseCache newCache(final OEmbedResponseCacheConfig config) {
+        return new TinyLfuResponseCache(config, ticker);
+    }
+
+    private static OEmbedRequest newRequest(final int id) {
+        return new OEmbedRequest.Builder().setResourceURI("http://www.example.com/" + id).build();
+    }
+}
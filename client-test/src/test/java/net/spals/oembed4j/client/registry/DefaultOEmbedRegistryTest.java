@@ -0,0 +1,160 @@
+package net.spals.oembed4j.client.registry;
+
+import com.google.common.io.Resources;
+import net.spals.oembed4j.model.OEmbedEndpoint;
+import net.spals.oembed4j.model.OEmbedProvider;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.anEmptyMap;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Unit tests for {@link DefaultOEmbedRegistry}
+ *
+ * @author tkral
+ */
+public class DefaultOEmbedRegistryTest {
+
+    private DefaultOEmbedRegistry registry;
+
+    @BeforeClass
+    void classSetup() throws URISyntaxException {
+        final File providerFile = new File(Resources.getResource(DefaultOEmbedRegistryTest.class, "/providers.json").toURI());
+        this.registry = DefaultOEmbedRegistry.loadFromFile(providerFile);
+        assertThat(registry.numProviders(), is(5));
+    }
+
+    @DataProvider
+    Object[][] getEndpointProvider() {
+        return new Object[][] {
+            // Case: Resource domain matches the provider domain
+            {URI.create("https://vimeo.com/189789787"), "Vimeo"},
+            {URI.create("https://www.youtube.com/watch?v=qtNI1WbOp5Q"), "YouTube"},
+            // Case: Resource domain differs from the provider domain
+            {URI.create("https://m.youtube.com/watch?v=qtNI1WbOp5Q"), "YouTube"},
+            {URI.create("https://youtu.be/qtNI1WbOp5Q"), "YouTube"},
+            {URI.create("https://player.vimeo.com/video/189789787"), "Vimeo"},
+            {URI.create("https://home.wistia.com/medias/abc123"), "Wistia, Inc."},
+            // Case: http scheme template widened to https
+            {URI.create("https://flic.kr/p/abc123"), "Flickr"},
+            {URI.create("https://farm1.flickr.com/photos/lilithis/2207159142"), "Flickr"},
+            // Case: Endpoint without schemes is matched by domain
+            {URI.create("http://www.kickstarter.com/projects/1/mything"), "Kickstarter"},
+        };
+    }
+
+    @Test(dataProvider = "getEndpointProvider")
+    public void testGetEndpoint(final URI resourceURI, final String expectedProviderName) {
+        final Optional<OEmbedEndpoint> endpoint = registry.getEndpoint(resourceURI);
+        final Optional<OEmbedProvider> provider = registry.getProvider(expectedProviderName);
+        assertThat(provider.get().getEndpoints(), hasItem(endpoint.get()));
+    }
+
+    @DataProvider
+    Object[][] getEndpointMissingProvider() {
+        return new Object[][] {
+            {URI.create("https://www.example.com/myresource")},
+            {URI.create("https://www.youtube.com/about")},
+            {URI.create("https://home.wistia.com/pricing")},
+            {URI.create("https://www.flickr.com/help")},
+            // Case: Resource URI which only matches a wildcard outside of the host
+            {URI.create("https://www.example.com/x.wistia.com/medias/abc123")},
+            // Case: Resource URI without a domain name host
+            {URI.create("http://127.0.0.1/myresource")},
+            {URI.create("mailto:someone@example.com")},
+        };
+    }
+
+    @Test(dataProvider = "getEndpointMissingProvider")
+    public void testGetEndpointMissing(final URI resourceURI) {
+        assertThat(registry.getEndpoint(resourceURI), is(Optional.empty()));
+    }
+
+    @Test
+    public void testGetEndpointWithNegativeResultCache() {
+        final NegativeResultCache cache = NegativeResultCache.create(10L, 1);
+        final DefaultOEmbedRegistry cachingRegistry = registry.withNegativeResultCache(cache);
+        assertThat(cachingRegistry.getNegativeResultCache(), is(Optional.of(cache)));
+
+        // Case: No endpoint for the host
+        assertThat(cachingRegistry.getEndpoint(URI.create("https://www.example.com/a")), is(Optional.empty()));
+        assertThat(cachingRegistry.getEndpoint(URI.create("https://www.example.com/b")), is(Optional.empty()));
+        // Case: No endpoint for the path prefix
+        assertThat(cachingRegistry.getEndpoint(URI.create("https://www.youtube.com/about")), is(Optional.empty()));
+        assertThat(cachingRegistry.getEndpoint(URI.create("https://www.youtube.com/about/careers")), is(Optional.empty()));
+        // Case: Path prefix which may still match is not remembered
+        assertThat(cachingRegistry.getEndpoint(URI.create("https://www.flickr.com/photo")), is(Optional.empty()));
+        assertThat(cachingRegistry.getEndpoint(URI.create("https://www.youtube.com/watch?v=1")), not(Optional.empty()));
+        assertThat(cachingRegistry.getEndpoint(URI.create("https://vimeo.com/189789787")), not(Optional.empty()));
+
+        assertThat(cache.size(), is(2L));
+        assertThat(cache.hitCount(), is(2L));
+
+        // Attaching the cache to a registry clears it
+        registry.withNegativeResultCache(cache);
+        assertThat(cache.size(), is(0L));
+    }
+
+    @Test
+    public void testNegativeResultCacheReattached() {
+        final NegativeResultCache cache = NegativeResultCache.create(10L);
+        final DefaultOEmbedRegistry staleRegistry = new DefaultOEmbedRegistry(
+            Collections.singletonList(registry.getProvider("Vimeo").get())).withNegativeResultCache(cache);
+        // A fresh registry, so that no hot endpoint answers the lookup before the cache
+        final DefaultOEmbedRegistry currentRegistry = new DefaultOEmbedRegistry(registry.getProviders())
+            .withNegativeResultCache(cache);
+
+        // Case: A lookup on the replaced registry, racing with the swap, finds no endpoint
+        final URI resourceURI = URI.create("https://youtu.be/qtNI1WbOp5Q");
+        assertThat(staleRegistry.getEndpoint(resourceURI), is(Optional.empty()));
+
+        // Verify that its miss is not reported to the registry now using the cache
+        assertThat(currentRegistry.getEndpoint(resourceURI), not(Optional.empty()));
+        assertThat(cache.hitCount(), is(0L));
+    }
+
+    @Test
+    public void testHotEndpoints() throws URISyntaxException {
+        final File providerFile = new File(Resources.getResource(DefaultOEmbedRegistryTest.class, "/providers.json").toURI());
+        final DefaultOEmbedRegistry hotRegistry = DefaultOEmbedRegistry.loadFromFile(providerFile);
+        final OEmbedEndpoint youTubeEndpoint = hotRegistry.getProvider("YouTube").get().getEndpoints().get(0);
+        final OEmbedEndpoint wistiaEndpoint = hotRegistry.getProvider("Wistia, Inc.").get().getEndpoints().get(0);
+
+        assertThat(hotRegistry.getEndpoint(URI.create("https://www.youtube.com/watch?v=1")), is(Optional.of(youTubeEndpoint)));
+        assertThat(hotRegistry.getEndpoint(URI.create("https://youtu.be/1")), is(Optional.of(youTubeEndpoint)));
+        assertThat(hotRegistry.getEndpoint(URI.create("https://home.wistia.com/medias/1")), is(Optional.of(wistiaEndpoint)));
+        hotRegistry.reorderHotEndpoints();
+
+        assertThat(hotRegistry.getHotEndpoints(), contains(youTubeEndpoint, wistiaEndpoint));
+        assertThat(hotRegistry.getEndpointHitCounts().keySet(), contains(youTubeEndpoint, wistiaEndpoint));
+        assertThat(hotRegistry.getEndpointHitCounts().get(youTubeEndpoint), is(2L));
+
+        // Hot endpoints never change lookup results
+        for (final Object[] getEndpointCase : getEndpointProvider()) {
+            final URI resourceURI = (URI) getEndpointCase[0];
+            assertThat(hotRegistry.getEndpoint(resourceURI).map(OEmbedEndpoint::getURITemplate),
+                is(registry.getEndpoint(resourceURI).map(OEmbedEndpoint::getURITemplate)));
+        }
+        for (final Object[] getEndpointMissingCase : getEndpointMissingProvider()) {
+            final URI resourceURI = (URI) getEndpointMissingCase[0];
+            assertThat(hotRegistry.getEndpoint(resourceURI), is(Optional.empty()));
+        }
+
+        hotRegistry.resetEndpointHitCounts();
+        assertThat(hotRegistry.getHotEndpoints(), is(empty()));
+        assertThat(hotRegistry.getEndpointHitCounts(), is(anEmptyMap()));
+    }
+}
@@ -0,0 +1,126 @@
+package net.spals.oembed4j.client.registry;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Unit tests for {@link HostIndex}
+ *
+ * @author tkral
+ */
+public class HostIndexTest {
+
+    private final HostIndex hostIndex = HostIndex.builder()
+        .addHostPattern("www.youtube.com", 0)
+        .addHostPattern("*.youtube.com", 1)
+        .addHostPattern("youtu.be", 2)
+        .addHostPattern("*.wistia.com", 3)
+        .addHostPattern("www.amazon.*", 4)
+        .addHostPattern("vimeo.com", 5)
+        .addHostPattern("player.vimeo.com", 5)
+        .build();
+
+    @DataProvider
+    Object[][] candidatesProvider() {
+        return new Object[][] {
+            {"www.youtube.com", new int[]{0, 1}},
+            {"m.youtube.com", new int[]{1}},
+            {"a.b.youtube.com", new int[]{1}},
+            {"youtube.com", new int[0]},
+            {"youtu.be", new int[]{2}},
+            {"fast.wistia.com", new int[]{3}},
+            // Case: Wildcard top-level domains
+            {"www.amazon.com", new int[]{4}},
+            {"www.amazon.co.uk", new int[]{4}},
+            {"amazon.com", new int[0]},
+            // Case: Hosts are case-insensitive and may be fully qualified
+            {"Player.Vimeo.com.", new int[]{5}},
+            {"vimeo.com", new int[]{5}},
+            {"www.example.com", new int[0]},
+        };
+    }
+
+    @Test(dataProvider = "candidatesProvider")
+    public void testCandidates(final String host, final int[] expectedCandidates) {
+        assertThat(hostIndex.candidates(host), is(expectedCandidates));
+    }
+
+    @Test
+    public void testCandidatesUnindexed() {
+        final HostIndex unindexedHostIndex = HostIndex.builder()
+            .addHostPattern("vimeo.com", 0)
+            .addHostPattern(null, 1)
+            .build();
+        assertThat(unindexedHostIndex.candidates("vimeo.com"), is(new int[]{0, 1}));
+        assertThat(unindexedHostIndex.candidates("www.example.com"), is(new int[]{1}));
+    }
+
+    @DataProvider
+    Object[][] hostPatternMatchesProvider() {
+        return new Object[][] {
+            {"www.youtube.com", "www.youtube.com", true},
+            {"www.youtube.com", "m.youtube.com", false},
+            {"*.youtube.com", "a.b.youtube.com", true},
+            {"*.youtube.com", "youtube.com", false},
+            {"www.amazon.*", "www.amazon.co.uk", true},
+            {"www.amazon.*", "www.amazon", false},
+        };
+    }
+
+    @Test(dataProvider = "hostPatternMatchesProvider")
+    public void testHostPatternMatches(final String hostPattern, final String host, final boolean expectedResult) {
+        assertThat(HostIndex.hostPatternMatches(hostPattern, host), is(expectedResult));
+    }
+
+    @DataProvider
+    Object[][] hostOfTemplateProvider() {
+        return new Object[][] {
+            {"https://*.youtube.com/watch*", "*.youtube.com"},
+            {"http://flic.kr/p/*", "flic.kr"},
+            {"https://www.example.com", "www.example.com"},
+            {"https://www.example.com:8080/*", "www.example.com"},
+            {"https://www.example.com?query=*", "www.example.com"},
+            {"*://www.example.com/*", null},
+            {"www.example.com/*", null},
+        };
+    }
+
+    @Test(dataProvider = "hostOfTemplateProvider")
+    public void testHostOfTemplate(final String schemeTemplate, final String expectedHost) {
+        if (expectedHost == null) {
+            assertThat(HostIndex.hostOfTemplate(schemeTemplate), nullValue());
+        } else {
+            assertThat(HostIndex.hostOfTemplate(schemeTemplate), is(expectedHost));
+        }
+    }
+
+    @DataProvider
+    Object[][] hostPatternsMayOverlapProvider() {
+        return new Object[][] {
+            {"www.youtube.com", "www.youtube.com", true},
+            {"www.youtube.com", "WWW.YouTube.com.", true},
+            {"www.youtube.com", "*.youtube.com", true},
+            {"www.youtube.com", "m.youtube.com", false},
+            {"www.youtube.com", "youtube.com", false},
+            {"*.youtube.com", "youtu.be", false},
+            {"*.youtube.com", "youtube.com", false},
+            {"www.amazon.*", "www.amazon.com", true},
+            {"www.amazon.*", "vimeo.com", true},
+            {null, "vimeo.com", true},
+        };
+    }
+
+    @Test(dataProvider = "hostPatternsMayOverlapProvider")
+    public void testHostPatternsMayOverlap(
+        final String hostPattern,
+        final String otherHostPattern,
+        final boolean expectedResult
+    ) {
+        assertThat(HostIndex.hostPatternsMayOverlap(hostPattern, otherHostPattern), is(expectedResult));
+        assertThat(HostIndex.hostPatternsMayOverlap(otherHostPattern, hostPattern), is(expectedResult));
+    }
+}
@@ -0,0 +1,114 @@
+package net.spals.oembed4j.client.registry;
+
+import com.google.common.collect.ImmutableList;
+import net.spals.oembed4j.model.OEmbedEndpoint;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit tests for {@link HotEndpointTable}
+ *
+ * @author tkral
+ */
+public class HotEndpointTableTest {
+
+    private final List<OEmbedEndpoint> endpoints = ImmutableList.of(
+        endpoint("https://www.example.com/a/*"),
+        endpoint("https://*.example.com/*"),
+        endpoint("https://vimeo.com/*"),
+        endpoint("https://youtu.be/*")
+    );
+    private final List<List<String>> hostPatterns = ImmutableList.of(
+        Collections.singletonList("www.example.com"),
+        Collections.singletonList("*.example.com"),
+        Collections.singletonList("vimeo.com"),
+        Collections.singletonList("youtu.be")
+    );
+
+    @Test
+    public void testReorder() {
+        final HotEndpointTable table = new HotEndpointTable(endpoints, hostPatterns, 8, TimeUnit.HOURS.toNanos(1L));
+        recordHits(table, 3, 1);
+        recordHits(table, 2, 2);
+
+        // Nothing is promoted until the table is reordered
+        assertThat(table.hotIds(), is(new int[0]));
+        assertThat(table.match("https://vimeo.com/1", "vimeo.com"), is(SchemeMatcher.NO_MATCH));
+
+        table.reorder();
+        assertThat(table.hotIds(), is(new int[]{2, 3}));
+        assertThat(table.match("https://vimeo.com/1", "vimeo.com"), is(2));
+        assertThat(table.match("https://youtu.be/1", "youtu.be"), is(3));
+        assertThat(table.match("https://www.example.com/1", "www.example.com"), is(SchemeMatcher.NO_MATCH));
+    }
+
+    @Test
+    public void testReorderCapacity() {
+        final HotEndpointTable table = new HotEndpointTable(endpoints, hostPatterns, 1, TimeUnit.HOURS.toNanos(1L));
+        recordHits(table, 3, 1);
+        recordHits(table, 2, 2);
+
+        table.reorder();
+        assertThat(table.hotIds(), is(new int[]{2}));
+    }
+
+    @Test
+    public void testReorderAfterInterval() {
+        final HotEndpointTable table = new HotEndpointTable(endpoints, hostPatterns, 8, 0L);
+        recordHits(table, 2, 1);
+        assertThat(table.hotIds(), is(new int[]{2}));
+    }
+
+    @Test
+    public void testReorderSkipsSharedHosts() {
+        final HotEndpointTable table = new HotEndpointTable(endpoints, hostPatterns, 8, TimeUnit.HOURS.toNanos(1L));
+        recordHits(table, 1, 5);
+        recordHits(table, 0, 1);
+
+        // Endpoint 1 may share a host with endpoint 0, which must win any lookup both match
+        table.reorder();
+        assertThat(table.hotIds(), is(new int[]{0}));
+    }
+
+    @Test
+    public void testMatchChecksHost() {
+        final HotEndpointTable table = new HotEndpointTable(endpoints.subList(1, 2), hostPatterns.subList(1, 2),
+            8, TimeUnit.HOURS.toNanos(1L));
+        recordHits(table, 0, 1);
+        table.reorder();
+
+        assertThat(table.match("https://www.example.com/1", "www.example.com"), is(0));
+        // The template matches, but only with its wildcard reaching past the host
+        assertThat(table.match("https://www.other.com/x.example.com/1", "www.other.com"), is(SchemeMatcher.NO_MATCH));
+    }
+
+    @Test
+    public void testReset() {
+        final HotEndpointTable table = new HotEndpointTable(endpoints, hostPatterns, 8, TimeUnit.HOURS.toNanos(1L));
+        recordHits(table, 2, 2);
+        table.reorder();
+
+        table.reset();
+        assertThat(table.hitCount(2), is(0L));
+        assertThat(table.hotIds(), is(new int[0]));
+    }
+
+    private static void recordHits(final HotEndpointTable table, final int id, final int numHits) {
+        for (int i = 0; i < numHits; i++) {
+            table.recordHit(id);
+        }
+    }
+
+    private static OEmbedEndpoint endpoint(final String schemeTemplate) {
+        return new OEmbedEndpoint.Builder()
+            .addSchemeTemplates(schemeTemplate)
+            .setURITemplate("https://www.example.com/oembed")
+            .build();
+    }
+}
@@ -0,0 +1,100 @@
+package net.spals.oembed4j.client.registry;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Unit tests for {@link NegativeResultCache}
+ *
+ * @author tkral
+ */
+public class NegativeResultCacheTest {
+
+    @DataProvider
+    Object[][] pathPrefixKeyProvider() {
+        return new Object[][] {
+            {1, "https://www.youtube.com/about/careers", "https://www.youtube.com/about"},
+            {2, "https://www.youtube.com/about/careers", "https://www.youtube.com/about/careers"},
+            {2, "https://www.youtube.com/about?q=1", "https://www.youtube.com/about"},
+            {1, "https://www.youtube.com", "https://www.youtube.com"},
+            {1, "https://www.youtube.com?q=1", "https://www.youtube.com"},
+        };
+    }
+
+    @Test(dataProvider = "pathPrefixKeyProvider")
+    public void testPathPrefixKey(final int pathPrefixSegments, final String resourceURI, final String expectedKey) {
+        final NegativeResultCache cache = NegativeResultCache.create(10L, pathPrefixSegments);
+        assertThat(cache.pathPrefixKey(URI.create(resourceURI)), is(expectedKey));
+    }
+
+    @Test
+    public void testPathPrefixKeyHostOnly() {
+        final NegativeResultCache cache = NegativeResultCache.create(10L);
+        assertThat(cache.pathPrefixKey(URI.create("https://www.youtube.com/about")), nullValue());
+    }
+
+    @Test
+    public void testKnownMiss() {
+        final NegativeResultCache cache = NegativeResultCache.create(10L, 1);
+        final long generation = cache.attach();
+        cache.putHostMiss(generation, "www.Example.com");
+        cache.putPathMiss(generation, "https://www.youtube.com/about");
+
+        assertThat(cache.isKnownMiss(generation, "www.example.com", URI.create("https://www.example.com/a")), is(true));
+        assertThat(cache.isKnownMiss(generation, "www.youtube.com", URI.create("https://www.youtube.com/about/careers")), is(true));
+        assertThat(cache.isKnownMiss(generation, "www.youtube.com", URI.create("https://www.youtube.com/watch?v=1")), is(false));
+        assertThat(cache.isKnownMiss(generation, "www.youtube.com", URI.create("http://www.youtube.com/about")), is(false));
+
+        assertThat(cache.size(), is(2L));
+        assertThat(cache.hitCount(), is(2L));
+        assertThat(cache.missCount(), is(2L));
+        assertThat(cache.hitRate(), is(0.5));
+
+        cache.clear();
+        assertThat(cache.size(), is(0L));
+        assertThat(cache.isKnownMiss(generation, "www.example.com", URI.create("https://www.example.com/a")), is(false));
+    }
+
+    @Test
+    public void testStaleGeneration() {
+        final NegativeResultCache cache = NegativeResultCache.create(10L);
+        final long staleGeneration = cache.attach();
+        cache.putHostMiss(staleGeneration, "a.example.com");
+        final long generation = cache.attach();
+
+        // Verify that misses from an earlier generation are neither recorded nor reported
+        cache.putHostMiss(staleGeneration, "b.example.com");
+        assertThat(cache.size(), is(0L));
+        assertThat(cache.isKnownMiss(generation, "b.example.com", URI.create("https://b.example.com/a")), is(false));
+
+        // Verify that a miss recorded before the new generation started is not reported
+        cache.putHostMiss(generation, "c.example.com");
+        assertThat(cache.isKnownMiss(staleGeneration, "c.example.com", URI.create("https://c.example.com/a")), is(false));
+        assertThat(cache.isKnownMiss(generation, "c.example.com", URI.create("https://c.example.com/a")), is(true));
+    }
+
+    @Test
+    public void testMaximumSize() {
+        final NegativeResultCache cache = NegativeResultCache.create(2L);
+        final long generation = cache.attach();
+        cache.putHostMiss(generation, "a.example.com");
+        cache.putHostMiss(generation, "b.example.com");
+        cache.putHostMiss(generation, "c.example.com");
+        assertThat(cache.size(), is(2L));
+    }
+
+    @Test
+    public void testCreateInvalid() {
+        catchException(() -> NegativeResultCache.create(0L));
+        assertThat(caughtException(), instanceOf(IllegalArgumentException.class));
+    }
+}
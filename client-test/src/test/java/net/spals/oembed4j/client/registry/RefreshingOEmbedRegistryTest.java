@@ -0,0 +1,176 @@
+package net.spals.oembed4j.client.registry;
+
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Unit tests for {@link RefreshingOEmbedRegistry}
+ *
+ * @author tkral
+ */
+public class RefreshingOEmbedRegistryTest {
+
+    private static final String SINGLE_PROVIDER_LIST = "[{\"provider_name\": \"Vimeo\", " +
+        "\"provider_url\": \"https://vimeo.com/\", \"endpoints\": [{\"schemes\": [\"https://vimeo.com/*\"], " +
+        "\"url\": \"https://vimeo.com/api/oembed.{format}\"}]}]";
+
+    private File providerFile;
+
+    @BeforeMethod
+    void setup() throws IOException {
+        this.providerFile = File.createTempFile("providers", ".json");
+        Files.write(SINGLE_PROVIDER_LIST, providerFile, StandardCharsets.UTF_8);
+    }
+
+    @AfterMethod
+    void tearDown() {
+        providerFile.delete();
+    }
+
+    @Test
+    public void testRefreshFromFile() throws IOException {
+        try (final RefreshingOEmbedRegistry registry =
+                 RefreshingOEmbedRegistry.fromFile(providerFile, Duration.ofHours(1L))) {
+            assertThat(registry.numProviders(), is(1));
+            final DefaultOEmbedRegistry initialSnapshot = registry.getSnapshot();
+
+            // Case: Unchanged file is not reloaded
+            assertThat(registry.refresh(), is(false));
+            assertThat(registry.getSnapshot(), is(initialSnapshot));
+
+            // Case: Changed file is reloaded and swapped in
+            Resources.asByteSource(Resources.getResource(RefreshingOEmbedRegistryTest.class, "/providers.json"))
+                .copyTo(Files.asByteSink(providerFile));
+            assertThat(registry.refresh(), is(true));
+            assertThat(registry.numProviders(), is(5));
+            assertThat(registry.getProvider("YouTube"), not(Optional.empty()));
+            assertThat(registry.getEndpoint(URI.create("https://youtu.be/qtNI1WbOp5Q")), not(Optional.empty()));
+        }
+    }
+
+    @Test
+    public void testRefreshClearsNegativeResultCache() throws IOException {
+        final NegativeResultCache cache = NegativeResultCache.create(10L);
+        try (final RefreshingOEmbedRegistry registry =
+                 RefreshingOEmbedRegistry.fromFile(providerFile, Duration.ofHours(1L), cache)) {
+            assertThat(registry.getEndpoint(URI.create("https://youtu.be/qtNI1WbOp5Q")), is(Optional.empty()));
+            assertThat(cache.size(), is(1L));
+
+            Resources.asByteSource(Resources.getResource(RefreshingOEmbedRegistryTest.class, "/providers.json"))
+                .copyTo(Files.asByteSink(providerFile));
+            assertThat(registry.refresh(), is(true));
+            assertThat(cache.size(), is(0L));
+            assertThat(registry.getEndpoint(URI.create("https://youtu.be/qtNI1WbOp5Q")), not(Optional.empty()));
+        }
+    }
+
+    @Test
+    public void testRefreshFromURI() throws IOException {
+        final List<String> ifNoneMatchHeaders = new CopyOnWriteArrayList<>();
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/providers.json", exchange -> {
+            final String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            ifNoneMatchHeaders.add(String.valueOf(ifNoneMatch));
+            if ("\"v1\"".equals(ifNoneMatch)) {
+                exchange.sendResponseHeaders(304, -1L);
+            } else {
+                final byte[] body = SINGLE_PROVIDER_LIST.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                try (final OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+
+        final URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/providers.json");
+        try (final RefreshingOEmbedRegistry registry = RefreshingOEmbedRegistry.fromURI(uri, Duration.ofHours(1L))) {
+            assertThat(registry.numProviders(), is(1));
+            assertThat(registry.refresh(), is(false));
+            assertThat(ifNoneMatchHeaders, contains("null", "\"v1\""));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test(timeOut = 10000L)
+    public void testRefreshFromStalledURI() throws Exception {
+        final CountDownLatch released = new CountDownLatch(1);
+        final AtomicInteger requests = new AtomicInteger();
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/providers.json", exchange -> {
+            // Only the initial load is answered
+            if (requests.getAndIncrement() > 0) {
+                Uninterruptibles.awaitUninterruptibly(released);
+            }
+            final byte[] body = SINGLE_PROVIDER_LIST.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (final OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+            exchange.close();
+        });
+        final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        final URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/providers.json");
+        try (final RefreshingOEmbedRegistry registry = new RefreshingOEmbedRegistry(
+                 new URIProviderListSource(uri, Duration.ofMillis(200L)), Duration.ofHours(1L), Optional.empty())) {
+            // Verify that a host which never answers fails the refresh, rather than hanging it
+            catchException(registry::refresh);
+            assertThat(caughtException(), instanceOf(SocketTimeoutException.class));
+            assertThat(registry.numProviders(), is(1));
+
+            // Verify that the next refresh isn't locked out
+            catchException(registry::refresh);
+            assertThat(caughtException(), instanceOf(SocketTimeoutException.class));
+        } finally {
+            released.countDown();
+            server.stop(0);
+            serverExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedRefreshKeepsProviders() throws IOException {
+        try (final RefreshingOEmbedRegistry registry =
+                 RefreshingOEmbedRegistry.fromFile(providerFile, Duration.ofMillis(10L))) {
+            Files.write("not json", providerFile, StandardCharsets.UTF_8);
+            catchException(registry::refresh);
+            assertThat(caughtException(), instanceOf(IOException.class));
+            assertThat(registry.numProviders(), is(1));
+        }
+    }
+}
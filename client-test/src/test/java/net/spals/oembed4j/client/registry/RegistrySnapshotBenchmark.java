@@ -0,0 +1,101 @@
+package net.spals.oembed4j.client.registry;
+
+import net.spals.oembed4j.model.OEmbedEndpoint;
+import net.spals.oembed4j.model.OEmbedProvider;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Load time benchmark of {@link RegistrySnapshot}, comparing a registry
+ * restored from a snapshot with one built from its provider list.
+ *
+ * The registry holds synthetic providers sized like the public oEmbed
+ * provider list. Each scenario warms up before it is measured, and the
+ * median of the measured loads is reported. The benchmark is not part
+ * of the regular test run. Run it with:
+ *
+ * <pre>
+ * mvn test -pl client-test -Dtest=RegistrySnapshotBenchmark
+ * </pre>
+ *
+ * @author tkral
+ */
+public class RegistrySnapshotBenchmark {
+
+    private static final int PROVIDERS = 300;
+    private static final int SCHEMES_PER_PROVIDER = 5;
+    private static final int WARM_UP_LOADS = 50;
+    private static final int LOADS = 50;
+
+    private File snapshotFile;
+
+    @BeforeClass
+    void classSetup() throws IOException {
+        snapshotFile = File.createTempFile("registry", ".snapshot");
+        RegistrySnapshot.write(new DefaultOEmbedRegistry(newProviders()), snapshotFile);
+    }
+
+    @AfterClass
+    void classTearDown() {
+        snapshotFile.delete();
+    }
+
+    @Test
+    public void benchmarkBuildFromProviders() {
+        // Building the endpoints derives their patterns, URI templates and globs
+        run("build from providers", () -> new DefaultOEmbedRegistry(newProviders()));
+    }
+
+    @Test
+    public void benchmarkReadSnapshot() {
+        run("read snapshot", () -> RegistrySnapshot.read(snapshotFile).get());
+    }
+
+    private void run(final String scenario, final Supplier<DefaultOEmbedRegistry> load) {
+        for (int i = 0; i < WARM_UP_LOADS; i++) {
+            assertThat(load.get().numProviders(), is(PROVIDERS));
+        }
+
+        final long[] loadNanos = new long[LOADS];
+        for (int i = 0; i < LOADS; i++) {
+            final long startNanos = System.nanoTime();
+            assertThat(load.get().numProviders(), is(PROVIDERS));
+            loadNanos[i] = System.nanoTime() - startNanos;
+        }
+        Arrays.sort(loadNanos);
+        System.out.printf("%-40s %4d providers: median %6.2fms, max %6.2fms%n", scenario, PROVIDERS,
+            loadNanos[LOADS / 2] / 1e6, loadNanos[LOADS - 1] / 1e6);
+    }
+
+    private static List<OEmbedProvider> newProviders() {
+        return IntStream.range(0, PROVIDERS)
+            .mapToObj(RegistrySnapshotBenchmark::newProvider)
+            .collect(Collectors.toList());
+    }
+
+    private static OEmbedProvider newProvider(final int id) {
+        final OEmbedEndpoint.Builder endpointBuilder = new OEmbedEndpoint.Builder()
+            .setURITemplate("https://www.provider" + id + ".com/api/oembed.{format}");
+        for (int i = 0; i < SCHEMES_PER_PROVIDER; i++) {
+            endpointBuilder.addSchemeTemplates("http://*.provider" + id + ".com/media" + i + "/*/view/*");
+        }
+        return new OEmbedProvider.Builder()
+            .setName("Provider " + id)
+            .setURI(URI.create("https://www.provider" + id + ".com"))
+            .addEndpoints(endpointBuilder.build())
+            .build();
+    }
+}
@@ -0,0 +1,179 @@
+package net.spals.oembed4j.client.registry;
+
+import com.google.common.io.Resources;
+import net.spals.oembed4j.model.OEmbedEndpoint;
+import net.spals.oembed4j.model.OEmbedProvider;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit tests for {@link RegistrySnapshot}
+ *
+ * @author tkral
+ */
+public class RegistrySnapshotTest {
+
+    private URI providerURI;
+    private DefaultOEmbedRegistry registry;
+    private File snapshotFile;
+
+    @BeforeMethod
+    void setup() throws IOException, URISyntaxException {
+        this.providerURI = Resources.getResource(RegistrySnapshotTest.class, "/providers.json").toURI();
+        this.registry = DefaultOEmbedRegistry.loadFromURI(providerURI);
+        this.snapshotFile = File.createTempFile("registry", ".snapshot");
+        RegistrySnapshot.write(registry, snapshotFile);
+    }
+
+    @AfterMethod
+    void tearDown() {
+        snapshotFile.delete();
+    }
+
+    @DataProvider
+    Object[][] readProvider() {
+        return new Object[][] {
+            {URI.create("https://vimeo.com/189789787")},
+            {URI.create("https://m.youtube.com/watch?v=qtNI1WbOp5Q")},
+            {URI.create("https://flic.kr/p/abc123")},
+            {URI.create("https://home.wistia.com/medias/abc123")},
+            {URI.create("http://www.kickstarter.com/projects/1/mything")},
+            {URI.create("https://www.youtube.com/about")},
+            {URI.create("https://www.example.com/myresource")},
+        };
+    }
+
+    @Test(dataProvider = "readProvider")
+    public void testRead(final URI resourceURI) {
+        final DefaultOEmbedRegistry snapshotRegistry = RegistrySnapshot.read(snapshotFile).get();
+        assertThat(describe(snapshotRegistry.getProviders()), is(describe(registry.getProviders())));
+        assertThat(snapshotRegistry.getEndpoint(resourceURI).map(OEmbedEndpoint::getURITemplate),
+            is(registry.getEndpoint(resourceURI).map(OEmbedEndpoint::getURITemplate)));
+    }
+
+    @Test
+    public void testReadMissing() {
+        assertThat(RegistrySnapshot.read(new File(snapshotFile.getPath() + ".missing")), is(Optional.empty()));
+    }
+
+    @Test
+    public void testReadWrongVersion() throws IOException {
+        try (final RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+            file.seek(4L);
+            file.writeInt(RegistrySnapshot.FORMAT_VERSION + 1);
+        }
+        assertThat(RegistrySnapshot.read(snapshotFile), is(Optional.empty()));
+    }
+
+    @Test
+    public void testReadTruncated() throws IOException {
+        try (final RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+            file.setLength(file.length() - 1L);
+        }
+        assertThat(RegistrySnapshot.read(snapshotFile), is(Optional.empty()));
+    }
+
+    @Test
+    public void testReadCorrupt() throws IOException {
+        try (final RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+            file.seek(file.length() - 1L);
+            final int lastByte = file.read();
+            file.seek(file.length() - 1L);
+            file.write(lastByte ^ 0x01);
+        }
+        assertThat(RegistrySnapshot.read(snapshotFile), is(Optional.empty()));
+    }
+
+    @DataProvider
+    Object[][] invalidSchemeMatcherProvider() {
+        final SchemeMatcher schemeMatcher = registry.getSchemeMatcher();
+        final int numNodes = schemeMatcher.getSelfLoop().length;
+        final int numEdges = schemeMatcher.getEdgeChars().length;
+        final int edgeStartOffset = 3 * Integer.BYTES;
+        final int edgeCharsOffset = edgeStartOffset + (numNodes + 1) * Integer.BYTES;
+        final int acceptStartOffset = edgeCharsOffset + numEdges * Character.BYTES
+            + (numEdges + numNodes) * Integer.BYTES + numNodes;
+        final int branchingNode = findBranchingNode(schemeMatcher);
+        final int edgeOffset = edgeCharsOffset + schemeMatcher.getEdgeStart()[branchingNode] * Character.BYTES;
+
+        return new Object[][] {
+            // Case: Edges don't start at index 0
+            {(BiConsumer<ByteBuffer, Integer>) (buffer, offset) -> buffer.putInt(offset, 1), edgeStartOffset},
+            // Case: Accepts don't start at index 0
+            {(BiConsumer<ByteBuffer, Integer>) (buffer, offset) -> buffer.putInt(offset, 1), acceptStartOffset},
+            // Case: A node's edges are out of order
+            {(BiConsumer<ByteBuffer, Integer>) (buffer, offset) -> {
+                final char edgeChar = buffer.getChar(offset);
+                buffer.putChar(offset, buffer.getChar(offset + Character.BYTES));
+                buffer.putChar(offset + Character.BYTES, edgeChar);
+            }, edgeOffset},
+        };
+    }
+
+    @Test(dataProvider = "invalidSchemeMatcherProvider")
+    public void testReadInvalidSchemeMatcher(final BiConsumer<ByteBuffer, Integer> corruption, final int offset)
+        throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(bytes)) {
+            RegistrySnapshot.writeSchemeMatcher(out, registry.getSchemeMatcher());
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        corruption.accept(buffer, offset);
+
+        final int numEndpoints = registry.getProviders().stream()
+            .mapToInt(provider -> provider.getEndpoints().size()).sum();
+        catchException(() -> RegistrySnapshot.readSchemeMatcher(buffer, numEndpoints));
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void testLoadFromSnapshotFallback() {
+        snapshotFile.delete();
+
+        final DefaultOEmbedRegistry fallbackRegistry = DefaultOEmbedRegistry.loadFromSnapshot(snapshotFile, providerURI);
+        assertThat(fallbackRegistry.numProviders(), is(5));
+        // The fallback writes a fresh snapshot for the next load
+        assertThat(RegistrySnapshot.read(snapshotFile).isPresent(), is(true));
+        assertThat(DefaultOEmbedRegistry.loadFromSnapshot(snapshotFile, providerURI).numProviders(), is(5));
+    }
+
+    private static int findBranchingNode(final SchemeMatcher schemeMatcher) {
+        final int[] edgeStart = schemeMatcher.getEdgeStart();
+        for (int node = 0; node < edgeStart.length - 1; node++) {
+            if (edgeStart[node + 1] - edgeStart[node] >= 2) {
+                return node;
+            }
+        }
+        throw new IllegalStateException("Scheme matcher has no branching node");
+    }
+
+    // OEmbedEndpoints hold compiled patterns, which have no value equality
+    private static List<String> describe(final List<OEmbedProvider> providers) {
+        return providers.stream()
+            .flatMap(provider -> provider.getEndpoints().stream().map(endpoint -> provider.getName() + " "
+                + provider.getURI() + " " + endpoint.getDiscoveryEnabled() + " " + endpoint.getSupportedFormats()
+                + " " + endpoint.getSchemeTemplates() + " " + endpoint.getURITemplate()))
+            .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,60 @@
+package net.spals.oembed4j.client.registry;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit tests for {@link SchemeMatcher}
+ *
+ * @author tkral
+ */
+public class SchemeMatcherTest {
+
+    private final SchemeMatcher schemeMatcher = SchemeMatcher.builder()
+        .addTemplate("https://vimeo.com/*", 0)
+        .addTemplate("https://vimeo.com/album/*/video/*", 1)
+        .addTemplate("https://*.youtube.com/watch*", 2)
+        .addTemplate("https://www.example.com/*/path/*", 3)
+        .addTemplate("https://www.example.com/**/other", 4)
+        .addTemplate("https://exact.example.com/", 5)
+        .build();
+
+    @DataProvider
+    Object[][] allMatchesProvider() {
+        return new Object[][] {
+            {"https://vimeo.com/1", new int[]{0}},
+            {"https://vimeo.com/", new int[]{0}},
+            {"https://vimeo.com/album/1/video/2", new int[]{0, 1}},
+            {"https://m.youtube.com/watch?v=1", new int[]{2}},
+            {"https://.youtube.com/watch", new int[]{2}},
+            {"https://www.example.com/a/path/b", new int[]{3}},
+            {"https://www.example.com/a/path/path/b", new int[]{3}},
+            {"https://www.example.com/a/b/other", new int[]{4}},
+            {"https://exact.example.com/", new int[]{5}},
+            // Case: No match
+            {"https://exact.example.com/more", new int[0]},
+            {"https://www.example.com/a/b", new int[0]},
+            {"http://vimeo.com/1", new int[0]},
+            {"https://vimeoXcom/1", new int[0]},
+            {"", new int[0]},
+            // Case: Non-ASCII input
+            {"https://vimeo.com/\u00e9t\u00e9", new int[]{0}},
+        };
+    }
+
+    @Test(dataProvider = "allMatchesProvider")
+    public void testAllMatches(final String resourceURI, final int[] expectedMatches) {
+        assertThat(schemeMatcher.allMatches(resourceURI), is(expectedMatches));
+        // Matching is repeatable once the lazy DFA states are cached
+        assertThat(schemeMatcher.allMatches(resourceURI), is(expectedMatches));
+    }
+
+    @Test
+    public void testFirstMatch() {
+        assertThat(schemeMatcher.firstMatch("https://vimeo.com/album/1/video/2"), is(0));
+        assertThat(schemeMatcher.firstMatch("https://www.example.com/"), is(SchemeMatcher.NO_MATCH));
+    }
+}
@@ -0,0 +1,853 @@
+package net.spals.oembed4j.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.spals.oembed4j.client.cache.OEmbedResponseCache;
+import net.spals.oembed4j.client.cache.OEmbedResponseCacheConfig;
+import net.spals.oembed4j.client.cache.OEmbedResponseValidators;
+import net.spals.oembed4j.client.cache.TinyLfuResponseCache;
+import net.spals.oembed4j.client.parser.OEmbedResponseParser;
+import net.spals.oembed4j.client.registry.OEmbedRegistry;
+import net.spals.oembed4j.model.OEmbedEndpoint;
+import net.spals.oembed4j.model.OEmbedRequest;
+import net.spals.oembed4j.model.OEmbedResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.ByteArrayInputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Base of the {@link OEmbedClient} implementations, which
+ * provides everything but the HTTP transport: endpoint lookup,
+ * response caching, request coalescing, batching and parsing.
+ *
+ * @author tkral
+ */
+abstract class AbstractOEmbedClient implements OEmbedClient {
+
+    private static final X509TrustManager DEFAULT_TRUST_MANAGER = new X509TrustManager() {
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+
+        @Override
+        public void checkClientTrusted(final X509Certificate[] x509Certificates, final String s) {
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] x509Certificates, final String s) {
+        }
+    };
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractOEmbedClient.class);
+
+    private final OEmbedRegistry registry;
+    private final OEmbedClientConfig config;
+    private final OEmbedResponseCache responseCache;
+    private final OEmbedResponseParser responseParser;
+    private final HostConcurrencyLimiter concurrencyLimiter;
+    private final ScheduledExecutorService scheduler;
+    private final RequestCoalescer<OEmbedRequest, OEmbedResult> requestCoalescer;
+    private final Optional<RequestHedger> requestHedger;
+    private final Optional<HostCircuitBreaker> circuitBreaker;
+    private final HostRateLimiter rateLimiter;
+    private final Optional<RequestRetrier> requestRetrier;
+    private final ResponseTtlPolicy ttlPolicy;
+    private final Optional<RefreshAheadScheduler<OEmbedRequest>> refreshAheadScheduler;
+
+    AbstractOEmbedClient(final OEmbedRegistry registry, final OEmbedClientConfig config) {
+        this.registry = registry;
+        this.config = config;
+        // 1. Build response cache, which retains expired responses for as long as they may be served stale
+        this.responseCache = config.getResponseCache().orElseGet(() -> TinyLfuResponseCache.create(
+                new OEmbedResponseCacheConfig.Builder()
+                        .setExpiredEntryRetention(getExpiredResponseRetention(config))
+                        .build()));
+        // 2. Build response parser
+        this.responseParser = new OEmbedResponseParser();
+        // 3. Build scheduler for timed tasks
+        final ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat("oembed4j-scheduler-%d").setDaemon(true).build());
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduledExecutor;
+        // 4. Build concurrency limiter, with adaptive limits per host if configured
+        this.concurrencyLimiter = config.getAdaptiveConcurrency()
+                .map(adaptiveConfig -> new HostConcurrencyLimiter(config.getMaxConcurrentRequests(), adaptiveConfig,
+                        scheduler))
+                .orElseGet(() -> new HostConcurrencyLimiter(
+                        config.getMaxConcurrentRequests(), config.getMaxConcurrentRequestsPerHost()));
+        // 5. Build request coalescer, which caches the responses it fetches
+        this.requestCoalescer = new RequestCoalescer<>(this::cacheResponse, config.getMaxCoalescedWait().toNanos(),
+                scheduler);
+        // 6. Build request hedger, if slow requests are to be hedged
+        this.requestHedger = config.getHedging().map(hedgingConfig -> new RequestHedger(hedgingConfig, scheduler));
+        // 7. Build circuit breaker, if requests to unhealthy hosts are to fail fast
+        this.circuitBreaker = config.getCircuitBreaker().map(HostCircuitBreaker::new);
+        // 8. Build rate limiter, which also suspends requests to hosts which ask for it
+        this.rateLimiter = new HostRateLimiter(config, scheduler);
+        // 9. Build request retrier, if failed requests are to be retried
+        this.requestRetrier = config.getRetries().map(retryConfig -> new RequestRetrier(retryConfig, scheduler));
+        // 10. Build TTL policy, which decides how long each provider's responses are cached
+        this.ttlPolicy = new ResponseTtlPolicy(config);
+        // 11. Build refresh-ahead scheduler, if popular responses are to be refreshed before they expire
+        this.refreshAheadScheduler = config.getRefreshAhead().map(refreshAheadConfig ->
+                new RefreshAheadScheduler<>(refreshAheadConfig, this::refreshAhead, scheduler));
+    }
+
+    /**
+     * Returns an {@link SSLContext} which trusts all hosts.
+     */
+    // TODO: DO we need some real SSL management?
+    static SSLContext newSslContext() throws GeneralSecurityException {
+        final SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null /*KeyManagers*/, new TrustManager[]{DEFAULT_TRUST_MANAGER}, new SecureRandom());
+        return sslContext;
+    }
+
+    /**
+     * @see OEmbedClient#close()
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * @see OEmbedClient#execute(OEmbedRequest)
+     */
+    @Override
+    public Optional<OEmbedResponse> execute(final OEmbedRequest request) {
+        final Optional<OEmbedResponse> cachedResponse = getCachedResponse(request);
+        // If we got a cache hit, return immediately
+        if (cachedResponse.isPresent()) {
+            return cachedResponse;
+        }
+        // Otherwise, look up the endpoint of the request once, for all that follows
+        final Optional<URI> uri = getMatchedURI(request);
+        final String host = getHost(uri);
+        ttlPolicy.onMiss(request, host);
+        // If the response expired only just now, serve it while it is refreshed
+        final Optional<OEmbedResponse> revalidatedResponse = getRevalidatedResponse(request, uri, host);
+        if (revalidatedResponse.isPresent()) {
+            return revalidatedResponse;
+        }
+        // If the provider is failing fast, serve an expired response if we still have one
+        final Optional<OEmbedResponse> staleResponse = getStaleResponse(request, uri);
+        if (staleResponse.isPresent()) {
+            return staleResponse;
+        }
+
+        // Otherwise, run the request, or wait for an identical one already running, and see if we can cache it.
+        // If it fails, serve an expired response if we may.
+        final Optional<OEmbedResponse> response;
+        try {
+            response = requestCoalescer.execute(request, () -> fetch(request, uri, host)).getResponse();
+        } catch (final RuntimeException e) {
+            final Optional<OEmbedResponse> staleIfError = getStaleIfErrorResponse(request, host);
+            if (!staleIfError.isPresent()) {
+                throw e;
+            }
+            LOGGER.info("serving stale response after failed request", e);
+            return staleIfError;
+        }
+        return response.isPresent() ? response : getStaleIfErrorResponse(request, host);
+    }
+
+    /**
+     * @see OEmbedClient#execute(OEmbedRequest, Instant)
+     */
+    @Override
+    public Optional<OEmbedResponse> execute(final OEmbedRequest request, final Instant deadline) {
+        if (!Instant.now().isBefore(deadline)) {
+            LOGGER.info("deadline passed before executing request: " + deadline);
+            return Optional.empty();
+        }
+
+        // Run the request without blocking, so that we can stop waiting for it at the deadline
+        final CompletableFuture<Optional<OEmbedResponse>> response = executeAsync(request);
+        try {
+            return response.get(nanosUntil(deadline), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            response.cancel(true);
+            LOGGER.info("deadline passed while executing request: " + deadline);
+            return Optional.empty();
+        } catch (final InterruptedException e) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (final ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * @see OEmbedClient#executeSkipCache(OEmbedRequest)
+     */
+    @Override
+    public Optional<OEmbedResponse> executeSkipCache(final OEmbedRequest request) {
+        return runRequest(request, Optional.empty()).getResponse();
+    }
+
+    /**
+     * @see OEmbedClient#executeSkipCache(OEmbedRequest, OEmbedEndpoint)
+     */
+    @Override
+    public Optional<OEmbedResponse> executeSkipCache(final OEmbedRequest request, final OEmbedEndpoint endpoint) {
+        return runTargetBlocking(request.toURI(endpoint), Optional.empty()).getResponse();
+    }
+
+    /**
+     * @see OEmbedClient#executeAsync(OEmbedRequest)
+     */
+    @Override
+    public CompletableFuture<Optional<OEmbedResponse>> executeAsync(final OEmbedRequest request) {
+        final Optional<OEmbedResponse> cachedResponse = getCachedResponse(request);
+        // If we got a cache hit, complete immediately
+        if (cachedResponse.isPresent()) {
+            return CompletableFuture.completedFuture(cachedResponse);
+        }
+        // Otherwise, look up the endpoint of the request once, for all that follows
+        final Optional<URI> uri = getMatchedURI(request);
+        final String host = getHost(uri);
+        ttlPolicy.onMiss(request, host);
+        // If the response expired only just now, serve it while it is refreshed
+        final Optional<OEmbedResponse> revalidatedResponse = getRevalidatedResponse(request, uri, host);
+        if (revalidatedResponse.isPresent()) {
+            return CompletableFuture.completedFuture(revalidatedResponse);
+        }
+        // If the provider is failing fast, serve an expired response if we still have one
+        final Optional<OEmbedResponse> staleResponse = getStaleResponse(request, uri);
+        if (staleResponse.isPresent()) {
+            return CompletableFuture.completedFuture(staleResponse);
+        }
+
+        // Otherwise, run the request, or attach to an identical one already running, and see if we can cache it.
+        // If it fails, serve an expired response if we may.
+        return withStaleIfError(request, host, map(requestCoalescer.executeAsync(request,
+                () -> fetchAsync(request, uri, host)), OEmbedResult::getResponse));
+    }
+
+    /**
+     * @see OEmbedClient#executeSkipCacheAsync(OEmbedRequest)
+     */
+    @Override
+    public CompletableFuture<Optional<OEmbedResponse>> executeSkipCacheAsync(final OEmbedRequest request) {
+        return map(runRequestAsync(request, Optional.empty()), OEmbedResult::getResponse);
+    }
+
+    /**
+     * @see OEmbedClient#executeSkipCacheAsync(OEmbedRequest, OEmbedEndpoint)
+     */
+    @Override
+    public CompletableFuture<Optional<OEmbedResponse>> executeSkipCacheAsync(
+        final OEmbedRequest request,
+        final OEmbedEndpoint endpoint
+    ) {
+        return map(runTargetGuarded(request.toURI(endpoint), Optional.empty(), isAdaptive()),
+                OEmbedResult::getResponse);
+    }
+
+    /**
+     * @see OEmbedClient#executeAll(Collection)
+     */
+    @Override
+    public Map<OEmbedRequest, OEmbedResult> executeAll(final Collection<OEmbedRequest> requests) {
+        return executeAllAsync(requests).join();
+    }
+
+    /**
+     * @see OEmbedClient#executeAllAsync(Collection)
+     */
+    @Override
+    public CompletableFuture<Map<OEmbedRequest, OEmbedResult>> executeAllAsync(final Collection<OEmbedRequest> requests) {
+        // Identical requests are only executed once
+        final Map<OEmbedRequest, CompletableFuture<OEmbedResult>> resultFutures = new LinkedHashMap<>();
+        requests.forEach(request -> resultFutures.computeIfAbsent(request, this::executeBatched));
+
+        return CompletableFuture.allOf(resultFutures.values().toArray(new CompletableFuture<?>[resultFutures.size()]))
+                .thenApply(ignored -> {
+                    final Map<OEmbedRequest, OEmbedResult> results = new LinkedHashMap<>();
+                    resultFutures.forEach((request, resultFuture) -> results.put(request, resultFuture.join()));
+                    return Collections.unmodifiableMap(results);
+                });
+    }
+
+    /**
+     * @see OEmbedClient#getCircuitBreakerStats()
+     */
+    @Override
+    public Map<String, OEmbedCircuitBreakerStats> getCircuitBreakerStats() {
+        return circuitBreaker.map(HostCircuitBreaker::getStats).orElse(Collections.emptyMap());
+    }
+
+    /**
+     * @see OEmbedClient#getConcurrencyStats()
+     */
+    @Override
+    public Map<String, OEmbedConcurrencyStats> getConcurrencyStats() {
+        return concurrencyLimiter.getStats();
+    }
+
+    /**
+     * @see OEmbedClient#getCacheStats()
+     */
+    @Override
+    public Map<String, OEmbedCacheStats> getCacheStats() {
+        return ttlPolicy.getStats();
+    }
+
+    @VisibleForTesting
+    OEmbedResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    @VisibleForTesting
+    Optional<RequestHedger> getRequestHedger() {
+        return requestHedger;
+    }
+
+    @VisibleForTesting
+    Optional<RefreshAheadScheduler<OEmbedRequest>> getRefreshAheadScheduler() {
+        return refreshAheadScheduler;
+    }
+
+    @VisibleForTesting
+    HostRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    @VisibleForTesting
+    Optional<RequestRetrier> getRequestRetrier() {
+        return requestRetrier;
+    }
+
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Returns the timeouts of exchanges with the host of the given URI.
+     */
+    OEmbedTimeouts getTimeouts(final URI uri) {
+        final OEmbedTimeouts hostTimeouts = config.getTimeoutsByHost().get(getHost(uri));
+        return hostTimeouts != null ? hostTimeouts : config.getTimeouts();
+    }
+
+    /**
+     * Requests the given oEmbed URI, following redirects, on the calling thread.
+     * A conditional request results in its cached response if the provider
+     * confirms that it wasn't modified.
+     */
+    abstract OEmbedResult runTarget(URI uri, Optional<ConditionalRequest> conditionalRequest);
+
+    /**
+     * Version of {@link #runTarget(URI, Optional)} which doesn't block the calling
+     * thread. Cancelling the returned future aborts the request.
+     */
+    abstract CompletableFuture<OEmbedResult> runTargetAsync(URI uri, Optional<ConditionalRequest> conditionalRequest);
+
+    /**
+     * Runs the given request against its endpoint, on the calling thread,
+     * without looking in the cache. The result carries what the provider's
+     * HTTP headers say of caching the response, if anything.
+     */
+    OEmbedResult runRequest(final OEmbedRequest request, final Optional<ConditionalRequest> conditionalRequest) {
+        return runRequest(request, getMatchedURI(request), conditionalRequest);
+    }
+
+    /**
+     * Version of {@link #runRequest(OEmbedRequest, Optional)} which runs the
+     * request against the given oEmbed URI of its endpoint, if it has one,
+     * which was already looked up in the registry.
+     */
+    OEmbedResult runRequest(
+        final OEmbedRequest request,
+        final Optional<URI> uri,
+        final Optional<ConditionalRequest> conditionalRequest
+    ) {
+        return uri.map(matchedURI -> runTargetBlocking(matchedURI, conditionalRequest))
+                .orElseGet(() -> noMatchingEndpoint(request));
+    }
+
+    /**
+     * Asynchronous version of {@link #runRequest(OEmbedRequest, Optional)}.
+     */
+    CompletableFuture<OEmbedResult> runRequestAsync(
+        final OEmbedRequest request,
+        final Optional<ConditionalRequest> conditionalRequest
+    ) {
+        return runRequestAsync(request, getMatchedURI(request), conditionalRequest);
+    }
+
+    /**
+     * Asynchronous version of {@link #runRequest(OEmbedRequest, Optional, Optional)}.
+     */
+    CompletableFuture<OEmbedResult> runRequestAsync(
+        final OEmbedRequest request,
+        final Optional<URI> uri,
+        final Optional<ConditionalRequest> conditionalRequest
+    ) {
+        return uri.map(matchedURI -> runTargetGuarded(matchedURI, conditionalRequest, isAdaptive()))
+                .orElseGet(() -> CompletableFuture.completedFuture(noMatchingEndpoint(request)));
+    }
+
+    /**
+     * Parses an entity read from a successful response, which may be cached
+     * for the given freshness lifetime of its HTTP caching headers, if any.
+     * The lifetime and the response's validators, if any, are carried
+     * by the result, alongside the unchanged response.
+     */
+    OEmbedResult parseEntity(
+        final byte[] entity,
+        final String mediaType,
+        final Optional<Duration> freshnessLifetime,
+        final Optional<String> entityTag,
+        final Optional<String> lastModified
+    ) {
+        return responseParser.parse(new ByteArrayInputStream(entity), mediaType)
+                .map(response -> {
+                    final OEmbedResult.Builder resultBuilder = new OEmbedResult.Builder()
+                            .setResponse(response)
+                            .setFreshnessLifetime(freshnessLifetime);
+                    if (entityTag.isPresent() || lastModified.isPresent()) {
+                        resultBuilder.setValidators(new OEmbedResponseValidators.Builder()
+                                .setEntityTag(entityTag)
+                                .setLastModified(lastModified)
+                                .setEntityLength(entity.length)
+                                .build());
+                    }
+                    return resultBuilder.build();
+                })
+                .orElseGet(() -> OEmbedResult.failure(OEmbedFailureReason.UNREADABLE_RESPONSE,
+                        "unparseable entity of type " + mediaType));
+    }
+
+    /**
+     * Maps the result of the given future, such that cancelling
+     * the mapped future also cancels the given one.
+     */
+    static <S, T> CompletableFuture<T> map(final CompletableFuture<S> future, final Function<S, T> mapper) {
+        final CompletableFuture<T> mappedFuture = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(final boolean mayInterruptIfRunning) {
+                final boolean cancelled = super.cancel(mayInterruptIfRunning);
+                future.cancel(mayInterruptIfRunning);
+                return cancelled;
+            }
+        };
+        future.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                mappedFuture.completeExceptionally(throwable);
+                return;
+            }
+            try {
+                mappedFuture.complete(mapper.apply(result));
+            } catch (final RuntimeException e) {
+                mappedFuture.completeExceptionally(e);
+            }
+        });
+        return mappedFuture;
+    }
+
+    // Counts a hit against the provider host of the request, without reaching the registry.
+    // Callers count a miss once they have looked up the request's endpoint.
+    private Optional<OEmbedResponse> getCachedResponse(final OEmbedRequest request) {
+        refreshAheadScheduler.ifPresent(refreshAhead -> refreshAhead.onAccess(request));
+        final Optional<OEmbedResponse> cachedResponse = responseCache.get(request);
+        cachedResponse.ifPresent(response -> ttlPolicy.onHit(request));
+        return cachedResponse;
+    }
+
+    private void cacheResponse(final OEmbedRequest request, final OEmbedResult result) {
+        if (result.getResponse().isPresent()) {
+            cacheResponse(request, getProviderHost(request), result);
+        }
+    }
+
+    private void cacheResponse(final OEmbedRequest request, final String host, final OEmbedResult result) {
+        final OEmbedResponse response = result.getResponse().get();
+        final Duration timeToLive = ttlPolicy.getTimeToLive(host, response, result.getFreshnessLifetime());
+        // The validators are cached along with the response, so that it can be revalidated once it expires
+        final Optional<OEmbedResponseValidators> validators = result.getValidators();
+        if (validators.isPresent()) {
+            responseCache.put(request, response, timeToLive, validators.get());
+        } else {
+            responseCache.put(request, response, timeToLive);
+        }
+        refreshAheadScheduler.ifPresent(refreshAhead -> refreshAhead.onCached(request, timeToLive));
+    }
+
+    // Refreshes a popular response before it expires. The refresh is coalesced
+    // with any other fetch, and caching its response schedules the next refresh.
+    private CompletableFuture<OEmbedResult> refreshAhead(final OEmbedRequest request) {
+        final Optional<URI> uri = getMatchedURI(request);
+        final String host = getHost(uri);
+        ttlPolicy.onRefreshAhead(host);
+        return requestCoalescer.executeAsync(request, () -> fetchAsync(request, uri, host));
+    }
+
+    // Revalidates the expired response of the request if we can, or else runs the request in full
+    // against the given oEmbed URI of its endpoint, if any, and its host
+    private OEmbedResult fetch(final OEmbedRequest request, final Optional<URI> uri, final String host) {
+        final Optional<ConditionalRequest> conditionalRequest = getConditionalRequest(request, host);
+        final OEmbedResult result = runRequest(request, uri, conditionalRequest);
+        return conditionalRequest.map(conditional -> onRevalidated(host, conditional, result)).orElse(result);
+    }
+
+    private CompletableFuture<OEmbedResult> fetchAsync(
+        final OEmbedRequest request,
+        final Optional<URI> uri,
+        final String host
+    ) {
+        final Optional<ConditionalRequest> conditionalRequest = getConditionalRequest(request, host);
+        return map(runRequestAsync(request, uri, conditionalRequest), result ->
+                conditionalRequest.map(conditional -> onRevalidated(host, conditional, result)).orElse(result));
+    }
+
+    // Revalidates an expired response within its host's revalidation window, if it has validators
+    private Optional<ConditionalRequest> getConditionalRequest(final OEmbedRequest request, final String host) {
+        final Duration revalidationWindow = ttlPolicy.getPolicy(host).getRevalidationWindow();
+        if (revalidationWindow.isZero()) {
+            return Optional.empty();
+        }
+        final Optional<OEmbedResponseValidators> validators = responseCache.getValidators(request);
+        if (!validators.isPresent()) {
+            return Optional.empty();
+        }
+        return responseCache.getStale(request, revalidationWindow)
+                .map(staleResponse -> new ConditionalRequest(staleResponse, validators.get()));
+    }
+
+    // Counts what a response which wasn't modified saved
+    private OEmbedResult onRevalidated(
+        final String host,
+        final ConditionalRequest conditionalRequest,
+        final OEmbedResult result
+    ) {
+        if (result.isNotModified()) {
+            ttlPolicy.onNotModified(host, conditionalRequest.getValidators().getEntityLength());
+        }
+        return result;
+    }
+
+    // Only looks up the endpoint of the request if its provider host wasn't seen yet
+    private String getProviderHost(final OEmbedRequest request) {
+        return ttlPolicy.getProviderHost(request).orElseGet(() -> getHost(getMatchedURI(request)));
+    }
+
+    // The registry has already matched the resource URI, so the oEmbed URI doesn't match it again
+    private Optional<URI> getMatchedURI(final OEmbedRequest request) {
+        return registry.getEndpoint(request.getResourceURI()).map(request::toMatchedURI);
+    }
+
+    private CompletableFuture<OEmbedResult> executeBatched(final OEmbedRequest request) {
+        refreshAheadScheduler.ifPresent(refreshAhead -> refreshAhead.onAccess(request));
+        final Optional<OEmbedResponse> cachedResponse = responseCache.get(request);
+        // If we got a cache hit, complete immediately
+        if (cachedResponse.isPresent()) {
+            ttlPolicy.onHit(request);
+            return CompletableFuture.completedFuture(OEmbedResult.success(cachedResponse.get()));
+        }
+
+        final Optional<URI> matchedURI = getMatchedURI(request);
+        if (!matchedURI.isPresent()) {
+            return CompletableFuture.completedFuture(noMatchingEndpoint(request));
+        }
+
+        // If the response expired only just now, serve it while it is refreshed
+        final URI uri = matchedURI.get();
+        final String host = getHost(uri);
+        ttlPolicy.onMiss(request, host);
+        final Optional<OEmbedResponse> revalidatedResponse = getRevalidatedResponse(request, matchedURI, host);
+        if (revalidatedResponse.isPresent()) {
+            return CompletableFuture.completedFuture(OEmbedResult.success(revalidatedResponse.get()));
+        }
+        // If the provider is failing fast, serve an expired response if we still have one
+        final Optional<OEmbedResponse> staleResponse = getStaleResponse(request, uri);
+        if (staleResponse.isPresent()) {
+            return CompletableFuture.completedFuture(OEmbedResult.success(staleResponse.get()));
+        }
+
+        // Otherwise, run the request once the provider host has room, or attach to an identical one already
+        // running, and see if we can cache it. If it fails, serve an expired response if we may.
+        return requestCoalescer.executeAsync(request, () -> fetchBatched(request, uri, host))
+                .handle((result, throwable) -> {
+                    if (throwable == null && result.getResponse().isPresent()) {
+                        return result;
+                    }
+                    return getStaleIfErrorResponse(request, host).map(OEmbedResult::success)
+                            .orElseGet(() -> throwable != null ? failedResult(throwable) : result);
+                });
+    }
+
+    // Revalidates the expired response of the batched request if we can, or else runs the request in full
+    private CompletableFuture<OEmbedResult> fetchBatched(
+        final OEmbedRequest request,
+        final URI uri,
+        final String host
+    ) {
+        final Optional<ConditionalRequest> conditionalRequest = getConditionalRequest(request, host);
+        return map(runTargetGuarded(uri, conditionalRequest, true), result ->
+                conditionalRequest.map(conditional -> onRevalidated(host, conditional, result)).orElse(result));
+    }
+
+    // Serves an expired response within its host's stale-while-revalidate window, while
+    // refreshing it. Only one refresh runs at a time, as it is coalesced with any other fetch.
+    private Optional<OEmbedResponse> getRevalidatedResponse(
+        final OEmbedRequest request,
+        final Optional<URI> uri,
+        final String host
+    ) {
+        final Duration staleWhileRevalidate = ttlPolicy.getPolicy(host).getStaleWhileRevalidate();
+        if (staleWhileRevalidate.isZero()) {
+            return Optional.empty();
+        }
+        final Optional<OEmbedResponse> staleResponse = responseCache.getStale(request, staleWhileRevalidate);
+        if (staleResponse.isPresent()) {
+            ttlPolicy.onStale(host);
+            try {
+                requestCoalescer.executeAsync(request, () -> fetchAsync(request, uri, host));
+            } catch (final RuntimeException e) {
+                LOGGER.info("failed to refresh stale response", e);
+            }
+        }
+        return staleResponse;
+    }
+
+    // Serves an expired response within its host's stale-if-error window
+    private Optional<OEmbedResponse> getStaleIfErrorResponse(final OEmbedRequest request, final String host) {
+        final Duration staleIfError = ttlPolicy.getPolicy(host).getStaleIfError();
+        if (staleIfError.isZero()) {
+            return Optional.empty();
+        }
+        final Optional<OEmbedResponse> staleResponse = responseCache.getStale(request, staleIfError);
+        staleResponse.ifPresent(response -> ttlPolicy.onStale(host));
+        return staleResponse;
+    }
+
+    // Completes with the given future's response, or else with an expired response within the stale-if-error
+    // window, such that cancelling the returned future also cancels the given one
+    private CompletableFuture<Optional<OEmbedResponse>> withStaleIfError(
+        final OEmbedRequest request,
+        final String host,
+        final CompletableFuture<Optional<OEmbedResponse>> future
+    ) {
+        final CompletableFuture<Optional<OEmbedResponse>> responseFuture =
+                new CompletableFuture<Optional<OEmbedResponse>>() {
+                    @Override
+                    public boolean cancel(final boolean mayInterruptIfRunning) {
+                        final boolean cancelled = super.cancel(mayInterruptIfRunning);
+                        future.cancel(mayInterruptIfRunning);
+                        return cancelled;
+                    }
+                };
+        future.whenComplete((response, throwable) -> {
+            if (responseFuture.isDone()) {
+                return;
+            }
+            final Optional<OEmbedResponse> staleResponse = throwable == null && response.isPresent()
+                    ? Optional.empty() : getStaleIfErrorResponse(request, host);
+            if (staleResponse.isPresent()) {
+                responseFuture.complete(staleResponse);
+            } else if (throwable != null) {
+                responseFuture.completeExceptionally(throwable);
+            } else {
+                responseFuture.complete(response);
+            }
+        });
+        return responseFuture;
+    }
+
+    private Optional<OEmbedResponse> getStaleResponse(final OEmbedRequest request, final Optional<URI> uri) {
+        return uri.flatMap(matchedURI -> getStaleResponse(request, matchedURI));
+    }
+
+    private Optional<OEmbedResponse> getStaleResponse(final OEmbedRequest request, final URI uri) {
+        final Duration maxStaleResponseAge = getMaxStaleResponseAge(config);
+        if (maxStaleResponseAge.isZero() || !circuitBreaker.get().isOpen(getHost(uri))) {
+            return Optional.empty();
+        }
+        return responseCache.getStale(request, maxStaleResponseAge);
+    }
+
+    private static Duration getMaxStaleResponseAge(final OEmbedClientConfig config) {
+        return config.getCircuitBreaker().map(OEmbedCircuitBreakerConfig::getMaxStaleResponseAge).orElse(Duration.ZERO);
+    }
+
+    // The longest any expired response may be served, whether to fail fast or while refreshing
+    // it, or revalidated
+    private static Duration getExpiredResponseRetention(final OEmbedClientConfig config) {
+        final Stream<Duration> staleWindows =
+                Stream.concat(Stream.of(config.getCachePolicy()), config.getCachePoliciesByHost().values().stream())
+                        .flatMap(policy -> Stream.of(policy.getStaleWhileRevalidate(), policy.getStaleIfError(),
+                                policy.getRevalidationWindow()));
+        return Stream.concat(Stream.of(getMaxStaleResponseAge(config)), staleWindows)
+                .max(Comparator.naturalOrder()).get();
+    }
+
+    // Requests outside of a batch hold room within their host's adaptive concurrency limit, if any,
+    // so that the limit adapts to all of the host's load
+    private boolean isAdaptive() {
+        return config.getAdaptiveConcurrency().isPresent();
+    }
+
+    // Blocking requests run on the calling thread, unless they may need a hedge alongside them. Like
+    // asynchronous ones, they are retried and paced as in runTargetGuarded.
+    private OEmbedResult runTargetBlocking(final URI uri, final Optional<ConditionalRequest> conditionalRequest) {
+        final String host = getHost(uri);
+        final Supplier<OEmbedResult> target = () -> {
+            if (!requestHedger.isPresent()) {
+                return runTarget(uri, conditionalRequest);
+            }
+            try {
+                return runTargetHedged(uri, conditionalRequest).join();
+            } catch (final CompletionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        };
+        final Supplier<OEmbedResult> guardedTarget = () ->
+                circuitBreaker.map(breaker -> breaker.executeBlocking(host, target)).orElseGet(target);
+        final Supplier<OEmbedResult> attempt = () -> rateLimiter.executeBlocking(host, () ->
+                isAdaptive() ? limitBlocking(host, guardedTarget) : guardedTarget.get());
+        return requestRetrier.map(retrier -> retrier.executeBlocking(host, attempt)).orElseGet(attempt);
+    }
+
+    // Retries the request, if configured, each attempt of which is paced by the host's rate limiter and
+    // guarded by the host's circuit breaker, if any. Only while an attempt is sent does it hold room within
+    // the host's concurrency limit, if limited, so that an adaptive limit never mistakes a wait for a retry
+    // or for the rate limiter for a slow host.
+    private CompletableFuture<OEmbedResult> runTargetGuarded(
+        final URI uri,
+        final Optional<ConditionalRequest> conditionalRequest,
+        final boolean limited
+    ) {
+        final String host = getHost(uri);
+        final Supplier<CompletableFuture<OEmbedResult>> guardedTarget = () -> circuitBreaker
+                .map(breaker -> breaker.execute(host, () -> runTargetHedged(uri, conditionalRequest)))
+                .orElseGet(() -> runTargetHedged(uri, conditionalRequest));
+        final Supplier<CompletableFuture<OEmbedResult>> attempt = () -> rateLimiter.execute(host,
+                limited ? () -> limit(host, guardedTarget) : guardedTarget);
+        return requestRetrier.map(retrier -> retrier.execute(host, attempt)).orElseGet(attempt);
+    }
+
+    // Rejected attempts fail with a result, and cancelling the result cancels the attempt
+    private CompletableFuture<OEmbedResult> limit(
+        final String host,
+        final Supplier<CompletableFuture<OEmbedResult>> attempt
+    ) {
+        final CompletableFuture<OEmbedResult> limitedAttempt =
+                concurrencyLimiter.submit(host, attempt, AbstractOEmbedClient::isOverloaded);
+        final CompletableFuture<OEmbedResult> resultFuture = new CompletableFuture<OEmbedResult>() {
+            @Override
+            public boolean cancel(final boolean mayInterruptIfRunning) {
+                final boolean cancelled = super.cancel(mayInterruptIfRunning);
+                limitedAttempt.cancel(mayInterruptIfRunning);
+                return cancelled;
+            }
+        };
+        limitedAttempt.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                resultFuture.complete(result);
+            } else if (throwable instanceof RejectedExecutionException) {
+                resultFuture.complete(failedResult(throwable));
+            } else {
+                resultFuture.completeExceptionally(throwable);
+            }
+        });
+        return resultFuture;
+    }
+
+    private OEmbedResult limitBlocking(final String host, final Supplier<OEmbedResult> attempt) {
+        try {
+            return concurrencyLimiter.executeBlocking(host, attempt, AbstractOEmbedClient::isOverloaded);
+        } catch (final RejectedExecutionException | CancellationException e) {
+            return failedResult(e);
+        }
+    }
+
+    private CompletableFuture<OEmbedResult> runTargetHedged(
+        final URI uri,
+        final Optional<ConditionalRequest> conditionalRequest
+    ) {
+        return requestHedger.map(hedger -> hedger.execute(getHost(uri), () -> runTargetAsync(uri, conditionalRequest)))
+                .orElseGet(() -> runTargetAsync(uri, conditionalRequest));
+    }
+
+    private static OEmbedResult noMatchingEndpoint(final OEmbedRequest request) {
+        return OEmbedResult.failure(OEmbedFailureReason.NO_MATCHING_ENDPOINT,
+                "no endpoint matches " + request.getResourceURI());
+    }
+
+    private static OEmbedResult failedResult(final Throwable throwable) {
+        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
+        if (cause instanceof CancellationException) {
+            return OEmbedResult.failure(OEmbedFailureReason.CANCELLED, "request cancelled");
+        }
+        if (cause instanceof RejectedExecutionException) {
+            LOGGER.info("request rejected", cause);
+            return OEmbedResult.failure(OEmbedFailureReason.CONCURRENCY_LIMITED, String.valueOf(cause.getMessage()));
+        }
+        // Transports report timeouts as socket timeouts, possibly wrapped
+        if (Throwables.getCausalChain(cause).stream().anyMatch(t -> t instanceof InterruptedIOException)) {
+            LOGGER.info("request timed out", cause);
+            return OEmbedResult.failure(OEmbedFailureReason.TIMED_OUT, String.valueOf(cause));
+        }
+        LOGGER.info("request failed", cause);
+        return OEmbedResult.failure(OEmbedFailureReason.REQUEST_FAILED, String.valueOf(cause));
+    }
+
+    // Failing fast on an open circuit also tells that the host can't take more requests. Rate limited
+    // attempts are never sent, so they don't hold room within the concurrency limit at all.
+    private static boolean isOverloaded(final OEmbedResult result) {
+        return HostCircuitBreaker.isFailure(result) || result.getFailureReason()
+                .filter(reason -> reason == OEmbedFailureReason.CIRCUIT_OPEN)
+                .isPresent();
+    }
+
+    private static String getHost(final URI uri) {
+        return Optional.ofNullable(uri.getHost()).map(host -> host.toLowerCase(Locale.ROOT)).orElse("");
+    }
+
+    // Requests without a matching endpoint, which have no provider host, count as an empty one
+    private static String getHost(final Optional<URI> uri) {
+        return uri.map(AbstractOEmbedClient::getHost).orElse("");
+    }
+
+    private static long nanosUntil(final Instant deadline) {
+        final Duration remaining = Duration.between(Instant.now(), deadline);
+        // Saturate deadlines too far away to count in nanoseconds
+        return remaining.getSeconds() >= TimeUnit.NANOSECONDS.toSeconds(Long.MAX_VALUE)
+                ? Long.MAX_VALUE : remaining.toNanos();
+    }
+}
@@ -0,0 +1,40 @@
+package net.spals.oembed4j.client;
+
+/**
+ * An additive increase, multiplicative decrease (AIMD) limit
+ * on the tasks in flight against a single host.
+ *
+ * Not thread safe; guarded by its {@link HostConcurrencyLimiter}.
+ *
+ * @author tkral
+ */
+final class AimdConcurrencyLimit {
+
+    private final OEmbedAdaptiveConcurrencyConfig config;
+    private double limit;
+
+    AimdConcurrencyLimit(final OEmbedAdaptiveConcurrencyConfig config) {
+        this.config = config;
+        this.limit = config.getInitialLimit();
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Adjusts the limit to the outcome of a completed task.
+     *
+     * @param latencyNanos How long the task took
+     * @param inFlight The number of tasks in flight, including this one, when it completed
+     * @param dropped Whether the task failed in a way that tells of an overloaded host
+     */
+    void onSample(final long latencyNanos, final int inFlight, final boolean dropped) {
+        if (dropped || latencyNanos > config.getSlowLatencyThreshold().toNanos()) {
+            limit = Math.max(config.getMinLimit(), limit * config.getBackoffRatio());
+        } else if (inFlight * 2 >= getLimit()) {
+            // Only grow while the limit is in use, or an idle host would earn an unbounded limit
+            limit = Math.min(config.getMaxLimit(), limit + 1.0 / limit);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package net.spals.oembed4j.client;
+
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.glassfish.jersey.client.HttpUrlConnectorProvider;
+
+import javax.ws.rs.client.ClientRequestFilter;
+import java.net.HttpURLConnection;
+import java.util.concurrent.Future;
+
+/**
+ * Tracks the HTTP exchange behind a single asynchronous
+ * oEmbed request, so that it can be aborted.
+ *
+ * Jersey runs an asynchronous request on one of its own threads:
+ * request filters run first, followed by the connector, which opens
+ * or leases the connection. The exchange travels with the request
+ * as a property, is bound to that thread by {@link #bindingFilter()},
+ * and then picks up the connection from {@link #connectionFactory()}
+ * or {@link #connectionManager(HttpClientConnectionManager)}.
+ * Aborting the exchange closes the connection, which fails any
+ * read or write blocked on it. Once a response has arrived, its body is
+ * left to be read and discarded instead, as {@link HttpURLConnection}
+ * would otherwise block the aborting thread until the read finishes,
+ * and a pooled connection is about to be returned for reuse.
+ *
+ * An exchange may span several requests when redirects are followed.
+ *
+ * @author tkral
+ */
+final class AsyncExchange {
+
+    static final String PROPERTY = AsyncExchange.class.getName();
+
+    private static final ThreadLocal<AsyncExchange> CURRENT_EXCHANGE = new ThreadLocal<>();
+
+    private volatile boolean aborted = false;
+    private volatile boolean responseReceived = false;
+    // Closes the current connection
+    private volatile Runnable disconnect;
+    private volatile Future<?> invocation;
+
+    /**
+     * Returns a request filter which binds the exchange of
+     * each request, if any, to the thread running it.
+     */
+    static ClientRequestFilter bindingFilter() {
+        return requestContext -> {
+            final Object exchange = requestContext.getProperty(PROPERTY);
+            if (exchange instanceof AsyncExchange) {
+                CURRENT_EXCHANGE.set((AsyncExchange) exchange);
+            } else {
+                CURRENT_EXCHANGE.remove();
+            }
+        };
+    }
+
+    /**
+     * Returns a connection factory which attaches every opened
+     * connection to the exchange bound to the current thread.
+     */
+    static HttpUrlConnectorProvider.ConnectionFactory connectionFactory() {
+        return url -> {
+            final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            final AsyncExchange exchange = takeCurrent();
+            if (exchange != null) {
+                exchange.attach(connection::disconnect);
+            }
+            return connection;
+        };
+    }
+
+    /**
+     * Returns a connection manager which attaches every leased
+     * connection to the exchange bound to the current thread.
+     */
+    static HttpClientConnectionManager connectionManager(final HttpClientConnectionManager delegate) {
+        return new ExchangeTrackingConnectionManager(delegate);
+    }
+
+    /**
+     * Returns the exchange bound to the current thread, if any, and unbinds it.
+     */
+    static AsyncExchange takeCurrent() {
+        final AsyncExchange exchange = CURRENT_EXCHANGE.get();
+        if (exchange != null) {
+            CURRENT_EXCHANGE.remove();
+        }
+        return exchange;
+    }
+
+    boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Aborts the exchange, disconnecting its current connection
+     * and cancelling its current invocation.
+     */
+    void abort() {
+        aborted = true;
+        if (!responseReceived) {
+            disconnect(disconnect);
+        }
+        cancel(invocation);
+    }
+
+    void attach(final Runnable disconnect) {
+        this.disconnect = disconnect;
+        this.responseReceived = false;
+        // Aborted while the connection was being opened
+        if (aborted) {
+            disconnect(disconnect);
+        }
+    }
+
+    /**
+     * Marks that the response to the current request has arrived.
+     */
+    void responseReceived() {
+        responseReceived = true;
+    }
+
+    void attach(final Future<?> invocation) {
+        this.invocation = invocation;
+        if (aborted) {
+            cancel(invocation);
+        }
+    }
+
+    private static void disconnect(final Runnable disconnect) {
+        if (disconnect != null) {
+            disconnect.run();
+        }
+    }
+
+    private static void cancel(final Future<?> invocation) {
+        if (invocation != null) {
+            invocation.cancel(true);
+        }
+    }
+}
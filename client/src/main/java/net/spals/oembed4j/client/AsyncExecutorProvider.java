@@ -0,0 +1,38 @@
+package net.spals.oembed4j.client;
+
+import org.glassfish.jersey.client.ClientAsyncExecutor;
+import org.glassfish.jersey.spi.ExecutorServiceProvider;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Supplies Jersey with the executor on which it
+ * runs asynchronous client requests.
+ *
+ * @author tkral
+ */
+@ClientAsyncExecutor
+final class AsyncExecutorProvider implements ExecutorServiceProvider {
+
+    private final ExecutorService executorService;
+
+    AsyncExecutorProvider(final ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * @see ExecutorServiceProvider#getExecutorService()
+     */
+    @Override
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * @see ExecutorServiceProvider#dispose(ExecutorService)
+     */
+    @Override
+    public void dispose(final ExecutorService executorService) {
+        executorService.shutdownNow();
+    }
+}
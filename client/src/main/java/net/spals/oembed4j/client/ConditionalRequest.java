@@ -0,0 +1,56 @@
+package net.spals.oembed4j.client;
+
+import net.spals.oembed4j.client.cache.OEmbedResponseValidators;
+import net.spals.oembed4j.model.OEmbedResponse;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A request to revalidate an expired response with its provider,
+ * which answers with the response only if it was modified.
+ *
+ * @author tkral
+ */
+final class ConditionalRequest {
+
+    static final int NOT_MODIFIED = 304;
+
+    private final OEmbedResponse cachedResponse;
+    private final OEmbedResponseValidators validators;
+
+    ConditionalRequest(final OEmbedResponse cachedResponse, final OEmbedResponseValidators validators) {
+        this.cachedResponse = cachedResponse;
+        this.validators = validators;
+    }
+
+    OEmbedResponseValidators getValidators() {
+        return validators;
+    }
+
+    /**
+     * Returns the headers which make the request conditional on the response having been modified.
+     */
+    Map<String, String> getHeaders() {
+        final Map<String, String> headers = new LinkedHashMap<>();
+        validators.getEntityTag().ifPresent(entityTag -> headers.put("If-None-Match", entityTag));
+        validators.getLastModified().ifPresent(lastModified -> headers.put("If-Modified-Since", lastModified));
+        return headers;
+    }
+
+    /**
+     * Returns the result of the provider confirming that the response wasn't
+     * modified, which may be cached for the given freshness lifetime of its
+     * HTTP caching headers, if any.
+     */
+    OEmbedResult notModified(final Optional<Duration> freshnessLifetime) {
+        return new OEmbedResult.Builder()
+            .setResponse(cachedResponse)
+            .setNotModified(true)
+            .setValidators(validators)
+            .setFreshnessLifetime(freshnessLifetime)
+            .build();
+    }
+}
@@ -0,0 +1,135 @@
+package net.spals.oembed4j.client;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link HttpClientConnectionManager} which attaches each connection
+ * it leases to the {@link AsyncExchange} bound to the leasing thread,
+ * so that the exchange can be aborted.
+ *
+ * @author tkral
+ */
+final class ExchangeTrackingConnectionManager implements HttpClientConnectionManager {
+
+    private final HttpClientConnectionManager delegate;
+
+    ExchangeTrackingConnectionManager(final HttpClientConnectionManager delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @see HttpClientConnectionManager#requestConnection(HttpRoute, Object)
+     */
+    @Override
+    public ConnectionRequest requestConnection(final HttpRoute route, final Object state) {
+        final ConnectionRequest connectionRequest = delegate.requestConnection(route, state);
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(final long timeout, final TimeUnit timeUnit)
+                throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                final HttpClientConnection connection = connectionRequest.get(timeout, timeUnit);
+                final AsyncExchange exchange = AsyncExchange.takeCurrent();
+                if (exchange != null) {
+                    exchange.attach(() -> shutdown(connection));
+                }
+                return connection;
+            }
+
+            @Override
+            public boolean cancel() {
+                return connectionRequest.cancel();
+            }
+        };
+    }
+
+    /**
+     * @see HttpClientConnectionManager#releaseConnection(HttpClientConnection, Object, long, TimeUnit)
+     */
+    @Override
+    public void releaseConnection(
+        final HttpClientConnection connection,
+        final Object newState,
+        final long validDuration,
+        final TimeUnit timeUnit
+    ) {
+        delegate.releaseConnection(connection, newState, validDuration, timeUnit);
+    }
+
+    /**
+     * @see HttpClientConnectionManager#connect(HttpClientConnection, HttpRoute, int, HttpContext)
+     */
+    @Override
+    public void connect(
+        final HttpClientConnection connection,
+        final HttpRoute route,
+        final int connectTimeout,
+        final HttpContext context
+    ) throws IOException {
+        delegate.connect(connection, route, connectTimeout, context);
+    }
+
+    /**
+     * @see HttpClientConnectionManager#upgrade(HttpClientConnection, HttpRoute, HttpContext)
+     */
+    @Override
+    public void upgrade(
+        final HttpClientConnection connection,
+        final HttpRoute route,
+        final HttpContext context
+    ) throws IOException {
+        delegate.upgrade(connection, route, context);
+    }
+
+    /**
+     * @see HttpClientConnectionManager#routeComplete(HttpClientConnection, HttpRoute, HttpContext)
+     */
+    @Override
+    public void routeComplete(
+        final HttpClientConnection connection,
+        final HttpRoute route,
+        final HttpContext context
+    ) throws IOException {
+        delegate.routeComplete(connection, route, context);
+    }
+
+    /**
+     * @see HttpClientConnectionManager#closeIdleConnections(long, TimeUnit)
+     */
+    @Override
+    public void closeIdleConnections(final long idleTime, final TimeUnit timeUnit) {
+        delegate.closeIdleConnections(idleTime, timeUnit);
+    }
+
+    /**
+     * @see HttpClientConnectionManager#closeExpiredConnections()
+     */
+    @Override
+    public void closeExpiredConnections() {
+        delegate.closeExpiredConnections();
+    }
+
+    /**
+     * @see HttpClientConnectionManager#shutdown()
+     */
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    private static void shutdown(final HttpClientConnection connection) {
+        try {
+            connection.shutdown();
+        } catch (final IOException e) {
+            // ignore the error, as the connection is being discarded anyway
+        }
+    }
+}
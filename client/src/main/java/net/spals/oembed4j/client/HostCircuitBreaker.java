@@ -0,0 +1,261 @@
+package net.spals.oembed4j.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Guards the requests to each host with a circuit breaker, which
+ * fails requests fast while the host is unhealthy.
+ *
+ * The outcomes of a host's recent requests are recorded in a window.
+ * Once enough of them have failed, or been slow, the host's circuit
+ * opens and its requests are rejected. After a while, the circuit
+ * half opens to let a few trial requests through, whose outcomes
+ * either close the circuit or open it again.
+ *
+ * @author tkral
+ */
+final class HostCircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HostCircuitBreaker.class);
+
+    private final OEmbedCircuitBreakerConfig config;
+    private final Ticker ticker;
+    private final ConcurrentMap<String, HostState> statesByHost = new ConcurrentHashMap<>();
+
+    HostCircuitBreaker(final OEmbedCircuitBreakerConfig config) {
+        this(config, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    HostCircuitBreaker(final OEmbedCircuitBreakerConfig config, final Ticker ticker) {
+        this.config = config;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Runs the given request against the given host, unless the host's
+     * circuit is open, in which case a {@link OEmbedFailureReason#CIRCUIT_OPEN}
+     * result is returned immediately.
+     */
+    CompletableFuture<OEmbedResult> execute(final String host, final Supplier<CompletableFuture<OEmbedResult>> request) {
+        final HostState hostState = getHostState(host);
+        final long permit = hostState.tryAcquire();
+        if (permit < 0L) {
+            return CompletableFuture.completedFuture(rejectedResult(host));
+        }
+
+        final long startNanos = ticker.read();
+        final CompletableFuture<OEmbedResult> resultFuture;
+        try {
+            resultFuture = request.get();
+        } catch (final RuntimeException e) {
+            hostState.onCompleted(permit, ticker.read() - startNanos, true);
+            throw e;
+        }
+        resultFuture.whenComplete((result, throwable) -> {
+            final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
+            if (cause instanceof CancellationException) {
+                // A cancelled request tells nothing about the host's health
+                hostState.onCancelled(permit);
+            } else {
+                hostState.onCompleted(permit, ticker.read() - startNanos, cause != null || isFailure(result));
+            }
+        });
+        return resultFuture;
+    }
+
+    /**
+     * Version of {@link #execute(String, Supplier)} which runs the request on the calling thread.
+     */
+    OEmbedResult executeBlocking(final String host, final Supplier<OEmbedResult> request) {
+        final HostState hostState = getHostState(host);
+        final long permit = hostState.tryAcquire();
+        if (permit < 0L) {
+            return rejectedResult(host);
+        }
+
+        final long startNanos = ticker.read();
+        final OEmbedResult result;
+        try {
+            result = request.get();
+        } catch (final RuntimeException e) {
+            hostState.onCompleted(permit, ticker.read() - startNanos, true);
+            throw e;
+        }
+        hostState.onCompleted(permit, ticker.read() - startNanos, isFailure(result));
+        return result;
+    }
+
+    /**
+     * Returns whether requests to the given host are currently rejected.
+     */
+    boolean isOpen(final String host) {
+        final HostState hostState = statesByHost.get(host);
+        return hostState != null && hostState.isOpen();
+    }
+
+    /**
+     * Returns a snapshot of the circuit breaker of each host which has been requested.
+     */
+    Map<String, OEmbedCircuitBreakerStats> getStats() {
+        final Map<String, OEmbedCircuitBreakerStats> statsByHost = new TreeMap<>();
+        statesByHost.forEach((host, hostState) -> statsByHost.put(host, hostState.getStats()));
+        return Collections.unmodifiableMap(statsByHost);
+    }
+
+    /**
+     * Returns whether the given result tells of an unhealthy host. Server errors
+     * and rate limiting do, unlike other unsuccessful responses.
+     */
+    static boolean isFailure(final OEmbedResult result) {
+        return result.getStatusCode().map(statusCode -> statusCode >= 500 || statusCode == 429).orElse(false)
+            || result.getFailureReason().map(reason -> reason == OEmbedFailureReason.TIMED_OUT
+                || reason == OEmbedFailureReason.REQUEST_FAILED).orElse(false);
+    }
+
+    private static OEmbedResult rejectedResult(final String host) {
+        return OEmbedResult.failure(OEmbedFailureReason.CIRCUIT_OPEN, "circuit open for host " + host);
+    }
+
+    private HostState getHostState(final String host) {
+        return statesByHost.computeIfAbsent(host, HostState::new);
+    }
+
+    /**
+     * The circuit of a single host.
+     */
+    private final class HostState {
+
+        private final String host;
+        private final boolean[] failedCalls = new boolean[config.getSlidingWindowSize()];
+        private final boolean[] slowCalls = new boolean[config.getSlidingWindowSize()];
+        // All guarded by this
+        private OEmbedCircuitState state = OEmbedCircuitState.CLOSED;
+        // Bumped on every transition, so that the outcomes of requests permitted before it are ignored
+        private long epoch = 0L;
+        private int bufferedCalls = 0;
+        private int nextCall = 0;
+        private int failedCallCount = 0;
+        private int slowCallCount = 0;
+        private int halfOpenPermits = 0;
+        private long openedAtNanos = 0L;
+        private long rejectedCalls = 0L;
+
+        private HostState(final String host) {
+            this.host = host;
+        }
+
+        /**
+         * Returns a permit to send a request, or a negative number if the request is rejected.
+         */
+        synchronized long tryAcquire() {
+            if (state == OEmbedCircuitState.OPEN) {
+                if (isOpen()) {
+                    rejectedCalls++;
+                    return -1L;
+                }
+                transitionTo(OEmbedCircuitState.HALF_OPEN);
+            }
+            if (state == OEmbedCircuitState.HALF_OPEN) {
+                if (halfOpenPermits >= config.getHalfOpenCalls()) {
+                    rejectedCalls++;
+                    return -1L;
+                }
+                halfOpenPermits++;
+            }
+            return epoch;
+        }
+
+        synchronized void onCompleted(final long permit, final long durationNanos, final boolean failed) {
+            if (permit != epoch) {
+                return;
+            }
+
+            // Replace the oldest outcome in the window
+            if (bufferedCalls == failedCalls.length) {
+                failedCallCount -= failedCalls[nextCall] ? 1 : 0;
+                slowCallCount -= slowCalls[nextCall] ? 1 : 0;
+            } else {
+                bufferedCalls++;
+            }
+            failedCalls[nextCall] = failed;
+            slowCalls[nextCall] = durationNanos >= config.getSlowCallDurationThreshold().toNanos();
+            failedCallCount += failedCalls[nextCall] ? 1 : 0;
+            slowCallCount += slowCalls[nextCall] ? 1 : 0;
+            nextCall = (nextCall + 1) % failedCalls.length;
+
+            if (state == OEmbedCircuitState.CLOSED && bufferedCalls >= config.getMinimumCalls() && isUnhealthy()) {
+                transitionTo(OEmbedCircuitState.OPEN);
+            } else if (state == OEmbedCircuitState.HALF_OPEN && bufferedCalls >= config.getHalfOpenCalls()) {
+                transitionTo(isUnhealthy() ? OEmbedCircuitState.OPEN : OEmbedCircuitState.CLOSED);
+            }
+        }
+
+        synchronized void onCancelled(final long permit) {
+            // Let another trial request take the cancelled one's place
+            if (permit == epoch && state == OEmbedCircuitState.HALF_OPEN) {
+                halfOpenPermits--;
+            }
+        }
+
+        synchronized boolean isOpen() {
+            return state == OEmbedCircuitState.OPEN
+                && ticker.read() - openedAtNanos < config.getOpenDuration().toNanos();
+        }
+
+        synchronized OEmbedCircuitBreakerStats getStats() {
+            return new OEmbedCircuitBreakerStats.Builder()
+                .setState(state)
+                .setBufferedCalls(bufferedCalls)
+                .setFailedCalls(failedCallCount)
+                .setSlowCalls(slowCallCount)
+                .setRejectedCalls(rejectedCalls)
+                .build();
+        }
+
+        private boolean isUnhealthy() {
+            return failedCallCount >= config.getFailureRateThreshold() * bufferedCalls
+                || slowCallCount >= config.getSlowCallRateThreshold() * bufferedCalls;
+        }
+
+        private void transitionTo(final OEmbedCircuitState toState) {
+            final OEmbedCircuitState fromState = state;
+            state = toState;
+            epoch++;
+            bufferedCalls = 0;
+            nextCall = 0;
+            failedCallCount = 0;
+            slowCallCount = 0;
+            Arrays.fill(failedCalls, false);
+            Arrays.fill(slowCalls, false);
+            halfOpenPermits = 0;
+            if (toState == OEmbedCircuitState.OPEN) {
+                openedAtNanos = ticker.read();
+            }
+
+            LOGGER.info("circuit for host " + host + " transitioned from " + fromState + " to " + toState);
+            for (final OEmbedCircuitBreakerListener listener : config.getListeners()) {
+                try {
+                    listener.onStateTransition(host, fromState, toState);
+                } catch (final RuntimeException e) {
+                    LOGGER.info("circuit breaker listener failed", e);
+                }
+            }
+        }
+    }
+}
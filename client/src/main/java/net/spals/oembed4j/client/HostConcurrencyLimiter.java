@@ -0,0 +1,368 @@
+package net.spals.oembed4j.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Limits how many asynchronous tasks run at once, both in
+ * total and against any single host.
+ *
+ * Tasks over either limit wait in a queue, in submission order,
+ * and never block the submitting thread. Whenever a task completes,
+ * the earliest queued tasks whose hosts have room are started.
+ * A queued task whose host is full does not hold up tasks for
+ * other hosts behind it.
+ *
+ * Tasks may instead be run on the calling thread, which then waits
+ * in the same queue until the task's host has room.
+ *
+ * The limit per host is either static, or adapts to the latency and
+ * failures of the host's tasks. Adaptive limits also bound how long a
+ * task may be queued, after which it fails with a
+ * {@link RejectedExecutionException}.
+ *
+ * @author tkral
+ */
+final class HostConcurrencyLimiter {
+
+    private final int maxConcurrentTasks;
+    private final int maxConcurrentTasksPerHost;
+    private final Optional<OEmbedAdaptiveConcurrencyConfig> adaptiveConfig;
+    private final Optional<ScheduledExecutorService> scheduler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // All guarded by the lock
+    private final Deque<LimitedTask<?>> queuedTasks = new ArrayDeque<>();
+    private final Map<String, Integer> runningTasksByHost = new HashMap<>();
+    private final Map<String, AimdConcurrencyLimit> adaptiveLimitsByHost = new HashMap<>();
+    private int runningTasks = 0;
+
+    HostConcurrencyLimiter(final int maxConcurrentTasks, final int maxConcurrentTasksPerHost) {
+        this.maxConcurrentTasks = maxConcurrentTasks;
+        this.maxConcurrentTasksPerHost = maxConcurrentTasksPerHost;
+        this.adaptiveConfig = Optional.empty();
+        this.scheduler = Optional.empty();
+    }
+
+    HostConcurrencyLimiter(
+        final int maxConcurrentTasks,
+        final OEmbedAdaptiveConcurrencyConfig adaptiveConfig,
+        final ScheduledExecutorService scheduler
+    ) {
+        this.maxConcurrentTasks = maxConcurrentTasks;
+        this.maxConcurrentTasksPerHost = adaptiveConfig.getMaxLimit();
+        this.adaptiveConfig = Optional.of(adaptiveConfig);
+        this.scheduler = Optional.of(scheduler);
+    }
+
+    /**
+     * Runs the given task against the given host as soon as both limits allow.
+     *
+     * Cancelling the returned future removes the task from the queue, or
+     * cancels the task's own future if it is already running.
+     */
+    <T> CompletableFuture<T> submit(final String host, final Supplier<CompletableFuture<T>> task) {
+        return submit(host, task, result -> false);
+    }
+
+    /**
+     * Version of {@link #submit(String, Supplier)} which tells an adaptive
+     * limit which of the task's results mean that the host is overloaded.
+     * Tasks which complete exceptionally always do.
+     */
+    <T> CompletableFuture<T> submit(
+        final String host,
+        final Supplier<CompletableFuture<T>> task,
+        final Predicate<? super T> isDropped
+    ) {
+        final LimitedTask<T> limitedTask = new LimitedTask<>(host, task, isDropped);
+
+        final boolean startable;
+        lock.lock();
+        try {
+            if (hasRoomFor(host)) {
+                acquire(host);
+                startable = true;
+            } else if (enqueue(limitedTask)) {
+                return limitedTask;
+            } else {
+                startable = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Start or reject outside of the lock, as tasks may complete synchronously
+        if (startable) {
+            limitedTask.start();
+        } else {
+            limitedTask.reject();
+        }
+        return limitedTask;
+    }
+
+    /**
+     * Blocking version of {@link #submit(String, Supplier, Predicate)}, which waits
+     * for room to run the given task and then runs it on the calling thread.
+     *
+     * @throws RejectedExecutionException if the task waited too long for room to run
+     * @throws CancellationException if the calling thread was interrupted while waiting
+     */
+    <T> T executeBlocking(final String host, final Supplier<T> task, final Predicate<? super T> isDropped) {
+        final CompletableFuture<Void> started = new CompletableFuture<>();
+        final CompletableFuture<T> outcome = new CompletableFuture<>();
+        // The limited task runs once it has room, and holds its host's room until the outcome is known
+        final CompletableFuture<T> limitedTask = submit(host, () -> {
+            started.complete(null);
+            return outcome;
+        }, isDropped);
+
+        try {
+            CompletableFuture.anyOf(started, limitedTask).get();
+        } catch (final InterruptedException e) {
+            limitedTask.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for room on host " + host);
+        } catch (final ExecutionException e) {
+            // Only rejection completes the limited task before it starts
+            throw (RejectedExecutionException) e.getCause();
+        }
+
+        try {
+            final T result = task.get();
+            outcome.complete(result);
+            return result;
+        } catch (final RuntimeException | Error e) {
+            outcome.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    int getRunningTasks() {
+        lock.lock();
+        try {
+            return runningTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getQueuedTasks() {
+        lock.lock();
+        try {
+            return queuedTasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of each host with running or queued tasks,
+     * or with an adaptive limit.
+     */
+    Map<String, OEmbedConcurrencyStats> getStats() {
+        lock.lock();
+        try {
+            final Set<String> hosts = new TreeSet<>(runningTasksByHost.keySet());
+            hosts.addAll(adaptiveLimitsByHost.keySet());
+            queuedTasks.forEach(queuedTask -> hosts.add(queuedTask.host));
+
+            final Map<String, OEmbedConcurrencyStats> statsByHost = new TreeMap<>();
+            for (final String host : hosts) {
+                statsByHost.put(host, new OEmbedConcurrencyStats.Builder()
+                    .setLimit(getLimit(host))
+                    .setInFlight(runningTasksByHost.getOrDefault(host, 0))
+                    .setQueued((int) queuedTasks.stream().filter(queuedTask -> queuedTask.host.equals(host)).count())
+                    .build());
+            }
+            return Collections.unmodifiableMap(statsByHost);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int getLimit(final String host) {
+        return adaptiveConfig
+            .map(config -> adaptiveLimitsByHost.computeIfAbsent(host, h -> new AimdConcurrencyLimit(config)).getLimit())
+            .orElse(maxConcurrentTasksPerHost);
+    }
+
+    private boolean hasRoomFor(final String host) {
+        return runningTasks < maxConcurrentTasks && runningTasksByHost.getOrDefault(host, 0) < getLimit(host);
+    }
+
+    private void acquire(final String host) {
+        runningTasks++;
+        runningTasksByHost.merge(host, 1, Integer::sum);
+    }
+
+    // Returns false if the task may not wait at all
+    private boolean enqueue(final LimitedTask<?> limitedTask) {
+        if (!adaptiveConfig.isPresent()) {
+            queuedTasks.addLast(limitedTask);
+            return true;
+        }
+
+        final long maxQueueWaitNanos = adaptiveConfig.get().getMaxQueueWait().toNanos();
+        if (maxQueueWaitNanos == 0L) {
+            return false;
+        }
+        queuedTasks.addLast(limitedTask);
+        limitedTask.queueTimeout = scheduler.get().schedule(() -> {
+            if (dequeue(limitedTask)) {
+                limitedTask.reject();
+            }
+        }, maxQueueWaitNanos, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    private void release(final String host, final Optional<Sample> sample) {
+        final List<LimitedTask<?>> startableTasks = new ArrayList<>();
+
+        lock.lock();
+        try {
+            sample.ifPresent(s -> adaptiveConfig.ifPresent(config ->
+                adaptiveLimitsByHost.computeIfAbsent(host, h -> new AimdConcurrencyLimit(config))
+                    .onSample(s.latencyNanos, runningTasksByHost.getOrDefault(host, 0), s.dropped)));
+            runningTasks--;
+            runningTasksByHost.computeIfPresent(host, (h, count) -> count > 1 ? count - 1 : null);
+
+            final Iterator<LimitedTask<?>> queuedTaskIterator = queuedTasks.iterator();
+            while (runningTasks < maxConcurrentTasks && queuedTaskIterator.hasNext()) {
+                final LimitedTask<?> queuedTask = queuedTaskIterator.next();
+                if (hasRoomFor(queuedTask.host)) {
+                    queuedTaskIterator.remove();
+                    acquire(queuedTask.host);
+                    startableTasks.add(queuedTask);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Start outside of the lock, as tasks may complete synchronously
+        startableTasks.forEach(LimitedTask::start);
+    }
+
+    private boolean dequeue(final LimitedTask<?> limitedTask) {
+        lock.lock();
+        try {
+            return queuedTasks.remove(limitedTask);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The outcome of a completed task.
+     */
+    private static final class Sample {
+
+        private final long latencyNanos;
+        private final boolean dropped;
+
+        private Sample(final long latencyNanos, final boolean dropped) {
+            this.latencyNanos = latencyNanos;
+            this.dropped = dropped;
+        }
+    }
+
+    private final class LimitedTask<T> extends CompletableFuture<T> {
+
+        private final String host;
+        private final Supplier<CompletableFuture<T>> task;
+        private final Predicate<? super T> isDropped;
+
+        private volatile CompletableFuture<T> runningTask;
+        private volatile Future<?> queueTimeout;
+
+        private LimitedTask(
+            final String host,
+            final Supplier<CompletableFuture<T>> task,
+            final Predicate<? super T> isDropped
+        ) {
+            this.host = host;
+            this.task = task;
+            this.isDropped = isDropped;
+        }
+
+        private void start() {
+            final Future<?> currentQueueTimeout = queueTimeout;
+            if (currentQueueTimeout != null) {
+                currentQueueTimeout.cancel(false);
+            }
+            // Cancelled while it was queued
+            if (isDone()) {
+                release(host, Optional.empty());
+                return;
+            }
+
+            final long startNanos = System.nanoTime();
+            try {
+                runningTask = task.get();
+            } catch (final RuntimeException e) {
+                completeExceptionally(e);
+                release(host, Optional.empty());
+                return;
+            }
+
+            runningTask.whenComplete((result, throwable) -> {
+                final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+                // A cancelled task tells nothing about the host's load
+                release(host, cause instanceof CancellationException ? Optional.empty()
+                    : Optional.of(new Sample(System.nanoTime() - startNanos, cause != null || isDropped.test(result))));
+                if (throwable == null) {
+                    complete(result);
+                } else {
+                    completeExceptionally(throwable);
+                }
+            });
+            // Cancelled while it was being started
+            if (isCancelled()) {
+                runningTask.cancel(true);
+            }
+        }
+
+        private void reject() {
+            completeExceptionally(new RejectedExecutionException("concurrency limit reached for host " + host));
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            final CompletableFuture<T> currentTask = runningTask;
+            if (currentTask == null) {
+                dequeue(this);
+                final Future<?> currentQueueTimeout = queueTimeout;
+                if (currentQueueTimeout != null) {
+                    currentQueueTimeout.cancel(false);
+                }
+            } else {
+                currentTask.cancel(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package net.spals.oembed4j.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Paces the requests to each host: requests are sent no faster
+ * than the host's rate limit, if any, and not at all while the host
+ * has asked for them to be suspended with a {@code Retry-After} header.
+ *
+ * Requests which would have to wait longer than the rate limit allows,
+ * or which are made while their host is suspended, are not sent, and a
+ * {@link OEmbedFailureReason#RATE_LIMITED} result is returned instead.
+ *
+ * @author tkral
+ */
+final class HostRateLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HostRateLimiter.class);
+    private static final long REJECTED = -1L;
+
+    private final OEmbedClientConfig config;
+    private final ScheduledExecutorService scheduler;
+    private final Ticker ticker;
+    private final ConcurrentMap<String, HostState> statesByHost = new ConcurrentHashMap<>();
+
+    HostRateLimiter(final OEmbedClientConfig config, final ScheduledExecutorService scheduler) {
+        this(config, scheduler, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    HostRateLimiter(final OEmbedClientConfig config, final ScheduledExecutorService scheduler, final Ticker ticker) {
+        this.config = config;
+        this.scheduler = scheduler;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Runs the given request against the given host once its rate limit
+     * allows, unless it may not be sent at all, in which case a
+     * {@link OEmbedFailureReason#RATE_LIMITED} result is returned immediately.
+     *
+     * Cancelling the returned future before the request is sent keeps it from being sent.
+     */
+    CompletableFuture<OEmbedResult> execute(final String host, final Supplier<CompletableFuture<OEmbedResult>> request) {
+        final HostState hostState = getHostState(host);
+        final long waitNanos = hostState.reserve();
+        if (waitNanos == REJECTED) {
+            return CompletableFuture.completedFuture(rejectedResult(host));
+        }
+        if (waitNanos == 0L) {
+            return observe(hostState, request.get());
+        }
+
+        final AtomicReference<CompletableFuture<OEmbedResult>> sentRequest = new AtomicReference<>();
+        final CompletableFuture<OEmbedResult> resultFuture = new CompletableFuture<OEmbedResult>() {
+            @Override
+            public boolean cancel(final boolean mayInterruptIfRunning) {
+                final boolean cancelled = super.cancel(mayInterruptIfRunning);
+                final CompletableFuture<OEmbedResult> requestFuture = sentRequest.get();
+                if (requestFuture != null) {
+                    requestFuture.cancel(mayInterruptIfRunning);
+                }
+                return cancelled;
+            }
+        };
+        final Future<?> scheduledRequest = scheduler.schedule(() -> {
+            if (resultFuture.isDone()) {
+                return;
+            }
+            try {
+                final CompletableFuture<OEmbedResult> requestFuture = observe(hostState, request.get());
+                sentRequest.set(requestFuture);
+                // Cancelled while it was being sent
+                if (resultFuture.isCancelled()) {
+                    requestFuture.cancel(true);
+                }
+                requestFuture.whenComplete((result, throwable) -> {
+                    if (throwable == null) {
+                        resultFuture.complete(result);
+                    } else {
+                        resultFuture.completeExceptionally(throwable);
+                    }
+                });
+            } catch (final RuntimeException e) {
+                resultFuture.completeExceptionally(e);
+            }
+        }, waitNanos, TimeUnit.NANOSECONDS);
+        resultFuture.whenComplete((result, throwable) -> scheduledRequest.cancel(false));
+        return resultFuture;
+    }
+
+    /**
+     * Version of {@link #execute(String, Supplier)} which waits
+     * for the rate limit and runs the request on the calling thread.
+     */
+    OEmbedResult executeBlocking(final String host, final Supplier<OEmbedResult> request) {
+        final HostState hostState = getHostState(host);
+        final long waitNanos = hostState.reserve();
+        if (waitNanos == REJECTED) {
+            return rejectedResult(host);
+        }
+        if (waitNanos > 0L) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return OEmbedResult.failure(OEmbedFailureReason.CANCELLED, "request interrupted");
+            }
+        }
+
+        final OEmbedResult result = request.get();
+        hostState.onResult(result);
+        return result;
+    }
+
+    /**
+     * Returns whether requests to the given host are currently suspended.
+     */
+    boolean isSuspended(final String host) {
+        final HostState hostState = statesByHost.get(host);
+        return hostState != null && hostState.isSuspended();
+    }
+
+    /**
+     * Parses the value of a {@code Retry-After} header, which is
+     * either a number of seconds or an HTTP date.
+     */
+    static Optional<Duration> parseRetryAfter(final Optional<String> retryAfter, final Instant now) {
+        return retryAfter.map(String::trim).filter(value -> !value.isEmpty()).flatMap(value -> {
+            try {
+                if (value.chars().allMatch(Character::isDigit)) {
+                    return Optional.of(Duration.ofSeconds(Long.parseLong(value)));
+                }
+                final Instant retryAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return Optional.of(retryAt.isAfter(now) ? Duration.between(now, retryAt) : Duration.ZERO);
+            } catch (final NumberFormatException | DateTimeParseException e) {
+                LOGGER.info("unparseable Retry-After header: " + value);
+                return Optional.empty();
+            }
+        });
+    }
+
+    private static OEmbedResult rejectedResult(final String host) {
+        return OEmbedResult.failure(OEmbedFailureReason.RATE_LIMITED, "rate limited requests to host " + host);
+    }
+
+    // Observes the result before completing, so that a suspension applies to any request made after it
+    private static CompletableFuture<OEmbedResult> observe(
+        final HostState hostState,
+        final CompletableFuture<OEmbedResult> resultFuture
+    ) {
+        return AbstractOEmbedClient.map(resultFuture, result -> {
+            hostState.onResult(result);
+            return result;
+        });
+    }
+
+    private HostState getHostState(final String host) {
+        return statesByHost.computeIfAbsent(host, HostState::new);
+    }
+
+    /**
+     * The token bucket and suspension of a single host.
+     */
+    private final class HostState {
+
+        private final String host;
+        private final Optional<OEmbedRateLimit> rateLimit;
+        // All guarded by this
+        private double tokens;
+        private long refilledAtNanos;
+        private long suspendedUntilNanos;
+        private boolean suspended = false;
+
+        private HostState(final String host) {
+            this.host = host;
+            final OEmbedRateLimit hostRateLimit = config.getRateLimitsByHost().get(host);
+            this.rateLimit = hostRateLimit != null ? Optional.of(hostRateLimit) : config.getRateLimit();
+            this.tokens = rateLimit.map(OEmbedRateLimit::getBurst).orElse(0);
+            this.refilledAtNanos = ticker.read();
+        }
+
+        /**
+         * Takes a token for a request, and returns how long the request must
+         * wait for it, or {@link #REJECTED} if the request may not be sent.
+         */
+        synchronized long reserve() {
+            if (isSuspended()) {
+                return REJECTED;
+            }
+            if (!rateLimit.isPresent()) {
+                return 0L;
+            }
+
+            final long nowNanos = ticker.read();
+            final double requestsPerNano = rateLimit.get().getRequestsPerSecond() / TimeUnit.SECONDS.toNanos(1L);
+            tokens = Math.min(rateLimit.get().getBurst(), tokens + (nowNanos - refilledAtNanos) * requestsPerNano);
+            refilledAtNanos = nowNanos;
+            if (tokens >= 1.0) {
+                tokens -= 1.0;
+                return 0L;
+            }
+
+            // Tokens go into debt, so that requests waiting for them are spaced out
+            final long waitNanos = (long) Math.ceil((1.0 - tokens) / requestsPerNano);
+            if (waitNanos > rateLimit.get().getMaxWait().toNanos()) {
+                return REJECTED;
+            }
+            tokens -= 1.0;
+            return waitNanos;
+        }
+
+        synchronized void onResult(final OEmbedResult result) {
+            final boolean throttled = result.getStatusCode().map(statusCode -> statusCode == 429 || statusCode == 503)
+                .orElse(false);
+            if (!throttled || !result.getRetryAfter().isPresent() || config.getMaxRetryAfter().isZero()) {
+                return;
+            }
+
+            final Duration retryAfter = result.getRetryAfter().get().compareTo(config.getMaxRetryAfter()) < 0
+                ? result.getRetryAfter().get() : config.getMaxRetryAfter();
+            final long untilNanos = ticker.read() + retryAfter.toNanos();
+            if (!isSuspended() || untilNanos - suspendedUntilNanos > 0L) {
+                suspended = true;
+                suspendedUntilNanos = untilNanos;
+                LOGGER.info("suspending requests to host " + host + " for " + retryAfter);
+            }
+        }
+
+        synchronized boolean isSuspended() {
+            suspended = suspended && ticker.read() - suspendedUntilNanos < 0L;
+            return suspended;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package net.spals.oembed4j.client;
+
+import org.apache.http.HttpHost;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import javax.net.ssl.SSLContext;
+import java.net.URI;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of persistent HTTP connections, as configured
+ * by an {@link OEmbedConnectionPoolConfig}.
+ *
+ * @author tkral
+ */
+final class HttpConnectionPool {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final OEmbedConnectionPoolConfig config;
+
+    private HttpConnectionPool(
+        final PoolingHttpClientConnectionManager connectionManager,
+        final OEmbedConnectionPoolConfig config
+    ) {
+        this.connectionManager = connectionManager;
+        this.config = config;
+    }
+
+    static HttpConnectionPool create(final OEmbedConnectionPoolConfig config, final SSLContext sslContext) {
+        // Trust the same hosts as the default connector does
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+            RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE))
+                .build(),
+            null /*connFactory*/, null /*schemePortResolver*/, null /*dnsResolver*/,
+            config.getMaxKeepAlive().toMillis(), TimeUnit.MILLISECONDS);
+
+        connectionManager.setMaxTotal(config.getMaxTotalConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+        config.getMaxConnectionsByRoute()
+            .forEach((origin, maxConnections) -> connectionManager.setMaxPerRoute(toRoute(origin), maxConnections));
+
+        return new HttpConnectionPool(connectionManager, config);
+    }
+
+    /**
+     * Returns the connection manager to hand to the connector,
+     * which lets asynchronous exchanges abort their connections.
+     */
+    HttpClientConnectionManager getConnectionManager() {
+        return AsyncExchange.connectionManager(connectionManager);
+    }
+
+    /**
+     * Closes connections which have been idle for too long
+     * or which have outlived their keep alive.
+     */
+    void evictConnections() {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(config.getIdleConnectionTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    OEmbedConnectionPoolStats getTotalStats() {
+        return toStats(connectionManager.getTotalStats());
+    }
+
+    /**
+     * Returns statistics for each route which has been used
+     * or which has its own connection limit.
+     */
+    Map<URI, OEmbedConnectionPoolStats> getStatsByRoute() {
+        final Set<HttpRoute> routes = new HashSet<>(connectionManager.getRoutes());
+        config.getMaxConnectionsByRoute().keySet().forEach(origin -> routes.add(toRoute(origin)));
+
+        final Map<URI, OEmbedConnectionPoolStats> statsByRoute = new LinkedHashMap<>();
+        routes.stream()
+            .sorted(Comparator.comparing(route -> route.getTargetHost().toURI()))
+            .forEach(route -> statsByRoute.put(URI.create(route.getTargetHost().toURI()),
+                toStats(connectionManager.getStats(route))));
+        return statsByRoute;
+    }
+
+    private static HttpRoute toRoute(final URI origin) {
+        final boolean secure = "https".equalsIgnoreCase(origin.getScheme());
+        // Routes always carry an explicit port
+        final int port = origin.getPort() > 0 ? origin.getPort() : (secure ? 443 : 80);
+        return new HttpRoute(new HttpHost(origin.getHost(), port, origin.getScheme().toLowerCase()), null, secure);
+    }
+
+    private static OEmbedConnectionPoolStats toStats(final PoolStats poolStats) {
+        return new OEmbedConnectionPoolStats.Builder()
+            .setLeased(poolStats.getLeased())
+            .setPending(poolStats.getPending())
+            .setAvailable(poolStats.getAvailable())
+            .setMax(poolStats.getMax())
+            .build();
+    }
+}
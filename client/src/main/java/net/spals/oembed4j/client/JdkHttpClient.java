@@ -0,0 +1,334 @@
+package net.spals.oembed4j.client;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * A thin wrapper around the JDK's {@code java.net.http.HttpClient},
+ * which prefers HTTP/2 and multiplexes concurrent requests to the
+ * same host over a single connection.
+ *
+ * This library is built and released on Java 8, which has no
+ * {@code java.net.http}, so the client is reached through method
+ * handles, as {@link VirtualThreads} reaches Java 21 APIs. Only the
+ * calls below are looked up. The client's defaults, such as preferring
+ * HTTP/2 and sending GET requests, are relied on wherever they fit.
+ *
+ * @author tkral
+ */
+final class JdkHttpClient {
+
+    // The java.net.http API, or null if it's unavailable
+    private static final Api API = Api.find();
+
+    private final Object httpClient;
+
+    private JdkHttpClient(final Object httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    static boolean isSupported() {
+        return API != null;
+    }
+
+    /**
+     * Creates a client which prefers HTTP/2 and follows redirects,
+     * except those from HTTPS to HTTP.
+     *
+     * @param connectTimeout The timeout of establishing each connection
+     * @param executor The executor for asynchronous tasks,
+     *                 or {@code Optional.empty()} for the client's own.
+     * @throws UnsupportedOperationException if the Java runtime has no {@code java.net.http}
+     */
+    static JdkHttpClient create(
+        final SSLContext sslContext,
+        final Duration connectTimeout,
+        final Optional<Executor> executor
+    ) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("The JDK HTTP client requires Java 11 or later, but running on "
+                + System.getProperty("java.version"));
+        }
+
+        return new JdkHttpClient(invoke(() -> {
+            Object builder = API.newClientBuilder.invoke();
+            builder = API.followRedirects.invoke(builder, API.normalRedirects);
+            builder = API.sslContext.invoke(builder, sslContext);
+            builder = API.connectTimeout.invoke(builder, connectTimeout);
+            if (executor.isPresent()) {
+                builder = API.executor.invoke(builder, executor.get());
+            }
+            return API.buildClient.invoke(builder);
+        }));
+    }
+
+    /**
+     * Sends a GET request with the given headers, blocking until its response has been read.
+     *
+     * @param timeout The longest time to wait for the response to arrive
+     * @throws SocketTimeoutException if the connection or response timed out
+     */
+    Response send(final URI uri, final Map<String, String> headers, final Duration timeout)
+        throws IOException, InterruptedException {
+        final Object response;
+        try {
+            response = API.send.invoke(httpClient, newRequest(uri, headers, timeout), API.byteArrayBodyHandler);
+        } catch (final IOException e) {
+            throw toSocketTimeout(e);
+        } catch (final InterruptedException | RuntimeException | Error e) {
+            throw e;
+        } catch (final Throwable t) {
+            throw new IllegalStateException(t);
+        }
+        return new Response(response);
+    }
+
+    /**
+     * Sends a GET request without blocking. On Java 16 and later,
+     * cancelling the returned future aborts the exchange.
+     *
+     * @param timeout The longest time to wait for the response to arrive
+     */
+    CompletableFuture<Response> sendAsync(final URI uri, final Map<String, String> headers, final Duration timeout) {
+        final CompletableFuture<?> responseFuture = (CompletableFuture<?>) invoke(() ->
+            API.sendAsync.invoke(httpClient, newRequest(uri, headers, timeout), API.byteArrayBodyHandler));
+        final CompletableFuture<Response> readFuture = new CompletableFuture<Response>() {
+            @Override
+            public boolean cancel(final boolean mayInterruptIfRunning) {
+                final boolean cancelled = super.cancel(mayInterruptIfRunning);
+                responseFuture.cancel(mayInterruptIfRunning);
+                return cancelled;
+            }
+        };
+        responseFuture.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+                readFuture.completeExceptionally(cause instanceof IOException
+                    ? toSocketTimeout((IOException) cause) : cause);
+                return;
+            }
+            try {
+                readFuture.complete(new Response(response));
+            } catch (final RuntimeException e) {
+                readFuture.completeExceptionally(e);
+            }
+        });
+        return readFuture;
+    }
+
+    /**
+     * Aborts any exchanges in progress, on Java 21 and later.
+     * Otherwise, the client's resources are released once it is
+     * no longer referenced.
+     */
+    void close() {
+        if (API.shutdownNow != null) {
+            invoke(() -> API.shutdownNow.invoke(httpClient));
+        }
+    }
+
+    private static Object newRequest(final URI uri, final Map<String, String> headers, final Duration timeout)
+        throws Throwable {
+        final String[] headerNamesAndValues = headers.entrySet().stream()
+            .flatMap(header -> Stream.of(header.getKey(), header.getValue()))
+            .toArray(String[]::new);
+        Object builder = API.newRequestBuilder.invoke(uri);
+        builder = API.headers.invoke(builder, headerNamesAndValues);
+        builder = API.timeout.invoke(builder, timeout);
+        return API.buildRequest.invoke(builder);
+    }
+
+    // Reports timeouts the way that other transports do
+    private static IOException toSocketTimeout(final IOException e) {
+        if (!API.timeoutException.isInstance(e)) {
+            return e;
+        }
+        final SocketTimeoutException socketTimeout = new SocketTimeoutException(e.getMessage());
+        socketTimeout.initCause(e);
+        return socketTimeout;
+    }
+
+    private static Object invoke(final Invocation invocation) {
+        try {
+            return invocation.invoke();
+        } catch (final RuntimeException | Error e) {
+            throw e;
+        } catch (final Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Invocation {
+        Object invoke() throws Throwable;
+    }
+
+    /**
+     * A response whose body has been read in full.
+     */
+    static final class Response {
+
+        private final int statusCode;
+        private final Optional<String> contentType;
+        private final Optional<String> retryAfter;
+        private final Optional<String> cacheControl;
+        private final Optional<String> expires;
+        private final Optional<String> entityTag;
+        private final Optional<String> lastModified;
+        private final byte[] body;
+
+        private Response(final Object response) {
+            this.statusCode = (int) JdkHttpClient.invoke(() -> API.statusCode.invoke(response));
+            final Object headers = JdkHttpClient.invoke(() -> API.responseHeaders.invoke(response));
+            this.contentType = firstValue(headers, "Content-Type");
+            this.retryAfter = firstValue(headers, "Retry-After");
+            this.cacheControl = firstValue(headers, "Cache-Control");
+            this.expires = firstValue(headers, "Expires");
+            this.entityTag = firstValue(headers, "ETag");
+            this.lastModified = firstValue(headers, "Last-Modified");
+            this.body = (byte[]) JdkHttpClient.invoke(() -> API.body.invoke(response));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Optional<String> firstValue(final Object headers, final String name) {
+            return (Optional<String>) JdkHttpClient.invoke(() -> API.firstValue.invoke(headers, name));
+        }
+
+        int getStatusCode() {
+            return statusCode;
+        }
+
+        Optional<String> getContentType() {
+            return contentType;
+        }
+
+        Optional<String> getRetryAfter() {
+            return retryAfter;
+        }
+
+        Optional<String> getCacheControl() {
+            return cacheControl;
+        }
+
+        Optional<String> getExpires() {
+            return expires;
+        }
+
+        Optional<String> getEntityTag() {
+            return entityTag;
+        }
+
+        Optional<String> getLastModified() {
+            return lastModified;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * Handles to the parts of {@code java.net.http} used by the client.
+     * Callers invoke them with plain objects, which the handles cast,
+     * so that callers needn't load the {@code java.net.http} classes.
+     */
+    private static final class Api {
+
+        private final Object normalRedirects;
+        private final Object byteArrayBodyHandler;
+        private final Class<?> timeoutException;
+        private final MethodHandle newClientBuilder;
+        private final MethodHandle followRedirects;
+        private final MethodHandle sslContext;
+        private final MethodHandle connectTimeout;
+        private final MethodHandle executor;
+        private final MethodHandle buildClient;
+        private final MethodHandle newRequestBuilder;
+        private final MethodHandle headers;
+        private final MethodHandle timeout;
+        private final MethodHandle buildRequest;
+        private final MethodHandle send;
+        private final MethodHandle sendAsync;
+        private final MethodHandle statusCode;
+        private final MethodHandle responseHeaders;
+        private final MethodHandle body;
+        private final MethodHandle firstValue;
+        // HttpClient#shutdownNow, or null before Java 21
+        private final MethodHandle shutdownNow;
+
+        private Api(final MethodHandles.Lookup lookup) throws ReflectiveOperationException {
+            final Class<?> client = Class.forName("java.net.http.HttpClient");
+            final Class<?> clientBuilder = Class.forName("java.net.http.HttpClient$Builder");
+            final Class<?> redirect = Class.forName("java.net.http.HttpClient$Redirect");
+            final Class<?> request = Class.forName("java.net.http.HttpRequest");
+            final Class<?> requestBuilder = Class.forName("java.net.http.HttpRequest$Builder");
+            final Class<?> response = Class.forName("java.net.http.HttpResponse");
+            final Class<?> bodyHandler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+            final Class<?> httpHeaders = Class.forName("java.net.http.HttpHeaders");
+
+            this.normalRedirects = redirect.getField("NORMAL").get(null);
+            this.byteArrayBodyHandler = Class.forName("java.net.http.HttpResponse$BodyHandlers")
+                .getMethod("ofByteArray").invoke(null);
+            this.timeoutException = Class.forName("java.net.http.HttpTimeoutException");
+
+            this.newClientBuilder = lookup.findStatic(client, "newBuilder", MethodType.methodType(clientBuilder));
+            this.followRedirects = lookup.findVirtual(clientBuilder, "followRedirects",
+                MethodType.methodType(clientBuilder, redirect));
+            this.sslContext = lookup.findVirtual(clientBuilder, "sslContext",
+                MethodType.methodType(clientBuilder, SSLContext.class));
+            this.connectTimeout = lookup.findVirtual(clientBuilder, "connectTimeout",
+                MethodType.methodType(clientBuilder, Duration.class));
+            this.executor = lookup.findVirtual(clientBuilder, "executor",
+                MethodType.methodType(clientBuilder, Executor.class));
+            this.buildClient = lookup.findVirtual(clientBuilder, "build", MethodType.methodType(client));
+
+            this.newRequestBuilder = lookup.findStatic(request, "newBuilder",
+                MethodType.methodType(requestBuilder, URI.class));
+            // Takes the header names and values as one array, rather than collecting them as varargs
+            this.headers = lookup.findVirtual(requestBuilder, "headers",
+                MethodType.methodType(requestBuilder, String[].class)).asFixedArity();
+            this.timeout = lookup.findVirtual(requestBuilder, "timeout",
+                MethodType.methodType(requestBuilder, Duration.class));
+            this.buildRequest = lookup.findVirtual(requestBuilder, "build", MethodType.methodType(request));
+
+            this.send = lookup.findVirtual(client, "send", MethodType.methodType(response, request, bodyHandler));
+            this.sendAsync = lookup.findVirtual(client, "sendAsync",
+                MethodType.methodType(CompletableFuture.class, request, bodyHandler));
+            this.statusCode = lookup.findVirtual(response, "statusCode", MethodType.methodType(int.class));
+            this.responseHeaders = lookup.findVirtual(response, "headers", MethodType.methodType(httpHeaders));
+            this.body = lookup.findVirtual(response, "body", MethodType.methodType(Object.class));
+            this.firstValue = lookup.findVirtual(httpHeaders, "firstValue",
+                MethodType.methodType(Optional.class, String.class));
+            this.shutdownNow = findShutdownNow(lookup, client);
+        }
+
+        private static Api find() {
+            try {
+                return new Api(MethodHandles.publicLookup());
+            } catch (final ReflectiveOperationException e) {
+                return null;
+            }
+        }
+
+        private static MethodHandle findShutdownNow(final MethodHandles.Lookup lookup, final Class<?> client) {
+            try {
+                return lookup.findVirtual(client, "shutdownNow", MethodType.methodType(void.class));
+            } catch (final ReflectiveOperationException e) {
+                return null;
+            }
+        }
+    }
+}
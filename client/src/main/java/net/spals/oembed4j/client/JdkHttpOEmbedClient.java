@@ -0,0 +1,157 @@
+package net.spals.oembed4j.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import net.spals.oembed4j.client.registry.OEmbedRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An implementation of {@link OEmbedClient} based on the JDK's
+ * HTTP client, which requires Java 11 or later.
+ *
+ * Requests prefer HTTP/2, so concurrent requests to the same provider
+ * share a single multiplexed connection, falling back to HTTP/1.1 for
+ * providers which don't support it. Redirects are followed, except
+ * those from HTTPS to HTTP.
+ *
+ * The JDK client applies the default connect timeout to every
+ * provider, and bounds each response by the sum of the provider's
+ * connect and read timeouts.
+ *
+ * @author tkral
+ */
+public class JdkHttpOEmbedClient extends AbstractOEmbedClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JdkHttpOEmbedClient.class);
+    private static final String ACCEPT = "application/json, text/xml";
+
+    private final JdkHttpClient httpClient;
+    private final Optional<ExecutorService> executor;
+
+    @VisibleForTesting
+    JdkHttpOEmbedClient(
+        final JdkHttpClient httpClient,
+        final Optional<ExecutorService> executor,
+        final OEmbedRegistry registry,
+        final OEmbedClientConfig config
+    ) {
+        super(registry, config);
+        this.httpClient = httpClient;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns whether this Java runtime supports the client.
+     */
+    public static boolean isSupported() {
+        return JdkHttpClient.isSupported();
+    }
+
+    public static JdkHttpOEmbedClient create(final OEmbedRegistry registry) {
+        return create(registry, new OEmbedClientConfig.Builder().build());
+    }
+
+    /**
+     * @throws UnsupportedOperationException if the Java runtime is older than Java 11
+     */
+    public static JdkHttpOEmbedClient create(final OEmbedRegistry registry, final OEmbedClientConfig config) {
+        try {
+            // Each asynchronous request, and so each request of a batch, may get its own virtual thread
+            final Optional<ExecutorService> executor = config.getExecutionMode() == OEmbedExecutionMode.VIRTUAL_THREADS
+                    ? Optional.of(VirtualThreads.newVirtualThreadPerTaskExecutor()) : Optional.empty();
+            final JdkHttpClient httpClient = JdkHttpClient.create(newSslContext(),
+                    config.getTimeouts().getConnectTimeout(), executor.map(Executor.class::cast));
+            return new JdkHttpOEmbedClient(httpClient, executor, registry, config);
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @see OEmbedClient#close()
+     */
+    @Override
+    public void close() {
+        httpClient.close();
+        executor.ifPresent(ExecutorService::shutdownNow);
+        super.close();
+    }
+
+    /**
+     * @see AbstractOEmbedClient#runTarget(URI, Optional)
+     */
+    @Override
+    OEmbedResult runTarget(final URI uri, final Optional<ConditionalRequest> conditionalRequest) {
+        try {
+            return readResponse(httpClient.send(uri, newHeaders(conditionalRequest), getResponseTimeout(uri)),
+                    conditionalRequest);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return OEmbedResult.failure(OEmbedFailureReason.CANCELLED, "request interrupted");
+        }
+    }
+
+    /**
+     * @see AbstractOEmbedClient#runTargetAsync(URI, Optional)
+     */
+    @Override
+    CompletableFuture<OEmbedResult> runTargetAsync(final URI uri, final Optional<ConditionalRequest> conditionalRequest) {
+        return map(httpClient.sendAsync(uri, newHeaders(conditionalRequest), getResponseTimeout(uri)),
+                response -> readResponse(response, conditionalRequest));
+    }
+
+    private static Map<String, String> newHeaders(final Optional<ConditionalRequest> conditionalRequest) {
+        final Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Accept", ACCEPT);
+        conditionalRequest.ifPresent(request -> headers.putAll(request.getHeaders()));
+        return headers;
+    }
+
+    // The JDK client sets a connect timeout for all hosts, and a timeout for each response
+    // which covers connecting too, so let it span both of the host's timeouts
+    private Duration getResponseTimeout(final URI uri) {
+        final OEmbedTimeouts timeouts = getTimeouts(uri);
+        return timeouts.getConnectTimeout().plus(timeouts.getReadTimeout());
+    }
+
+    private OEmbedResult readResponse(
+        final JdkHttpClient.Response response,
+        final Optional<ConditionalRequest> conditionalRequest
+    ) {
+        final int statusCode = response.getStatusCode();
+        if (statusCode >= 200 && statusCode < 300) {
+            return parseEntity(response.getBody(), response.getContentType().orElse(""),
+                    ResponseTtlPolicy.parseFreshnessLifetime(response.getCacheControl(), response.getExpires(),
+                            Instant.now()),
+                    response.getEntityTag(), response.getLastModified());
+        }
+        if (statusCode == ConditionalRequest.NOT_MODIFIED && conditionalRequest.isPresent()) {
+            return conditionalRequest.get().notModified(ResponseTtlPolicy.parseFreshnessLifetime(
+                    response.getCacheControl(), response.getExpires(), Instant.now()));
+        }
+        if (statusCode >= 300 && statusCode < 400) {
+            // The client follows redirects itself, so this one couldn't be followed
+            LOGGER.info("unfollowed redirect: " + statusCode);
+            return OEmbedResult.failure(OEmbedFailureReason.TOO_MANY_REDIRECTS, "unfollowed redirect: " + statusCode);
+        }
+        LOGGER.info("unsuccessful response: " + statusCode);
+        return OEmbedResult.unsuccessfulResponse(statusCode, "unsuccessful response: " + statusCode,
+                HostRateLimiter.parseRetryAfter(response.getRetryAfter(), Instant.now()));
+    }
+}
@@ -1,31 +1,32 @@
 package net.spals.oembed4j.client;
 
 import com.google.common.annotations.VisibleForTesting;
-import net.jodah.expiringmap.ExpirationPolicy;
-import net.jodah.expiringmap.ExpiringMap;
-import net.spals.oembed4j.client.parser.OEmbedResponseParser;
+import com.google.common.io.ByteStreams;
 import net.spals.oembed4j.client.registry.OEmbedRegistry;
-import net.spals.oembed4j.model.OEmbedEndpoint;
-import net.spals.oembed4j.model.OEmbedRequest;
-import net.spals.oembed4j.model.OEmbedResponse;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.HttpUrlConnectorProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
-import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -35,62 +36,82 @@ import java.util.concurrent.TimeUnit;
  * @author tkral
  * @author spags
  */
-public class JerseyOEmbedClient implements OEmbedClient {
+public class JerseyOEmbedClient extends AbstractOEmbedClient {
 
-    private static final X509TrustManager DEFAULT_TRUST_MANAGER = new X509TrustManager() {
-        @Override
-        public X509Certificate[] getAcceptedIssuers() {
-            return new X509Certificate[0];
-        }
-
-        @Override
-        public void checkClientTrusted(final X509Certificate[] x509Certificates, final String s) {
-        }
-
-        @Override
-        public void checkServerTrusted(final X509Certificate[] x509Certificates, final String s) {
-        }
-    };
     private static final Logger LOGGER = LoggerFactory.getLogger(JerseyOEmbedClient.class);
+    private static final long MAX_DISCARDED_ENTITY_BYTES = 64L * 1024L;
     private final Client client;
-    private final OEmbedRegistry registry;
-    private final ExpiringMap<OEmbedRequest, OEmbedResponse> responseCache;
-    private final OEmbedResponseParser responseParser;
+    private final Optional<HttpConnectionPool> connectionPool;
 
     @VisibleForTesting
     JerseyOEmbedClient(
         final Client client,
         final OEmbedRegistry registry,
-        final ExpiringMap<OEmbedRequest, OEmbedResponse> responseCache,
-        final OEmbedResponseParser responseParser
+        final OEmbedClientConfig config,
+        final Optional<HttpConnectionPool> connectionPool
     ) {
+        super(registry, config);
         this.client = client;
-        this.registry = registry;
-        this.responseCache = responseCache;
-        this.responseParser = responseParser;
+        this.connectionPool = connectionPool;
     }
 
     public static JerseyOEmbedClient create(final OEmbedRegistry registry) {
+        return create(registry, new OEmbedClientConfig.Builder().build());
+    }
+
+    /**
+     * Creates a client which opens a new connection for each request.
+     */
+    public static JerseyOEmbedClient create(final OEmbedRegistry registry, final OEmbedClientConfig config) {
+        return create(registry, config, Optional.empty());
+    }
+
+    /**
+     * Creates a client which keeps connections alive in a pool and reuses them across requests.
+     */
+    public static JerseyOEmbedClient create(
+        final OEmbedRegistry registry,
+        final OEmbedClientConfig config,
+        final OEmbedConnectionPoolConfig connectionPoolConfig
+    ) {
+        return create(registry, config, Optional.of(connectionPoolConfig));
+    }
+
+    private static JerseyOEmbedClient create(
+        final OEmbedRegistry registry,
+        final OEmbedClientConfig config,
+        final Optional<OEmbedConnectionPoolConfig> connectionPoolConfig
+    ) {
         try {
-            // 1. Configure the Jersey client
             // Setup SSL management
-            // TODO: DO we need some real SSL management?
-            final SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null /*KeyManagers*/, new TrustManager[]{DEFAULT_TRUST_MANAGER}, new SecureRandom());
+            final SSLContext sslContext = newSslContext();
 
-            final ClientBuilder clientBuilder = ClientBuilder.newBuilder();
+            // Connections are tracked so that asynchronous requests can be aborted
+            final Optional<HttpConnectionPool> connectionPool =
+                    connectionPoolConfig.map(poolConfig -> HttpConnectionPool.create(poolConfig, sslContext));
+            final ClientConfig clientConfig = new ClientConfig().register(AsyncExchange.bindingFilter());
+            if (connectionPool.isPresent()) {
+                clientConfig.connectorProvider(new ApacheConnectorProvider())
+                        .property(ApacheClientProperties.CONNECTION_MANAGER, connectionPool.get().getConnectionManager());
+            } else {
+                clientConfig.connectorProvider(new HttpUrlConnectorProvider().connectionFactory(AsyncExchange.connectionFactory()));
+            }
+            if (config.getExecutionMode() == OEmbedExecutionMode.VIRTUAL_THREADS) {
+                // Each asynchronous request, and so each request of a batch, gets its own virtual thread
+                clientConfig.register(new AsyncExecutorProvider(VirtualThreads.newVirtualThreadPerTaskExecutor()));
+            }
+            final ClientBuilder clientBuilder = ClientBuilder.newBuilder().withConfig(clientConfig);
             clientBuilder.sslContext(sslContext).hostnameVerifier((s, sslSession) -> true);
             clientBuilder.property(ClientProperties.FOLLOW_REDIRECTS, Boolean.TRUE);
 
-            // 2. Build response cache
-            final ExpiringMap<OEmbedRequest, OEmbedResponse> responseCache = ExpiringMap.builder()
-                    .expirationPolicy(ExpirationPolicy.CREATED)
-                    .variableExpiration()
-                    .build();
-            // 3. Build response parser
-            final OEmbedResponseParser responseParser = new OEmbedResponseParser();
-
-            return new JerseyOEmbedClient(clientBuilder.build(), registry, responseCache, responseParser);
+            final JerseyOEmbedClient oEmbedClient =
+                    new JerseyOEmbedClient(clientBuilder.build(), registry, config, connectionPool);
+            connectionPoolConfig.ifPresent(poolConfig -> {
+                final long evictionPeriodMillis = poolConfig.getIdleConnectionTimeout().toMillis();
+                oEmbedClient.getScheduler().scheduleWithFixedDelay(connectionPool.get()::evictConnections,
+                        evictionPeriodMillis, evictionPeriodMillis, TimeUnit.MILLISECONDS);
+            });
+            return oEmbedClient;
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
@@ -102,73 +123,176 @@ public class JerseyOEmbedClient implements OEmbedClient {
     @Override
     public void close() {
         client.close();
+        super.close();
     }
 
     /**
-     * @see OEmbedClient#execute(OEmbedRequest)
+     * Returns the current usage of the client's connection pool, in total,
+     * or {@code Optional.empty()} if the client doesn't pool connections.
      */
-    @Override
-    public Optional<OEmbedResponse> execute(final OEmbedRequest request) {
-        final Optional<OEmbedResponse> cachedResponse = Optional.ofNullable(responseCache.get(request));
-        // If we got a cache hit, return immediately
-        if (cachedResponse.isPresent()) {
-            return cachedResponse;
-        }
+    public Optional<OEmbedConnectionPoolStats> getConnectionPoolStats() {
+        return connectionPool.map(HttpConnectionPool::getTotalStats);
+    }
 
-        // Otherwise, run the request and see if we can cache it
-        final Optional<OEmbedResponse> response = executeSkipCache(request);
-        response.filter(resp -> resp.getCacheAge().isPresent())
-                .ifPresent(resp -> responseCache.put(request, resp, resp.getCacheAge().get(), TimeUnit.SECONDS));
-        return response;
+    /**
+     * Returns the current usage of the client's connection pool for each
+     * route, keyed by the route's origin, such as {@code https://www.youtube.com:443}.
+     */
+    public Map<URI, OEmbedConnectionPoolStats> getConnectionPoolStatsByRoute() {
+        return connectionPool.map(HttpConnectionPool::getStatsByRoute).orElse(Collections.emptyMap());
     }
 
     /**
-     * @see OEmbedClient#executeSkipCache(OEmbedRequest)
+     * @see AbstractOEmbedClient#runTarget(URI, Optional)
      */
     @Override
-    public Optional<OEmbedResponse> executeSkipCache(final OEmbedRequest request) {
-        return registry.getEndpoint(request.getResourceURI())
-                .flatMap(endpoint -> executeSkipCache(request, endpoint));
+    OEmbedResult runTarget(final URI uri, final Optional<ConditionalRequest> conditionalRequest) {
+        return runTarget(uri, conditionalRequest, 0);
     }
 
     /**
-     * @see OEmbedClient#executeSkipCache(OEmbedRequest, OEmbedEndpoint)
+     * @see AbstractOEmbedClient#runTargetAsync(URI, Optional)
      */
     @Override
-    public Optional<OEmbedResponse> executeSkipCache(final OEmbedRequest request, final OEmbedEndpoint endpoint) {
-        return runTarget(request.toURI(endpoint), 0);
-    }
+    CompletableFuture<OEmbedResult> runTargetAsync(final URI uri, final Optional<ConditionalRequest> conditionalRequest) {
+        final AsyncExchange exchange = new AsyncExchange();
+        final CompletableFuture<OEmbedResult> responseFuture = new CompletableFuture<OEmbedResult>() {
+            @Override
+            public boolean cancel(final boolean mayInterruptIfRunning) {
+                final boolean cancelled = super.cancel(mayInterruptIfRunning);
+                exchange.abort();
+                return cancelled;
+            }
+        };
 
-    @VisibleForTesting
-    ExpiringMap<OEmbedRequest, OEmbedResponse> getResponseCache() {
-        return responseCache;
+        runTargetAsync(uri, conditionalRequest, 0, exchange, responseFuture);
+        return responseFuture;
     }
 
-    private Optional<OEmbedResponse> runTarget(final URI uri, final int numberOfRedirects) {
-        final Response response = client.target(uri)
+    private Invocation.Builder newInvocation(final URI uri, final Optional<ConditionalRequest> conditionalRequest) {
+        final OEmbedTimeouts timeouts = getTimeouts(uri);
+        final Invocation.Builder invocation = client.target(uri)
             .request(MediaType.APPLICATION_JSON_TYPE, MediaType.TEXT_XML_TYPE)
-            .get();
+            .property(ClientProperties.CONNECT_TIMEOUT, (int) timeouts.getConnectTimeout().toMillis())
+            .property(ClientProperties.READ_TIMEOUT, (int) timeouts.getReadTimeout().toMillis());
+        conditionalRequest.ifPresent(request -> request.getHeaders().forEach(invocation::header));
+        return invocation;
+    }
+
+    private OEmbedResult runTarget(
+        final URI uri,
+        final Optional<ConditionalRequest> conditionalRequest,
+        final int numberOfRedirects
+    ) {
+        final Response response = newInvocation(uri, conditionalRequest).get();
+        if (isFollowableRedirect(response, numberOfRedirects)) {
+            final URI location = response.getLocation();
+            discardResponse(response);
+            return runTarget(location, conditionalRequest, numberOfRedirects + 1);
+        }
+        return readResponse(response, conditionalRequest, numberOfRedirects);
+    }
+
+    private void runTargetAsync(
+        final URI uri,
+        final Optional<ConditionalRequest> conditionalRequest,
+        final int numberOfRedirects,
+        final AsyncExchange exchange,
+        final CompletableFuture<OEmbedResult> responseFuture
+    ) {
+        exchange.attach(newInvocation(uri, conditionalRequest).property(AsyncExchange.PROPERTY, exchange).async()
+            .get(new InvocationCallback<Response>() {
+                @Override
+                public void completed(final Response response) {
+                    exchange.responseReceived();
+                    try {
+                        if (exchange.isAborted()) {
+                            response.close();
+                        } else if (isFollowableRedirect(response, numberOfRedirects)) {
+                            final URI location = response.getLocation();
+                            discardResponse(response);
+                            runTargetAsync(location, conditionalRequest, numberOfRedirects + 1, exchange,
+                                    responseFuture);
+                        } else {
+                            responseFuture.complete(readResponse(response, conditionalRequest, numberOfRedirects));
+                        }
+                    } catch (final RuntimeException e) {
+                        responseFuture.completeExceptionally(e);
+                    }
+                }
+
+                @Override
+                public void failed(final Throwable throwable) {
+                    responseFuture.completeExceptionally(throwable);
+                }
+            }));
+    }
+
+    // Not modified responses aren't redirects, despite their status
+    private static boolean isFollowableRedirect(final Response response, final int numberOfRedirects) {
+        return response.getStatusInfo().getFamily() == Response.Status.Family.REDIRECTION
+                && response.getStatus() != ConditionalRequest.NOT_MODIFIED && numberOfRedirects == 0;
+    }
 
+    private OEmbedResult readResponse(
+        final Response response,
+        final Optional<ConditionalRequest> conditionalRequest,
+        final int numberOfRedirects
+    ) {
+        if (response.getStatus() == ConditionalRequest.NOT_MODIFIED && conditionalRequest.isPresent()) {
+            discardResponse(response);
+            return conditionalRequest.get().notModified(ResponseTtlPolicy.parseFreshnessLifetime(
+                    Optional.ofNullable(response.getHeaderString(HttpHeaders.CACHE_CONTROL)),
+                    Optional.ofNullable(response.getHeaderString(HttpHeaders.EXPIRES)), Instant.now()));
+        }
         switch (response.getStatusInfo().getFamily()) {
             case SUCCESSFUL:
+                final String mediaType = response.getHeaderString(HttpHeaders.CONTENT_TYPE);
                 try {
+                    // Read the entity to its end, which releases the connection for reuse
+                    final byte[] entity;
                     try (final InputStream inputStream = response.readEntity(InputStream.class)) {
-                        return responseParser.parse(inputStream, response.getHeaderString(HttpHeaders.CONTENT_TYPE));
+                        entity = ByteStreams.toByteArray(inputStream);
                     }
+                    return parseEntity(entity, mediaType, ResponseTtlPolicy.parseFreshnessLifetime(
+                            Optional.ofNullable(response.getHeaderString(HttpHeaders.CACHE_CONTROL)),
+                            Optional.ofNullable(response.getHeaderString(HttpHeaders.EXPIRES)), Instant.now()),
+                            Optional.ofNullable(response.getHeaderString(HttpHeaders.ETAG)),
+                            Optional.ofNullable(response.getHeaderString(HttpHeaders.LAST_MODIFIED)));
                 } catch (final IOException e) {
                     LOGGER.info("failed to read entity", e);
                     // ignore the error
-                    return Optional.empty();
+                    return OEmbedResult.failure(OEmbedFailureReason.UNREADABLE_RESPONSE, "failed to read entity: " + e);
                 }
             case REDIRECTION:
-                if (numberOfRedirects == 0) {
-                    return runTarget(response.getLocation(), numberOfRedirects + 1);
-                }
+                discardResponse(response);
                 LOGGER.info("too many redirects: " + numberOfRedirects);
-                return Optional.empty();
+                return OEmbedResult.failure(OEmbedFailureReason.TOO_MANY_REDIRECTS,
+                        "too many redirects: " + numberOfRedirects);
             default:
+                final Optional<String> retryAfter = Optional.ofNullable(response.getHeaderString(HttpHeaders.RETRY_AFTER));
+                discardResponse(response);
                 LOGGER.info("unsuccessful response: " + response.getStatusInfo());
-                return Optional.empty();
+                return OEmbedResult.unsuccessfulResponse(response.getStatus(),
+                        "unsuccessful response: " + response.getStatus() + " " + response.getStatusInfo().getReasonPhrase(),
+                        HostRateLimiter.parseRetryAfter(retryAfter, Instant.now()));
+        }
+    }
+
+    // Reads the entity of an unused response, so that its connection can be reused.
+    // Connections with too much left to read are closed instead.
+    private static void discardResponse(final Response response) {
+        try {
+            if (response.hasEntity()) {
+                try (final InputStream inputStream = response.readEntity(InputStream.class)) {
+                    ByteStreams.copy(ByteStreams.limit(inputStream, MAX_DISCARDED_ENTITY_BYTES),
+                            ByteStreams.nullOutputStream());
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            // ignore the error, as the response is being discarded anyway
+        } finally {
+            response.close();
         }
     }
 }
@@ -0,0 +1,100 @@
+package net.spals.oembed4j.client;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+import java.time.Duration;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Configuration of adaptive concurrency limits, which replace the static
+ * limit on the requests of a batch in flight against each provider host.
+ *
+ * Unlike the static limit, an adaptive limit applies to every request made
+ * to the host, whether batched, single, asynchronous or a background refresh,
+ * so that it adapts to all of the host's load. Those requests also count
+ * against {@link OEmbedClientConfig#getMaxConcurrentRequests()}. A single
+ * request which can't wait any longer for room to run results in
+ * {@link OEmbedFailureReason#CONCURRENCY_LIMITED}, as a batched one does.
+ *
+ * Each host's limit follows an additive increase, multiplicative decrease
+ * (AIMD) scheme: it grows by one for every limit's worth of successful
+ * requests, and shrinks by the backoff ratio whenever a request fails or
+ * is slow. Requests beyond the limit queue for a bounded time.
+ *
+ * A retried request holds room within the limit only while each of its
+ * attempts is sent, so that neither its backoff between attempts nor
+ * any wait for the host's rate limit counts as slowness of the host.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedAdaptiveConcurrencyConfig {
+
+    /**
+     * The limit of each host before any of its requests have completed.
+     */
+    int getInitialLimit();
+
+    /**
+     * The lowest that a host's limit may fall.
+     */
+    int getMinLimit();
+
+    /**
+     * The highest that a host's limit may rise.
+     */
+    int getMaxLimit();
+
+    /**
+     * The factor, between 0 and 1 exclusive, by which a host's
+     * limit is multiplied when one of its requests fails or is slow.
+     */
+    double getBackoffRatio();
+
+    /**
+     * How long a request may take before it counts as slow.
+     */
+    Duration getSlowLatencyThreshold();
+
+    /**
+     * The longest time a request waits in the queue for room to run,
+     * after which it fails with {@link OEmbedFailureReason#CONCURRENCY_LIMITED}.
+     * Zero fails requests beyond the limit immediately.
+     */
+    Duration getMaxQueueWait();
+
+    class Builder extends OEmbedAdaptiveConcurrencyConfig_Builder {
+
+        public static final int DEFAULT_INITIAL_LIMIT = 8;
+        public static final int DEFAULT_MIN_LIMIT = 1;
+        public static final int DEFAULT_MAX_LIMIT = 64;
+        public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+        public static final Duration DEFAULT_SLOW_LATENCY_THRESHOLD = Duration.ofSeconds(2L);
+        public static final Duration DEFAULT_MAX_QUEUE_WAIT = Duration.ofSeconds(5L);
+
+        public Builder() {
+            setInitialLimit(DEFAULT_INITIAL_LIMIT);
+            setMinLimit(DEFAULT_MIN_LIMIT);
+            setMaxLimit(DEFAULT_MAX_LIMIT);
+            setBackoffRatio(DEFAULT_BACKOFF_RATIO);
+            setSlowLatencyThreshold(DEFAULT_SLOW_LATENCY_THRESHOLD);
+            setMaxQueueWait(DEFAULT_MAX_QUEUE_WAIT);
+        }
+
+        @Override
+        public OEmbedAdaptiveConcurrencyConfig build() {
+            checkState(getMinLimit() > 0,
+                "Min limit must be positive: %s", getMinLimit());
+            checkState(getMinLimit() <= getInitialLimit() && getInitialLimit() <= getMaxLimit(),
+                "Initial limit must be between the min and max limits: %s", getInitialLimit());
+            checkState(getBackoffRatio() > 0.0 && getBackoffRatio() < 1.0,
+                "Backoff ratio must be between 0 and 1: %s", getBackoffRatio());
+            checkState(!getSlowLatencyThreshold().isNegative() && !getSlowLatencyThreshold().isZero(),
+                "Slow latency threshold must be positive: %s", getSlowLatencyThreshold());
+            checkState(!getMaxQueueWait().isNegative(),
+                "Max queue wait must not be negative: %s", getMaxQueueWait());
+            return super.build();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package net.spals.oembed4j.client;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+import java.time.Duration;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * How long the responses of an oEmbed provider are cached.
+ *
+ * A response is cached for its {@code cache_age}, or else for as long as
+ * the provider's HTTP caching headers allow, or else for the default time
+ * to live. Whichever it is, it is kept between the min and max time to live.
+ *
+ * Once a response expires, it may still be served for a grace window while
+ * it is refreshed, or while its provider fails. It is also revalidated with
+ * its provider, if it has an {@code ETag} or {@code Last-Modified} header,
+ * so that it is cached again without being downloaded again if it wasn't
+ * modified. A custom
+ * {@link net.spals.oembed4j.client.cache.OEmbedResponseCache} must retain
+ * expired responses for that long for them to be served.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedCachePolicy {
+
+    /**
+     * How long responses which say nothing of how long they may be
+     * cached are cached. Zero, the default, caches none of them,
+     * unless a min time to live is set.
+     */
+    Duration getDefaultTimeToLive();
+
+    /**
+     * The shortest time for which a response is cached, even if
+     * the provider asks for less, or for it not to be cached at all.
+     */
+    Duration getMinTimeToLive();
+
+    /**
+     * The longest time for which a response is cached, even if the provider asks for more.
+     */
+    Duration getMaxTimeToLive();
+
+    /**
+     * How long after a response expires it is still served, straight
+     * away, while a single request refreshes it in the background.
+     * Zero, the default, serves no expired responses.
+     */
+    Duration getStaleWhileRevalidate();
+
+    /**
+     * How long after a response expires it is still served when a request
+     * to refresh it fails. Zero, the default, serves no expired responses.
+     */
+    Duration getStaleIfError();
+
+    /**
+     * How long after a response expires it may be revalidated,
+     * rather than downloaded again. Zero revalidates no responses.
+     */
+    Duration getRevalidationWindow();
+
+    class Builder extends OEmbedCachePolicy_Builder {
+
+        public static final Duration DEFAULT_MAX_TIME_TO_LIVE = Duration.ofDays(1L);
+        public static final Duration DEFAULT_REVALIDATION_WINDOW = Duration.ofHours(1L);
+
+        public Builder() {
+            setDefaultTimeToLive(Duration.ZERO);
+            setMinTimeToLive(Duration.ZERO);
+            setMaxTimeToLive(DEFAULT_MAX_TIME_TO_LIVE);
+            setStaleWhileRevalidate(Duration.ZERO);
+            setStaleIfError(Duration.ZERO);
+            setRevalidationWindow(DEFAULT_REVALIDATION_WINDOW);
+        }
+
+        @Override
+        public OEmbedCachePolicy build() {
+            checkState(!getDefaultTimeToLive().isNegative(),
+                "Default time to live must not be negative: %s", getDefaultTimeToLive());
+            checkState(!getMinTimeToLive().isNegative(),
+                "Min time to live must not be negative: %s", getMinTimeToLive());
+            checkState(getMinTimeToLive().compareTo(getMaxTimeToLive()) <= 0,
+                "Max time to live must be at least the min time to live: %s", getMaxTimeToLive());
+            checkState(!getStaleWhileRevalidate().isNegative(),
+                "Stale while revalidate must not be negative: %s", getStaleWhileRevalidate());
+            checkState(!getStaleIfError().isNegative(),
+                "Stale if error must not be negative: %s", getStaleIfError());
+            checkState(!getRevalidationWindow().isNegative(),
+                "Revalidation window must not be negative: %s", getRevalidationWindow());
+            return super.build();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package net.spals.oembed4j.client;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+/**
+ * A snapshot of how often the responses of a single
+ * provider host are found in a client's cache.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedCacheStats {
+
+    /**
+     * The number of requests answered from the cache.
+     */
+    long getHitCount();
+
+    /**
+     * The number of requests which weren't, and so were sent to the provider.
+     */
+    long getMissCount();
+
+    /**
+     * The number of responses which weren't cached, as their time to live was zero.
+     */
+    long getUncachedCount();
+
+    /**
+     * The number of missed requests which were answered with an expired
+     * response, either while it was refreshed or because the refresh failed.
+     */
+    long getStaleCount();
+
+    /**
+     * The number of parses saved by expired responses which
+     * the provider confirmed weren't modified.
+     */
+    long getParsesSaved();
+
+    /**
+     * The number of bytes which weren't downloaded again, as the
+     * provider confirmed that expired responses weren't modified.
+     */
+    long getBytesSaved();
+
+    /**
+     * The number of popular responses which were refreshed before they expired.
+     */
+    long getRefreshAheadCount();
+
+    /**
+     * The fraction of requests answered from the cache,
+     * or {@code 0.0} if there have been no requests.
+     */
+    default double getHitRate() {
+        final long requests = getHitCount() + getMissCount();
+        return requests == 0L ? 0.0 : (double) getHitCount() / requests;
+    }
+
+    class Builder extends OEmbedCacheStats_Builder {
+    }
+}
@@ -0,0 +1,118 @@
+package net.spals.oembed4j.client;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+import java.time.Duration;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Configuration of the circuit breakers which guard requests to
+ * each provider host.
+ *
+ * A circuit opens once too many of a host's recent requests have
+ * failed or been slow. Requests to the host then fail fast, without
+ * being sent, until the circuit has been open for a while. A few trial
+ * requests then decide whether the circuit closes again or reopens.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedCircuitBreakerConfig {
+
+    /**
+     * The number of a host's most recent requests whose outcomes are recorded.
+     */
+    int getSlidingWindowSize();
+
+    /**
+     * The number of requests which must be recorded for
+     * a host before its circuit may open.
+     */
+    int getMinimumCalls();
+
+    /**
+     * The share of recorded requests, between 0 and 1, which must
+     * fail for the circuit to open. Requests fail when they can't be
+     * sent, time out, or get a server error or rate limiting response.
+     */
+    double getFailureRateThreshold();
+
+    /**
+     * How long a request may take before it counts as slow.
+     */
+    Duration getSlowCallDurationThreshold();
+
+    /**
+     * The share of recorded requests, between 0 and 1, which must
+     * be slow for the circuit to open.
+     */
+    double getSlowCallRateThreshold();
+
+    /**
+     * How long a circuit stays open before trial requests are let through.
+     */
+    Duration getOpenDuration();
+
+    /**
+     * The number of trial requests let through a half-open circuit.
+     */
+    int getHalfOpenCalls();
+
+    /**
+     * How long after it expires from the response cache a response
+     * may still be served, in place of failing fast, while its provider
+     * host's circuit is open. Zero, the default, serves no expired responses.
+     * A custom response cache must retain expired responses at least this long.
+     */
+    Duration getMaxStaleResponseAge();
+
+    /**
+     * Listeners for circuit state transitions.
+     */
+    List<OEmbedCircuitBreakerListener> getListeners();
+
+    class Builder extends OEmbedCircuitBreakerConfig_Builder {
+
+        public static final int DEFAULT_SLIDING_WINDOW_SIZE = 20;
+        public static final int DEFAULT_MINIMUM_CALLS = 10;
+        public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+        public static final Duration DEFAULT_SLOW_CALL_DURATION_THRESHOLD = Duration.ofSeconds(5L);
+        public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 1.0;
+        public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30L);
+        public static final int DEFAULT_HALF_OPEN_CALLS = 3;
+
+        public Builder() {
+            setSlidingWindowSize(DEFAULT_SLIDING_WINDOW_SIZE);
+            setMinimumCalls(DEFAULT_MINIMUM_CALLS);
+            setFailureRateThreshold(DEFAULT_FAILURE_RATE_THRESHOLD);
+            setSlowCallDurationThreshold(DEFAULT_SLOW_CALL_DURATION_THRESHOLD);
+            setSlowCallRateThreshold(DEFAULT_SLOW_CALL_RATE_THRESHOLD);
+            setOpenDuration(DEFAULT_OPEN_DURATION);
+            setHalfOpenCalls(DEFAULT_HALF_OPEN_CALLS);
+            setMaxStaleResponseAge(Duration.ZERO);
+        }
+
+        @Override
+        public OEmbedCircuitBreakerConfig build() {
+            checkState(getSlidingWindowSize() > 0,
+                "Sliding window size must be positive: %s", getSlidingWindowSize());
+            checkState(getMinimumCalls() > 0 && getMinimumCalls() <= getSlidingWindowSize(),
+                "Minimum calls must be positive and fit the sliding window: %s", getMinimumCalls());
+            checkState(getFailureRateThreshold() > 0.0 && getFailureRateThreshold() <= 1.0,
+                "Failure rate threshold must be between 0 and 1: %s", getFailureRateThreshold());
+            checkState(!getSlowCallDurationThreshold().isNegative() && !getSlowCallDurationThreshold().isZero(),
+                "Slow call duration threshold must be positive: %s", getSlowCallDurationThreshold());
+            checkState(getSlowCallRateThreshold() > 0.0 && getSlowCallRateThreshold() <= 1.0,
+                "Slow call rate threshold must be between 0 and 1: %s", getSlowCallRateThreshold());
+            checkState(!getOpenDuration().isNegative() && !getOpenDuration().isZero(),
+                "Open duration must be positive: %s", getOpenDuration());
+            checkState(getHalfOpenCalls() > 0 && getHalfOpenCalls() <= getSlidingWindowSize(),
+                "Half open calls must be positive and fit the sliding window: %s", getHalfOpenCalls());
+            checkState(!getMaxStaleResponseAge().isNegative(),
+                "Max stale response age must not be negative: %s", getMaxStaleResponseAge());
+            return super.build();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package net.spals.oembed4j.client;
+
+/**
+ * Listens for state transitions of the circuit breakers of an {@link OEmbedClient}.
+ *
+ * Listeners are called synchronously, while the transitioning
+ * circuit breaker is locked, so they should return quickly.
+ *
+ * @author tkral
+ */
+@FunctionalInterface
+public interface OEmbedCircuitBreakerListener {
+
+    /**
+     * Called when the circuit breaker of the given provider host changes state.
+     */
+    void onStateTransition(String host, OEmbedCircuitState fromState, OEmbedCircuitState toState);
+}
@@ -0,0 +1,38 @@
+package net.spals.oembed4j.client;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+/**
+ * A snapshot of the circuit breaker of a single provider host.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedCircuitBreakerStats {
+
+    OEmbedCircuitState getState();
+
+    /**
+     * The number of recent requests whose outcomes are recorded
+     * in the circuit breaker's window.
+     */
+    int getBufferedCalls();
+
+    /**
+     * The number of recorded requests which failed.
+     */
+    int getFailedCalls();
+
+    /**
+     * The number of recorded requests which were slow.
+     */
+    int getSlowCalls();
+
+    /**
+     * The total number of requests which failed fast while the circuit was open.
+     */
+    long getRejectedCalls();
+
+    class Builder extends OEmbedCircuitBreakerStats_Builder {
+    }
+}
@@ -0,0 +1,24 @@
+package net.spals.oembed4j.client;
+
+/**
+ * The states of the circuit breaker which guards
+ * requests to a single provider host.
+ *
+ * @author tkral
+ */
+public enum OEmbedCircuitState {
+    /**
+     * Requests are sent, and their outcomes are recorded.
+     */
+    CLOSED,
+    /**
+     * The provider host has been failing, so requests fail fast without being sent.
+     */
+    OPEN,
+    /**
+     * A few trial requests are sent, to decide whether
+     * the provider host has recovered.
+     */
+    HALF_OPEN,
+    ;
+}
@@ -4,7 +4,11 @@ import net.spals.oembed4j.model.OEmbedEndpoint;
 import net.spals.oembed4j.model.OEmbedRequest;
 import net.spals.oembed4j.model.OEmbedResponse;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A service contract which defines an oEmbed client
@@ -25,7 +29,8 @@ public interface OEmbedClient extends AutoCloseable {
      * {@link OEmbedRequest} and executes the request against it.
      *
      * This method will check a response cache for a result
-     * before executing the request.
+     * before executing the request. Concurrent calls for an equal
+     * request share a single execution.
      *
      * @param request A {@link OEmbedRequest} which represents
      *                the resource for which we wish to get oEmbed
@@ -36,6 +41,24 @@ public interface OEmbedClient extends AutoCloseable {
      */
     Optional<OEmbedResponse> execute(OEmbedRequest request);
 
+    /**
+     * Version of {@link #execute(OEmbedRequest)} which gives up at the given deadline.
+     *
+     * The deadline bounds the whole request: endpoint lookup, the HTTP
+     * exchanges including any redirects, and parsing the response. A
+     * request still running at the deadline is aborted, unless a
+     * concurrent call for an equal request still shares it.
+     *
+     * @param request A {@link OEmbedRequest} which represents
+     *                the resource for which we wish to get oEmbed
+     *                information
+     * @param deadline The time by which the request must complete
+     * @return An {@link OEmbedResponse}, if possible.
+     *         Otherwise, {@code Optional.empty()}, if the request cannot
+     *         be successfully executed by the deadline.
+     */
+    Optional<OEmbedResponse> execute(OEmbedRequest request, Instant deadline);
+
     /**
      * Finds a matching {@link OEmbedEndpoint} for the given
      * {@link OEmbedRequest} and executes the request against it.
@@ -69,4 +92,99 @@ public interface OEmbedClient extends AutoCloseable {
      *         be successfully executed.
      */
     Optional<OEmbedResponse> executeSkipCache(OEmbedRequest request, OEmbedEndpoint endpoint);
+
+    /**
+     * Asynchronous version of {@link #execute(OEmbedRequest)}.
+     *
+     * A cached response completes the returned future immediately.
+     * Otherwise, the request is executed without blocking the calling
+     * thread, sharing a single execution with concurrent calls for an
+     * equal request. Cancelling the returned future aborts the request
+     * once no other call shares it.
+     *
+     * @param request A {@link OEmbedRequest} which represents
+     *                the resource for which we wish to get oEmbed
+     *                information
+     * @return A future which completes with an {@link OEmbedResponse}, if
+     *         possible. Otherwise, it completes with {@code Optional.empty()},
+     *         if the request cannot be successfully executed.
+     */
+    CompletableFuture<Optional<OEmbedResponse>> executeAsync(OEmbedRequest request);
+
+    /**
+     * Asynchronous version of {@link #executeSkipCache(OEmbedRequest)}.
+     *
+     * Cancelling the returned future aborts the request.
+     *
+     * @param request A {@link OEmbedRequest} which represents
+     *                the resource for which we wish to get oEmbed
+     *                information
+     * @return A future which completes with an {@link OEmbedResponse}, if
+     *         possible. Otherwise, it completes with {@code Optional.empty()},
+     *         if the request cannot be successfully executed.
+     */
+    CompletableFuture<Optional<OEmbedResponse>> executeSkipCacheAsync(OEmbedRequest request);
+
+    /**
+     * Asynchronous version of {@link #executeSkipCache(OEmbedRequest, OEmbedEndpoint)}.
+     *
+     * Cancelling the returned future aborts the request.
+     *
+     * @param request A {@link OEmbedRequest} which represents
+     *                the resource for which we wish to get oEmbed
+     *                information
+     * @param endpoint The {@link OEmbedEndpoint} of the oEmbed
+     *                 provider.
+     * @return A future which completes with an {@link OEmbedResponse}, if
+     *         possible. Otherwise, it completes with {@code Optional.empty()},
+     *         if the request cannot be successfully executed.
+     */
+    CompletableFuture<Optional<OEmbedResponse>> executeSkipCacheAsync(OEmbedRequest request, OEmbedEndpoint endpoint);
+
+    /**
+     * Executes all of the given {@link OEmbedRequest}s, each against
+     * its matching {@link OEmbedEndpoint}, and waits for them to complete.
+     *
+     * Identical requests are executed only once, and share the execution
+     * of an identical request which is already running. Cached responses
+     * are used immediately, and the remaining requests are executed in
+     * parallel, within the client's configured limits on concurrent
+     * requests overall and per provider host.
+     *
+     * @param requests The {@link OEmbedRequest}s to execute
+     * @return An {@link OEmbedResult} for each distinct request, in the
+     *         order that the requests were given. A request which cannot
+     *         be successfully executed has a result with its failure reason.
+     */
+    Map<OEmbedRequest, OEmbedResult> executeAll(Collection<OEmbedRequest> requests);
+
+    /**
+     * Asynchronous version of {@link #executeAll(Collection)}.
+     *
+     * @param requests The {@link OEmbedRequest}s to execute
+     * @return A future which completes with an {@link OEmbedResult}
+     *         for each distinct request, once all requests have completed.
+     */
+    CompletableFuture<Map<OEmbedRequest, OEmbedResult>> executeAllAsync(Collection<OEmbedRequest> requests);
+
+    /**
+     * Returns a snapshot of the circuit breaker of each provider host
+     * which has been requested, keyed by lower case host. Empty, unless
+     * the client is configured with {@link OEmbedClientConfig#getCircuitBreaker()}.
+     */
+    Map<String, OEmbedCircuitBreakerStats> getCircuitBreakerStats();
+
+    /**
+     * Returns a snapshot of the concurrency limited requests against each provider
+     * host, including its current concurrency limit, keyed by lower case host.
+     * These are the batched requests, or all requests if the client is configured
+     * with {@link OEmbedClientConfig#getAdaptiveConcurrency()}.
+     */
+    Map<String, OEmbedConcurrencyStats> getConcurrencyStats();
+
+    /**
+     * Returns how often the responses of each provider host have been
+     * found in the client's cache, keyed by lower case host.
+     */
+    Map<String, OEmbedCacheStats> getCacheStats();
 }
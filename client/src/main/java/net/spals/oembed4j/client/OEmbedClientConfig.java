@@ -0,0 +1,172 @@
+package net.spals.oembed4j.client;
+
+import net.spals.oembed4j.client.cache.OEmbedResponseCache;
+import net.spals.oembed4j.client.cache.TinyLfuResponseCache;
+import org.inferred.freebuilder.FreeBuilder;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Configuration of an {@link OEmbedClient}.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedClientConfig {
+
+    /**
+     * The maximum number of requests of a batch which
+     * may be in flight at once, across all providers.
+     */
+    int getMaxConcurrentRequests();
+
+    /**
+     * The maximum number of requests of a batch which
+     * may be in flight at once against a single provider host.
+     * Ignored when {@link #getAdaptiveConcurrency()} is set.
+     */
+    int getMaxConcurrentRequestsPerHost();
+
+    /**
+     * The kind of threads on which asynchronous and batched requests run.
+     */
+    OEmbedExecutionMode getExecutionMode();
+
+    /**
+     * The longest time a request waits for a concurrent, identical
+     * request to complete before executing on its own.
+     */
+    Duration getMaxCoalescedWait();
+
+    /**
+     * The timeouts of exchanges with providers, unless overridden for the provider host.
+     */
+    OEmbedTimeouts getTimeouts();
+
+    /**
+     * Overrides of {@link #getTimeouts()}, keyed by lower case provider host.
+     */
+    Map<String, OEmbedTimeouts> getTimeoutsByHost();
+
+    /**
+     * How slow requests are hedged, if at all. Requests are not hedged by default.
+     */
+    Optional<OEmbedHedgingConfig> getHedging();
+
+    /**
+     * How requests to unhealthy provider hosts fail fast, if at all.
+     * Requests are not guarded by circuit breakers by default.
+     */
+    Optional<OEmbedCircuitBreakerConfig> getCircuitBreaker();
+
+    /**
+     * How the limit on the requests in flight against each provider host
+     * adapts to the host's latency and failures, if at all. An adaptive
+     * limit applies to all requests, not only those of a batch. The static
+     * {@link #getMaxConcurrentRequestsPerHost()} is used by default.
+     */
+    Optional<OEmbedAdaptiveConcurrencyConfig> getAdaptiveConcurrency();
+
+    /**
+     * The rate limit on requests to each provider host, unless overridden
+     * for the provider host. Requests are not rate limited by default.
+     */
+    Optional<OEmbedRateLimit> getRateLimit();
+
+    /**
+     * Overrides of {@link #getRateLimit()}, keyed by lower case provider host.
+     */
+    Map<String, OEmbedRateLimit> getRateLimitsByHost();
+
+    /**
+     * The longest time for which requests to a provider host are suspended
+     * when it responds to a request with a {@code Retry-After} header,
+     * after rate limiting it or being unavailable. Longer periods are cut
+     * short, and zero ignores such headers.
+     */
+    Duration getMaxRetryAfter();
+
+    /**
+     * How failed requests are retried, if at all. Requests are not retried by default.
+     */
+    Optional<OEmbedRetryConfig> getRetries();
+
+    /**
+     * How popular responses are refreshed before they expire, if at all.
+     * Responses are not refreshed ahead by default.
+     */
+    Optional<OEmbedRefreshAheadConfig> getRefreshAhead();
+
+    /**
+     * How long responses are cached, unless overridden for the provider host.
+     */
+    OEmbedCachePolicy getCachePolicy();
+
+    /**
+     * Overrides of {@link #getCachePolicy()}, keyed by lower case provider host.
+     */
+    Map<String, OEmbedCachePolicy> getCachePoliciesByHost();
+
+    /**
+     * The cache of responses, if not the default {@link TinyLfuResponseCache}.
+     * A cache set here is shared by every client built with this configuration.
+     */
+    Optional<OEmbedResponseCache> getResponseCache();
+
+    class Builder extends OEmbedClientConfig_Builder {
+
+        public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 64;
+        public static final int DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST = 8;
+        public static final Duration DEFAULT_MAX_COALESCED_WAIT = Duration.ofSeconds(10L);
+        public static final Duration DEFAULT_MAX_RETRY_AFTER = Duration.ofMinutes(5L);
+
+        public Builder() {
+            setMaxConcurrentRequests(DEFAULT_MAX_CONCURRENT_REQUESTS);
+            setMaxConcurrentRequestsPerHost(DEFAULT_MAX_CONCURRENT_REQUESTS_PER_HOST);
+            setExecutionMode(OEmbedExecutionMode.PLATFORM_THREADS);
+            setMaxCoalescedWait(DEFAULT_MAX_COALESCED_WAIT);
+            setTimeouts(new OEmbedTimeouts.Builder().build());
+            setMaxRetryAfter(DEFAULT_MAX_RETRY_AFTER);
+            setCachePolicy(new OEmbedCachePolicy.Builder().build());
+        }
+
+        @Override
+        public Builder putTimeoutsByHost(final String host, final OEmbedTimeouts timeouts) {
+            checkArgument(!host.isEmpty(), "Provider host must not be empty");
+            return super.putTimeoutsByHost(host.toLowerCase(Locale.ROOT), timeouts);
+        }
+
+        @Override
+        public Builder putRateLimitsByHost(final String host, final OEmbedRateLimit rateLimit) {
+            checkArgument(!host.isEmpty(), "Provider host must not be empty");
+            return super.putRateLimitsByHost(host.toLowerCase(Locale.ROOT), rateLimit);
+        }
+
+        @Override
+        public Builder putCachePoliciesByHost(final String host, final OEmbedCachePolicy cachePolicy) {
+            checkArgument(!host.isEmpty(), "Provider host must not be empty");
+            return super.putCachePoliciesByHost(host.toLowerCase(Locale.ROOT), cachePolicy);
+        }
+
+        @Override
+        public OEmbedClientConfig build() {
+            checkState(getMaxConcurrentRequests() > 0,
+                "Max concurrent requests must be positive: %s", getMaxConcurrentRequests());
+            checkState(getMaxConcurrentRequestsPerHost() > 0,
+                "Max concurrent requests per host must be positive: %s", getMaxConcurrentRequestsPerHost());
+            checkState(getExecutionMode() != OEmbedExecutionMode.VIRTUAL_THREADS || VirtualThreads.isSupported(),
+                "Virtual threads are not supported by this Java runtime");
+            checkState(!getMaxCoalescedWait().isNegative(),
+                "Max coalesced wait must not be negative: %s", getMaxCoalescedWait());
+            checkState(!getMaxRetryAfter().isNegative(),
+                "Max retry after must not be negative: %s", getMaxRetryAfter());
+            return super.build();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package net.spals.oembed4j.client;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+/**
+ * A snapshot of the batched requests against a single provider host.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedConcurrencyStats {
+
+    /**
+     * The current limit on the host's requests in flight.
+     */
+    int getLimit();
+
+    /**
+     * The number of the host's requests in flight.
+     */
+    int getInFlight();
+
+    /**
+     * The number of the host's requests waiting for room to run.
+     */
+    int getQueued();
+
+    class Builder extends OEmbedConcurrencyStats_Builder {
+    }
+}
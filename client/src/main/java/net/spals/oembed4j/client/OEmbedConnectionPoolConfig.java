@@ -0,0 +1,88 @@
+package net.spals.oembed4j.client;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Configuration of a pool of persistent HTTP connections,
+ * which are kept alive and reused across requests.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedConnectionPoolConfig {
+
+    /**
+     * The maximum number of connections in the pool, across all routes.
+     */
+    int getMaxTotalConnections();
+
+    /**
+     * The maximum number of connections in the pool to any single route
+     * (that is, scheme, host and port), unless overridden for the route.
+     */
+    int getMaxConnectionsPerRoute();
+
+    /**
+     * Overrides of {@link #getMaxConnectionsPerRoute()}, keyed
+     * by the route's origin, such as {@code https://www.youtube.com}.
+     */
+    Map<URI, Integer> getMaxConnectionsByRoute();
+
+    /**
+     * How long a connection may sit idle in the pool before it is evicted.
+     */
+    Duration getIdleConnectionTimeout();
+
+    /**
+     * The longest time a connection is kept alive for reuse,
+     * no matter how long the provider would keep it open.
+     */
+    Duration getMaxKeepAlive();
+
+    class Builder extends OEmbedConnectionPoolConfig_Builder {
+
+        public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 200;
+        public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+        public static final Duration DEFAULT_IDLE_CONNECTION_TIMEOUT = Duration.ofSeconds(30L);
+        public static final Duration DEFAULT_MAX_KEEP_ALIVE = Duration.ofMinutes(5L);
+
+        public Builder() {
+            setMaxTotalConnections(DEFAULT_MAX_TOTAL_CONNECTIONS);
+            setMaxConnectionsPerRoute(DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+            setIdleConnectionTimeout(DEFAULT_IDLE_CONNECTION_TIMEOUT);
+            setMaxKeepAlive(DEFAULT_MAX_KEEP_ALIVE);
+        }
+
+        public Builder putMaxConnectionsByRoute(final String origin, final int maxConnections) {
+            return putMaxConnectionsByRoute(URI.create(origin), maxConnections);
+        }
+
+        @Override
+        public Builder putMaxConnectionsByRoute(final URI origin, final int maxConnections) {
+            checkArgument(origin.getScheme() != null && origin.getHost() != null,
+                "Route origin must have a scheme and a host: %s", origin);
+            checkArgument(maxConnections > 0, "Max connections for %s must be positive: %s", origin, maxConnections);
+            return super.putMaxConnectionsByRoute(origin, maxConnections);
+        }
+
+        @Override
+        public OEmbedConnectionPoolConfig build() {
+            checkState(getMaxTotalConnections() > 0,
+                "Max total connections must be positive: %s", getMaxTotalConnections());
+            checkState(getMaxConnectionsPerRoute() > 0,
+                "Max connections per route must be positive: %s", getMaxConnectionsPerRoute());
+            checkState(!getIdleConnectionTimeout().isNegative() && !getIdleConnectionTimeout().isZero(),
+                "Idle connection timeout must be positive: %s", getIdleConnectionTimeout());
+            checkState(!getMaxKeepAlive().isNegative() && !getMaxKeepAlive().isZero(),
+                "Max keep alive must be positive: %s", getMaxKeepAlive());
+            return super.build();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package net.spals.oembed4j.client;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+/**
+ * A snapshot of the usage of a pool of persistent HTTP connections,
+ * either in total or for a single route.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedConnectionPoolStats {
+
+    /**
+     * The number of connections currently in use by requests.
+     */
+    int getLeased();
+
+    /**
+     * The number of requests waiting for a connection.
+     */
+    int getPending();
+
+    /**
+     * The number of idle connections kept alive for reuse.
+     */
+    int getAvailable();
+
+    /**
+     * The maximum number of connections allowed.
+     */
+    int getMax();
+
+    class Builder extends OEmbedConnectionPoolStats_Builder {
+    }
+}
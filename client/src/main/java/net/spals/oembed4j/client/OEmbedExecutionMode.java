@@ -0,0 +1,20 @@
+package net.spals.oembed4j.client;
+
+/**
+ * The kinds of threads on which an {@link OEmbedClient}
+ * runs its asynchronous and batched requests.
+ *
+ * @author tkral
+ */
+public enum OEmbedExecutionMode {
+    /**
+     * Requests run on a pool of platform threads.
+     */
+    PLATFORM_THREADS,
+    /**
+     * Each request runs on its own virtual thread.
+     * Requires a Java runtime with virtual thread support (21+).
+     */
+    VIRTUAL_THREADS,
+    ;
+}
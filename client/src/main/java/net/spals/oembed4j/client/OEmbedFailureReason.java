@@ -0,0 +1,53 @@
+package net.spals.oembed4j.client;
+
+/**
+ * The reasons for which an oEmbed request
+ * may fail to produce a response.
+ *
+ * @author tkral
+ */
+public enum OEmbedFailureReason {
+    /**
+     * No endpoint in the registry matches the resource URI.
+     */
+    NO_MATCHING_ENDPOINT,
+    /**
+     * The provider responded with an error status.
+     */
+    UNSUCCESSFUL_RESPONSE,
+    /**
+     * The provider redirected more often than allowed.
+     */
+    TOO_MANY_REDIRECTS,
+    /**
+     * The provider's response could not be read or parsed.
+     */
+    UNREADABLE_RESPONSE,
+    /**
+     * The request could not be sent or its response received.
+     */
+    REQUEST_FAILED,
+    /**
+     * The provider took longer to connect or respond than its timeouts allow.
+     */
+    TIMED_OUT,
+    /**
+     * The provider host's circuit breaker is open, so the request wasn't sent.
+     */
+    CIRCUIT_OPEN,
+    /**
+     * The provider host's concurrency limit was reached,
+     * and the request couldn't wait any longer for room to run.
+     */
+    CONCURRENCY_LIMITED,
+    /**
+     * The provider host's rate limit was reached, or the host asked
+     * for requests to be suspended, so the request wasn't sent.
+     */
+    RATE_LIMITED,
+    /**
+     * The request was cancelled before it completed.
+     */
+    CANCELLED,
+    ;
+}
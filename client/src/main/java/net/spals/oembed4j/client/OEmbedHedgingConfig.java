@@ -0,0 +1,71 @@
+package net.spals.oembed4j.client;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Configuration of hedged requests, which race a second, identical
+ * request against one that is slow to complete.
+ *
+ * A request is hedged once it has taken longer than a percentile of
+ * the latencies recently observed for its provider host. Whichever
+ * request completes first wins, and the other is cancelled.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedHedgingConfig {
+
+    /**
+     * The percentile of recent latencies, between 0 and 1 exclusive,
+     * after which a request is hedged. For example, 0.95 for the p95.
+     */
+    double getLatencyPercentile();
+
+    /**
+     * The number of recent latencies kept for each provider host.
+     */
+    int getLatencyWindowSize();
+
+    /**
+     * The number of latencies which must be observed for a provider
+     * host before its requests are hedged.
+     */
+    int getMinLatencySamples();
+
+    /**
+     * The greatest share of a provider host's recent requests, between
+     * 0 and 1, which may be hedged. For example, 0.05 for at most 5%
+     * extra requests.
+     */
+    double getMaxHedgeRatio();
+
+    class Builder extends OEmbedHedgingConfig_Builder {
+
+        public static final double DEFAULT_LATENCY_PERCENTILE = 0.95;
+        public static final int DEFAULT_LATENCY_WINDOW_SIZE = 100;
+        public static final int DEFAULT_MIN_LATENCY_SAMPLES = 20;
+        public static final double DEFAULT_MAX_HEDGE_RATIO = 0.05;
+
+        public Builder() {
+            setLatencyPercentile(DEFAULT_LATENCY_PERCENTILE);
+            setLatencyWindowSize(DEFAULT_LATENCY_WINDOW_SIZE);
+            setMinLatencySamples(DEFAULT_MIN_LATENCY_SAMPLES);
+            setMaxHedgeRatio(DEFAULT_MAX_HEDGE_RATIO);
+        }
+
+        @Override
+        public OEmbedHedgingConfig build() {
+            checkState(getLatencyPercentile() > 0.0 && getLatencyPercentile() < 1.0,
+                "Latency percentile must be between 0 and 1: %s", getLatencyPercentile());
+            checkState(getLatencyWindowSize() > 0,
+                "Latency window size must be positive: %s", getLatencyWindowSize());
+            checkState(getMinLatencySamples() > 0 && getMinLatencySamples() <= getLatencyWindowSize(),
+                "Min latency samples must be positive and fit the latency window: %s", getMinLatencySamples());
+            checkState(getMaxHedgeRatio() >= 0.0 && getMaxHedgeRatio() <= 1.0,
+                "Max hedge ratio must be between 0 and 1: %s", getMaxHedgeRatio());
+            return super.build();
+        }
+    }
+}
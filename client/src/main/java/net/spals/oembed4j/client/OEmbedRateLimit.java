@@ -0,0 +1,60 @@
+package net.spals.oembed4j.client;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+import java.time.Duration;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A token bucket rate limit on the requests sent to an oEmbed provider host.
+ *
+ * The bucket holds up to a burst of requests, and refills at a steady
+ * rate. A request which finds the bucket empty waits for its token, unless
+ * that would take longer than the max wait, in which case it fails with
+ * {@link OEmbedFailureReason#RATE_LIMITED} without being sent.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedRateLimit {
+
+    /**
+     * The steady rate at which requests may be sent.
+     */
+    double getRequestsPerSecond();
+
+    /**
+     * The number of requests which may be sent at once after a quiet period.
+     */
+    int getBurst();
+
+    /**
+     * The longest time a request waits for its turn to be sent.
+     */
+    Duration getMaxWait();
+
+    class Builder extends OEmbedRateLimit_Builder {
+
+        public static final double DEFAULT_REQUESTS_PER_SECOND = 10.0;
+        public static final int DEFAULT_BURST = 10;
+        public static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(1L);
+
+        public Builder() {
+            setRequestsPerSecond(DEFAULT_REQUESTS_PER_SECOND);
+            setBurst(DEFAULT_BURST);
+            setMaxWait(DEFAULT_MAX_WAIT);
+        }
+
+        @Override
+        public OEmbedRateLimit build() {
+            checkState(getRequestsPerSecond() > 0.0,
+                "Requests per second must be positive: %s", getRequestsPerSecond());
+            checkState(getBurst() > 0,
+                "Burst must be positive: %s", getBurst());
+            checkState(!getMaxWait().isNegative(),
+                "Max wait must not be negative: %s", getMaxWait());
+            return super.build();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package net.spals.oembed4j.client;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Configuration of refresh-ahead, which refreshes popular
+ * responses in the background before they expire, so that
+ * their callers never wait for them to be fetched again.
+ *
+ * How often each request is made is approximated by a compact
+ * frequency sketch, in which old popularity fades over time.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedRefreshAheadConfig {
+
+    /**
+     * The fraction of its time to live, between 0 and 1 exclusive, after
+     * which a popular response is refreshed. For example, 0.8 for 80%.
+     */
+    double getRefreshFactor();
+
+    /**
+     * How often a request must have been made recently, between
+     * 1 and 15, for its response to be refreshed ahead.
+     */
+    int getMinFrequency();
+
+    /**
+     * The greatest number of refreshes which run at once. Refreshes
+     * beyond it are skipped, so as not to crowd out callers' requests.
+     */
+    int getMaxConcurrentRefreshes();
+
+    /**
+     * The number of distinct requests whose popularity is tracked well.
+     */
+    long getTrackedRequests();
+
+    class Builder extends OEmbedRefreshAheadConfig_Builder {
+
+        public static final double DEFAULT_REFRESH_FACTOR = 0.8;
+        public static final int DEFAULT_MIN_FREQUENCY = 4;
+        public static final int DEFAULT_MAX_CONCURRENT_REFRESHES = 4;
+        public static final long DEFAULT_TRACKED_REQUESTS = 10_000L;
+
+        public Builder() {
+            setRefreshFactor(DEFAULT_REFRESH_FACTOR);
+            setMinFrequency(DEFAULT_MIN_FREQUENCY);
+            setMaxConcurrentRefreshes(DEFAULT_MAX_CONCURRENT_REFRESHES);
+            setTrackedRequests(DEFAULT_TRACKED_REQUESTS);
+        }
+
+        @Override
+        public OEmbedRefreshAheadConfig build() {
+            checkState(getRefreshFactor() > 0.0 && getRefreshFactor() < 1.0,
+                "Refresh factor must be between 0 and 1: %s", getRefreshFactor());
+            checkState(getMinFrequency() >= 1 && getMinFrequency() <= 15,
+                "Min frequency must be between 1 and 15: %s", getMinFrequency());
+            checkState(getMaxConcurrentRefreshes() > 0,
+                "Max concurrent refreshes must be positive: %s", getMaxConcurrentRefreshes());
+            checkState(getTrackedRequests() > 0L,
+                "Tracked requests must be positive: %s", getTrackedRequests());
+            return super.build();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package net.spals.oembed4j.client;
+
+import net.spals.oembed4j.client.cache.OEmbedResponseValidators;
+import net.spals.oembed4j.model.OEmbedResponse;
+import org.inferred.freebuilder.FreeBuilder;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * The outcome of executing a single oEmbed request: either
+ * an {@link OEmbedResponse} or the reason there is none.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedResult {
+
+    Optional<OEmbedResponse> getResponse();
+
+    Optional<OEmbedFailureReason> getFailureReason();
+
+    /**
+     * A human readable description of the failure, if any.
+     */
+    Optional<String> getFailureMessage();
+
+    /**
+     * The HTTP status of the provider's unsuccessful response, if any.
+     */
+    Optional<Integer> getStatusCode();
+
+    /**
+     * How long the provider asked to wait before sending it more requests,
+     * in a {@code Retry-After} header of its unsuccessful response, if at all.
+     */
+    Optional<Duration> getRetryAfter();
+
+    /**
+     * Whether the response is an expired one which the provider confirmed
+     * wasn't modified, and so wasn't downloaded or parsed again.
+     */
+    boolean isNotModified();
+
+    /**
+     * How long the provider's HTTP caching headers allow the response to
+     * be cached, if they say at all. Unlike the response's {@code cache_age},
+     * it isn't part of the response itself.
+     */
+    Optional<Duration> getFreshnessLifetime();
+
+    /**
+     * The {@code ETag} and {@code Last-Modified} validators of the response,
+     * with which it can be revalidated once it expires, if it has any.
+     */
+    Optional<OEmbedResponseValidators> getValidators();
+
+    default boolean isSuccessful() {
+        return getResponse().isPresent();
+    }
+
+    static OEmbedResult success(final OEmbedResponse response) {
+        return new Builder().setResponse(response).build();
+    }
+
+    static OEmbedResult failure(final OEmbedFailureReason failureReason, final String failureMessage) {
+        return new Builder().setFailureReason(failureReason).setFailureMessage(failureMessage).build();
+    }
+
+    static OEmbedResult unsuccessfulResponse(final int statusCode, final String failureMessage) {
+        return new Builder().setFailureReason(OEmbedFailureReason.UNSUCCESSFUL_RESPONSE)
+            .setFailureMessage(failureMessage)
+            .setStatusCode(statusCode)
+            .build();
+    }
+
+    static OEmbedResult unsuccessfulResponse(
+        final int statusCode,
+        final String failureMessage,
+        final Optional<Duration> retryAfter
+    ) {
+        return new Builder().setFailureReason(OEmbedFailureReason.UNSUCCESSFUL_RESPONSE)
+            .setFailureMessage(failureMessage)
+            .setStatusCode(statusCode)
+            .setRetryAfter(retryAfter)
+            .build();
+    }
+
+    class Builder extends OEmbedResult_Builder {
+
+        public Builder() {
+            setNotModified(false);
+        }
+
+        @Override
+        public OEmbedResult build() {
+            checkState(getResponse().isPresent() != getFailureReason().isPresent(),
+                "A result must have either a response or a failure reason");
+            checkState(!isNotModified() || getResponse().isPresent(),
+                "A result which wasn't modified must have a response");
+            return super.build();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package net.spals.oembed4j.client;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+import java.time.Duration;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Configuration of retried requests. oEmbed requests are idempotent
+ * fetches, so those which fail in a way that tells of a transient
+ * problem with the provider may safely be sent again.
+ *
+ * Retries back off exponentially, with full jitter, and wait at least
+ * as long as the provider asked for in a {@code Retry-After} header.
+ * Each request adds a fraction of a retry to its provider host's retry
+ * budget, and each retry spends a whole one, so that retries can't
+ * multiply the load on a struggling provider.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedRetryConfig {
+
+    /**
+     * The greatest number of times a request is sent, including the first.
+     */
+    int getMaxAttempts();
+
+    /**
+     * The backoff before the first retry, which doubles with every further retry.
+     */
+    Duration getInitialBackoff();
+
+    /**
+     * The longest backoff before any retry. A provider asking
+     * to wait longer than this is not retried.
+     */
+    Duration getMaxBackoff();
+
+    /**
+     * The fraction of a retry, between 0 and 1, which each
+     * request adds to its provider host's retry budget.
+     */
+    double getRetryBudgetRatio();
+
+    /**
+     * The most retries a provider host's budget saves up.
+     * Budgets start out full.
+     */
+    int getMaxRetryBudget();
+
+    class Builder extends OEmbedRetryConfig_Builder {
+
+        public static final int DEFAULT_MAX_ATTEMPTS = 3;
+        public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(100L);
+        public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(5L);
+        public static final double DEFAULT_RETRY_BUDGET_RATIO = 0.1;
+        public static final int DEFAULT_MAX_RETRY_BUDGET = 10;
+
+        public Builder() {
+            setMaxAttempts(DEFAULT_MAX_ATTEMPTS);
+            setInitialBackoff(DEFAULT_INITIAL_BACKOFF);
+            setMaxBackoff(DEFAULT_MAX_BACKOFF);
+            setRetryBudgetRatio(DEFAULT_RETRY_BUDGET_RATIO);
+            setMaxRetryBudget(DEFAULT_MAX_RETRY_BUDGET);
+        }
+
+        @Override
+        public OEmbedRetryConfig build() {
+            checkState(getMaxAttempts() > 0,
+                "Max attempts must be positive: %s", getMaxAttempts());
+            checkState(!getInitialBackoff().isNegative() && !getInitialBackoff().isZero(),
+                "Initial backoff must be positive: %s", getInitialBackoff());
+            checkState(getMaxBackoff().compareTo(getInitialBackoff()) >= 0,
+                "Max backoff must not be shorter than the initial backoff: %s", getMaxBackoff());
+            checkState(getRetryBudgetRatio() >= 0.0 && getRetryBudgetRatio() <= 1.0,
+                "Retry budget ratio must be between 0 and 1: %s", getRetryBudgetRatio());
+            checkState(getMaxRetryBudget() >= 0,
+                "Max retry budget must not be negative: %s", getMaxRetryBudget());
+            return super.build();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package net.spals.oembed4j.client;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+import java.time.Duration;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Timeouts of the HTTP exchanges with an oEmbed provider.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedTimeouts {
+
+    /**
+     * The longest time to wait for a connection to the provider to be established.
+     */
+    Duration getConnectTimeout();
+
+    /**
+     * The longest time to wait for data from the provider once connected.
+     */
+    Duration getReadTimeout();
+
+    class Builder extends OEmbedTimeouts_Builder {
+
+        public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5L);
+        public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(10L);
+
+        public Builder() {
+            setConnectTimeout(DEFAULT_CONNECT_TIMEOUT);
+            setReadTimeout(DEFAULT_READ_TIMEOUT);
+        }
+
+        @Override
+        public OEmbedTimeouts build() {
+            checkState(isPositiveMillis(getConnectTimeout()),
+                "Connect timeout must be at least a millisecond: %s", getConnectTimeout());
+            checkState(isPositiveMillis(getReadTimeout()),
+                "Read timeout must be at least a millisecond: %s", getReadTimeout());
+            checkState(getConnectTimeout().toMillis() <= Integer.MAX_VALUE,
+                "Connect timeout is too long: %s", getConnectTimeout());
+            checkState(getReadTimeout().toMillis() <= Integer.MAX_VALUE,
+                "Read timeout is too long: %s", getReadTimeout());
+            return super.build();
+        }
+
+        // HTTP connectors take timeouts in whole milliseconds, where zero means no timeout at all
+        private static boolean isPositiveMillis(final Duration timeout) {
+            return timeout.toMillis() > 0L;
+        }
+    }
+}
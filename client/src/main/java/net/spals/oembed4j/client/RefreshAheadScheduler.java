@@ -0,0 +1,107 @@
+package net.spals.oembed4j.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import net.spals.oembed4j.client.cache.FrequencySketch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Refreshes popular cached results in the background before they expire,
+ * so that their callers keep finding them in the cache.
+ *
+ * How often each key is accessed is approximated by a {@link FrequencySketch}.
+ * When a result is cached for a key which is popular enough, a refresh is
+ * scheduled at a fraction of its time to live. The key must still be popular
+ * when the refresh is due, and a refresh must be free to run: refreshes
+ * beyond the max concurrent refreshes are skipped, rather than queued, so
+ * that they never hold up callers' requests.
+ *
+ * @author tkral
+ */
+final class RefreshAheadScheduler<K> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshAheadScheduler.class);
+
+    private final OEmbedRefreshAheadConfig config;
+    private final Function<K, CompletableFuture<?>> refresher;
+    private final ScheduledExecutorService scheduler;
+    // Guarded by itself, as the sketch isn't thread safe
+    private final FrequencySketch sketch;
+    private final Semaphore refreshPermits;
+    private final ConcurrentMap<K, ScheduledFuture<?>> refreshesByKey = new ConcurrentHashMap<>();
+
+    RefreshAheadScheduler(
+        final OEmbedRefreshAheadConfig config,
+        final Function<K, CompletableFuture<?>> refresher,
+        final ScheduledExecutorService scheduler
+    ) {
+        this.config = config;
+        this.refresher = refresher;
+        this.scheduler = scheduler;
+        this.sketch = new FrequencySketch(config.getTrackedRequests());
+        this.refreshPermits = new Semaphore(config.getMaxConcurrentRefreshes());
+    }
+
+    void onAccess(final K key) {
+        synchronized (sketch) {
+            sketch.increment(key);
+        }
+    }
+
+    /**
+     * Schedules a refresh of the result just cached for the given key, with the
+     * given time to live, if the key is popular. Any earlier refresh is cancelled.
+     */
+    void onCached(final K key, final Duration timeToLive) {
+        if (timeToLive.isZero() || !isPopular(key)) {
+            return;
+        }
+
+        final long refreshDelayNanos = (long) (timeToLive.toNanos() * config.getRefreshFactor());
+        final AtomicReference<ScheduledFuture<?>> refresh = new AtomicReference<>();
+        refresh.set(scheduler.schedule(() -> {
+            refreshesByKey.remove(key, refresh.get());
+            refresh(key);
+        }, refreshDelayNanos, TimeUnit.NANOSECONDS));
+
+        final ScheduledFuture<?> previousRefresh = refreshesByKey.put(key, refresh.get());
+        if (previousRefresh != null) {
+            previousRefresh.cancel(false);
+        }
+    }
+
+    private void refresh(final K key) {
+        if (!isPopular(key) || !refreshPermits.tryAcquire()) {
+            return;
+        }
+
+        try {
+            refresher.apply(key).whenComplete((result, throwable) -> refreshPermits.release());
+        } catch (final RuntimeException e) {
+            refreshPermits.release();
+            LOGGER.info("failed to refresh cached result ahead of expiry", e);
+        }
+    }
+
+    private boolean isPopular(final K key) {
+        synchronized (sketch) {
+            return sketch.frequency(key) >= config.getMinFrequency();
+        }
+    }
+
+    @VisibleForTesting
+    int getScheduledRefreshes() {
+        return refreshesByKey.size();
+    }
+}
@@ -0,0 +1,296 @@
+package net.spals.oembed4j.client;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent fetches of equal keys into a single fetch.
+ *
+ * The first caller for a key leads a <em>flight</em>, which performs the
+ * fetch. Callers for the same key which arrive while the flight is in
+ * progress wait for, or asynchronously attach to, its result instead of
+ * fetching again. The result listener sees each fetched result before the
+ * flight ends, so that it can be cached for callers arriving afterwards.
+ *
+ * Waiting is bounded: a caller which has waited for the maximum time stops
+ * waiting and performs its own fetch. An asynchronous fetch is cancelled
+ * only once every caller attached to it has cancelled. A failing result
+ * listener is logged, rather than left to fail a fetched result for the
+ * callers attached to it.
+ *
+ * @author tkral
+ */
+final class RequestCoalescer<K, V> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestCoalescer.class);
+    private static final int ABANDONED = -1;
+
+    private final ConcurrentMap<K, Flight> flights = new ConcurrentHashMap<>();
+    private final BiConsumer<K, V> resultListener;
+    private final long maxWaitNanos;
+    private final ScheduledExecutorService scheduler;
+
+    RequestCoalescer(
+        final BiConsumer<K, V> resultListener,
+        final long maxWaitNanos,
+        final ScheduledExecutorService scheduler
+    ) {
+        this.resultListener = resultListener;
+        this.maxWaitNanos = maxWaitNanos;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns the result for the given key, either by fetching it on the
+     * calling thread or by waiting for a concurrent fetch of the same key.
+     */
+    V execute(final K key, final Supplier<V> fetch) {
+        while (true) {
+            final Flight flight = new Flight(key);
+            final Flight existingFlight = flights.putIfAbsent(key, flight);
+            if (existingFlight == null) {
+                return lead(flight, fetch);
+            }
+            if (existingFlight.retain()) {
+                try {
+                    return await(existingFlight, fetch);
+                } finally {
+                    existingFlight.release();
+                }
+            }
+            // Every caller of the existing flight cancelled, so it is about to end
+            flights.remove(key, existingFlight);
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #execute(Object, Supplier)}.
+     *
+     * Cancelling the returned future detaches the caller from the fetch.
+     */
+    CompletableFuture<V> executeAsync(final K key, final Supplier<CompletableFuture<V>> fetch) {
+        while (true) {
+            final Flight flight = new Flight(key);
+            final Flight existingFlight = flights.putIfAbsent(key, flight);
+            if (existingFlight == null) {
+                final Attachment attachment = new Attachment(flight);
+                leadAsync(flight, fetch);
+                return attachment;
+            }
+            if (existingFlight.retain()) {
+                final Attachment attachment = new Attachment(existingFlight);
+                attachment.scheduleTimeout(fetch);
+                return attachment;
+            }
+            flights.remove(key, existingFlight);
+        }
+    }
+
+    int getFlights() {
+        return flights.size();
+    }
+
+    private V lead(final Flight flight, final Supplier<V> fetch) {
+        try {
+            final V result = fetch.get();
+            notifyResultListener(flight.key, result);
+            flight.complete(result);
+            return result;
+        } catch (final RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(flight.key, flight);
+        }
+    }
+
+    private void leadAsync(final Flight flight, final Supplier<CompletableFuture<V>> fetch) {
+        final CompletableFuture<V> source;
+        try {
+            source = fetch.get();
+        } catch (final RuntimeException | Error e) {
+            flights.remove(flight.key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+
+        flight.source = source;
+        source.whenComplete((result, throwable) -> {
+            try {
+                if (throwable == null) {
+                    notifyResultListener(flight.key, result);
+                }
+            } finally {
+                if (throwable == null) {
+                    flight.complete(result);
+                } else {
+                    flight.completeExceptionally(throwable);
+                }
+                flights.remove(flight.key, flight);
+            }
+        });
+        // Every caller cancelled while the fetch was being started
+        if (flight.isAbandoned()) {
+            source.cancel(true);
+        }
+    }
+
+    // The result was fetched regardless, so a failure to listen to it is only logged
+    private void notifyResultListener(final K key, final V result) {
+        try {
+            resultListener.accept(key, result);
+        } catch (final RuntimeException e) {
+            LOGGER.info("result listener failed for " + key, e);
+        }
+    }
+
+    private V await(final Flight flight, final Supplier<V> fetch) {
+        try {
+            return Uninterruptibles.getUninterruptibly(flight, maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            // Waited long enough for the leader, so fetch independently
+            final V result = fetch.get();
+            notifyResultListener(flight.key, result);
+            return result;
+        } catch (final ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * A single fetch, shared by all of the callers attached to it.
+     */
+    private final class Flight extends CompletableFuture<V> {
+
+        private final K key;
+        // The number of callers attached, starting with the leader
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private volatile CompletableFuture<V> source;
+
+        private Flight(final K key) {
+            this.key = key;
+        }
+
+        private boolean retain() {
+            for (int count = references.get(); count != ABANDONED; count = references.get()) {
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0 && references.compareAndSet(0, ABANDONED) && !isDone()) {
+                flights.remove(key, this);
+                final CompletableFuture<V> currentSource = source;
+                if (currentSource != null) {
+                    currentSource.cancel(true);
+                }
+            }
+        }
+
+        private boolean isAbandoned() {
+            return references.get() == ABANDONED;
+        }
+    }
+
+    /**
+     * A single caller's view of a flight.
+     */
+    private final class Attachment extends CompletableFuture<V> {
+
+        private final Flight flight;
+        private final AtomicBoolean attached = new AtomicBoolean(true);
+
+        private volatile CompletableFuture<V> independentFetch;
+
+        private Attachment(final Flight flight) {
+            this.flight = flight;
+            flight.whenComplete(this::completeWith);
+        }
+
+        private void scheduleTimeout(final Supplier<CompletableFuture<V>> fetch) {
+            if (isDone()) {
+                return;
+            }
+            try {
+                final Future<?> timeout =
+                    scheduler.schedule(() -> fetchIndependently(fetch), maxWaitNanos, TimeUnit.NANOSECONDS);
+                whenComplete((result, throwable) -> timeout.cancel(false));
+            } catch (final RejectedExecutionException e) {
+                // The client is closing, so keep waiting
+            }
+        }
+
+        private void fetchIndependently(final Supplier<CompletableFuture<V>> fetch) {
+            if (isDone() || !detach()) {
+                return;
+            }
+
+            try {
+                final CompletableFuture<V> currentFetch = fetch.get();
+                independentFetch = currentFetch;
+                currentFetch.whenComplete((result, throwable) -> {
+                    try {
+                        if (throwable == null) {
+                            notifyResultListener(flight.key, result);
+                        }
+                    } finally {
+                        completeWith(result, throwable);
+                    }
+                });
+                // Cancelled while the fetch was being started
+                if (isCancelled()) {
+                    currentFetch.cancel(true);
+                }
+            } catch (final RuntimeException | Error e) {
+                completeExceptionally(e);
+            }
+        }
+
+        private void completeWith(final V result, final Throwable throwable) {
+            if (throwable == null) {
+                complete(result);
+            } else {
+                completeExceptionally(throwable);
+            }
+        }
+
+        private boolean detach() {
+            if (attached.compareAndSet(true, false)) {
+                flight.release();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            detach();
+            final CompletableFuture<V> currentFetch = independentFetch;
+            if (currentFetch != null) {
+                currentFetch.cancel(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package net.spals.oembed4j.client;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Hedges asynchronous tasks against a host: if a task hasn't completed
+ * by a percentile of the host's recent latencies, an identical task is
+ * started alongside it. The first task to complete wins, and the other
+ * is cancelled.
+ *
+ * Each task adds a fraction of a hedge to its host's budget, and each
+ * hedge spends a whole one, so that hedging can't add more than that
+ * fraction of extra load on the host.
+ *
+ * @author tkral
+ */
+final class RequestHedger {
+
+    private final OEmbedHedgingConfig config;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentMap<String, HostLatencies> latenciesByHost = new ConcurrentHashMap<>();
+    private final AtomicLong hedgedTasks = new AtomicLong();
+
+    RequestHedger(final OEmbedHedgingConfig config, final ScheduledExecutorService scheduler) {
+        this.config = config;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Runs the given task against the given host, hedging it if it is slow.
+     *
+     * The returned future completes as the first task to complete
+     * normally does. It only completes exceptionally when no task is
+     * left running. Cancelling it cancels every task.
+     */
+    <T> CompletableFuture<T> execute(final String host, final Supplier<CompletableFuture<T>> task) {
+        final HostLatencies latencies = latenciesByHost.computeIfAbsent(host, h -> new HostLatencies());
+        final OptionalLong hedgeDelayNanos = latencies.taskStarted();
+
+        final List<CompletableFuture<T>> attempts = new CopyOnWriteArrayList<>();
+        final CompletableFuture<T> hedgedFuture = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(final boolean mayInterruptIfRunning) {
+                final boolean cancelled = super.cancel(mayInterruptIfRunning);
+                attempts.forEach(attempt -> attempt.cancel(mayInterruptIfRunning));
+                return cancelled;
+            }
+        };
+        final AtomicInteger runningAttempts = new AtomicInteger();
+
+        startAttempt(task, latencies, attempts, runningAttempts, hedgedFuture);
+        if (hedgeDelayNanos.isPresent() && !hedgedFuture.isDone()) {
+            final Future<?> hedge = scheduler.schedule(() -> {
+                if (!hedgedFuture.isDone() && latencies.tryAcquireHedge()) {
+                    hedgedTasks.incrementAndGet();
+                    startAttempt(task, latencies, attempts, runningAttempts, hedgedFuture);
+                }
+            }, hedgeDelayNanos.getAsLong(), TimeUnit.NANOSECONDS);
+            hedgedFuture.whenComplete((result, throwable) -> hedge.cancel(false));
+        }
+        // The losing task is no longer needed
+        hedgedFuture.whenComplete((result, throwable) -> attempts.forEach(attempt -> attempt.cancel(true)));
+        return hedgedFuture;
+    }
+
+    @VisibleForTesting
+    long getHedgedTasks() {
+        return hedgedTasks.get();
+    }
+
+    private <T> void startAttempt(
+        final Supplier<CompletableFuture<T>> task,
+        final HostLatencies latencies,
+        final List<CompletableFuture<T>> attempts,
+        final AtomicInteger runningAttempts,
+        final CompletableFuture<T> hedgedFuture
+    ) {
+        runningAttempts.incrementAndGet();
+        final long startNanos = System.nanoTime();
+        final CompletableFuture<T> attempt;
+        try {
+            attempt = task.get();
+        } catch (final RuntimeException e) {
+            if (runningAttempts.decrementAndGet() == 0) {
+                hedgedFuture.completeExceptionally(e);
+            }
+            return;
+        }
+
+        attempts.add(attempt);
+        // The hedged future may have completed while the task was starting
+        if (hedgedFuture.isDone()) {
+            attempt.cancel(true);
+        }
+        attempt.whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                latencies.record(System.nanoTime() - startNanos);
+                hedgedFuture.complete(result);
+            } else if (runningAttempts.decrementAndGet() == 0) {
+                hedgedFuture.completeExceptionally(throwable);
+            }
+        });
+    }
+
+    /**
+     * Recent latencies of tasks against a single host, and its hedge budget.
+     */
+    private final class HostLatencies {
+
+        private final long[] latencyNanos = new long[config.getLatencyWindowSize()];
+        // Saves up for at least one hedge, however small the window
+        private final double maxHedgeBudget =
+            Math.max(1.0, config.getMaxHedgeRatio() * config.getLatencyWindowSize());
+        // All guarded by this
+        private int samples = 0;
+        private int nextSample = 0;
+        private double hedgeBudget = 0.0;
+
+        /**
+         * Adds the started task's share to the hedge budget, and returns
+         * the delay after which to hedge it, if enough latencies are known.
+         */
+        synchronized OptionalLong taskStarted() {
+            hedgeBudget = Math.min(maxHedgeBudget, hedgeBudget + config.getMaxHedgeRatio());
+            if (samples < config.getMinLatencySamples()) {
+                return OptionalLong.empty();
+            }
+
+            final long[] sortedLatencyNanos = Arrays.copyOf(latencyNanos, samples);
+            Arrays.sort(sortedLatencyNanos);
+            final int index = (int) Math.ceil(config.getLatencyPercentile() * samples) - 1;
+            return OptionalLong.of(sortedLatencyNanos[Math.max(0, index)]);
+        }
+
+        synchronized boolean tryAcquireHedge() {
+            if (hedgeBudget < 1.0) {
+                return false;
+            }
+            hedgeBudget -= 1.0;
+            return true;
+        }
+
+        synchronized void record(final long nanos) {
+            latencyNanos[nextSample] = nanos;
+            nextSample = (nextSample + 1) % latencyNanos.length;
+            samples = Math.min(samples + 1, latencyNanos.length);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package net.spals.oembed4j.client;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Retries requests against a host which fail in a way that tells
+ * of a transient problem with the host: those which can't be sent or
+ * time out, and those which get a server error or rate limiting response.
+ *
+ * Retries back off exponentially, with full jitter, and wait at least
+ * as long as the host asked for in a {@code Retry-After} header. Each
+ * request adds a fraction of a retry to its host's budget, and each
+ * retry spends a whole one.
+ *
+ * @author tkral
+ */
+final class RequestRetrier {
+
+    private final OEmbedRetryConfig config;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentMap<String, RetryBudget> budgetsByHost = new ConcurrentHashMap<>();
+    private final AtomicLong retries = new AtomicLong();
+
+    RequestRetrier(final OEmbedRetryConfig config, final ScheduledExecutorService scheduler) {
+        this.config = config;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Runs the given request against the given host, retrying it while it fails.
+     *
+     * The returned future completes as the last attempt does.
+     * Cancelling it cancels the running attempt, or the pending retry.
+     */
+    CompletableFuture<OEmbedResult> execute(final String host, final Supplier<CompletableFuture<OEmbedResult>> request) {
+        final RetryBudget budget = getBudget(host);
+        final RetriedRequest retriedRequest = new RetriedRequest(request, budget);
+        retriedRequest.startAttempt(1);
+        return retriedRequest;
+    }
+
+    /**
+     * Version of {@link #execute(String, Supplier)} which runs the
+     * request, and waits out the backoffs, on the calling thread.
+     */
+    OEmbedResult executeBlocking(final String host, final Supplier<OEmbedResult> request) {
+        final RetryBudget budget = getBudget(host);
+        for (int attempt = 1; ; attempt++) {
+            OEmbedResult result = null;
+            RuntimeException failure = null;
+            try {
+                result = request.get();
+            } catch (final RuntimeException e) {
+                failure = e;
+            }
+
+            final OptionalLong backoffNanos = getBackoffNanos(attempt, Optional.ofNullable(result), budget);
+            if (!backoffNanos.isPresent()) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return result;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(backoffNanos.getAsLong());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return OEmbedResult.failure(OEmbedFailureReason.CANCELLED, "request interrupted");
+            }
+        }
+    }
+
+    @VisibleForTesting
+    long getRetries() {
+        return retries.get();
+    }
+
+    private RetryBudget getBudget(final String host) {
+        final RetryBudget budget = budgetsByHost.computeIfAbsent(host, h -> new RetryBudget());
+        budget.deposit();
+        return budget;
+    }
+
+    /**
+     * Returns how long to back off before retrying the given attempt, which
+     * either had the given result or failed, or nothing if it isn't retried.
+     */
+    private OptionalLong getBackoffNanos(final int attempt, final Optional<OEmbedResult> result, final RetryBudget budget) {
+        if (attempt >= config.getMaxAttempts() || !result.map(HostCircuitBreaker::isFailure).orElse(true)) {
+            return OptionalLong.empty();
+        }
+        // Don't retry at all if the host asked to wait too long
+        final Duration retryAfter = result.flatMap(OEmbedResult::getRetryAfter).orElse(Duration.ZERO);
+        if (retryAfter.compareTo(config.getMaxBackoff()) > 0 || !budget.tryWithdraw()) {
+            return OptionalLong.empty();
+        }
+
+        retries.incrementAndGet();
+        final long maxBackoffNanos = config.getMaxBackoff().toNanos();
+        long backoffNanos = config.getInitialBackoff().toNanos();
+        for (int retry = 1; retry < attempt; retry++) {
+            backoffNanos = backoffNanos > maxBackoffNanos / 2L ? maxBackoffNanos : backoffNanos * 2L;
+        }
+        // Full jitter spreads out the retries of requests which failed together
+        final long jitteredBackoffNanos = ThreadLocalRandom.current().nextLong(backoffNanos) + 1L;
+        return OptionalLong.of(Math.max(retryAfter.toNanos(), jitteredBackoffNanos));
+    }
+
+    /**
+     * A request and its attempts so far.
+     */
+    private final class RetriedRequest extends CompletableFuture<OEmbedResult> {
+
+        private final Supplier<CompletableFuture<OEmbedResult>> request;
+        private final RetryBudget budget;
+
+        private volatile Future<?> currentAttempt;
+
+        private RetriedRequest(final Supplier<CompletableFuture<OEmbedResult>> request, final RetryBudget budget) {
+            this.request = request;
+            this.budget = budget;
+        }
+
+        private void startAttempt(final int attempt) {
+            final CompletableFuture<OEmbedResult> attemptFuture;
+            try {
+                attemptFuture = request.get();
+            } catch (final RuntimeException e) {
+                onAttemptCompleted(attempt, Optional.empty(), e);
+                return;
+            }
+
+            currentAttempt = attemptFuture;
+            // Cancelled while the attempt was starting
+            if (isCancelled()) {
+                attemptFuture.cancel(true);
+            }
+            attemptFuture.whenComplete((result, throwable) ->
+                onAttemptCompleted(attempt, Optional.ofNullable(result), throwable));
+        }
+
+        private void onAttemptCompleted(final int attempt, final Optional<OEmbedResult> result, final Throwable throwable) {
+            if (isDone()) {
+                return;
+            }
+            final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
+            final OptionalLong backoffNanos = cause instanceof CancellationException
+                ? OptionalLong.empty() : getBackoffNanos(attempt, result, budget);
+            if (!backoffNanos.isPresent()) {
+                if (throwable == null) {
+                    complete(result.get());
+                } else {
+                    completeExceptionally(throwable);
+                }
+                return;
+            }
+
+            currentAttempt = scheduler.schedule(() -> {
+                if (!isDone()) {
+                    startAttempt(attempt + 1);
+                }
+            }, backoffNanos.getAsLong(), TimeUnit.NANOSECONDS);
+            // Cancelled while the retry was being scheduled
+            if (isCancelled()) {
+                currentAttempt.cancel(false);
+            }
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            final Future<?> attempt = currentAttempt;
+            if (attempt != null) {
+                attempt.cancel(mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * The retries a single host may still get.
+     */
+    private final class RetryBudget {
+
+        // Guarded by this
+        private double retries = config.getMaxRetryBudget();
+
+        synchronized void deposit() {
+            retries = Math.min(config.getMaxRetryBudget(), retries + config.getRetryBudgetRatio());
+        }
+
+        synchronized boolean tryWithdraw() {
+            if (retries < 1.0) {
+                return false;
+            }
+            retries -= 1.0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package net.spals.oembed4j.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.spals.oembed4j.model.OEmbedRequest;
+import net.spals.oembed4j.model.OEmbedResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides how long the responses of each provider host are cached,
+ * following the host's {@link OEmbedCachePolicy}, and counts how
+ * often the host's responses are found in the cache.
+ *
+ * Cache hits are counted without looking up their endpoint in the
+ * registry, by the provider host last seen for the resource host
+ * of their request. Only the most recently used resource hosts are
+ * remembered, so hits on the others are not counted until their
+ * next miss.
+ *
+ * @author tkral
+ */
+final class ResponseTtlPolicy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseTtlPolicy.class);
+    // Bounds the provider hosts remembered for wildcard providers with endless resource hosts
+    private static final int MAX_RESOURCE_HOSTS = 10_000;
+
+    private final OEmbedClientConfig config;
+    private final ConcurrentMap<String, HostCounters> countersByHost = new ConcurrentHashMap<>();
+    private final Cache<String, String> providerHostsByResourceHost;
+
+    ResponseTtlPolicy(final OEmbedClientConfig config) {
+        this(config, MAX_RESOURCE_HOSTS);
+    }
+
+    @VisibleForTesting
+    ResponseTtlPolicy(final OEmbedClientConfig config, final long maxResourceHosts) {
+        this.config = config;
+        this.providerHostsByResourceHost = CacheBuilder.newBuilder().maximumSize(maxResourceHosts).build();
+    }
+
+    /**
+     * Returns how long the given response of the given host is cached, which
+     * is zero if it isn't: its {@code cache_age}, or else the given freshness
+     * lifetime of its HTTP caching headers, or else the host's default, kept
+     * between the host's min and max. Responses which aren't cached are
+     * counted as such.
+     */
+    Duration getTimeToLive(
+        final String host,
+        final OEmbedResponse response,
+        final Optional<Duration> freshnessLifetime
+    ) {
+        final OEmbedCachePolicy policy = getPolicy(host);
+        Duration timeToLive = response.getCacheAge().map(Duration::ofSeconds)
+            .orElseGet(() -> freshnessLifetime.orElse(policy.getDefaultTimeToLive()));
+        if (timeToLive.compareTo(policy.getMinTimeToLive()) < 0) {
+            timeToLive = policy.getMinTimeToLive();
+        } else if (timeToLive.compareTo(policy.getMaxTimeToLive()) > 0) {
+            timeToLive = policy.getMaxTimeToLive();
+        }
+
+        if (timeToLive.isZero()) {
+            getCounters(host).uncached.increment();
+        }
+        return timeToLive;
+    }
+
+    /**
+     * Returns the provider host last seen for the resource host of the given request, if any.
+     */
+    Optional<String> getProviderHost(final OEmbedRequest request) {
+        return Optional.ofNullable(providerHostsByResourceHost.getIfPresent(getResourceHost(request)));
+    }
+
+    void onHit(final OEmbedRequest request) {
+        getProviderHost(request).ifPresent(host -> getCounters(host).hits.increment());
+    }
+
+    /**
+     * Counts a miss against the given provider host of the given request,
+     * which is remembered for the request's resource host.
+     */
+    void onMiss(final OEmbedRequest request, final String host) {
+        providerHostsByResourceHost.put(getResourceHost(request), host);
+        getCounters(host).misses.increment();
+    }
+
+    void onStale(final String host) {
+        getCounters(host).stale.increment();
+    }
+
+    /**
+     * Counts an expired response of the given host, with an entity of the
+     * given length, which the provider confirmed wasn't modified.
+     */
+    void onNotModified(final String host, final long entityLength) {
+        final HostCounters counters = getCounters(host);
+        counters.parsesSaved.increment();
+        counters.bytesSaved.add(entityLength);
+    }
+
+    void onRefreshAhead(final String host) {
+        getCounters(host).refreshesAhead.increment();
+    }
+
+    /**
+     * Returns a snapshot of each host's cache statistics.
+     */
+    Map<String, OEmbedCacheStats> getStats() {
+        final Map<String, OEmbedCacheStats> statsByHost = new TreeMap<>();
+        countersByHost.forEach((host, counters) -> statsByHost.put(host, new OEmbedCacheStats.Builder()
+            .setHitCount(counters.hits.sum())
+            .setMissCount(counters.misses.sum())
+            .setUncachedCount(counters.uncached.sum())
+            .setStaleCount(counters.stale.sum())
+            .setParsesSaved(counters.parsesSaved.sum())
+            .setBytesSaved(counters.bytesSaved.sum())
+            .setRefreshAheadCount(counters.refreshesAhead.sum())
+            .build()));
+        return Collections.unmodifiableMap(statsByHost);
+    }
+
+    /**
+     * Parses how long an HTTP response may be cached from its
+     * {@code Cache-Control} header, or else its {@code Expires} header.
+     * Responses which may not be cached without being revalidated may be
+     * cached for no time at all.
+     */
+    static Optional<Duration> parseFreshnessLifetime(
+        final Optional<String> cacheControl,
+        final Optional<String> expires,
+        final Instant now
+    ) {
+        Optional<Duration> maxAge = Optional.empty();
+        Optional<Duration> sharedMaxAge = Optional.empty();
+        for (final String directive : cacheControl.orElse("").split(",")) {
+            final String[] nameAndValue = directive.split("=", 2);
+            final String name = nameAndValue[0].trim().toLowerCase(Locale.ROOT);
+            if (name.equals("no-store") || name.equals("no-cache")) {
+                return Optional.of(Duration.ZERO);
+            }
+            if (nameAndValue.length == 2 && name.equals("max-age")) {
+                maxAge = parseSeconds(nameAndValue[1]);
+            } else if (nameAndValue.length == 2 && name.equals("s-maxage")) {
+                sharedMaxAge = parseSeconds(nameAndValue[1]);
+            }
+        }
+        // The cache is shared by all of the client's callers
+        if (sharedMaxAge.isPresent() || maxAge.isPresent()) {
+            return sharedMaxAge.isPresent() ? sharedMaxAge : maxAge;
+        }
+
+        return expires.map(String::trim).filter(value -> !value.isEmpty()).map(value -> {
+            try {
+                final Instant expiresAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return expiresAt.isAfter(now) ? Duration.between(now, expiresAt) : Duration.ZERO;
+            } catch (final DateTimeParseException e) {
+                // Such as "0", which means already expired
+                return Duration.ZERO;
+            }
+        });
+    }
+
+    private static Optional<Duration> parseSeconds(final String value) {
+        final String seconds = value.trim().replace("\"", "");
+        try {
+            return Optional.of(Duration.ofSeconds(Math.max(0L, Long.parseLong(seconds))));
+        } catch (final NumberFormatException e) {
+            LOGGER.info("unparseable Cache-Control max age: " + seconds);
+            return Optional.empty();
+        }
+    }
+
+    private static String getResourceHost(final OEmbedRequest request) {
+        return Optional.ofNullable(request.getResourceURI().getHost())
+            .map(host -> host.toLowerCase(Locale.ROOT)).orElse("");
+    }
+
+    /**
+     * Returns the cache policy of the given provider host.
+     */
+    OEmbedCachePolicy getPolicy(final String host) {
+        final OEmbedCachePolicy hostPolicy = config.getCachePoliciesByHost().get(host);
+        return hostPolicy != null ? hostPolicy : config.getCachePolicy();
+    }
+
+    private HostCounters getCounters(final String host) {
+        return countersByHost.computeIfAbsent(host, h -> new HostCounters());
+    }
+
+    private static final class HostCounters {
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder uncached = new LongAdder();
+        private final LongAdder stale = new LongAdder();
+        private final LongAdder parsesSaved = new LongAdder();
+        private final LongAdder bytesSaved = new LongAdder();
+        private final LongAdder refreshesAhead = new LongAdder();
+    }
+}
@@ -0,0 +1,105 @@
+package net.spals.oembed4j.client.cache;
+
+/**
+ * An approximate count of how often each key has been seen recently:
+ * a count-min sketch of 4-bit counters, which are all halved once a
+ * sample of increments has been counted, so that old popularity fades.
+ *
+ * Each key's counters are spread over four of the sixteen counters
+ * packed into a single {@code long}, so that counting a key touches
+ * a single word for each of its hashes.
+ *
+ * Not thread safe. Besides admitting responses to the {@link TinyLfuResponseCache},
+ * it tells which requests are popular enough to be refreshed ahead of expiry.
+ *
+ * @author tkral
+ */
+public final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAX_COUNT = 15;
+    // Keeps the table of the largest caches within 128 MiB
+    private static final long MAX_CAPACITY = 1L << 24;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size = 0;
+
+    /**
+     * Creates a sketch which counts about the given number of distinct keys well.
+     */
+    public FrequencySketch(final long expectedKeys) {
+        final int capacity = (int) Math.max(16L, Math.min(expectedKeys, MAX_CAPACITY));
+        this.table = new long[Integer.highestOneBit(capacity - 1) << 1];
+        this.tableMask = table.length - 1;
+        this.sampleSize = 10 * capacity;
+    }
+
+    /**
+     * Returns the estimated number of times the given key has been seen recently, up to 15.
+     */
+    public int frequency(final Object key) {
+        final int hash = spread(key.hashCode());
+        final int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final int offset = (start + i) << 2;
+            final int count = (int) ((table[indexOf(hash, i)] >>> offset) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Counts the given key once more, unless its counters are saturated.
+     */
+    public void increment(final Object key) {
+        final int hash = spread(key.hashCode());
+        final int start = (hash & 3) << 2;
+        boolean incremented = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            incremented |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (incremented && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(final int index, final int counter) {
+        final int offset = counter << 2;
+        final long mask = 0xfL << offset;
+        if ((table[index] & mask) == mask) {
+            return false;
+        }
+        table[index] += 1L << offset;
+        return true;
+    }
+
+    // Halves every counter, and the sample size by as much as was counted
+    private void reset() {
+        int oddCounters = 0;
+        for (int i = 0; i < table.length; i++) {
+            oddCounters += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (oddCounters >>> 2);
+    }
+
+    private int indexOf(final int hash, final int i) {
+        long index = (hash + SEEDS[i]) * SEEDS[i];
+        index += index >>> 32;
+        return (int) index & tableMask;
+    }
+
+    // Guards against poor hash codes
+    private static int spread(final int hashCode) {
+        int hash = ((hashCode >>> 16) ^ hashCode) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
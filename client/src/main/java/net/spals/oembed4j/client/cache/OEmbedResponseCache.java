@@ -0,0 +1,83 @@
+package net.spals.oembed4j.client.cache;
+
+import net.spals.oembed4j.model.OEmbedRequest;
+import net.spals.oembed4j.model.OEmbedResponse;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * A service contract which defines the cache of
+ * {@link OEmbedResponse}s kept by an oEmbed client.
+ *
+ * Each response is cached for its own time to live. Implementations
+ * must be thread safe, and may evict responses before they expire.
+ *
+ * @author tkral
+ */
+public interface OEmbedResponseCache {
+
+    /**
+     * Returns the response cached for the given request,
+     * unless there is none or it has expired.
+     */
+    Optional<OEmbedResponse> get(OEmbedRequest request);
+
+    /**
+     * Version of {@link #get(OEmbedRequest)} which also returns a response
+     * which expired no longer than the given staleness ago, if it is still
+     * retained.
+     */
+    Optional<OEmbedResponse> getStale(OEmbedRequest request, Duration maxStaleness);
+
+    /**
+     * Caches the given response for the given request, replacing any
+     * response already cached for it, until the given time to live
+     * has passed. A time to live which isn't positive caches nothing.
+     */
+    void put(OEmbedRequest request, OEmbedResponse response, Duration timeToLive);
+
+    /**
+     * Version of {@link #put(OEmbedRequest, OEmbedResponse, Duration)} which
+     * also keeps the given validators of the response, so that it can be
+     * revalidated once it expires. The default implementation drops them.
+     */
+    default void put(
+        final OEmbedRequest request,
+        final OEmbedResponse response,
+        final Duration timeToLive,
+        final OEmbedResponseValidators validators
+    ) {
+        put(request, response, timeToLive);
+    }
+
+    /**
+     * Returns the validators of the response cached for the given request,
+     * even if it has expired, for as long as it is retained. The default
+     * implementation keeps no validators.
+     */
+    default Optional<OEmbedResponseValidators> getValidators(final OEmbedRequest request) {
+        return Optional.empty();
+    }
+
+    /**
+     * Removes the response cached for the given request, if any.
+     */
+    void invalidate(OEmbedRequest request);
+
+    /**
+     * Removes all cached responses. Statistics are retained.
+     */
+    void invalidateAll();
+
+    /**
+     * The approximate number of cached responses, including
+     * expired ones which are still retained.
+     */
+    long estimatedSize();
+
+    /**
+     * A snapshot of the cache's statistics.
+     */
+    OEmbedResponseCacheStats getStats();
+}
@@ -0,0 +1,57 @@
+package net.spals.oembed4j.client.cache;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Configuration of a {@link TinyLfuResponseCache}.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedResponseCacheConfig {
+
+    /**
+     * The maximum number of cached responses.
+     * Ignored when {@link #getMaximumWeight()} is set.
+     */
+    long getMaximumSize();
+
+    /**
+     * The maximum estimated size, in bytes, of the cached responses, if they
+     * are bounded by size rather than by number. Large {@code html} payloads
+     * then take up more of the cache than small ones.
+     */
+    Optional<Long> getMaximumWeight();
+
+    /**
+     * How long expired responses are retained, so that they may still
+     * be served stale. Zero, the default, retains none.
+     */
+    Duration getExpiredEntryRetention();
+
+    class Builder extends OEmbedResponseCacheConfig_Builder {
+
+        public static final long DEFAULT_MAXIMUM_SIZE = 10_000L;
+
+        public Builder() {
+            setMaximumSize(DEFAULT_MAXIMUM_SIZE);
+            setExpiredEntryRetention(Duration.ZERO);
+        }
+
+        @Override
+        public OEmbedResponseCacheConfig build() {
+            checkState(getMaximumSize() > 0L,
+                "Maximum size must be positive: %s", getMaximumSize());
+            checkState(getMaximumWeight().map(maximumWeight -> maximumWeight > 0L).orElse(true),
+                "Maximum weight must be positive: %s", getMaximumWeight());
+            checkState(!getExpiredEntryRetention().isNegative(),
+                "Expired entry retention must not be negative: %s", getExpiredEntryRetention());
+            return super.build();
+        }
+    }
+}
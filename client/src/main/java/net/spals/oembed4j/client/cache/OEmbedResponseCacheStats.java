@@ -0,0 +1,39 @@
+package net.spals.oembed4j.client.cache;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+/**
+ * A snapshot of the statistics of an {@link OEmbedResponseCache}.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedResponseCacheStats {
+
+    /**
+     * The number of lookups which found an unexpired response.
+     */
+    long getHitCount();
+
+    /**
+     * The number of lookups which found no unexpired response.
+     */
+    long getMissCount();
+
+    /**
+     * The number of responses evicted to keep the cache within its bounds.
+     */
+    long getEvictionCount();
+
+    /**
+     * The fraction of lookups which found an unexpired
+     * response, or {@code 0.0} if there have been no lookups.
+     */
+    default double getHitRate() {
+        final long lookups = getHitCount() + getMissCount();
+        return lookups == 0L ? 0.0 : (double) getHitCount() / lookups;
+    }
+
+    class Builder extends OEmbedResponseCacheStats_Builder {
+    }
+}
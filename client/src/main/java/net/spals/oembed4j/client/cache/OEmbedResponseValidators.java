@@ -0,0 +1,48 @@
+package net.spals.oembed4j.client.cache;
+
+import org.inferred.freebuilder.FreeBuilder;
+
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * The HTTP validators of a cached response, with which it can be
+ * revalidated with its provider once it expires, rather than
+ * downloaded and parsed again.
+ *
+ * @author tkral
+ */
+@FreeBuilder
+public interface OEmbedResponseValidators {
+
+    /**
+     * The {@code ETag} header of the response, if any.
+     */
+    Optional<String> getEntityTag();
+
+    /**
+     * The {@code Last-Modified} header of the response, if any.
+     */
+    Optional<String> getLastModified();
+
+    /**
+     * The length of the response's entity, in bytes.
+     */
+    long getEntityLength();
+
+    class Builder extends OEmbedResponseValidators_Builder {
+
+        public Builder() {
+            setEntityLength(0L);
+        }
+
+        @Override
+        public OEmbedResponseValidators build() {
+            checkState(getEntityTag().isPresent() || getLastModified().isPresent(),
+                "Validators must have an entity tag or a last modified date");
+            checkState(getEntityLength() >= 0L, "Entity length must not be negative: %s", getEntityLength());
+            return super.build();
+        }
+    }
+}
@@ -0,0 +1,644 @@
+package net.spals.oembed4j.client.cache;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import net.spals.oembed4j.model.OEmbedRequest;
+import net.spals.oembed4j.model.OEmbedResponse;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The default {@link OEmbedResponseCache}: a bounded cache which
+ * admits and evicts responses by how often they are requested,
+ * following the W-TinyLFU policy.
+ *
+ * New responses enter a small window, ordered by recency. Responses
+ * leaving the window are admitted to the main space only if they have
+ * been requested more often, according to a {@link FrequencySketch},
+ * than the response they would evict from it. The main space is split
+ * into a probation and a protected segment, such that responses which
+ * are requested again while on probation are protected from eviction.
+ *
+ * Reads never lock: they are recorded in lossy buffers, which are
+ * replayed against the policy under a lock by whichever thread fills
+ * one, or writes to the cache, and can get the lock.
+ *
+ * @author tkral
+ */
+public final class TinyLfuResponseCache implements OEmbedResponseCache {
+
+    // Shares of the maximum given to the window, and to the protected segment of the main space
+    private static final double WINDOW_RATIO = 0.01;
+    private static final double PROTECTED_RATIO = 0.8;
+    // Sizes the frequency sketch of caches bounded by weight, which can't tell how many entries they'll hold
+    private static final long ESTIMATED_ENTRY_WEIGHT = 1024L;
+    // Durations too long to add to a nanosecond ticker without overflowing are cut short
+    private static final long MAX_DURATION_NANOS = Long.MAX_VALUE >> 2;
+
+    private final OEmbedResponseCacheConfig config;
+    private final Ticker ticker;
+    private final long maximum;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long expiredEntryRetentionNanos;
+
+    private final ConcurrentMap<OEmbedRequest, Node> data = new ConcurrentHashMap<>();
+    private final ReadBuffer[] readBuffers;
+    private final Queue<Runnable> writeBuffer = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // All guarded by the eviction lock
+    private final FrequencySketch sketch;
+    private final AccessOrderDeque window = new AccessOrderDeque();
+    private final AccessOrderDeque probation = new AccessOrderDeque();
+    private final AccessOrderDeque protectedSegment = new AccessOrderDeque();
+    private final ExpiryQueue expiryQueue = new ExpiryQueue();
+    private long windowWeight = 0L;
+    private long protectedWeight = 0L;
+    private long totalWeight = 0L;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    @VisibleForTesting
+    TinyLfuResponseCache(final OEmbedResponseCacheConfig config, final Ticker ticker) {
+        this.config = config;
+        this.ticker = ticker;
+        this.maximum = config.getMaximumWeight().orElse(config.getMaximumSize());
+        this.windowMaximum = Math.max(1L, (long) (maximum * WINDOW_RATIO));
+        this.protectedMaximum = (long) ((maximum - windowMaximum) * PROTECTED_RATIO);
+        this.expiredEntryRetentionNanos = saturatedNanos(config.getExpiredEntryRetention());
+
+        final int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+        this.readBuffers = new ReadBuffer[stripes];
+        Arrays.setAll(readBuffers, i -> new ReadBuffer());
+        this.sketch = new FrequencySketch(config.getMaximumWeight()
+            .map(maximumWeight -> maximumWeight / ESTIMATED_ENTRY_WEIGHT)
+            .orElse(config.getMaximumSize()));
+    }
+
+    public static TinyLfuResponseCache create() {
+        return create(new OEmbedResponseCacheConfig.Builder().build());
+    }
+
+    public static TinyLfuResponseCache create(final OEmbedResponseCacheConfig config) {
+        return new TinyLfuResponseCache(config, Ticker.systemTicker());
+    }
+
+    /**
+     * @see OEmbedResponseCache#get(OEmbedRequest)
+     */
+    @Override
+    public Optional<OEmbedResponse> get(final OEmbedRequest request) {
+        final Node node = data.get(request);
+        if (node == null || node.isExpired(ticker.read())) {
+            missCount.increment();
+            return Optional.empty();
+        }
+
+        hitCount.increment();
+        recordRead(node);
+        return Optional.of(node.response);
+    }
+
+    /**
+     * @see OEmbedResponseCache#getStale(OEmbedRequest, Duration)
+     */
+    @Override
+    public Optional<OEmbedResponse> getStale(final OEmbedRequest request, final Duration maxStaleness) {
+        final Node node = data.get(request);
+        if (node == null || ticker.read() - node.expiresAtNanos - saturatedNanos(maxStaleness) >= 0L) {
+            return Optional.empty();
+        }
+
+        recordRead(node);
+        return Optional.of(node.response);
+    }
+
+    /**
+     * @see OEmbedResponseCache#put(OEmbedRequest, OEmbedResponse, Duration)
+     */
+    @Override
+    public void put(final OEmbedRequest request, final OEmbedResponse response, final Duration timeToLive) {
+        put(request, response, timeToLive, Optional.empty());
+    }
+
+    /**
+     * @see OEmbedResponseCache#put(OEmbedRequest, OEmbedResponse, Duration, OEmbedResponseValidators)
+     */
+    @Override
+    public void put(
+        final OEmbedRequest request,
+        final OEmbedResponse response,
+        final Duration timeToLive,
+        final OEmbedResponseValidators validators
+    ) {
+        put(request, response, timeToLive, Optional.of(validators));
+    }
+
+    /**
+     * @see OEmbedResponseCache#getValidators(OEmbedRequest)
+     */
+    @Override
+    public Optional<OEmbedResponseValidators> getValidators(final OEmbedRequest request) {
+        final Node node = data.get(request);
+        if (node == null || ticker.read() - node.removeAtNanos >= 0L) {
+            return Optional.empty();
+        }
+        return node.validators;
+    }
+
+    private void put(
+        final OEmbedRequest request,
+        final OEmbedResponse response,
+        final Duration timeToLive,
+        final Optional<OEmbedResponseValidators> validators
+    ) {
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            invalidate(request);
+            return;
+        }
+
+        final long weight = config.getMaximumWeight().isPresent() ? estimateWeight(request, response) : 1L;
+        final Node node = new Node(request, response, validators, ticker.read() + saturatedNanos(timeToLive), weight);
+        final Node[] replacedNode = new Node[1];
+        data.compute(request, (key, oldNode) -> {
+            if (oldNode != null) {
+                oldNode.retired = true;
+                replacedNode[0] = oldNode;
+            }
+            return node;
+        });
+
+        writeBuffer.add(() -> {
+            if (replacedNode[0] != null) {
+                unlink(replacedNode[0]);
+            }
+            add(node);
+        });
+        drainBuffers();
+    }
+
+    /**
+     * @see OEmbedResponseCache#invalidate(OEmbedRequest)
+     */
+    @Override
+    public void invalidate(final OEmbedRequest request) {
+        final Node[] removedNode = new Node[1];
+        data.computeIfPresent(request, (key, node) -> {
+            node.retired = true;
+            removedNode[0] = node;
+            return null;
+        });
+        if (removedNode[0] != null) {
+            writeBuffer.add(() -> unlink(removedNode[0]));
+            drainBuffers();
+        }
+    }
+
+    /**
+     * @see OEmbedResponseCache#invalidateAll()
+     */
+    @Override
+    public void invalidateAll() {
+        data.keySet().forEach(this::invalidate);
+    }
+
+    /**
+     * @see OEmbedResponseCache#estimatedSize()
+     */
+    @Override
+    public long estimatedSize() {
+        return data.size();
+    }
+
+    /**
+     * @see OEmbedResponseCache#getStats()
+     */
+    @Override
+    public OEmbedResponseCacheStats getStats() {
+        return new OEmbedResponseCacheStats.Builder()
+            .setHitCount(hitCount.sum())
+            .setMissCount(missCount.sum())
+            .setEvictionCount(evictionCount.sum())
+            .build();
+    }
+
+    /**
+     * Replays all buffered reads and writes against the policy,
+     * waiting for the lock if need be.
+     */
+    @VisibleForTesting
+    void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the total weight of the entries known to the policy, which
+     * accounts for every write once buffers are drained by {@link #cleanUp()}.
+     */
+    @VisibleForTesting
+    long weightedSize() {
+        evictionLock.lock();
+        try {
+            return totalWeight;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Estimates how many bytes the given request and response take up.
+     */
+    @VisibleForTesting
+    static long estimateWeight(final OEmbedRequest request, final OEmbedResponse response) {
+        // Strings take two bytes per character, and each object a rough overhead on top
+        final long characters = request.getResourceURI().toString().length()
+            + response.getVersion().length()
+            + response.getAuthorName().map(String::length).orElse(0)
+            + response.getAuthorURI().map(URI::toString).map(String::length).orElse(0)
+            + response.getProviderName().map(String::length).orElse(0)
+            + response.getProviderURI().map(URI::toString).map(String::length).orElse(0)
+            + response.getThumbnailURI().map(URI::toString).map(String::length).orElse(0)
+            + response.getTitle().map(String::length).orElse(0)
+            + response.getHtml().map(String::length).orElse(0)
+            + response.getUrl().map(String::length).orElse(0)
+            + (response.hasCustomProperties() ? response.getCustomProperties().toString().length() : 0);
+        return 256L + 2L * characters;
+    }
+
+    private void recordRead(final Node node) {
+        final ReadBuffer readBuffer = readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+        if (readBuffer.offer(node)) {
+            drainBuffers();
+        }
+    }
+
+    // Takes the lock only if it is free, as a thread holding it drains again once done if writes are left
+    private void drainBuffers() {
+        do {
+            if (!evictionLock.tryLock()) {
+                return;
+            }
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        } while (!writeBuffer.isEmpty());
+    }
+
+    private void maintenance() {
+        for (final ReadBuffer readBuffer : readBuffers) {
+            readBuffer.drain(this);
+        }
+        Runnable write;
+        while ((write = writeBuffer.poll()) != null) {
+            write.run();
+        }
+
+        final long nowNanos = ticker.read();
+        Node expiredNode;
+        while ((expiredNode = expiryQueue.pollExpired(nowNanos)) != null) {
+            remove(expiredNode);
+        }
+        evictEntries();
+    }
+
+    private void add(final Node node) {
+        // Replaced or invalidated before it could be added
+        if (node.retired) {
+            return;
+        }
+
+        sketch.increment(node.key);
+        window.addLast(node);
+        windowWeight += node.weight;
+        totalWeight += node.weight;
+        expiryQueue.add(node);
+    }
+
+    private void onAccess(final Node node) {
+        if (node.deque == null) {
+            return;
+        }
+
+        sketch.increment(node.key);
+        if (node.deque == window || node.deque == protectedSegment) {
+            node.deque.moveToBack(node);
+        } else {
+            // Requested again while on probation, so protect it, making room by demoting the least recent
+            probation.remove(node);
+            protectedSegment.addLast(node);
+            protectedWeight += node.weight;
+            while (protectedWeight > protectedMaximum && protectedSegment.peekFirst() != node) {
+                final Node demotedNode = protectedSegment.pollFirst();
+                protectedWeight -= demotedNode.weight;
+                probation.addLast(demotedNode);
+            }
+        }
+    }
+
+    private void evictEntries() {
+        // Entries leaving the window go on probation, as candidates for the main space
+        Node candidate = null;
+        while (windowWeight > windowMaximum) {
+            final Node windowNode = window.pollFirst();
+            windowWeight -= windowNode.weight;
+            probation.addLast(windowNode);
+            if (candidate == null) {
+                candidate = windowNode;
+            }
+        }
+
+        while (totalWeight > maximum) {
+            Node victim = probation.peekFirst();
+            if (victim == null) {
+                victim = protectedSegment.peekFirst();
+            }
+            if (victim == null) {
+                victim = window.peekFirst();
+            }
+
+            if (candidate == null || candidate == victim) {
+                candidate = candidate == null ? null : candidate.next;
+                evict(victim);
+            } else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                // The candidate is admitted, in place of the victim
+                evict(victim);
+            } else {
+                final Node rejectedCandidate = candidate;
+                candidate = candidate.next;
+                evict(rejectedCandidate);
+            }
+        }
+    }
+
+    private void evict(final Node node) {
+        evictionCount.increment();
+        remove(node);
+    }
+
+    private void remove(final Node node) {
+        data.remove(node.key, node);
+        node.retired = true;
+        unlink(node);
+    }
+
+    private void unlink(final Node node) {
+        if (node.deque == null) {
+            return;
+        }
+
+        if (node.deque == window) {
+            windowWeight -= node.weight;
+        } else if (node.deque == protectedSegment) {
+            protectedWeight -= node.weight;
+        }
+        totalWeight -= node.weight;
+        node.deque.remove(node);
+        expiryQueue.remove(node);
+    }
+
+    private static long saturatedNanos(final Duration duration) {
+        return duration.compareTo(Duration.ofNanos(MAX_DURATION_NANOS)) > 0 ? MAX_DURATION_NANOS : duration.toNanos();
+    }
+
+    /**
+     * A cached response. A response replacing it gets a new node.
+     */
+    private final class Node {
+
+        private final OEmbedRequest key;
+        private final OEmbedResponse response;
+        private final Optional<OEmbedResponseValidators> validators;
+        private final long expiresAtNanos;
+        private final long removeAtNanos;
+        private final long weight;
+        private volatile boolean retired = false;
+
+        // All guarded by the eviction lock
+        private AccessOrderDeque deque;
+        private Node previous;
+        private Node next;
+        private int expiryIndex = -1;
+
+        private Node(
+            final OEmbedRequest key,
+            final OEmbedResponse response,
+            final Optional<OEmbedResponseValidators> validators,
+            final long expiresAtNanos,
+            final long weight
+        ) {
+            this.key = key;
+            this.response = response;
+            this.validators = validators;
+            this.expiresAtNanos = expiresAtNanos;
+            this.removeAtNanos = expiresAtNanos + expiredEntryRetentionNanos;
+            this.weight = weight;
+        }
+
+        private boolean isExpired(final long nowNanos) {
+            return nowNanos - expiresAtNanos >= 0L;
+        }
+    }
+
+    /**
+     * A doubly linked list of nodes, from least to most recently used.
+     */
+    private static final class AccessOrderDeque {
+
+        private Node first;
+        private Node last;
+
+        Node peekFirst() {
+            return first;
+        }
+
+        Node pollFirst() {
+            final Node node = first;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void addLast(final Node node) {
+            node.deque = this;
+            node.previous = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void moveToBack(final Node node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void remove(final Node node) {
+            if (node.previous == null) {
+                first = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.deque = null;
+            node.previous = null;
+            node.next = null;
+        }
+    }
+
+    /**
+     * A binary min-heap of nodes by the time they're due to be removed, in
+     * which each node knows its index, so that it can be removed early.
+     */
+    private static final class ExpiryQueue {
+
+        private Node[] heap = new Node[16];
+        private int size = 0;
+
+        void add(final Node node) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            heap[size] = node;
+            node.expiryIndex = size;
+            siftUp(size++);
+        }
+
+        Node pollExpired(final long nowNanos) {
+            if (size == 0 || nowNanos - heap[0].removeAtNanos < 0L) {
+                return null;
+            }
+            final Node node = heap[0];
+            remove(node);
+            return node;
+        }
+
+        void remove(final Node node) {
+            final int index = node.expiryIndex;
+            if (index < 0) {
+                return;
+            }
+            node.expiryIndex = -1;
+            final Node lastNode = heap[--size];
+            heap[size] = null;
+            if (index < size) {
+                heap[index] = lastNode;
+                lastNode.expiryIndex = index;
+                siftDown(index);
+                siftUp(lastNode.expiryIndex);
+            }
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                final int parent = (index - 1) >>> 1;
+                if (heap[parent].removeAtNanos - heap[index].removeAtNanos <= 0L) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                final int left = 2 * index + 1;
+                if (left >= size) {
+                    return;
+                }
+                final int right = left + 1;
+                final int child = right < size && heap[right].removeAtNanos - heap[left].removeAtNanos < 0L
+                    ? right : left;
+                if (heap[index].removeAtNanos - heap[child].removeAtNanos <= 0L) {
+                    return;
+                }
+                swap(index, child);
+                index = child;
+            }
+        }
+
+        private void swap(final int i, final int j) {
+            final Node node = heap[i];
+            heap[i] = heap[j];
+            heap[j] = node;
+            heap[i].expiryIndex = i;
+            heap[j].expiryIndex = j;
+        }
+    }
+
+    /**
+     * A lossy ring buffer of reads. Reads offered while it is full, or
+     * while another thread is offering one, are dropped: the policy only
+     * needs a sample of them.
+     */
+    private static final class ReadBuffer {
+
+        private static final int SIZE = 16;
+
+        private final AtomicLong writeCount = new AtomicLong();
+        private final AtomicReferenceArray<Node> buffer = new AtomicReferenceArray<>(SIZE);
+        // Only written under the eviction lock
+        private volatile long readCount = 0L;
+
+        /**
+         * Returns whether the buffer is full, and should be drained.
+         */
+        boolean offer(final Node node) {
+            final long head = readCount;
+            final long tail = writeCount.get();
+            if (tail - head >= SIZE) {
+                return true;
+            }
+            if (writeCount.compareAndSet(tail, tail + 1L)) {
+                buffer.lazySet((int) (tail & (SIZE - 1)), node);
+                return tail + 1L - head >= SIZE;
+            }
+            return false;
+        }
+
+        void drain(final TinyLfuResponseCache cache) {
+            long head = readCount;
+            final long tail = writeCount.get();
+            for (; head < tail; head++) {
+                final int index = (int) (head & (SIZE - 1));
+                final Node node = buffer.get(index);
+                // Claimed, but not yet written
+                if (node == null) {
+                    break;
+                }
+                buffer.lazySet(index, null);
+                cache.onAccess(node);
+            }
+            readCount = head;
+        }
+    }
+}
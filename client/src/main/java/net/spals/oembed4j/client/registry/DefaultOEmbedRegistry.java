@@ -3,19 +3,24 @@ package net.spals.oembed4j.client.registry;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.net.InternetDomainName;
 import net.spals.oembed4j.model.OEmbedEndpoint;
 import net.spals.oembed4j.model.OEmbedProvider;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Default implementation of {@link OEmbedRegistry}.
@@ -37,9 +42,23 @@ public final class DefaultOEmbedRegistry implements OEmbedRegistry {
     public static final URI DEFAULT_OEMBED_PROVIDER_URI = URI.create("http://oembed.com/providers.json");
     private static final ObjectMapper mapper = new ObjectMapper();
 
+    // Traffic is typically dominated by a handful of providers,
+    // so only a few endpoints are worth checking ahead of the full lookup
+    private static final int HOT_ENDPOINTS_CAPACITY = 8;
+    private static final Duration HOT_ENDPOINTS_REORDER_INTERVAL = Duration.ofSeconds(1L);
 
+    private final List<OEmbedProvider> providers;
     private final Map<String, OEmbedProvider> providersByName;
-    private final Map<InternetDomainName, OEmbedProvider> providersByDomain;
+
+    // All registered endpoints, indexed by the ids used in the host index and scheme matcher
+    private final List<OEmbedEndpoint> endpoints;
+    private final HostIndex hostIndex;
+    private final SchemeMatcher schemeMatcher;
+    private final HotEndpointTable hotEndpoints;
+
+    private final Optional<NegativeResultCache> negativeResultCache;
+    // The generation of the negative result cache when it was attached to this registry
+    private final long negativeResultGeneration;
 
     public static DefaultOEmbedRegistry loadFromFile(final File file) {
         try {
@@ -61,12 +80,103 @@ public final class DefaultOEmbedRegistry implements OEmbedRegistry {
         }
     }
 
+    /**
+     * Loads a registry from a binary snapshot previously written with
+     * {@link RegistrySnapshot#write(DefaultOEmbedRegistry, File)}.
+     *
+     * If the snapshot is missing, unreadable or was written by an
+     * incompatible version, the registry is instead loaded from the
+     * given provider list {@link URI} and a fresh snapshot is written
+     * for the next load.
+     */
+    public static DefaultOEmbedRegistry loadFromSnapshot(final File snapshotFile, final URI fallbackURI) {
+        final Optional<DefaultOEmbedRegistry> snapshotRegistry = RegistrySnapshot.read(snapshotFile);
+        if (snapshotRegistry.isPresent()) {
+            return snapshotRegistry.get();
+        }
+
+        final DefaultOEmbedRegistry registry = loadFromURI(fallbackURI);
+        RegistrySnapshot.writeQuietly(registry, snapshotFile);
+        return registry;
+    }
+
+    static List<OEmbedProvider> readProviderList(final InputStream inputStream) throws IOException {
+        return mapper.readValue(inputStream, new TypeReference<List<OEmbedProvider>>() {});
+    }
+
     @VisibleForTesting
     DefaultOEmbedRegistry(final List<OEmbedProvider> providerList) {
+        this(providerList, buildSchemeMatcher(flattenEndpoints(providerList)));
+    }
+
+    // Used to restore a registry whose scheme matcher was already compiled
+    DefaultOEmbedRegistry(final List<OEmbedProvider> providerList, final SchemeMatcher schemeMatcher) {
+        this.providers = Collections.unmodifiableList(providerList);
         this.providersByName = Collections.unmodifiableMap(providerList.stream()
                 .collect(Collectors.toMap(OEmbedProvider::getName, Function.identity())));
-        this.providersByDomain = Collections.unmodifiableMap(providerList.stream()
-                .collect(Collectors.toMap(OEmbedProvider::getDomain, Function.identity())));
+
+        this.endpoints = flattenEndpoints(providerList);
+        final List<List<String>> hostPatterns = endpoints.stream()
+                .map(DefaultOEmbedRegistry::hostPatternsOf)
+                .collect(Collectors.toList());
+        this.hostIndex = buildHostIndex(hostPatterns);
+        this.schemeMatcher = schemeMatcher;
+        this.hotEndpoints = new HotEndpointTable(endpoints, hostPatterns,
+                HOT_ENDPOINTS_CAPACITY, HOT_ENDPOINTS_REORDER_INTERVAL.toNanos());
+        this.negativeResultCache = Optional.empty();
+        this.negativeResultGeneration = 0L;
+    }
+
+    private DefaultOEmbedRegistry(final DefaultOEmbedRegistry registry,
+                                  final Optional<NegativeResultCache> negativeResultCache,
+                                  final long negativeResultGeneration) {
+        this.providers = registry.providers;
+        this.providersByName = registry.providersByName;
+        this.endpoints = registry.endpoints;
+        this.hostIndex = registry.hostIndex;
+        this.schemeMatcher = registry.schemeMatcher;
+        this.hotEndpoints = registry.hotEndpoints;
+        this.negativeResultCache = negativeResultCache;
+        this.negativeResultGeneration = negativeResultGeneration;
+    }
+
+    private static List<OEmbedEndpoint> flattenEndpoints(final List<OEmbedProvider> providerList) {
+        return Collections.unmodifiableList(providerList.stream()
+                .flatMap(provider -> provider.getEndpoints().stream())
+                .collect(Collectors.toList()));
+    }
+
+    // Host patterns may be null for templates without a recognizable host
+    private static List<String> hostPatternsOf(final OEmbedEndpoint endpoint) {
+        if (endpoint.getSchemeTemplates().isEmpty()) {
+            // Endpoints without schemes are matched by their URI domain
+            return Collections.singletonList(endpoint.getMatcher().getURIDomainGlob().getTemplate());
+        }
+        return endpoint.getSchemeTemplates().stream()
+                .map(HostIndex::hostOfTemplate)
+                .collect(Collectors.toList());
+    }
+
+    private static HostIndex buildHostIndex(final List<List<String>> hostPatterns) {
+        final HostIndex.Builder hostIndexBuilder = HostIndex.builder();
+        for (int id = 0; id < hostPatterns.size(); id++) {
+            for (final String hostPattern : hostPatterns.get(id)) {
+                hostIndexBuilder.addHostPattern(hostPattern, id);
+            }
+        }
+        return hostIndexBuilder.build();
+    }
+
+    private static SchemeMatcher buildSchemeMatcher(final List<OEmbedEndpoint> endpoints) {
+        final SchemeMatcher.Builder schemeMatcherBuilder = SchemeMatcher.builder();
+        for (int id = 0; id < endpoints.size(); id++) {
+            for (final String schemeTemplate : endpoints.get(id).getSchemeTemplates()) {
+                // Mirror the http -> https widening done for OEmbedEndpoint#getMatcher
+                schemeMatcherBuilder.addTemplate(schemeTemplate, id)
+                        .addTemplate(schemeTemplate.replaceFirst("http:", "https:"), id);
+            }
+        }
+        return schemeMatcherBuilder.build();
     }
 
     /**
@@ -74,20 +184,154 @@ public final class DefaultOEmbedRegistry implements OEmbedRegistry {
      */
     @Override
     public Optional<OEmbedEndpoint> getEndpoint(final URI resourceURI) {
-        final InternetDomainName resourceDomain = InternetDomainName.from(resourceURI.getHost());
-        // Attempt to short-circuit the endpoint lookup by seeing if we can find a matching
-        // provider by the domain. This will cover a lot of cases, but not every case.
-        final Optional<OEmbedProvider> providerByDomain = Optional.ofNullable(providersByDomain.get(resourceDomain));
-        final Optional<OEmbedEndpoint> endpointByDomain = providerByDomain.map(OEmbedProvider::getEndpoints)
-                .flatMap(endpoints -> endpoints.stream().filter(endpoint -> endpoint.matchesResourceURI(resourceURI)).findAny());
-        if (endpointByDomain.isPresent()) {
-            return endpointByDomain;
+        final String resourceHost = resourceURI.getHost();
+        if (resourceHost == null) {
+            return Optional.empty();
         }
 
-        // Fallback to a linear search through all registered endpoints
-        return providersByName.values().stream()
-                .flatMap(provider -> provider.getEndpoints().stream())
-                .filter(endpoint -> endpoint.matchesResourceURI(resourceURI)).findAny();
+        // Most lookups are for one of a few hot endpoints, which are checked directly
+        final int hotId = hotEndpoints.match(resourceURI.toString(), resourceHost);
+        if (hotId != SchemeMatcher.NO_MATCH) {
+            hotEndpoints.recordHit(hotId);
+            return Optional.of(endpoints.get(hotId));
+        }
+
+        if (negativeResultCache.isPresent()
+                && negativeResultCache.get().isKnownMiss(negativeResultGeneration, resourceHost, resourceURI)) {
+            return Optional.empty();
+        }
+
+        // Narrow the lookup to the few endpoints registered for this host.
+        // Most resource URIs do not belong to any provider, so this usually
+        // ends the lookup without looking past the host.
+        final int[] candidateIds = hostIndex.candidates(resourceHost);
+        if (candidateIds.length == 0) {
+            negativeResultCache.ifPresent(cache -> cache.putHostMiss(negativeResultGeneration, resourceHost));
+            return Optional.empty();
+        }
+
+        // Scheme templates of all candidates are checked in a single pass over the resource URI
+        int[] schemeMatchIds = null;
+        for (final int candidateId : candidateIds) {
+            final OEmbedEndpoint candidate = endpoints.get(candidateId);
+            if (candidate.getSchemeTemplates().isEmpty()) {
+                if (candidate.matchesResourceURI(resourceURI)) {
+                    hotEndpoints.recordHit(candidateId);
+                    return Optional.of(candidate);
+                }
+            } else {
+                if (schemeMatchIds == null) {
+                    schemeMatchIds = schemeMatcher.allMatches(resourceURI.toString());
+                }
+                if (Arrays.binarySearch(schemeMatchIds, candidateId) >= 0) {
+                    hotEndpoints.recordHit(candidateId);
+                    return Optional.of(candidate);
+                }
+            }
+        }
+
+        negativeResultCache.ifPresent(cache -> {
+            final String pathPrefixKey = cache.pathPrefixKey(resourceURI);
+            if (pathPrefixKey != null && !anyMatchesPathPrefix(candidateIds, resourceHost, pathPrefixKey)) {
+                cache.putPathMiss(negativeResultGeneration, pathPrefixKey);
+            }
+        });
+        return Optional.empty();
+    }
+
+    // Whether any candidate could match some resource URI beginning with the given prefix.
+    // Only the paths of templates for the resource host need to be compared.
+    private boolean anyMatchesPathPrefix(final int[] candidateIds, final String resourceHost,
+                                         final String resourceURIPrefix) {
+        final String pathPrefix = HostIndex.pathOfTemplate(resourceURIPrefix);
+        for (final int candidateId : candidateIds) {
+            for (final String schemeTemplate : endpoints.get(candidateId).getSchemeTemplates()) {
+                final String templateHost = HostIndex.hostOfTemplate(schemeTemplate);
+                final String templatePath = HostIndex.pathOfTemplate(schemeTemplate);
+                if (pathPrefix == null || templateHost == null || templatePath == null) {
+                    return true;
+                }
+                if (HostIndex.hostPatternMatches(templateHost, resourceHost)
+                        && canMatchPrefix(templatePath, pathPrefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean canMatchPrefix(final String glob, final String prefix) {
+        final int commonLength = Math.min(glob.length(), prefix.length());
+        for (int i = 0; i < commonLength; i++) {
+            if (glob.charAt(i) == '*') {
+                return true;
+            }
+            if (glob.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return prefix.length() <= glob.length();
+    }
+
+    /**
+     * Returns the endpoints which {@link #getEndpoint(URI)} currently
+     * checks ahead of the full lookup, from most to least hits.
+     *
+     * The hot endpoints are reordered from the hit counts about once a second.
+     */
+    public List<OEmbedEndpoint> getHotEndpoints() {
+        return Arrays.stream(hotEndpoints.hotIds())
+                .mapToObj(endpoints::get)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the number of lookups which matched each endpoint, from
+     * most to least hits. Endpoints which were never matched are omitted.
+     */
+    public Map<OEmbedEndpoint, Long> getEndpointHitCounts() {
+        return IntStream.range(0, endpoints.size())
+                .filter(id -> hotEndpoints.hitCount(id) > 0L)
+                .boxed()
+                .sorted(Comparator.comparingLong(hotEndpoints::hitCount).reversed())
+                .collect(Collectors.toMap(endpoints::get, hotEndpoints::hitCount,
+                        (count, otherCount) -> count, LinkedHashMap::new));
+    }
+
+    /**
+     * Immediately reorders the hot endpoints from the current hit counts.
+     */
+    public void reorderHotEndpoints() {
+        hotEndpoints.reorder();
+    }
+
+    /**
+     * Clears all endpoint hit counts along with the hot endpoints.
+     */
+    public void resetEndpointHitCounts() {
+        hotEndpoints.reset();
+    }
+
+    /**
+     * Returns the {@link NegativeResultCache} consulted by
+     * {@link #getEndpoint(URI)}, if one is attached.
+     */
+    public Optional<NegativeResultCache> getNegativeResultCache() {
+        return negativeResultCache;
+    }
+
+    /**
+     * Returns a registry with the same providers as this one which
+     * remembers resource URIs that have no matching endpoint in the
+     * given {@link NegativeResultCache}.
+     *
+     * The cache is cleared, as any misses it holds may not apply to
+     * this registry's providers, and any registry it was attached to
+     * before no longer records or reports misses in it.
+     */
+    public DefaultOEmbedRegistry withNegativeResultCache(final NegativeResultCache negativeResultCache) {
+        final long generation = negativeResultCache.attach();
+        return new DefaultOEmbedRegistry(this, Optional.of(negativeResultCache), generation);
     }
 
     /**
@@ -98,6 +342,17 @@ public final class DefaultOEmbedRegistry implements OEmbedRegistry {
         return Optional.ofNullable(providersByName.get(name));
     }
 
+    /**
+     * Returns all registered providers, in registration order.
+     */
+    public List<OEmbedProvider> getProviders() {
+        return providers;
+    }
+
+    SchemeMatcher getSchemeMatcher() {
+        return schemeMatcher;
+    }
+
     /**
      * @see OEmbedRegistry#numProviders()
      */
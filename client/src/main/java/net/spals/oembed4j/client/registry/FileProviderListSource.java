@@ -0,0 +1,57 @@
+package net.spals.oembed4j.client.registry;
+
+import net.spals.oembed4j.model.OEmbedProvider;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A {@link ProviderListSource} backed by a local file.
+ *
+ * The file is considered unchanged while its modification
+ * time and length remain the same.
+ *
+ * @author tkral
+ */
+final class FileProviderListSource implements ProviderListSource {
+
+    private final File file;
+
+    private long lastModified = -1L;
+    private long lastLength = -1L;
+
+    FileProviderListSource(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * @see ProviderListSource#loadIfModified()
+     */
+    @Override
+    public Optional<List<OEmbedProvider>> loadIfModified() throws IOException {
+        final long modified = file.lastModified();
+        final long length = file.length();
+        if (modified == lastModified && length == lastLength) {
+            return Optional.empty();
+        }
+
+        try (final InputStream inputStream = new FileInputStream(file)) {
+            final List<OEmbedProvider> providerList = DefaultOEmbedRegistry.readProviderList(inputStream);
+            this.lastModified = modified;
+            this.lastLength = length;
+            return Optional.of(providerList);
+        }
+    }
+
+    /**
+     * @see ProviderListSource#describe()
+     */
+    @Override
+    public String describe() {
+        return file.getPath();
+    }
+}
@@ -0,0 +1,218 @@
+package net.spals.oembed4j.client.registry;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A reverse-label trie over the hosts of oEmbed endpoints.
+ *
+ * Hosts are split into labels and inserted from the top-level
+ * domain down, so {@code *.wistia.com} is stored under
+ * {@code com -> wistia -> *}. Any label which contains a
+ * {@code *} wildcard becomes a wildcard node, which consumes
+ * one or more labels of a looked up host. This covers subdomain
+ * wildcards as well as wildcard country TLDs such as
+ * {@code www.amazon.*}.
+ *
+ * The index is a conservative filter: a lookup returns every
+ * endpoint which could possibly match the host, in ascending
+ * id order, and may return a few which do not.
+ *
+ * @author tkral
+ */
+final class HostIndex {
+
+    private final Node root;
+    // Endpoints whose host could not be indexed are always candidates
+    private final TreeSet<Integer> unindexedIds;
+
+    private HostIndex(final Node root, final TreeSet<Integer> unindexedIds) {
+        this.root = root;
+        this.unindexedIds = unindexedIds;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the ids of all endpoints which may match the given
+     * host, sorted ascending.
+     */
+    int[] candidates(final String host) {
+        final String[] labels = normalize(host).split("\\.", -1);
+
+        final TreeSet<Integer> candidateIds = new TreeSet<>(unindexedIds);
+        collect(root, labels, labels.length, candidateIds);
+        return candidateIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Walks the trie with the labels [0, remaining) still to be consumed, right to left
+    private static void collect(final Node node, final String[] labels, final int remaining,
+                                final TreeSet<Integer> candidateIds) {
+        if (remaining == 0) {
+            candidateIds.addAll(node.ids);
+            return;
+        }
+
+        final Node child = node.children.get(labels[remaining - 1]);
+        if (child != null) {
+            collect(child, labels, remaining - 1, candidateIds);
+        }
+        if (node.wildcardChild != null) {
+            for (int consumed = 1; consumed <= remaining; consumed++) {
+                collect(node.wildcardChild, labels, remaining - consumed, candidateIds);
+            }
+        }
+    }
+
+    /**
+     * Whether a single host pattern, with the same wildcard
+     * semantics as the index, may match the given host.
+     */
+    static boolean hostPatternMatches(final String hostPattern, final String host) {
+        return labelsMatch(normalize(hostPattern).split("\\.", -1), normalize(host).split("\\.", -1));
+    }
+
+    private static boolean labelsMatch(final String[] patternLabels, final String[] labels) {
+        return labelsMatch(patternLabels, patternLabels.length, labels, labels.length);
+    }
+
+    private static boolean labelsMatch(final String[] patternLabels, final int patternRemaining,
+                                       final String[] labels, final int remaining) {
+        if (patternRemaining == 0 || remaining == 0) {
+            return patternRemaining == 0 && remaining == 0;
+        }
+
+        final String patternLabel = patternLabels[patternRemaining - 1];
+        if (!patternLabel.contains("*")) {
+            return patternLabel.equals(labels[remaining - 1])
+                && labelsMatch(patternLabels, patternRemaining - 1, labels, remaining - 1);
+        }
+        for (int consumed = 1; consumed <= remaining; consumed++) {
+            if (labelsMatch(patternLabels, patternRemaining - 1, labels, remaining - consumed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether some host may match both of the given host patterns.
+     * A {@code null} host pattern may match any host.
+     */
+    static boolean hostPatternsMayOverlap(final String hostPattern, final String otherHostPattern) {
+        if (hostPattern == null || otherHostPattern == null) {
+            return true;
+        }
+
+        final String[] labels = normalize(hostPattern).split("\\.", -1);
+        final String[] otherLabels = normalize(otherHostPattern).split("\\.", -1);
+        // Compare from the top-level domain down until a wildcard makes the rest unknowable
+        for (int i = 1; i <= Math.min(labels.length, otherLabels.length); i++) {
+            final String label = labels[labels.length - i];
+            final String otherLabel = otherLabels[otherLabels.length - i];
+            if (label.contains("*") || otherLabel.contains("*")) {
+                return true;
+            }
+            if (!label.equals(otherLabel)) {
+                return false;
+            }
+        }
+        return labels.length == otherLabels.length;
+    }
+
+    /**
+     * Extracts the host portion of a scheme template. Returns
+     * {@code null} if the template has no recognizable host.
+     */
+    static String hostOfTemplate(final String schemeTemplate) {
+        final int schemeEnd = schemeTemplate.indexOf("://");
+        if (schemeEnd < 0 || schemeTemplate.substring(0, schemeEnd).contains("*")) {
+            return null;
+        }
+
+        final int hostStart = schemeEnd + 3;
+        final String hostAndPort = schemeTemplate.substring(hostStart, authorityEnd(schemeTemplate, hostStart));
+        final int portStart = hostAndPort.lastIndexOf(':');
+        final String host = portStart < 0 ? hostAndPort : hostAndPort.substring(0, portStart);
+        return host.isEmpty() || host.contains("@") ? null : host;
+    }
+
+    /**
+     * Returns everything following the authority of a scheme
+     * template or URI string, i.e. its path, query and fragment.
+     * Returns {@code null} if there is no recognizable authority.
+     */
+    static String pathOfTemplate(final String schemeTemplate) {
+        final int schemeEnd = schemeTemplate.indexOf("://");
+        if (schemeEnd < 0) {
+            return null;
+        }
+        return schemeTemplate.substring(authorityEnd(schemeTemplate, schemeEnd + 3));
+    }
+
+    private static int authorityEnd(final String schemeTemplate, final int authorityStart) {
+        int authorityEnd = authorityStart;
+        while (authorityEnd < schemeTemplate.length() && "/?#".indexOf(schemeTemplate.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+        return authorityEnd;
+    }
+
+    private static String normalize(final String host) {
+        final String lowerCaseHost = host.toLowerCase(Locale.ROOT);
+        return lowerCaseHost.endsWith(".") ? lowerCaseHost.substring(0, lowerCaseHost.length() - 1) : lowerCaseHost;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final TreeSet<Integer> ids = new TreeSet<>();
+        private Node wildcardChild;
+    }
+
+    /**
+     * Incrementally builds the host trie.
+     */
+    static final class Builder {
+
+        private final Node root = new Node();
+        private final TreeSet<Integer> unindexedIds = new TreeSet<>();
+
+        private Builder() {  }
+
+        /**
+         * Registers a host pattern, which may contain {@code *}
+         * wildcards, under the given id. A {@code null} host
+         * pattern registers the id as a candidate for every host.
+         */
+        Builder addHostPattern(final String hostPattern, final int id) {
+            if (hostPattern == null) {
+                unindexedIds.add(id);
+                return this;
+            }
+
+            final String[] labels = normalize(hostPattern).split("\\.", -1);
+            Node node = root;
+            for (int i = labels.length - 1; i >= 0; i--) {
+                if (labels[i].contains("*")) {
+                    if (node.wildcardChild == null) {
+                        node.wildcardChild = new Node();
+                    }
+                    node = node.wildcardChild;
+                } else {
+                    node = node.children.computeIfAbsent(labels[i], label -> new Node());
+                }
+            }
+
+            node.ids.add(id);
+            return this;
+        }
+
+        HostIndex build() {
+            return new HostIndex(root, unindexedIds);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package net.spals.oembed4j.client.registry;
+
+import net.spals.oembed4j.model.OEmbedEndpoint;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Tracks how often each endpoint of a registry is matched and keeps
+ * the hottest ones in a small table which is checked before the full
+ * lookup.
+ *
+ * Hits are counted with one {@link LongAdder} per endpoint. The table
+ * is rebuilt from the counts at most once per reorder interval, from
+ * whichever thread records a hit once the interval has passed.
+ *
+ * Only endpoints which are <em>exclusive</em> are ever promoted: no
+ * endpoint with a lower id may share a host with them. A match against
+ * an exclusive endpoint is then always the same match the full lookup
+ * would have found, so the table never changes lookup results.
+ *
+ * @author tkral
+ */
+final class HotEndpointTable {
+
+    private static final int[] NO_IDS = new int[0];
+
+    private final List<OEmbedEndpoint> endpoints;
+    // Host patterns of each endpoint. A null pattern may match any host.
+    private final List<List<String>> hostPatterns;
+    private final int capacity;
+    private final long reorderIntervalNanos;
+
+    private final LongAdder[] hitCounts;
+    // Lazily computed, as only endpoints which receive hits are ever considered
+    private final Boolean[] exclusive;
+    private final AtomicLong lastReorderNanos;
+
+    private volatile int[] hotIds = NO_IDS;
+
+    HotEndpointTable(
+        final List<OEmbedEndpoint> endpoints,
+        final List<List<String>> hostPatterns,
+        final int capacity,
+        final long reorderIntervalNanos
+    ) {
+        this.endpoints = endpoints;
+        this.hostPatterns = hostPatterns;
+        this.capacity = capacity;
+        this.reorderIntervalNanos = reorderIntervalNanos;
+
+        this.hitCounts = IntStream.range(0, endpoints.size()).mapToObj(id -> new LongAdder()).toArray(LongAdder[]::new);
+        this.exclusive = new Boolean[endpoints.size()];
+        this.lastReorderNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Returns the id of the first hot endpoint which matches the
+     * given resource URI, or {@link SchemeMatcher#NO_MATCH}.
+     */
+    int match(final String resourceURI, final String resourceHost) {
+        for (final int hotId : hotIds) {
+            if (endpoints.get(hotId).matchesResourceURI(resourceURI) && matchesHost(hotId, resourceHost)) {
+                return hotId;
+            }
+        }
+        return SchemeMatcher.NO_MATCH;
+    }
+
+    // A wildcard in a scheme template can reach past the host, so the host itself must
+    // be checked the same way the host index would have before trusting a match.
+    private boolean matchesHost(final int id, final String resourceHost) {
+        for (final String hostPattern : hostPatterns.get(id)) {
+            if (hostPattern == null || hostPattern.equalsIgnoreCase(resourceHost)
+                || HostIndex.hostPatternMatches(hostPattern, resourceHost)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void recordHit(final int id) {
+        hitCounts[id].increment();
+
+        final long now = System.nanoTime();
+        final long lastReorder = lastReorderNanos.get();
+        if (now - lastReorder >= reorderIntervalNanos && lastReorderNanos.compareAndSet(lastReorder, now)) {
+            reorder();
+        }
+    }
+
+    long hitCount(final int id) {
+        return hitCounts[id].sum();
+    }
+
+    int[] hotIds() {
+        return hotIds.clone();
+    }
+
+    /**
+     * Rebuilds the table from the current hit counts.
+     */
+    void reorder() {
+        final long[] counts = Arrays.stream(hitCounts).mapToLong(LongAdder::sum).toArray();
+        hotIds = IntStream.range(0, counts.length)
+            .filter(id -> counts[id] > 0L)
+            .boxed()
+            .sorted(Comparator.comparingLong((Integer id) -> counts[id]).reversed())
+            .filter(this::isExclusive)
+            .limit(capacity)
+            .mapToInt(Integer::intValue)
+            .toArray();
+    }
+
+    /**
+     * Clears all hit counts and empties the table.
+     */
+    void reset() {
+        Arrays.stream(hitCounts).forEach(LongAdder::reset);
+        hotIds = NO_IDS;
+        lastReorderNanos.set(System.nanoTime());
+    }
+
+    private boolean isExclusive(final int id) {
+        if (exclusive[id] == null) {
+            exclusive[id] = IntStream.range(0, id).noneMatch(lowerId -> mayShareHost(id, lowerId));
+        }
+        return exclusive[id];
+    }
+
+    private boolean mayShareHost(final int id, final int otherId) {
+        for (final String hostPattern : hostPatterns.get(id)) {
+            for (final String otherHostPattern : hostPatterns.get(otherId)) {
+                if (HostIndex.hostPatternsMayOverlap(hostPattern, otherHostPattern)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
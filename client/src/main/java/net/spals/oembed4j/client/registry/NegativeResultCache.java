@@ -0,0 +1,158 @@
+package net.spals.oembed4j.client.registry;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A bounded, concurrent cache of resource URIs which are
+ * known to have no matching {@link net.spals.oembed4j.model.OEmbedEndpoint}.
+ *
+ * Misses are always remembered by host when no endpoint is
+ * registered for the host at all. If configured with a number of
+ * path prefix segments, misses are also remembered by the resource
+ * URI prefix up to that many path segments, but only when no
+ * scheme template could match any resource URI with that prefix.
+ *
+ * The cache serves only the registry it was most recently attached to.
+ * Each attachment clears the cache and starts a new generation, and
+ * misses are tagged with the generation of the registry which recorded
+ * them. Misses recorded for an earlier generation, including those of
+ * lookups which race with the attachment, are never reported.
+ *
+ * @author tkral
+ */
+public final class NegativeResultCache {
+
+    private final Cache<String, Long> misses;
+    private final int pathPrefixSegments;
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    private NegativeResultCache(final long maximumSize, final int pathPrefixSegments) {
+        this.misses = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+        this.pathPrefixSegments = pathPrefixSegments;
+    }
+
+    /**
+     * Creates a cache which remembers misses by host only.
+     */
+    public static NegativeResultCache create(final long maximumSize) {
+        return create(maximumSize, 0);
+    }
+
+    /**
+     * Creates a cache which remembers misses by host and by
+     * resource URI prefix up to the given number of path segments.
+     */
+    public static NegativeResultCache create(final long maximumSize, final int pathPrefixSegments) {
+        checkArgument(maximumSize > 0, "Maximum size must be positive: %s", maximumSize);
+        checkArgument(pathPrefixSegments >= 0, "Path prefix segments must not be negative: %s", pathPrefixSegments);
+        return new NegativeResultCache(maximumSize, pathPrefixSegments);
+    }
+
+    /**
+     * Removes all remembered misses. Statistics are retained.
+     */
+    public void clear() {
+        misses.invalidateAll();
+    }
+
+    /**
+     * Starts a new generation, for a newly attached registry,
+     * and removes all remembered misses.
+     */
+    long attach() {
+        final long attachedGeneration = generation.incrementAndGet();
+        clear();
+        return attachedGeneration;
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * The fraction of lookups which were answered by this cache,
+     * or {@code 1.0} if there have been no lookups.
+     */
+    public double hitRate() {
+        final long hits = hitCount.sum();
+        final long lookups = hits + missCount.sum();
+        return lookups == 0L ? 1.0 : (double) hits / lookups;
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    public long size() {
+        return misses.size();
+    }
+
+    boolean isKnownMiss(final long generation, final String host, final URI resourceURI) {
+        final boolean knownMiss = isMiss(generation, hostKey(host))
+            || (pathPrefixSegments > 0 && isMiss(generation, pathPrefixKey(resourceURI)));
+        (knownMiss ? hitCount : missCount).increment();
+        return knownMiss;
+    }
+
+    void putHostMiss(final long generation, final String host) {
+        putMiss(generation, hostKey(host));
+    }
+
+    void putPathMiss(final long generation, final String pathPrefixKey) {
+        putMiss(generation, pathPrefixKey);
+    }
+
+    private boolean isMiss(final long generation, final String key) {
+        final Long missGeneration = misses.getIfPresent(key);
+        return missGeneration != null && missGeneration == generation;
+    }
+
+    // A registry may still record a miss after it was replaced. The check here
+    // skips most of these, and the generation tag hides any which slip past it.
+    private void putMiss(final long generation, final String key) {
+        if (generation == this.generation.get()) {
+            misses.put(key, generation);
+        }
+    }
+
+    /**
+     * Returns the literal prefix of the resource URI, up to the configured
+     * number of path segments, under which path misses are remembered.
+     * Returns {@code null} if path misses are not remembered.
+     */
+    String pathPrefixKey(final URI resourceURI) {
+        if (pathPrefixSegments == 0) {
+            return null;
+        }
+
+        final String resourceURIStr = resourceURI.toString();
+        final int schemeEnd = resourceURIStr.indexOf("://");
+        int keyEnd = schemeEnd < 0 ? 0 : schemeEnd + 3;
+        for (int segment = 0; segment <= pathPrefixSegments; segment++) {
+            while (keyEnd < resourceURIStr.length() && "/?#".indexOf(resourceURIStr.charAt(keyEnd)) < 0) {
+                keyEnd++;
+            }
+            if (keyEnd == resourceURIStr.length() || resourceURIStr.charAt(keyEnd) != '/' || segment == pathPrefixSegments) {
+                break;
+            }
+            keyEnd++;
+        }
+        return resourceURIStr.substring(0, keyEnd);
+    }
+
+    // Host keys never contain "://", so they cannot collide with path prefix keys
+    private static String hostKey(final String host) {
+        return host.toLowerCase(Locale.ROOT);
+    }
+}
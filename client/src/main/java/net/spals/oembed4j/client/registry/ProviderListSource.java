@@ -0,0 +1,30 @@
+package net.spals.oembed4j.client.registry;
+
+import net.spals.oembed4j.model.OEmbedProvider;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A location from which an oEmbed provider list
+ * can be repeatedly loaded.
+ *
+ * @author tkral
+ */
+interface ProviderListSource {
+
+    /**
+     * Loads the provider list, unless it is known to be unchanged
+     * since the last successful load.
+     *
+     * @return The loaded provider list, or {@code Optional.empty()}
+     *         if the provider list is unchanged.
+     */
+    Optional<List<OEmbedProvider>> loadIfModified() throws IOException;
+
+    /**
+     * A human readable description of this source for logging.
+     */
+    String describe();
+}
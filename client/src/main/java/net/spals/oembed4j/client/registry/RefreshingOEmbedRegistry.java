@@ -0,0 +1,179 @@
+package net.spals.oembed4j.client.registry;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.spals.oembed4j.model.OEmbedEndpoint;
+import net.spals.oembed4j.model.OEmbedProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An implementation of {@link OEmbedRegistry} which periodically
+ * reloads its provider list from a {@link URI} or local file.
+ *
+ * Reloads are skipped when the provider list is unchanged, using
+ * conditional HTTP requests for {@link URI}s and the modification
+ * time for files. A changed provider list is indexed on a background
+ * thread and then published with a single atomic swap, so lookups
+ * never block and always see a complete {@link DefaultOEmbedRegistry}.
+ * A failed reload is logged and the previous providers are kept.
+ *
+ * To create a registry which refreshes from the official oEmbed
+ * provider list every hour, you can use the following:
+ *
+ * {@code RefreshingOEmbedRegistry.fromURI(DEFAULT_OEMBED_PROVIDER_URI, Duration.ofHours(1L))}
+ *
+ * @author tkral
+ */
+public final class RefreshingOEmbedRegistry implements OEmbedRegistry, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshingOEmbedRegistry.class);
+
+    private final ProviderListSource source;
+    private final Optional<NegativeResultCache> negativeResultCache;
+    private final AtomicReference<DefaultOEmbedRegistry> snapshot = new AtomicReference<>();
+    // Serializes reloads, which are never run by lookups
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final ScheduledExecutorService refreshExecutor;
+
+    @VisibleForTesting
+    RefreshingOEmbedRegistry(
+        final ProviderListSource source,
+        final Duration refreshInterval,
+        final Optional<NegativeResultCache> negativeResultCache
+    ) {
+        checkArgument(!refreshInterval.isNegative() && !refreshInterval.isZero(),
+            "Refresh interval must be positive: %s", refreshInterval);
+        this.source = source;
+        this.negativeResultCache = negativeResultCache;
+
+        // The initial load is synchronous so that the registry is never empty
+        try {
+            checkArgument(refresh(), "No provider list found at %s", source.describe());
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        this.refreshExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setDaemon(true).setNameFormat("oembed4j-registry-refresh-%d").build());
+        refreshExecutor.scheduleWithFixedDelay(this::refreshQuietly,
+            refreshInterval.toMillis(), refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public static RefreshingOEmbedRegistry fromFile(final File file, final Duration refreshInterval) {
+        return new RefreshingOEmbedRegistry(new FileProviderListSource(file), refreshInterval, Optional.empty());
+    }
+
+    public static RefreshingOEmbedRegistry fromFile(
+        final File file,
+        final Duration refreshInterval,
+        final NegativeResultCache negativeResultCache
+    ) {
+        return new RefreshingOEmbedRegistry(new FileProviderListSource(file), refreshInterval,
+            Optional.of(negativeResultCache));
+    }
+
+    public static RefreshingOEmbedRegistry fromURI(final URI uri, final Duration refreshInterval) {
+        return new RefreshingOEmbedRegistry(new URIProviderListSource(uri), refreshInterval, Optional.empty());
+    }
+
+    public static RefreshingOEmbedRegistry fromURI(
+        final URI uri,
+        final Duration refreshInterval,
+        final NegativeResultCache negativeResultCache
+    ) {
+        return new RefreshingOEmbedRegistry(new URIProviderListSource(uri), refreshInterval,
+            Optional.of(negativeResultCache));
+    }
+
+    /**
+     * Stops any further reloads.
+     *
+     * @see AutoCloseable#close()
+     */
+    @Override
+    public void close() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * @see OEmbedRegistry#getEndpoint(URI)
+     */
+    @Override
+    public Optional<OEmbedEndpoint> getEndpoint(final URI resourceURI) {
+        return snapshot.get().getEndpoint(resourceURI);
+    }
+
+    /**
+     * @see OEmbedRegistry#getProvider(String)
+     */
+    @Override
+    public Optional<OEmbedProvider> getProvider(final String name) {
+        return snapshot.get().getProvider(name);
+    }
+
+    /**
+     * Returns the {@link DefaultOEmbedRegistry} which currently
+     * answers all lookups.
+     */
+    public DefaultOEmbedRegistry getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * @see OEmbedRegistry#numProviders()
+     */
+    @Override
+    public int numProviders() {
+        return snapshot.get().numProviders();
+    }
+
+    /**
+     * Immediately reloads the provider list, if it has changed.
+     *
+     * @return {@code true} if a new provider list was published,
+     *         {@code false} if the provider list is unchanged.
+     * @throws IOException If the provider list cannot be loaded.
+     */
+    public boolean refresh() throws IOException {
+        refreshLock.lock();
+        try {
+            final Optional<List<OEmbedProvider>> providerList = source.loadIfModified();
+            if (!providerList.isPresent()) {
+                return false;
+            }
+
+            final DefaultOEmbedRegistry newSnapshot = new DefaultOEmbedRegistry(providerList.get());
+            // Attaching the negative cache starts a new generation, so misses recorded
+            // for the old providers, even by lookups racing with the swap, are ignored
+            snapshot.set(negativeResultCache.map(newSnapshot::withNegativeResultCache).orElse(newSnapshot));
+            return true;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            if (refresh()) {
+                LOGGER.info("reloaded oEmbed providers from " + source.describe());
+            }
+        } catch (final Exception e) {
+            LOGGER.info("failed to reload oEmbed providers from " + source.describe(), e);
+        }
+    }
+}
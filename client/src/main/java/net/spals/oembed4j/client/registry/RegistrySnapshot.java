@@ -0,0 +1,372 @@
+package net.spals.oembed4j.client.registry;
+
+import com.google.common.annotations.VisibleForTesting;
+import net.spals.oembed4j.model.OEmbedEndpoint;
+import net.spals.oembed4j.model.OEmbedEndpointMatcher;
+import net.spals.oembed4j.model.OEmbedFormat;
+import net.spals.oembed4j.model.OEmbedGlob;
+import net.spals.oembed4j.model.OEmbedProvider;
+import net.spals.oembed4j.model.OEmbedURITemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Reads and writes compact binary snapshots of a {@link DefaultOEmbedRegistry}.
+ *
+ * A snapshot holds the provider list along with the registry's compiled
+ * scheme matcher and each endpoint's compiled URI template and globs, so
+ * that loading one skips JSON parsing and matcher compilation entirely.
+ * Snapshots are memory-mapped when read and the matcher tables are
+ * bulk-copied straight out of the mapping.
+ *
+ * Every snapshot is stamped with {@link #FORMAT_VERSION} and a CRC32 of
+ * its contents. A snapshot with any other version, whose checksum doesn't
+ * match, or which is truncated or otherwise corrupt, is rejected so that
+ * callers can fall back to the JSON provider list.
+ *
+ * @author tkral
+ */
+public final class RegistrySnapshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RegistrySnapshot.class);
+
+    // "OE4J"
+    private static final int MAGIC = 0x4F45344A;
+    // Bump whenever the layout below or the scheme matcher semantics change
+    static final int FORMAT_VERSION = 3;
+    // Magic, version, total length and the checksum of everything after the header
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+
+    private RegistrySnapshot() {  }
+
+    /**
+     * Reads a snapshot from the given file.
+     *
+     * @return The restored registry, or {@code Optional.empty()} if the file is
+     *         missing, corrupt or was written with a different format version.
+     */
+    public static Optional<DefaultOEmbedRegistry> read(final File snapshotFile) {
+        if (!snapshotFile.isFile()) {
+            return Optional.empty();
+        }
+
+        try (final FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+            return Optional.of(read(buffer));
+        } catch (final Exception e) {
+            LOGGER.info("ignoring unusable registry snapshot " + snapshotFile, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the given registry to the given file.
+     * The file is replaced atomically, so concurrent readers never
+     * see a partially written snapshot.
+     */
+    public static void write(final DefaultOEmbedRegistry registry, final File snapshotFile) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            // Placeholders for the total length and checksum
+            out.writeLong(0L);
+            out.writeInt(0);
+
+            writeProviders(out, registry.getProviders());
+            writeSchemeMatcher(out, registry.getSchemeMatcher());
+        }
+
+        final ByteBuffer snapshot = ByteBuffer.wrap(bytes.toByteArray());
+        snapshot.putLong(8, snapshot.capacity());
+        snapshot.putInt(16, checksum(snapshot.array(), HEADER_SIZE));
+
+        final Path snapshotPath = snapshotFile.toPath().toAbsolutePath();
+        final Path tempPath = Files.createTempFile(snapshotPath.getParent(), snapshotFile.getName(), ".tmp");
+        try {
+            Files.write(tempPath, snapshot.array());
+            Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    static void writeQuietly(final DefaultOEmbedRegistry registry, final File snapshotFile) {
+        try {
+            write(registry, snapshotFile);
+        } catch (final IOException e) {
+            LOGGER.info("failed to write registry snapshot " + snapshotFile, e);
+        }
+    }
+
+    static DefaultOEmbedRegistry read(final ByteBuffer buffer) {
+        checkState(buffer.remaining() >= HEADER_SIZE, "Snapshot is too short");
+        checkState(buffer.getInt() == MAGIC, "Snapshot has an unrecognized header");
+        final int formatVersion = buffer.getInt();
+        checkState(formatVersion == FORMAT_VERSION, "Snapshot format version %s is not %s", formatVersion, FORMAT_VERSION);
+        checkState(buffer.getLong() == buffer.capacity(), "Snapshot is truncated");
+        final int checksum = buffer.getInt();
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        checkState((int) crc.getValue() == checksum, "Snapshot checksum doesn't match");
+
+        final List<OEmbedProvider> providers = readProviders(buffer);
+        final int numEndpoints = providers.stream().mapToInt(provider -> provider.getEndpoints().size()).sum();
+        final SchemeMatcher schemeMatcher = readSchemeMatcher(buffer, numEndpoints);
+        checkState(!buffer.hasRemaining(), "Snapshot has trailing data");
+
+        return new DefaultOEmbedRegistry(providers, schemeMatcher);
+    }
+
+    // ========== Providers ==========
+    private static void writeProviders(final DataOutputStream out, final List<OEmbedProvider> providers)
+        throws IOException {
+        out.writeInt(providers.size());
+        for (final OEmbedProvider provider : providers) {
+            writeString(out, provider.getName());
+            writeString(out, provider.getURI().toString());
+            out.writeInt(provider.getEndpoints().size());
+            for (final OEmbedEndpoint endpoint : provider.getEndpoints()) {
+                out.writeBoolean(endpoint.getDiscoveryEnabled());
+                out.writeInt(formatsToBits(endpoint.getSupportedFormats()));
+                writeString(out, endpoint.getURITemplate());
+                out.writeInt(endpoint.getSchemeTemplates().size());
+                for (final String schemeTemplate : endpoint.getSchemeTemplates()) {
+                    writeString(out, schemeTemplate);
+                }
+                writeCompiledURITemplate(out, endpoint.getCompiledURITemplate());
+                writeMatcher(out, endpoint.getMatcher());
+            }
+        }
+    }
+
+    private static List<OEmbedProvider> readProviders(final ByteBuffer buffer) {
+        final int numProviders = buffer.getInt();
+        final List<OEmbedProvider> providers = new ArrayList<>(numProviders);
+        for (int i = 0; i < numProviders; i++) {
+            final OEmbedProvider.Builder providerBuilder = new OEmbedProvider.Builder()
+                .setName(readString(buffer))
+                .setURI(URI.create(readString(buffer)));
+
+            final int numEndpoints = buffer.getInt();
+            for (int j = 0; j < numEndpoints; j++) {
+                final OEmbedEndpoint.Builder endpointBuilder = new OEmbedEndpoint.Builder()
+                    .setDiscoveryEnabled(buffer.get() != 0)
+                    .addAllSupportedFormats(bitsToFormats(buffer.getInt()))
+                    .setURITemplate(readString(buffer));
+                final int numSchemeTemplates = buffer.getInt();
+                for (int k = 0; k < numSchemeTemplates; k++) {
+                    endpointBuilder.addSchemeTemplates(readString(buffer));
+                }
+                // Restore the compiled forms rather than deriving them again
+                final OEmbedURITemplate compiledURITemplate = readCompiledURITemplate(buffer);
+                final OEmbedEndpointMatcher matcher = readMatcher(buffer);
+                providerBuilder.addEndpoints(endpointBuilder.build(compiledURITemplate, matcher));
+            }
+            providers.add(providerBuilder.build());
+        }
+        return providers;
+    }
+
+    private static void writeCompiledURITemplate(final DataOutputStream out, final OEmbedURITemplate uriTemplate)
+        throws IOException {
+        writeString(out, uriTemplate.getURITemplate());
+        out.writeInt(uriTemplate.getFormat().ordinal());
+        out.writeBoolean(uriTemplate.getPrefix().isPresent());
+        if (uriTemplate.getPrefix().isPresent()) {
+            writeString(out, uriTemplate.getPrefix().get());
+            writeString(out, uriTemplate.getSuffix().get());
+        }
+    }
+
+    private static OEmbedURITemplate readCompiledURITemplate(final ByteBuffer buffer) {
+        final String uriTemplate = readString(buffer);
+        final int formatOrdinal = buffer.getInt();
+        checkState(formatOrdinal >= 0 && formatOrdinal < OEmbedFormat.values().length, "Snapshot has an invalid format");
+        final OEmbedFormat format = OEmbedFormat.values()[formatOrdinal];
+        if (buffer.get() == 0) {
+            return OEmbedURITemplate.restore(uriTemplate, format, Optional.empty(), Optional.empty());
+        }
+        return OEmbedURITemplate.restore(uriTemplate, format,
+            Optional.of(readString(buffer)), Optional.of(readString(buffer)));
+    }
+
+    private static void writeMatcher(final DataOutputStream out, final OEmbedEndpointMatcher matcher)
+        throws IOException {
+        out.writeInt(matcher.getSchemeGlobs().size());
+        for (final OEmbedGlob schemeGlob : matcher.getSchemeGlobs()) {
+            writeGlob(out, schemeGlob);
+        }
+        writeGlob(out, matcher.getURIDomainGlob());
+    }
+
+    private static OEmbedEndpointMatcher readMatcher(final ByteBuffer buffer) {
+        final int numSchemeGlobs = buffer.getInt();
+        checkState(numSchemeGlobs >= 0 && numSchemeGlobs <= buffer.remaining(), "Snapshot has an invalid number of scheme globs");
+        final List<OEmbedGlob> schemeGlobs = new ArrayList<>(numSchemeGlobs);
+        for (int i = 0; i < numSchemeGlobs; i++) {
+            schemeGlobs.add(readGlob(buffer));
+        }
+        return OEmbedEndpointMatcher.restore(schemeGlobs, readGlob(buffer));
+    }
+
+    private static void writeGlob(final DataOutputStream out, final OEmbedGlob glob) throws IOException {
+        writeString(out, glob.getTemplate());
+        final int[][] failureTables = glob.getFailureTables();
+        out.writeInt(failureTables.length);
+        for (final int[] failureTable : failureTables) {
+            out.writeInt(failureTable.length);
+            writeInts(out, failureTable);
+        }
+    }
+
+    private static OEmbedGlob readGlob(final ByteBuffer buffer) {
+        final String template = readString(buffer);
+        final int numFailureTables = buffer.getInt();
+        // Each segment needs its own table, and there are at most as many wildcards as characters
+        checkState(numFailureTables > 0 && numFailureTables <= template.length() + 1,
+            "Snapshot has an invalid number of glob failure tables");
+        final int[][] failureTables = new int[numFailureTables][];
+        for (int i = 0; i < numFailureTables; i++) {
+            final int tableLength = buffer.getInt();
+            checkState(tableLength >= 0 && tableLength <= template.length(), "Snapshot has an invalid glob failure table");
+            failureTables[i] = readInts(buffer, tableLength);
+        }
+        // Restoring checks the tables against the template's segments
+        return OEmbedGlob.restore(template, failureTables);
+    }
+
+    private static int formatsToBits(final Set<OEmbedFormat> formats) {
+        return formats.stream().mapToInt(format -> 1 << format.ordinal()).reduce(0, (a, b) -> a | b);
+    }
+
+    private static Set<OEmbedFormat> bitsToFormats(final int bits) {
+        final Set<OEmbedFormat> formats = EnumSet.noneOf(OEmbedFormat.class);
+        for (final OEmbedFormat format : OEmbedFormat.values()) {
+            if ((bits & (1 << format.ordinal())) != 0) {
+                formats.add(format);
+            }
+        }
+        return formats;
+    }
+
+    // ========== Scheme matcher ==========
+    @VisibleForTesting
+    static void writeSchemeMatcher(final DataOutputStream out, final SchemeMatcher schemeMatcher)
+        throws IOException {
+        out.writeInt(schemeMatcher.getSelfLoop().length);
+        out.writeInt(schemeMatcher.getEdgeChars().length);
+        out.writeInt(schemeMatcher.getAcceptIds().length);
+
+        writeInts(out, schemeMatcher.getEdgeStart());
+        for (final char edgeChar : schemeMatcher.getEdgeChars()) {
+            out.writeChar(edgeChar);
+        }
+        writeInts(out, schemeMatcher.getEdgeTargets());
+        writeInts(out, schemeMatcher.getStarChild());
+        for (final boolean selfLoop : schemeMatcher.getSelfLoop()) {
+            out.writeBoolean(selfLoop);
+        }
+        writeInts(out, schemeMatcher.getAcceptStart());
+        writeInts(out, schemeMatcher.getAcceptIds());
+    }
+
+    @VisibleForTesting
+    static SchemeMatcher readSchemeMatcher(final ByteBuffer buffer, final int numEndpoints) {
+        final int numNodes = buffer.getInt();
+        final int numEdges = buffer.getInt();
+        final int numAccepts = buffer.getInt();
+        checkState(numNodes > 0 && numEdges >= 0 && numAccepts >= 0, "Snapshot has invalid scheme matcher sizes");
+
+        final int[] edgeStart = readInts(buffer, numNodes + 1);
+        final char[] edgeChars = new char[numEdges];
+        buffer.asCharBuffer().get(edgeChars);
+        buffer.position(buffer.position() + numEdges * Character.BYTES);
+        final int[] edgeTargets = readInts(buffer, numEdges);
+        final int[] starChild = readInts(buffer, numNodes);
+        final boolean[] selfLoop = new boolean[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            selfLoop[i] = buffer.get() != 0;
+        }
+        final int[] acceptStart = readInts(buffer, numNodes + 1);
+        final int[] acceptIds = readInts(buffer, numAccepts);
+
+        // Validate every index up front so that a corrupt snapshot can never fail a later lookup
+        checkState(edgeStart[0] == 0 && edgeStart[numNodes] == numEdges
+                && acceptStart[0] == 0 && acceptStart[numNodes] == numAccepts,
+            "Snapshot has inconsistent scheme matcher offsets");
+        for (int node = 0; node < numNodes; node++) {
+            checkState(edgeStart[node] <= edgeStart[node + 1] && acceptStart[node] <= acceptStart[node + 1],
+                "Snapshot has inconsistent scheme matcher offsets");
+            checkState(starChild[node] >= -1 && starChild[node] < numNodes, "Snapshot has invalid wildcard nodes");
+            // Each node's edges are binary searched, so they must be sorted
+            for (int edge = edgeStart[node] + 1; edge < edgeStart[node + 1]; edge++) {
+                checkState(edgeChars[edge - 1] < edgeChars[edge], "Snapshot has unsorted edges");
+            }
+        }
+        for (final int edgeTarget : edgeTargets) {
+            checkState(edgeTarget >= 0 && edgeTarget < numNodes, "Snapshot has invalid edges");
+        }
+        for (final int acceptId : acceptIds) {
+            checkState(acceptId >= 0 && acceptId < numEndpoints, "Snapshot has invalid endpoint ids");
+        }
+
+        return new SchemeMatcher(edgeStart, edgeChars, edgeTargets, starChild, selfLoop, acceptStart, acceptIds);
+    }
+
+    // ========== Primitives ==========
+    private static int checksum(final byte[] bytes, final int offset) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, offset, bytes.length - offset);
+        return (int) crc.getValue();
+    }
+
+    private static void writeInts(final DataOutputStream out, final int[] values) throws IOException {
+        for (final int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(final ByteBuffer buffer, final int length) {
+        final int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + length * Integer.BYTES);
+        return values;
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        final ByteBuffer bytes = buffer.slice();
+        bytes.limit(length);
+        buffer.position(buffer.position() + length);
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+}
@@ -0,0 +1,355 @@
+package net.spals.oembed4j.client.registry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled matcher over the scheme templates of
+ * many oEmbed endpoints.
+ *
+ * All scheme templates are merged into a single trie in which
+ * each {@code *} wildcard becomes a self-looping node. The trie
+ * is an NFA which is lazily determinized as resource URIs are
+ * matched, so a lookup costs time linear in the length of the
+ * resource URI no matter how many templates are registered.
+ *
+ * Every character in a template other than {@code *} is matched
+ * literally.
+ *
+ * @author tkral
+ */
+final class SchemeMatcher {
+
+    static final int NO_MATCH = -1;
+
+    // Upper bound on cached DFA states. Past this point, transitions
+    // are still computed correctly but are no longer remembered.
+    private static final int MAX_DFA_STATES = 10_000;
+    private static final int ASCII_SIZE = 128;
+
+    // ========== Flattened NFA ==========
+    // Node n owns edges [edgeStart[n], edgeStart[n + 1]), sorted by character.
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    // The wildcard node reachable from node n, or -1.
+    private final int[] starChild;
+    // Whether node n is a wildcard node (i.e. loops on any character).
+    private final boolean[] selfLoop;
+    // Node n accepts ids [acceptStart[n], acceptStart[n + 1]), sorted ascending.
+    private final int[] acceptStart;
+    private final int[] acceptIds;
+
+    // ========== Lazy DFA ==========
+    private final DfaState initialState;
+    private final Map<IntArrayKey, DfaState> dfaStates = new ConcurrentHashMap<>();
+
+    SchemeMatcher(
+        final int[] edgeStart,
+        final char[] edgeChars,
+        final int[] edgeTargets,
+        final int[] starChild,
+        final boolean[] selfLoop,
+        final int[] acceptStart,
+        final int[] acceptIds
+    ) {
+        this.edgeStart = edgeStart;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.starChild = starChild;
+        this.selfLoop = selfLoop;
+        this.acceptStart = acceptStart;
+        this.acceptIds = acceptIds;
+
+        this.initialState = intern(closure(new int[]{0}));
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the lowest id whose scheme template matches
+     * the given resource URI, or {@link #NO_MATCH}.
+     */
+    int firstMatch(final CharSequence resourceURI) {
+        final DfaState state = run(resourceURI);
+        return state.accepts.length == 0 ? NO_MATCH : state.accepts[0];
+    }
+
+    /**
+     * Returns all ids whose scheme template matches the given
+     * resource URI, sorted ascending. The returned array
+     * must not be modified.
+     */
+    int[] allMatches(final CharSequence resourceURI) {
+        return run(resourceURI).accepts;
+    }
+
+    // ========== Accessors for serialization ==========
+    int[] getEdgeStart() {
+        return edgeStart;
+    }
+
+    char[] getEdgeChars() {
+        return edgeChars;
+    }
+
+    int[] getEdgeTargets() {
+        return edgeTargets;
+    }
+
+    int[] getStarChild() {
+        return starChild;
+    }
+
+    boolean[] getSelfLoop() {
+        return selfLoop;
+    }
+
+    int[] getAcceptStart() {
+        return acceptStart;
+    }
+
+    int[] getAcceptIds() {
+        return acceptIds;
+    }
+
+    private DfaState run(final CharSequence input) {
+        DfaState state = initialState;
+        for (int i = 0; i < input.length() && !state.isDead(); i++) {
+            state = state.next(input.charAt(i));
+        }
+        // Consuming the entire input is required for a match
+        return state;
+    }
+
+    private DfaState intern(final int[] nodes) {
+        final IntArrayKey key = new IntArrayKey(nodes);
+        final DfaState existingState = dfaStates.get(key);
+        if (existingState != null) {
+            return existingState;
+        }
+
+        final DfaState newState = new DfaState(nodes, collectAccepts(nodes));
+        if (dfaStates.size() >= MAX_DFA_STATES) {
+            return newState;
+        }
+        final DfaState racingState = dfaStates.putIfAbsent(key, newState);
+        return racingState == null ? newState : racingState;
+    }
+
+    private int[] step(final int[] nodes, final char c) {
+        final IntSet nextNodes = new IntSet(nodes.length * 2);
+        for (final int node : nodes) {
+            if (selfLoop[node]) {
+                nextNodes.add(node);
+            }
+            final int edgeIndex = Arrays.binarySearch(edgeChars, edgeStart[node], edgeStart[node + 1], c);
+            if (edgeIndex >= 0) {
+                nextNodes.add(edgeTargets[edgeIndex]);
+            }
+        }
+        return closure(nextNodes.toSortedArray());
+    }
+
+    // A wildcard may match the empty string, so any node with
+    // a wildcard child implicitly activates that child as well.
+    private int[] closure(final int[] nodes) {
+        final IntSet closedNodes = new IntSet(nodes.length * 2);
+        for (final int node : nodes) {
+            closedNodes.add(node);
+            if (starChild[node] >= 0) {
+                closedNodes.add(starChild[node]);
+            }
+        }
+        return closedNodes.toSortedArray();
+    }
+
+    private int[] collectAccepts(final int[] nodes) {
+        final IntSet accepts = new IntSet(4);
+        for (final int node : nodes) {
+            for (int i = acceptStart[node]; i < acceptStart[node + 1]; i++) {
+                accepts.add(acceptIds[i]);
+            }
+        }
+        return accepts.toSortedArray();
+    }
+
+    private final class DfaState {
+        private final int[] nodes;
+        private final int[] accepts;
+        // Racy, but benign: a missed transition is simply recomputed
+        // and re-interned to the same state.
+        private final DfaState[] asciiTransitions;
+
+        private DfaState(final int[] nodes, final int[] accepts) {
+            this.nodes = nodes;
+            this.accepts = accepts;
+            this.asciiTransitions = nodes.length == 0 ? null : new DfaState[ASCII_SIZE];
+        }
+
+        private boolean isDead() {
+            return nodes.length == 0;
+        }
+
+        private DfaState next(final char c) {
+            if (c >= ASCII_SIZE) {
+                return intern(step(nodes, c));
+            }
+
+            DfaState nextState = asciiTransitions[c];
+            if (nextState == null) {
+                nextState = intern(step(nodes, c));
+                asciiTransitions[c] = nextState;
+            }
+            return nextState;
+        }
+    }
+
+    private static final class IntArrayKey {
+        private final int[] values;
+        private final int hashCode;
+
+        private IntArrayKey(final int[] values) {
+            this.values = values;
+            this.hashCode = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof IntArrayKey && Arrays.equals(values, ((IntArrayKey) obj).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class IntSet {
+        private int[] values;
+        private int size;
+
+        private IntSet(final int initialCapacity) {
+            this.values = new int[Math.max(initialCapacity, 4)];
+        }
+
+        private void add(final int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private int[] toSortedArray() {
+            Arrays.sort(values, 0, size);
+            int uniqueSize = 0;
+            for (int i = 0; i < size; i++) {
+                if (uniqueSize == 0 || values[uniqueSize - 1] != values[i]) {
+                    values[uniqueSize++] = values[i];
+                }
+            }
+            return Arrays.copyOf(values, uniqueSize);
+        }
+    }
+
+    /**
+     * Incrementally builds the scheme template trie.
+     */
+    static final class Builder {
+
+        private final List<Map<Character, Integer>> edges = new ArrayList<>();
+        private final List<Integer> starChild = new ArrayList<>();
+        private final List<Boolean> selfLoop = new ArrayList<>();
+        private final List<Set<Integer>> accepts = new ArrayList<>();
+
+        private Builder() {
+            newNode(false);
+        }
+
+        /**
+         * Registers a scheme template under the given id.
+         */
+        Builder addTemplate(final String schemeTemplate, final int id) {
+            int node = 0;
+            for (int i = 0; i < schemeTemplate.length(); i++) {
+                final char c = schemeTemplate.charAt(i);
+                if (c == '*') {
+                    // Consecutive wildcards collapse into a single wildcard
+                    if (!selfLoop.get(node)) {
+                        if (starChild.get(node) < 0) {
+                            starChild.set(node, newNode(true));
+                        }
+                        node = starChild.get(node);
+                    }
+                } else {
+                    final Integer target = edges.get(node).get(c);
+                    if (target == null) {
+                        final int newTarget = newNode(false);
+                        edges.get(node).put(c, newTarget);
+                        node = newTarget;
+                    } else {
+                        node = target;
+                    }
+                }
+            }
+
+            accepts.get(node).add(id);
+            return this;
+        }
+
+        SchemeMatcher build() {
+            final int numNodes = selfLoop.size();
+            final int numEdges = edges.stream().mapToInt(Map::size).sum();
+            final int numAccepts = accepts.stream().mapToInt(Set::size).sum();
+
+            final int[] edgeStartArr = new int[numNodes + 1];
+            final char[] edgeCharsArr = new char[numEdges];
+            final int[] edgeTargetsArr = new int[numEdges];
+            final int[] starChildArr = new int[numNodes];
+            final boolean[] selfLoopArr = new boolean[numNodes];
+            final int[] acceptStartArr = new int[numNodes + 1];
+            final int[] acceptIdsArr = new int[numAccepts];
+
+            int edgeIndex = 0;
+            int acceptIndex = 0;
+            for (int node = 0; node < numNodes; node++) {
+                edgeStartArr[node] = edgeIndex;
+                // TreeMap iteration keeps each node's edges sorted for binary search
+                for (final Map.Entry<Character, Integer> edge : edges.get(node).entrySet()) {
+                    edgeCharsArr[edgeIndex] = edge.getKey();
+                    edgeTargetsArr[edgeIndex] = edge.getValue();
+                    edgeIndex++;
+                }
+
+                starChildArr[node] = starChild.get(node);
+                selfLoopArr[node] = selfLoop.get(node);
+
+                acceptStartArr[node] = acceptIndex;
+                final int[] nodeAccepts = accepts.get(node).stream().mapToInt(Integer::intValue).sorted().toArray();
+                System.arraycopy(nodeAccepts, 0, acceptIdsArr, acceptIndex, nodeAccepts.length);
+                acceptIndex += nodeAccepts.length;
+            }
+            edgeStartArr[numNodes] = edgeIndex;
+            acceptStartArr[numNodes] = acceptIndex;
+
+            return new SchemeMatcher(edgeStartArr, edgeCharsArr, edgeTargetsArr,
+                starChildArr, selfLoopArr, acceptStartArr, acceptIdsArr);
+        }
+
+        private int newNode(final boolean isWildcard) {
+            edges.add(new TreeMap<>());
+            starChild.add(-1);
+            selfLoop.add(isWildcard);
+            accepts.add(new LinkedHashSet<>());
+            return selfLoop.size() - 1;
+        }
+    }
+}
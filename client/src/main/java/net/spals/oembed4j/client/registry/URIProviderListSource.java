@@ -0,0 +1,100 @@
+package net.spals.oembed4j.client.registry;
+
+import net.spals.oembed4j.model.OEmbedProvider;
+
+import javax.ws.rs.core.HttpHeaders;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link ProviderListSource} backed by a {@link URI}.
+ *
+ * For HTTP(S) URIs, the provider list is requested conditionally
+ * with the {@code ETag} and {@code Last-Modified} values of the last
+ * successful load. A {@code 304 Not Modified} response means the
+ * provider list is unchanged.
+ *
+ * Connecting and each read are bounded by a timeout, so that
+ * a stalled host fails the load rather than hanging it.
+ *
+ * @author tkral
+ */
+final class URIProviderListSource implements ProviderListSource {
+
+    static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30L);
+
+    private final URI uri;
+    private final int timeoutMillis;
+
+    private String lastETag;
+    private String lastModified;
+
+    URIProviderListSource(final URI uri) {
+        this(uri, DEFAULT_TIMEOUT);
+    }
+
+    URIProviderListSource(final URI uri, final Duration timeout) {
+        checkArgument(!timeout.isNegative() && !timeout.isZero(), "Timeout must be positive: %s", timeout);
+        this.uri = uri;
+        this.timeoutMillis = Math.toIntExact(timeout.toMillis());
+    }
+
+    /**
+     * @see ProviderListSource#loadIfModified()
+     */
+    @Override
+    public Optional<List<OEmbedProvider>> loadIfModified() throws IOException {
+        final URLConnection connection = uri.toURL().openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        if (!(connection instanceof HttpURLConnection)) {
+            // Non-HTTP sources (e.g. file: or jar: URIs) are always reloaded
+            try (final InputStream inputStream = connection.getInputStream()) {
+                return Optional.of(DefaultOEmbedRegistry.readProviderList(inputStream));
+            }
+        }
+
+        final HttpURLConnection httpConnection = (HttpURLConnection) connection;
+        try {
+            if (lastETag != null) {
+                httpConnection.setRequestProperty(HttpHeaders.IF_NONE_MATCH, lastETag);
+            }
+            if (lastModified != null) {
+                httpConnection.setRequestProperty(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+            }
+
+            final int responseCode = httpConnection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return Optional.empty();
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response code " + responseCode + " from " + uri);
+            }
+
+            try (final InputStream inputStream = httpConnection.getInputStream()) {
+                final List<OEmbedProvider> providerList = DefaultOEmbedRegistry.readProviderList(inputStream);
+                this.lastETag = httpConnection.getHeaderField(HttpHeaders.ETAG);
+                this.lastModified = httpConnection.getHeaderField(HttpHeaders.LAST_MODIFIED);
+                return Optional.of(providerList);
+            }
+        } finally {
+            httpConnection.disconnect();
+        }
+    }
+
+    /**
+     * @see ProviderListSource#describe()
+     */
+    @Override
+    public String describe() {
+        return uri.toString();
+    }
+}
@@ -20,6 +20,7 @@ import static com.googlecode.catchexception.CatchException.caughtException;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 
 /**
  * Unit tests for {@link OEmbedEndpoint}
@@ -73,13 +74,17 @@ public class OEmbedEndpointTest {
     @DataProvider
     Object[][] schemePatternDerivedProvider() {
         return new Object[][]{
-            {"https://www.example.com/*", ImmutableSet.of("https://www.example.com/(.*)")},
-            {"https://www.example.com/*/*", ImmutableSet.of("https://www.example.com/(.*)/(.*)")},
-            {"https://www.example.com/*/path/*", ImmutableSet.of("https://www.example.com/(.*)/path/(.*)")},
+            {"https://www.example.com/*", ImmutableSet.of("\\Qhttps://www.example.com/\\E(.*)")},
+            {"https://www.example.com/*/*", ImmutableSet.of("\\Qhttps://www.example.com/\\E(.*)\\Q/\\E(.*)")},
+            {
+                "https://www.example.com/*/path/*",
+                ImmutableSet.of("\\Qhttps://www.example.com/\\E(.*)\\Q/path/\\E(.*)")
+            },
             {
                 "http://www.example.com/*",
-                ImmutableSet.of("http://www.example.com/(.*)", "https://www.example.com/(.*)")
+                ImmutableSet.of("\\Qhttp://www.example.com/\\E(.*)", "\\Qhttps://www.example.com/\\E(.*)")
             },
+            {"https://www.example.com/watch?v=*", ImmutableSet.of("\\Qhttps://www.example.com/watch?v=\\E(.*)")},
         };
     }
 
@@ -107,9 +112,9 @@ public class OEmbedEndpointTest {
     @DataProvider
     Object[][] uriDomainDerivedProvider() {
         return new Object[][]{
-            {"https://www.example.com/oembed", "www.example.com"},
-            {"https://www.example.com/oembed.{format}", "www.example.com"},
-            {"https://*.example.com/oembed", "(.*).example.com"},
+            {"https://www.example.com/oembed", "\\Qwww.example.com\\E"},
+            {"https://www.example.com/oembed.{format}", "\\Qwww.example.com\\E"},
+            {"https://*.example.com/oembed", "(.*)\\Q.example.com\\E"},
         };
     }
 
@@ -123,12 +128,98 @@ public class OEmbedEndpointTest {
         assertThat(endpoint.getURIDomainPattern().pattern(), is(expectedURIDomainPattern));
     }
 
+    @Test
+    public void testPatternsQuoteLiterals() {
+        final OEmbedEndpoint endpoint = new OEmbedEndpoint.Builder()
+            .addSchemeTemplates("https://www.example.com/watch?v=*")
+            .setURITemplate("https://*.example.com/oembed").build();
+
+        // Verify that '.' and '?' are literals, just as they are for the matcher
+        assertThat(endpoint.getSchemePatterns().get(0).matcher("https://www.example.com/watch?v=1").matches(),
+            is(true));
+        assertThat(endpoint.getSchemePatterns().get(0).matcher("https://wwwxexample.com/watchv=1").matches(),
+            is(false));
+        assertThat(endpoint.getURIDomainPattern().matcher("www.example.com").matches(), is(true));
+        assertThat(endpoint.getURIDomainPattern().matcher("wwwxexample.com").matches(), is(false));
+        // Verify that the patterns are compiled once
+        assertThat(endpoint.getURIDomainPattern(), sameInstance(endpoint.getURIDomainPattern()));
+    }
+
     @Test
     public void testURIDomainPatternManual() {
         catchException(() -> new OEmbedEndpoint.Builder().setURIDomainPattern(Pattern.compile(".*")));
         assertThat(caughtException(), instanceOf(UnsupportedOperationException.class));
     }
 
+    @Test
+    public void testCompiledURITemplateManual() {
+        final OEmbedEndpoint endpoint = new OEmbedEndpoint.Builder()
+            .setURITemplate("https://www.example.com/oembed").build();
+        catchException(() -> new OEmbedEndpoint.Builder().setCompiledURITemplate(endpoint.getCompiledURITemplate()));
+        assertThat(caughtException(), instanceOf(UnsupportedOperationException.class));
+    }
+
+    @Test
+    public void testMatcherManual() {
+        final OEmbedEndpoint endpoint = new OEmbedEndpoint.Builder()
+            .setURITemplate("https://www.example.com/oembed").build();
+        catchException(() -> new OEmbedEndpoint.Builder().setMatcher(endpoint.getMatcher()));
+        assertThat(caughtException(), instanceOf(UnsupportedOperationException.class));
+    }
+
+    @Test
+    public void testBuildPrecompiled() {
+        final OEmbedEndpoint endpoint = new OEmbedEndpoint.Builder()
+            .addSchemeTemplates("http://www.example.com/*")
+            .setURITemplate("https://www.example.com/oembed").build();
+        final OEmbedEndpoint rebuiltEndpoint = new OEmbedEndpoint.Builder()
+            .addSchemeTemplates("http://www.example.com/*")
+            .setURITemplate("https://www.example.com/oembed")
+            .build(endpoint.getCompiledURITemplate(), endpoint.getMatcher());
+
+        // Verify that the compiled forms are reused rather than derived again
+        assertThat(rebuiltEndpoint.getCompiledURITemplate(), sameInstance(endpoint.getCompiledURITemplate()));
+        assertThat(rebuiltEndpoint.getMatcher(), sameInstance(endpoint.getMatcher()));
+        assertThat(rebuiltEndpoint.matchesResourceURI(URI.create("https://www.example.com/1")), is(true));
+    }
+
+    @DataProvider
+    Object[][] buildPrecompiledMismatchProvider() {
+        final OEmbedEndpoint endpoint = new OEmbedEndpoint.Builder()
+            .addSchemeTemplates("http://www.example.com/*")
+            .setURITemplate("https://www.example.com/oembed").build();
+        return new Object[][]{
+            // Case: Different URI template
+            {
+                new OEmbedEndpoint.Builder()
+                    .addSchemeTemplates("http://www.example.com/*")
+                    .setURITemplate("https://www.example.com/other"),
+                endpoint
+            },
+            // Case: Different default format
+            {
+                new OEmbedEndpoint.Builder()
+                    .addSupportedFormats(OEmbedFormat.xml)
+                    .addSchemeTemplates("http://www.example.com/*")
+                    .setURITemplate("https://www.example.com/oembed"),
+                endpoint
+            },
+            // Case: Different scheme templates
+            {
+                new OEmbedEndpoint.Builder()
+                    .addSchemeTemplates("http://www.example.com/photos/*")
+                    .setURITemplate("https://www.example.com/oembed"),
+                endpoint
+            },
+        };
+    }
+
+    @Test(dataProvider = "buildPrecompiledMismatchProvider")
+    public void testBuildPrecompiledMismatch(final OEmbedEndpoint.Builder builder, final OEmbedEndpoint endpoint) {
+        catchException(() -> builder.build(endpoint.getCompiledURITemplate(), endpoint.getMatcher()));
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
     @DataProvider
     Object[][] domainMatchesResourceURIProvider() {
         return new Object[][]{
@@ -147,6 +238,7 @@ public class OEmbedEndpointTest {
     ) {
         final OEmbedEndpoint endpoint = new OEmbedEndpoint.Builder().setURITemplate(uriTemplate).build();
         assertThat(endpoint.matchesResourceURI(resourceURI), is(expectedResult));
+        assertThat(endpoint.matchesResourceURI(new StringBuilder(resourceURI.toString())), is(expectedResult));
     }
 
     @DataProvider
@@ -186,5 +278,6 @@ public class OEmbedEndpointTest {
         final OEmbedEndpoint endpoint = new OEmbedEndpoint.Builder().setURITemplate("https://www.example.com/oembed")
             .addAllSchemeTemplates(schemeTemplates).build();
         assertThat(endpoint.matchesResourceURI(resourceURI), is(expectedResult));
+        assertThat(endpoint.matchesResourceURI(new StringBuilder(resourceURI.toString())), is(expectedResult));
     }
 }
@@ -0,0 +1,145 @@
+package net.spals.oembed4j.model;
+
+import com.google.common.base.Splitter;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit tests for {@link OEmbedGlob}
+ *
+ * @author tkral
+ */
+public class OEmbedGlobTest {
+
+    @DataProvider
+    Object[][] matchesProvider() {
+        return new Object[][]{
+            {"https://www.example.com/", "https://www.example.com/", true},
+            {"https://www.example.com/", "https://www.example.com/1", false},
+            {"https://www.example.com/*", "https://www.example.com/", true},
+            {"https://www.example.com/*", "https://www.example.com/1/2", true},
+            {"https://www.example.com/*", "http://www.example.com/1", false},
+            {"https://*.example.com/*", "https://www.example.com/1", true},
+            {"https://*.example.com/*", "https://www.example.org/1", false},
+            {"https://vimeo.com/album/*/video/*", "https://vimeo.com/album/1/video/2", true},
+            {"https://vimeo.com/album/*/video/*", "https://vimeo.com/album/1/deadbeef/2", false},
+            {"https://vimeo.com/channels/*/*", "https://vimeo.com/channels/1/", true},
+            {"https://vimeo.com/channels/*/*", "https://vimeo.com/channels/1", false},
+            // Segments may not overlap the anchored ends
+            {"ab*ba", "aba", false},
+            {"ab*ba", "abba", true},
+            {"a*aa*a", "aaaa", true},
+            {"a*aa*a", "aaa", false},
+            // Regex metacharacters are literal
+            {"https://www.example.com/watch?v=*", "https://www.example.com/watch?v=1", true},
+            {"https://www.example.com/watch?v=*", "https://www.example.com/watcv=1", false},
+            {"https://www.example.com/*", "https://wwwXexample.com/1", false},
+            {"**", "", true},
+            {"", "", true},
+            {"", "a", false},
+        };
+    }
+
+    @Test(dataProvider = "matchesProvider")
+    public void testMatches(final String template, final String input, final boolean expectedResult) {
+        assertThat(OEmbedGlob.compile(template).matches(input), is(expectedResult));
+    }
+
+    @Test(dataProvider = "matchesProvider")
+    public void testRestore(final String template, final String input, final boolean expectedResult) {
+        final OEmbedGlob compiledGlob = OEmbedGlob.compile(template);
+        final OEmbedGlob restoredGlob = OEmbedGlob.restore(template, compiledGlob.getFailureTables());
+        assertThat(restoredGlob.matches(input), is(expectedResult));
+    }
+
+    @DataProvider
+    Object[][] restoreInvalidProvider() {
+        return new Object[][]{
+            // Case: Missing a table for the second segment
+            {"aa*bb", new int[][]{{0, 1}}},
+            // Case: Table doesn't match its segment length
+            {"aa*bb", new int[][]{{0, 1}, {0}}},
+            // Case: Table entry isn't a proper prefix length
+            {"aa*bb", new int[][]{{0, 2}, {0, 0}}},
+            {"aa*bb", new int[][]{{-1, 1}, {0, 0}}},
+        };
+    }
+
+    @Test(dataProvider = "restoreInvalidProvider")
+    public void testRestoreInvalid(final String template, final int[][] failureTables) {
+        catchException(() -> OEmbedGlob.restore(template, failureTables));
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void testMatchesRegion() {
+        final OEmbedGlob glob = OEmbedGlob.compile("*.example.com");
+        assertThat(glob.matches("https://www.example.com/1", 8, 23), is(true));
+        assertThat(glob.matches("https://www.example.com/1", 8, 24), is(false));
+    }
+
+    @Test
+    public void testMatchesInvalidRegion() {
+        catchException(() -> OEmbedGlob.compile("*").matches("abc", 2, 4));
+        assertThat(caughtException(), instanceOf(IndexOutOfBoundsException.class));
+    }
+
+    @Test
+    public void testMatchesRegexDifferential() {
+        // Compare against the regex semantics of a template whose literal characters are quoted
+        final Random random = new Random(42L);
+        for (int i = 0; i < 20_000; i++) {
+            final String template = randomString(random, "ab/.?*", 8);
+            final String input = randomString(random, "ab/.?", 12);
+
+            final boolean regexResult = toRegex(template).matcher(input).matches();
+            assertThat("Glob " + template + " on input " + input,
+                OEmbedGlob.compile(template).matches(input), is(regexResult));
+            // Verify that the glob's own pattern is that regex
+            assertThat(OEmbedGlob.compile(template).toPattern().pattern(), is(toRegex(template).pattern()));
+        }
+    }
+
+    @Test(timeOut = 5000L)
+    public void testMatchesLinearTime() {
+        // Classic catastrophic backtracking input for (.*)a(.*)a...(.*)b
+        final StringBuilder template = new StringBuilder("https://www.flickr.com/");
+        for (int i = 0; i < 20; i++) {
+            template.append("*a");
+        }
+        template.append("*b");
+
+        final StringBuilder input = new StringBuilder("https://www.flickr.com/");
+        for (int i = 0; i < 100_000; i++) {
+            input.append('a');
+        }
+
+        assertThat(OEmbedGlob.compile(template.toString()).matches(input), is(false));
+    }
+
+    private static Pattern toRegex(final String template) {
+        return Pattern.compile(StreamSupport.stream(Splitter.on('*').split(template).spliterator(), false)
+            .map(segment -> segment.isEmpty() ? "" : Pattern.quote(segment))
+            .collect(Collectors.joining("(.*)")));
+    }
+
+    private static String randomString(final Random random, final String alphabet, final int maxLength) {
+        final StringBuilder sb = new StringBuilder();
+        final int length = random.nextInt(maxLength + 1);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -5,7 +5,10 @@ import org.testng.annotations.Test;
 
 import java.net.URI;
 
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 
 /**
@@ -74,4 +77,31 @@ public class OEmbedRequestTest {
                     "http://www.youtube.com/oembed?format=json&maxheight=1&maxwidth=2&url=https%3A%2F%2Fwww.example.com%2F"))
         );
     }
+
+    @Test
+    public void testToURINoMatch() {
+        final OEmbedEndpoint endpoint = new OEmbedEndpoint.Builder()
+            .addSchemeTemplates("https://www.example.com/*")
+            .setURITemplate("http://www.youtube.com/oembed")
+            .build();
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI(URI.create("https://www.other.com/"))
+            .build();
+
+        catchException(() -> request.toURI(endpoint));
+        assertThat(caughtException(), instanceOf(IllegalArgumentException.class));
+    }
+
+    @Test(dataProvider = "toURIProvider")
+    public void testToMatchedURI(final String uriTemplate, final URI expectedURI) {
+        final OEmbedEndpoint endpoint = new OEmbedEndpoint.Builder()
+            .addSchemeTemplates("https://www.example.com/*")
+            .setURITemplate(uriTemplate)
+            .build();
+        final OEmbedRequest request = new OEmbedRequest.Builder()
+            .setResourceURI(URI.create("https://www.example.com/"))
+            .build();
+
+        assertThat(request.toMatchedURI(endpoint), is(expectedURI));
+    }
 }
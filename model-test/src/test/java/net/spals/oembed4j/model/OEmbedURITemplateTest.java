@@ -0,0 +1,143 @@
+package net.spals.oembed4j.model;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.UriBuilder;
+import java.net.URI;
+import java.util.Optional;
+import java.util.Random;
+
+import static com.googlecode.catchexception.CatchException.catchException;
+import static com.googlecode.catchexception.CatchException.caughtException;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit tests for {@link OEmbedURITemplate}
+ *
+ * @author tkral
+ */
+public class OEmbedURITemplateTest {
+
+    @DataProvider
+    Object[][] expandProvider() {
+        return new Object[][]{
+            {"https://vimeo.com/api/oembed.{format}"},
+            {"http://www.youtube.com/oembed"},
+            {"https://www.example.com/oembed?format={format}"},
+            {"https://www.example.com/oembed?format=xml"},
+            {"https://www.example.com/oembed?key=abc"},
+            {"https://www.example.com/oembed?"},
+            {"https://www.example.com/oembed#fragment"},
+            {"https://www.example.com/oembed?key=abc#fragment"},
+            {"https://*.example.com/oembed"},
+            {"https://www.example.com/o%20embed"},
+            {"https://www.example.com/o embed"},
+        };
+    }
+
+    @Test(dataProvider = "expandProvider")
+    public void testExpand(final String uriTemplate) {
+        // Expanding must produce exactly what UriBuilder would
+        final Random random = new Random(42L);
+        for (int i = 0; i < 500; i++) {
+            final URI resourceURI = randomResourceURI(random);
+            final Optional<Integer> maxHeight = random.nextBoolean() ? Optional.of(random.nextInt(2000)) : Optional.empty();
+            final Optional<Integer> maxWidth = random.nextBoolean() ? Optional.of(random.nextInt(2000)) : Optional.empty();
+
+            assertThat("Resource URI " + resourceURI,
+                OEmbedURITemplate.compile(uriTemplate, OEmbedFormat.json).expand(resourceURI, maxHeight, maxWidth),
+                is(expandWithUriBuilder(uriTemplate, OEmbedFormat.json, resourceURI, maxHeight, maxWidth)));
+        }
+    }
+
+    @DataProvider
+    Object[][] expandEncodingProvider() {
+        return new Object[][]{
+            {"https://www.example.com/", "https%3A%2F%2Fwww.example.com%2F"},
+            {"https://www.example.com/a-b.c_d~e", "https%3A%2F%2Fwww.example.com%2Fa-b.c_d~e"},
+            {"https://www.example.com/?a=b&c=d+e", "https%3A%2F%2Fwww.example.com%2F%3Fa%3Db%26c%3Dd%2Be"},
+            // Case: Percent-encoded octets are kept as-is
+            {"https://www.example.com/a%20b", "https%3A%2F%2Fwww.example.com%2Fa%20b"},
+            // Case: Non-ASCII characters are encoded as UTF-8
+            {"https://www.example.com/caf\u00e9", "https%3A%2F%2Fwww.example.com%2Fcaf%C3%A9"},
+            {"https://www.example.com/\ud83d\ude00", "https%3A%2F%2Fwww.example.com%2F%F0%9F%98%80"},
+        };
+    }
+
+    @Test(dataProvider = "expandEncodingProvider")
+    public void testExpandEncoding(final String resourceURI, final String expectedEncodedResourceURI) {
+        final URI uri = OEmbedURITemplate.compile("http://www.youtube.com/oembed", OEmbedFormat.json)
+            .expand(URI.create(resourceURI), Optional.empty(), Optional.empty());
+        assertThat(uri.toString(), is("http://www.youtube.com/oembed?format=json&url=" + expectedEncodedResourceURI));
+    }
+
+    @Test(dataProvider = "expandProvider")
+    public void testRestore(final String uriTemplate) {
+        final OEmbedURITemplate compiledTemplate = OEmbedURITemplate.compile(uriTemplate, OEmbedFormat.json);
+        final OEmbedURITemplate restoredTemplate = OEmbedURITemplate.restore(uriTemplate, OEmbedFormat.json,
+            compiledTemplate.getPrefix(), compiledTemplate.getSuffix());
+
+        final URI resourceURI = URI.create("https://www.example.com/resource?id=1");
+        assertThat(restoredTemplate.expand(resourceURI, Optional.of(300), Optional.empty()),
+            is(compiledTemplate.expand(resourceURI, Optional.of(300), Optional.empty())));
+    }
+
+    @DataProvider
+    Object[][] restoreInvalidProvider() {
+        return new Object[][]{
+            // Case: Prefix without a suffix
+            {Optional.of("https://www.example.com/oembed?"), Optional.empty()},
+            // Case: Suffix without a prefix
+            {Optional.empty(), Optional.of("")},
+            // Case: Prefix doesn't end with a separator
+            {Optional.of("https://www.example.com/oembed"), Optional.of("")},
+        };
+    }
+
+    @Test(dataProvider = "restoreInvalidProvider")
+    public void testRestoreInvalid(final Optional<String> prefix, final Optional<String> suffix) {
+        catchException(() -> OEmbedURITemplate.restore("https://www.example.com/oembed", OEmbedFormat.json,
+            prefix, suffix));
+        assertThat(caughtException(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void testExpandUnbuildableTemplate() {
+        // UriBuilder rejects the template, so expanding fails as it always has
+        final OEmbedURITemplate uriTemplate = OEmbedURITemplate.compile("https://www.example.com/{other}", OEmbedFormat.json);
+        catchException(() -> uriTemplate.expand(URI.create("https://www.example.com/"), Optional.empty(), Optional.empty()));
+        assertThat(caughtException(), instanceOf(IllegalArgumentException.class));
+    }
+
+    private static URI expandWithUriBuilder(
+        final String uriTemplate,
+        final OEmbedFormat format,
+        final URI resourceURI,
+        final Optional<Integer> maxHeight,
+        final Optional<Integer> maxWidth
+    ) {
+        final UriBuilder uriBuilder = UriBuilder.fromUri(uriTemplate);
+        if (uriTemplate.contains("format")) {
+            uriBuilder.resolveTemplate("format", format);
+        } else {
+            uriBuilder.queryParam("format", format);
+        }
+        maxHeight.ifPresent(height -> uriBuilder.queryParam("maxheight", height));
+        maxWidth.ifPresent(width -> uriBuilder.queryParam("maxwidth", width));
+        return uriBuilder.queryParam("url", resourceURI).build();
+    }
+
+    private static URI randomResourceURI(final Random random) {
+        final String[] tokens = {"a", "Z", "0", "-", ".", "_", "~", "!", "$", "&", "'", "(", ")", "*", "+", ",",
+            ";", "=", ":", "@", "/", "?", "%20", "%4a", "\u00e9", "\u4e2d", "\ud83d\ude00"};
+        final StringBuilder sb = new StringBuilder("https://www.example.com/");
+        final int length = random.nextInt(30);
+        for (int i = 0; i < length; i++) {
+            sb.append(tokens[random.nextInt(tokens.length)]);
+        }
+        return URI.create(sb.toString());
+    }
+}
@@ -10,6 +10,7 @@ import org.inferred.freebuilder.FreeBuilder;
 import java.net.URI;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -40,32 +41,49 @@ public interface OEmbedEndpoint {
     @JsonProperty("schemes")
     List<String> getSchemeTemplates();
 
-    // Derived field for pattern matching convenience
+    // Derived from the scheme globs of the matcher, for pattern matching convenience
     @JsonIgnore
-    List<Pattern> getSchemePatterns();
+    default List<Pattern> getSchemePatterns() {
+        return getMatcher().getSchemeGlobs().stream().map(OEmbedGlob::toPattern).collect(Collectors.toList());
+    }
 
     @JsonProperty("url")
     String getURITemplate();
 
-    // Derived field for default pattern matching
+    // Derived field which builds request URIs
+    // from the URI template and default format
+    @JsonIgnore
+    OEmbedURITemplate getCompiledURITemplate();
+
+    // Derived from the URI domain glob of the matcher, for default pattern matching
+    @JsonIgnore
+    default Pattern getURIDomainPattern() {
+        return getMatcher().getURIDomainGlob().toPattern();
+    }
+
+    // Derived field which matches resource URIs against
+    // the scheme and domain templates without allocating
     @JsonIgnore
-    Pattern getURIDomainPattern();
+    OEmbedEndpointMatcher getMatcher();
 
     @JsonIgnore
     default boolean matchesResourceURI(final URI resourceURI) {
-        // If there are no scheme patterns to check, then
-        // fallback to comparing the URI domains
-        if (getSchemePatterns().isEmpty()) {
-            return getURIDomainPattern().matcher(resourceURI.getHost()).matches();
-        }
+        return getMatcher().matches(resourceURI.toString());
+    }
 
-        return getSchemePatterns().stream()
-            .anyMatch(pattern -> pattern.matcher(resourceURI.toString()).matches());
+    /**
+     * Same as {@link #matchesResourceURI(URI)}, but works directly on the string
+     * form of a resource URI. Repeated calls do not allocate.
+     */
+    @JsonIgnore
+    default boolean matchesResourceURI(final CharSequence resourceURI) {
+        return getMatcher().matches(resourceURI);
     }
 
     class Builder extends OEmbedEndpoint_Builder {
 
         private static final OEmbedFormat DEFAULT_FORMAT = OEmbedFormat.json;
+        private static final Pattern HTTP_SCHEME_PATTERN = Pattern.compile("http:", Pattern.LITERAL);
 
         public Builder() {
             setDiscoveryEnabled(false);
@@ -76,18 +94,46 @@ public interface OEmbedEndpoint {
             throw new UnsupportedOperationException("Default format is a derived field and cannot be set manually");
         }
 
-        @Override
+        // Scheme and URI domain patterns are no longer builder properties,
+        // but setting them still fails rather than being silently ignored
         public Builder addSchemePatterns(final Pattern schemePattern) {
             throw new UnsupportedOperationException("Scheme patterns are derived fields and cannot be set manually");
         }
 
-        @Override
         public Builder setURIDomainPattern(final Pattern uriDomainPattern) {
             throw new UnsupportedOperationException("URI domain is a derived field and cannot be set manually");
         }
 
+        @Override
+        public Builder setCompiledURITemplate(final OEmbedURITemplate compiledURITemplate) {
+            throw new UnsupportedOperationException("Compiled URI template is a derived field and cannot be set manually");
+        }
+
+        @Override
+        public Builder setMatcher(final OEmbedEndpointMatcher matcher) {
+            throw new UnsupportedOperationException("Matcher is a derived field and cannot be set manually");
+        }
+
         @Override
         public OEmbedEndpoint build() {
+            return build(Optional.empty(), Optional.empty());
+        }
+
+        /**
+         * Same as {@link #build()}, but reuses the compiled URI template and matcher
+         * of an identical endpoint, such as one restored from a snapshot, rather than
+         * deriving them again.
+         *
+         * @throws IllegalStateException if either was not derived from this endpoint's templates
+         */
+        public OEmbedEndpoint build(final OEmbedURITemplate compiledURITemplate, final OEmbedEndpointMatcher matcher) {
+            return build(Optional.of(compiledURITemplate), Optional.of(matcher));
+        }
+
+        private OEmbedEndpoint build(
+            final Optional<OEmbedURITemplate> compiledURITemplate,
+            final Optional<OEmbedEndpointMatcher> matcher
+        ) {
             // By default, support all formats
             if (getSupportedFormats().isEmpty()) {
                 super.addAllSupportedFormats(EnumSet.allOf(OEmbedFormat.class));
@@ -100,28 +146,36 @@ public interface OEmbedEndpoint {
                 .filter(supportedFormat -> supportedFormat == DEFAULT_FORMAT).findFirst()
                 .orElseGet(() -> Iterables.getFirst(getSupportedFormats(), DEFAULT_FORMAT)));
 
-            // Scheme patterns are 100% derived from the scheme templates.
-            // We will completely ignore any scheme patterns set manually in the builder.
-            getSchemeTemplates().stream()
-                .map(schemeTemplate -> schemeTemplate.replaceAll("\\*", "(.*)"))
-                // Sigh. Some providers list only http:// schemes when
-                // their endpoints will also accept https:// so a straight
-                // scheme match will miss these cases. So we'll err on the
-                // permissive side, by checking for https:// in those cases
-                // as well. Worst case is we send the request and it's rejected.
-                .flatMap(schemePatternStr ->
-                    ImmutableSet.of(schemePatternStr, schemePatternStr.replaceFirst("http:", "https:")).stream())
-                .map(Pattern::compile)
-                .collect(Collectors.toList())
-                .forEach(super::addSchemePatterns);
-
-            // URI domain pattern is derived from the URI template
+            // Sigh. Some providers list only http:// schemes when
+            // their endpoints will also accept https:// so a straight
+            // scheme match will miss these cases. So we'll err on the
+            // permissive side, by checking for https:// in those cases
+            // as well. Worst case is we send the request and it's rejected.
+            final List<String> widenedSchemeTemplates = getSchemeTemplates().stream()
+                .flatMap(schemeTemplate -> ImmutableSet.of(schemeTemplate,
+                    HTTP_SCHEME_PATTERN.matcher(schemeTemplate).replaceFirst("https:")).stream())
+                .collect(Collectors.toList());
+
+            // URI domain is derived from the URI template
             checkNotNull(getURITemplate(), "A non-empty URI template is required for an oEmbed endpoint");
             checkState(!getURITemplate().isEmpty(), "A non-empty URI template is required for an oEmbed endpoint");
             final String[] parsedURITemplate = getURITemplate().split("://");
             final String uriTemplateWithoutSchema = parsedURITemplate[parsedURITemplate.length - 1];
             final String uriTemplateHost = uriTemplateWithoutSchema.split("/")[0];
-            super.setURIDomainPattern(Pattern.compile(uriTemplateHost.replaceAll("\\*", "(.*)")));
+
+            compiledURITemplate.ifPresent(uriTemplate -> checkState(
+                uriTemplate.getURITemplate().equals(getURITemplate()) && uriTemplate.getFormat() == getDefaultFormat(),
+                "Compiled URI template %s was not derived from this endpoint", uriTemplate));
+            super.setCompiledURITemplate(compiledURITemplate
+                .orElseGet(() -> OEmbedURITemplate.compile(getURITemplate(), getDefaultFormat())));
+
+            // Matching uses the templates directly, and the scheme and URI domain patterns are derived from it
+            matcher.ifPresent(endpointMatcher -> checkState(
+                endpointMatcher.getSchemeGlobs().stream().map(OEmbedGlob::getTemplate).collect(Collectors.toList())
+                    .equals(widenedSchemeTemplates)
+                    && endpointMatcher.getURIDomainGlob().getTemplate().equals(uriTemplateHost),
+                "Matcher %s was not derived from this endpoint", endpointMatcher));
+            super.setMatcher(matcher.orElseGet(() -> new OEmbedEndpointMatcher(widenedSchemeTemplates, uriTemplateHost)));
 
             return super.build();
         }
@@ -0,0 +1,130 @@
+package net.spals.oembed4j.model;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Matches resource URIs against the scheme and domain
+ * templates of a single {@link OEmbedEndpoint}.
+ *
+ * Matching works directly on a {@link CharSequence} with
+ * linear-time {@link OEmbedGlob}s, so it does not allocate
+ * and never backtracks. The host of a resource URI is matched
+ * in place as a region of the full URI.
+ *
+ * @author tkral
+ */
+public final class OEmbedEndpointMatcher {
+
+    private final OEmbedGlob[] schemeGlobs;
+    private final OEmbedGlob uriDomainGlob;
+
+    private OEmbedEndpointMatcher(final OEmbedGlob[] schemeGlobs, final OEmbedGlob uriDomainGlob) {
+        this.schemeGlobs = schemeGlobs;
+        this.uriDomainGlob = uriDomainGlob;
+    }
+
+    // The scheme templates must already be widened from http to https by the endpoint
+    OEmbedEndpointMatcher(final List<String> schemeTemplates, final String uriDomainTemplate) {
+        this(schemeTemplates.stream().map(OEmbedGlob::compile).toArray(OEmbedGlob[]::new),
+            OEmbedGlob.compile(uriDomainTemplate));
+    }
+
+    /**
+     * Restores a matcher from globs previously compiled for an endpoint,
+     * without compiling them again.
+     */
+    public static OEmbedEndpointMatcher restore(final List<OEmbedGlob> schemeGlobs, final OEmbedGlob uriDomainGlob) {
+        checkNotNull(uriDomainGlob, "A URI domain glob is required");
+        return new OEmbedEndpointMatcher(schemeGlobs.toArray(new OEmbedGlob[schemeGlobs.size()]), uriDomainGlob);
+    }
+
+    public List<OEmbedGlob> getSchemeGlobs() {
+        return ImmutableList.copyOf(schemeGlobs);
+    }
+
+    public OEmbedGlob getURIDomainGlob() {
+        return uriDomainGlob;
+    }
+
+    /**
+     * Whether the given resource URI matches the endpoint.
+     *
+     * @param resourceURI The string form of a resource URI
+     * @return {@code true} if any scheme template matches the resource URI or,
+     *         for endpoints without scheme templates, if the URI domain
+     *         template matches the host of the resource URI.
+     */
+    public boolean matches(final CharSequence resourceURI) {
+        // If there are no scheme templates to check, then
+        // fallback to comparing the URI domains
+        if (schemeGlobs.length == 0) {
+            return matchesHost(resourceURI);
+        }
+
+        for (final OEmbedGlob schemeGlob : schemeGlobs) {
+            if (schemeGlob.matches(resourceURI)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesHost(final CharSequence resourceURI) {
+        final int hostStart = hostStart(resourceURI);
+        if (hostStart < 0) {
+            return false;
+        }
+
+        final int hostEnd = hostEnd(resourceURI, hostStart);
+        return uriDomainGlob.matches(resourceURI, hostStart, hostEnd);
+    }
+
+    // The host begins after the "://" separator and any user info
+    private static int hostStart(final CharSequence resourceURI) {
+        int authorityStart = -1;
+        for (int i = 0; i + 2 < resourceURI.length(); i++) {
+            final char c = resourceURI.charAt(i);
+            if (c == ':' && resourceURI.charAt(i + 1) == '/' && resourceURI.charAt(i + 2) == '/') {
+                authorityStart = i + 3;
+                break;
+            }
+            if (c == '/' || c == '?' || c == '#') {
+                return -1;
+            }
+        }
+        if (authorityStart < 0) {
+            return -1;
+        }
+
+        int hostStart = authorityStart;
+        for (int i = authorityStart; i < resourceURI.length(); i++) {
+            final char c = resourceURI.charAt(i);
+            if (c == '@') {
+                hostStart = i + 1;
+            } else if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+        }
+        return hostStart;
+    }
+
+    // The host ends at the port, path, query or fragment
+    private static int hostEnd(final CharSequence resourceURI, final int hostStart) {
+        int i = hostStart;
+        while (i < resourceURI.length() && ":/?#".indexOf(resourceURI.charAt(i)) < 0) {
+            i++;
+        }
+        return i;
+    }
+
+    @Override
+    public String toString() {
+        return "OEmbedEndpointMatcher{schemeGlobs=" + Arrays.toString(schemeGlobs)
+            + ", URIDomainGlob=" + uriDomainGlob + "}";
+    }
+}
@@ -0,0 +1,242 @@
+package net.spals.oembed4j.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A compiled oEmbed scheme template.
+ *
+ * Each {@code *} in a template matches any run of characters, including
+ * an empty one. Every other character is matched literally. The template
+ * is split into the literal segments between its wildcards: the first
+ * segment is anchored at the start of the input, the last at the end, and
+ * the segments in between are found left to right with precomputed
+ * Knuth-Morris-Pratt tables. Taking the leftmost occurrence of each segment
+ * is always safe, so matching never backtracks and runs in time linear in
+ * the length of the input.
+ *
+ * @author tkral
+ */
+public final class OEmbedGlob {
+
+    private static final char WILDCARD = '*';
+
+    private final String template;
+    // Literal segments between wildcards. Only a template
+    // without any wildcard has a single segment.
+    private final String[] segments;
+    private final int[][] failureTables;
+    private final int minLength;
+    // Compiled on first use, since matching never needs it
+    private volatile Pattern pattern;
+
+    private OEmbedGlob(final String template, final String[] segments, final int[][] failureTables) {
+        this.template = template;
+        this.segments = segments;
+        this.failureTables = failureTables;
+
+        int minLength = 0;
+        for (final String segment : segments) {
+            minLength += segment.length();
+        }
+        this.minLength = minLength;
+    }
+
+    public static OEmbedGlob compile(final String template) {
+        checkNotNull(template, "A glob template is required");
+
+        final String[] segments = segments(template);
+        final int[][] failureTables = new int[segments.length][];
+        for (int i = 0; i < segments.length; i++) {
+            failureTables[i] = failureTable(segments[i]);
+        }
+        return new OEmbedGlob(template, segments, failureTables);
+    }
+
+    /**
+     * Restores a glob previously compiled from the given template, from its
+     * {@link #getFailureTables() failure tables}, without computing them again.
+     */
+    public static OEmbedGlob restore(final String template, final int[][] failureTables) {
+        checkNotNull(template, "A glob template is required");
+
+        final String[] segments = segments(template);
+        checkState(failureTables.length == segments.length, "A glob needs one failure table per segment");
+        final int[][] restoredTables = new int[segments.length][];
+        for (int i = 0; i < segments.length; i++) {
+            final int[] failureTable = failureTables[i];
+            checkState(failureTable.length == segments[i].length(), "A glob failure table must match its segment");
+            // Each entry is the length of a proper prefix, so matching can never run off its segment
+            for (int j = 0; j < failureTable.length; j++) {
+                checkState(failureTable[j] >= 0 && failureTable[j] <= j, "A glob failure table is invalid");
+            }
+            restoredTables[i] = failureTable.clone();
+        }
+        return new OEmbedGlob(template, segments, restoredTables);
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return The Knuth-Morris-Pratt failure table of each literal segment of the template
+     */
+    public int[][] getFailureTables() {
+        final int[][] failureTables = new int[this.failureTables.length][];
+        for (int i = 0; i < failureTables.length; i++) {
+            failureTables[i] = this.failureTables[i].clone();
+        }
+        return failureTables;
+    }
+
+    /**
+     * @return A regular expression which matches exactly what this glob matches,
+     *         with each wildcard as a {@code (.*)} group and every other character
+     *         quoted as a literal
+     */
+    public Pattern toPattern() {
+        Pattern pattern = this.pattern;
+        if (pattern == null) {
+            final StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < segments.length; i++) {
+                if (i > 0) {
+                    regex.append("(.*)");
+                }
+                if (!segments[i].isEmpty()) {
+                    regex.append(Pattern.quote(segments[i]));
+                }
+            }
+            pattern = Pattern.compile(regex.toString());
+            this.pattern = pattern;
+        }
+        return pattern;
+    }
+
+    /**
+     * Whether the entire input matches this glob.
+     */
+    public boolean matches(final CharSequence input) {
+        return matches(input, 0, input.length());
+    }
+
+    /**
+     * Whether the region [start, end) of the input matches this glob.
+     */
+    public boolean matches(final CharSequence input, final int start, final int end) {
+        checkPositionIndexes(start, end, input.length());
+        if (end - start < minLength) {
+            return false;
+        }
+
+        final String firstSegment = segments[0];
+        if (segments.length == 1) {
+            return end - start == firstSegment.length() && regionEquals(input, start, firstSegment);
+        }
+
+        final String lastSegment = segments[segments.length - 1];
+        if (!regionEquals(input, start, firstSegment)
+            || !regionEquals(input, end - lastSegment.length(), lastSegment)) {
+            return false;
+        }
+
+        // Middle segments must appear in order, without overlapping the anchored ends
+        int position = start + firstSegment.length();
+        final int middleEnd = end - lastSegment.length();
+        for (int i = 1; i < segments.length - 1; i++) {
+            if (segments[i].isEmpty()) {
+                continue;
+            }
+            final int segmentEnd = indexAfter(input, position, middleEnd, segments[i], failureTables[i]);
+            if (segmentEnd < 0) {
+                return false;
+            }
+            position = segmentEnd;
+        }
+        return true;
+    }
+
+    private static String[] segments(final String template) {
+        final List<String> segments = new ArrayList<>();
+        int segmentStart = 0;
+        for (int i = 0; i < template.length(); i++) {
+            if (template.charAt(i) == WILDCARD) {
+                segments.add(template.substring(segmentStart, i));
+                segmentStart = i + 1;
+            }
+        }
+        segments.add(template.substring(segmentStart));
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    private static boolean regionEquals(final CharSequence input, final int start, final String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            if (input.charAt(start + i) != segment.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns the index just past the leftmost occurrence of the
+    // segment within [start, end) of the input, or -1
+    private static int indexAfter(
+        final CharSequence input,
+        final int start,
+        final int end,
+        final String segment,
+        final int[] failureTable
+    ) {
+        int matched = 0;
+        for (int i = start; i < end; i++) {
+            final char c = input.charAt(i);
+            while (matched > 0 && segment.charAt(matched) != c) {
+                matched = failureTable[matched - 1];
+            }
+            if (segment.charAt(matched) == c) {
+                matched++;
+            }
+            if (matched == segment.length()) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    // failureTable[i] is the length of the longest proper
+    // prefix of segment[0, i] which is also a suffix of it
+    private static int[] failureTable(final String segment) {
+        final int[] failureTable = new int[segment.length()];
+        int matched = 0;
+        for (int i = 1; i < segment.length(); i++) {
+            while (matched > 0 && segment.charAt(matched) != segment.charAt(i)) {
+                matched = failureTable[matched - 1];
+            }
+            if (segment.charAt(matched) == segment.charAt(i)) {
+                matched++;
+            }
+            failureTable[i] = matched;
+        }
+        return failureTable;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof OEmbedGlob && template.equals(((OEmbedGlob) obj).template);
+    }
+
+    @Override
+    public int hashCode() {
+        return template.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
@@ -2,7 +2,6 @@ package net.spals.oembed4j.model;
 
 import org.inferred.freebuilder.FreeBuilder;
 
-import javax.ws.rs.core.UriBuilder;
 import java.net.URI;
 import java.util.Optional;
 
@@ -29,17 +28,16 @@ public interface OEmbedRequest {
             endpoint.getURITemplate(), getResourceURI()
         );
 
-        final UriBuilder uriBuilder = UriBuilder.fromUri(endpoint.getURITemplate());
-        if (endpoint.getURITemplate().contains("format")) {
-            uriBuilder.resolveTemplate("format", endpoint.getDefaultFormat());
-        } else {
-            uriBuilder.queryParam("format", endpoint.getDefaultFormat());
-        }
-
-        getMaxHeight().ifPresent(maxHeight -> uriBuilder.queryParam("maxheight", maxHeight));
-        getMaxWidth().ifPresent(maxWidth -> uriBuilder.queryParam("maxwidth", maxWidth));
+        return toMatchedURI(endpoint);
+    }
 
-        return uriBuilder.queryParam("url", getResourceURI()).build();
+    /**
+     * Same as {@link #toURI(OEmbedEndpoint)}, but skips matching the resource URI
+     * against the endpoint. Use this only for an endpoint which is already known
+     * to match, such as one returned from an oEmbed registry lookup.
+     */
+    default URI toMatchedURI(final OEmbedEndpoint endpoint) {
+        return endpoint.getCompiledURITemplate().expand(getResourceURI(), getMaxHeight(), getMaxWidth());
     }
 
     class Builder extends OEmbedRequest_Builder {
@@ -0,0 +1,230 @@
+package net.spals.oembed4j.model;
+
+import javax.ws.rs.core.UriBuilder;
+import java.net.URI;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A precompiled oEmbed endpoint URI template.
+ *
+ * The template is resolved once, with the endpoint's default format
+ * already substituted, into the fixed text which precedes and follows
+ * the request parameters. Expanding it for a request is then a single
+ * string build which percent-encodes the resource URI.
+ *
+ * Expansion produces exactly the same URI as building the template with
+ * a JAX-RS {@link UriBuilder}. Templates which {@link UriBuilder} cannot
+ * build are not precompiled, and every expansion falls back to
+ * {@link UriBuilder} so that it fails the same way.
+ *
+ * @author tkral
+ */
+public final class OEmbedURITemplate {
+
+    // Stands in for the resource URI while the template is resolved.
+    // It is made only of characters which never need encoding.
+    private static final String RESOURCE_URI_PLACEHOLDER = "oembed4j-resource-uri";
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final String uriTemplate;
+    private final OEmbedFormat format;
+
+    // Everything up to the first request parameter, including its '?' or '&'
+    // separator, and everything after the last one. Both are null when the
+    // template could not be precompiled.
+    private final String prefix;
+    private final String suffix;
+
+    private OEmbedURITemplate(
+        final String uriTemplate,
+        final OEmbedFormat format,
+        final String prefix,
+        final String suffix
+    ) {
+        this.uriTemplate = uriTemplate;
+        this.format = format;
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    static OEmbedURITemplate compile(final String uriTemplate, final OEmbedFormat format) {
+        final String resolvedTemplate;
+        try {
+            resolvedTemplate = newUriBuilder(uriTemplate, format)
+                .queryParam("url", RESOURCE_URI_PLACEHOLDER).build().toString();
+        } catch (final RuntimeException e) {
+            return new OEmbedURITemplate(uriTemplate, format, null, null);
+        }
+
+        final int placeholderStart = resolvedTemplate.lastIndexOf("url=" + RESOURCE_URI_PLACEHOLDER);
+        if (placeholderStart < 0) {
+            return new OEmbedURITemplate(uriTemplate, format, null, null);
+        }
+        final int placeholderEnd = placeholderStart + "url=".length() + RESOURCE_URI_PLACEHOLDER.length();
+        return new OEmbedURITemplate(uriTemplate, format,
+            resolvedTemplate.substring(0, placeholderStart), resolvedTemplate.substring(placeholderEnd));
+    }
+
+    /**
+     * Restores a template previously compiled from the given URI template and
+     * format, from its {@link #getPrefix() prefix} and {@link #getSuffix() suffix},
+     * without resolving the template again.
+     */
+    public static OEmbedURITemplate restore(
+        final String uriTemplate,
+        final OEmbedFormat format,
+        final Optional<String> prefix,
+        final Optional<String> suffix
+    ) {
+        checkNotNull(uriTemplate, "A URI template is required");
+        checkNotNull(format, "A format is required");
+        checkState(prefix.isPresent() == suffix.isPresent(), "A URI template prefix requires a suffix");
+        checkState(prefix.map(p -> p.endsWith("?") || p.endsWith("&")).orElse(true),
+            "A URI template prefix must end with a query parameter separator");
+        return new OEmbedURITemplate(uriTemplate, format, prefix.orElse(null), suffix.orElse(null));
+    }
+
+    public String getURITemplate() {
+        return uriTemplate;
+    }
+
+    public OEmbedFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return Everything up to the first request parameter, or {@code Optional.empty()}
+     *         if the template could not be precompiled.
+     */
+    public Optional<String> getPrefix() {
+        return Optional.ofNullable(prefix);
+    }
+
+    /**
+     * @return Everything after the last request parameter, or {@code Optional.empty()}
+     *         if the template could not be precompiled.
+     */
+    public Optional<String> getSuffix() {
+        return Optional.ofNullable(suffix);
+    }
+
+    /**
+     * Builds the URI of an oEmbed request for the given resource URI.
+     */
+    public URI expand(final URI resourceURI, final Optional<Integer> maxHeight, final Optional<Integer> maxWidth) {
+        if (prefix == null) {
+            return expandWithUriBuilder(resourceURI, maxHeight, maxWidth);
+        }
+
+        final String resourceURIStr = resourceURI.toString();
+        final StringBuilder sb = new StringBuilder(prefix.length() + 40
+            + encodedLength(resourceURIStr) + suffix.length());
+        sb.append(prefix);
+        maxHeight.ifPresent(height -> sb.append("maxheight=").append(height.intValue()).append('&'));
+        maxWidth.ifPresent(width -> sb.append("maxwidth=").append(width.intValue()).append('&'));
+        sb.append("url=");
+        appendEncoded(sb, resourceURIStr);
+        sb.append(suffix);
+
+        return URI.create(sb.toString());
+    }
+
+    private URI expandWithUriBuilder(
+        final URI resourceURI,
+        final Optional<Integer> maxHeight,
+        final Optional<Integer> maxWidth
+    ) {
+        final UriBuilder uriBuilder = newUriBuilder(uriTemplate, format);
+        maxHeight.ifPresent(height -> uriBuilder.queryParam("maxheight", height));
+        maxWidth.ifPresent(width -> uriBuilder.queryParam("maxwidth", width));
+        return uriBuilder.queryParam("url", resourceURI).build();
+    }
+
+    private static UriBuilder newUriBuilder(final String uriTemplate, final OEmbedFormat format) {
+        final UriBuilder uriBuilder = UriBuilder.fromUri(uriTemplate);
+        if (uriTemplate.contains("format")) {
+            uriBuilder.resolveTemplate("format", format);
+        } else {
+            uriBuilder.queryParam("format", format);
+        }
+        return uriBuilder;
+    }
+
+    // ========== Query parameter encoding ==========
+    // Mirrors the encoding of query parameter values done by UriBuilder:
+    // unreserved characters and existing percent-encoded octets are kept,
+    // spaces become '+' and everything else is percent-encoded as UTF-8.
+
+    private static int encodedLength(final String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            length += isUnreserved(c) || c == ' ' || isPercentEncoded(value, i) ? 1 : (c < 0x80 ? 3 : 9);
+        }
+        return length;
+    }
+
+    private static void appendEncoded(final StringBuilder sb, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (isUnreserved(c) || isPercentEncoded(value, i)) {
+                sb.append(c);
+            } else if (c == ' ') {
+                sb.append('+');
+            } else if (c < 0x80) {
+                appendOctet(sb, c);
+            } else {
+                final int codePoint = value.codePointAt(i);
+                if (Character.isSupplementaryCodePoint(codePoint)) {
+                    i++;
+                }
+                appendUTF8(sb, codePoint);
+            }
+        }
+    }
+
+    private static boolean isUnreserved(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+            || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static boolean isPercentEncoded(final String value, final int index) {
+        return value.charAt(index) == '%' && index + 2 < value.length()
+            && isHexDigit(value.charAt(index + 1)) && isHexDigit(value.charAt(index + 2));
+    }
+
+    private static boolean isHexDigit(final char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static void appendUTF8(final StringBuilder sb, final int codePoint) {
+        if (Character.isSurrogate((char) codePoint) && !Character.isSupplementaryCodePoint(codePoint)) {
+            // Unpaired surrogates have no UTF-8 encoding and are replaced, as String#getBytes does
+            appendOctet(sb, '?');
+        } else if (codePoint < 0x800) {
+            appendOctet(sb, 0xC0 | (codePoint >> 6));
+            appendOctet(sb, 0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            appendOctet(sb, 0xE0 | (codePoint >> 12));
+            appendOctet(sb, 0x80 | ((codePoint >> 6) & 0x3F));
+            appendOctet(sb, 0x80 | (codePoint & 0x3F));
+        } else {
+            appendOctet(sb, 0xF0 | (codePoint >> 18));
+            appendOctet(sb, 0x80 | ((codePoint >> 12) & 0x3F));
+            appendOctet(sb, 0x80 | ((codePoint >> 6) & 0x3F));
+            appendOctet(sb, 0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private static void appendOctet(final StringBuilder sb, final int octet) {
+        sb.append('%').append(HEX_DIGITS[(octet >> 4) & 0xF]).append(HEX_DIGITS[octet & 0xF]);
+    }
+
+    @Override
+    public String toString() {
+        return uriTemplate;
+    }
+}